@@ -0,0 +1,153 @@
+package main.sos;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.AdvertiseCallback;
+import android.bluetooth.le.AdvertiseData;
+import android.bluetooth.le.AdvertiseSettings;
+import android.bluetooth.le.BluetoothLeAdvertiser;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.ParcelUuid;
+import android.util.Log;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BeaconRadio บนเครื่องจริง ใช้ BLE advertising แบบไม่ต้องจับคู่ (non-connectable)
+ */
+public class AndroidBeaconRadio implements BeaconRadio {
+
+    private static final String TAG = "AndroidBeaconRadio";
+
+    // 16-bit service UUID ของสัญญาณ mSOS
+    public static final ParcelUuid SERVICE_UUID =
+            ParcelUuid.fromString("0000fd5a-0000-1000-8000-00805f9b34fb");
+
+    private final BluetoothAdapter adapter;
+    private Listener scanListener;
+
+    private final AdvertiseCallback advertiseCallback =
+            new AdvertiseCallback() {
+                @Override
+                public void onStartFailure(int errorCode) {
+                    Log.w(TAG, "Advertise failed: " + errorCode);
+                }
+            };
+
+    private final ScanCallback scanCallback =
+            new ScanCallback() {
+                @Override
+                public void onScanResult(int callbackType, ScanResult result) {
+                    deliver(result);
+                }
+
+                @Override
+                public void onBatchScanResults(List<ScanResult> results) {
+                    for (ScanResult result : results) {
+                        deliver(result);
+                    }
+                }
+
+                @Override
+                public void onScanFailed(int errorCode) {
+                    Log.w(TAG, "Scan failed: " + errorCode);
+                }
+            };
+
+    public AndroidBeaconRadio(Context context) {
+        BluetoothManager manager =
+                (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        this.adapter = manager != null ? manager.getAdapter() : null;
+    }
+
+    public boolean isAvailable() {
+        return adapter != null && adapter.isEnabled();
+    }
+
+    @Override
+    public boolean startAdvertising(byte[] payload) {
+        if (!isAvailable()) return false;
+        BluetoothLeAdvertiser advertiser = adapter.getBluetoothLeAdvertiser();
+        if (advertiser == null) return false;
+
+        AdvertiseSettings settings =
+                new AdvertiseSettings.Builder()
+                        .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_LOW_LATENCY)
+                        .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_HIGH)
+                        .setConnectable(false)
+                        .build();
+        AdvertiseData data =
+                new AdvertiseData.Builder()
+                        .setIncludeDeviceName(false)
+                        .addServiceData(SERVICE_UUID, payload)
+                        .build();
+        try {
+            advertiser.startAdvertising(settings, data, advertiseCallback);
+            return true;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Missing BLUETOOTH_ADVERTISE permission", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void stopAdvertising() {
+        if (adapter == null) return;
+        BluetoothLeAdvertiser advertiser = adapter.getBluetoothLeAdvertiser();
+        if (advertiser == null) return;
+        try {
+            advertiser.stopAdvertising(advertiseCallback);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Missing BLUETOOTH_ADVERTISE permission", e);
+        }
+    }
+
+    @Override
+    public boolean startScan(Listener listener) {
+        if (!isAvailable()) return false;
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) return false;
+
+        scanListener = listener;
+        ScanFilter filter = new ScanFilter.Builder().setServiceUuid(SERVICE_UUID).build();
+        ScanSettings settings =
+                new ScanSettings.Builder().setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY).build();
+        try {
+            scanner.startScan(Collections.singletonList(filter), settings, scanCallback);
+            return true;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Missing BLUETOOTH_SCAN permission", e);
+            scanListener = null;
+            return false;
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        scanListener = null;
+        if (adapter == null) return;
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) return;
+        try {
+            scanner.stopScan(scanCallback);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Missing BLUETOOTH_SCAN permission", e);
+        }
+    }
+
+    private void deliver(ScanResult result) {
+        Listener listener = scanListener;
+        ScanRecord record = result.getScanRecord();
+        if (listener == null || record == null) return;
+        byte[] data = record.getServiceData(SERVICE_UUID);
+        if (data != null) {
+            listener.onBeaconReceived(data, result.getRssi());
+        }
+    }
+}
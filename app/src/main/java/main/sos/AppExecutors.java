@@ -0,0 +1,118 @@
+package main.sos;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * thread ของทั้งแอป แยกตามชนิดงาน
+ *
+ * disk: thread เดียว งานเขียนไฟล์ทำตามลำดับที่ส่งเข้าไป (ผู้เขียนคนเดียว ไม่ต้อง lock ไฟล์)
+ * cpu: pool ขนาดตามจำนวน core สำหรับ codec, index และงานเข้ารหัส
+ * main: ส่งผลกลับ UI thread
+ *
+ * งานบน UI thread ต้องไม่อ่าน/เขียนไฟล์หรือคำนวณหนัก (StrictMode ตรวจใน debug build ดู SosApplication)
+ */
+public final class AppExecutors {
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static volatile AppExecutors instance;
+
+    private final ExecutorService disk;
+    private final ExecutorService cpu;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Executor main = mainHandler::post;
+
+    private AppExecutors() {
+        disk =
+                new ThreadPoolExecutor(
+                        1,
+                        1,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(),
+                        namedThreads("msos-disk", android.os.Process.THREAD_PRIORITY_BACKGROUND));
+        // เหลือ core หนึ่งไว้ให้ UI thread
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        30,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        namedThreads("msos-cpu", android.os.Process.THREAD_PRIORITY_BACKGROUND));
+        pool.allowCoreThreadTimeOut(true);
+        cpu = pool;
+    }
+
+    public static AppExecutors get() {
+        AppExecutors result = instance;
+        if (result == null) {
+            synchronized (AppExecutors.class) {
+                result = instance;
+                if (result == null) {
+                    result = new AppExecutors();
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public ExecutorService disk() {
+        return disk;
+    }
+
+    public ExecutorService cpu() {
+        return cpu;
+    }
+
+    public Executor main() {
+        return main;
+    }
+
+    public boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * รัน task บน executor แล้วส่งผลหรือ error กลับ main thread
+     */
+    public <T> void submit(
+            Executor executor,
+            Callable<T> task,
+            Callback<? super T> onResult,
+            Callback<? super Exception> onError) {
+        executor.execute(
+                () -> {
+                    try {
+                        T result = task.call();
+                        if (onResult != null) main.execute(() -> onResult.onResult(result));
+                    } catch (Exception e) {
+                        if (onError != null) main.execute(() -> onError.onResult(e));
+                    }
+                });
+    }
+
+    private static ThreadFactory namedThreads(String prefix, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable ->
+                new Thread(
+                        () -> {
+                            android.os.Process.setThreadPriority(priority);
+                            runnable.run();
+                        },
+                        prefix + "-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,499 @@
+package main.sos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * จับคู่หน่วยกู้ภัยกับรายงานที่ยังไม่มีใครไป (หนึ่งหน่วยต่อหนึ่งรายงาน) ไม่ให้หลายหน่วยไปที่เดียวกัน
+ *
+ * ต้นทุน = ระยะทางตรง / น้ำหนักระดับความรุนแรง (วิกฤติ 8, สูง 4, ปานกลาง 2, ต่ำ 1)
+ * ทุกการเปลี่ยนแปลงจับคู่แบบ greedy ทันที O(หน่วย) หรือ O(รายงาน) แล้วให้ผู้เรียก
+ * snapshot() ไปหาคำตอบที่ดีที่สุดด้วย solve() (Hungarian) บน worker thread เป็นระยะ
+ * แล้วค่อย apply() กลับ ใช้บน main thread เท่านั้น ยกเว้น solve()
+ */
+public class AssignmentSolver {
+
+    public static final int UNASSIGNED = -1;
+
+    // ตำแหน่งที่ส่งต่อระหว่างเครื่องได้ไม่เกินนี้ต่อการซิงก์
+    public static final int MAX_SHARED_RESCUERS = 256;
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    // แย่งงานจากหน่วยที่มีงานแล้วเมื่อรายงานใหม่ถูกกว่าครึ่งหนึ่ง กันงานสลับไปมา
+    private static final double STEAL_RATIO = 0.5;
+    // ตอน solve งานเดิมถูกลง 10% เปลี่ยนงานเฉพาะเมื่อได้ดีขึ้นจริง
+    private static final float STICKY = 0.9f;
+    private static final float NO_EDGE = 1e12f;
+
+    /**
+     * ตำแหน่งล่าสุดของหน่วยกู้ภัย (ส่งต่อผ่าน ReportSync)
+     */
+    public static final class Rescuer {
+        public final int id;
+        public final double lat;
+        public final double lng;
+        public final long updatedAt;
+
+        public Rescuer(int id, double lat, double lng, long updatedAt) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+            this.updatedAt = updatedAt;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(id);
+            out.writeInt(ReportCodec.toFixed(lat));
+            out.writeInt(ReportCodec.toFixed(lng));
+            out.writeLong(updatedAt);
+        }
+
+        public static Rescuer read(DataInput in) throws IOException {
+            return new Rescuer(
+                    in.readInt(),
+                    ReportCodec.fromFixed(in.readInt()),
+                    ReportCodec.fromFixed(in.readInt()),
+                    in.readLong());
+        }
+    }
+
+    /**
+     * ข้อมูลที่ solve() ใช้ คัดลอกเป็น array จึงส่งข้าม thread ได้
+     */
+    public static final class Problem {
+        final int[] rescuerIds;
+        final double[] rescuerLat;
+        final double[] rescuerLng;
+        final int[] taskIds;
+        final double[] taskLat;
+        final double[] taskLng;
+        final float[] taskWeight;
+        // index ของงานปัจจุบันของแต่ละหน่วย หรือ -1
+        final int[] current;
+
+        Problem(int rescuers, int tasks) {
+            rescuerIds = new int[rescuers];
+            rescuerLat = new double[rescuers];
+            rescuerLng = new double[rescuers];
+            current = new int[rescuers];
+            taskIds = new int[tasks];
+            taskLat = new double[tasks];
+            taskLng = new double[tasks];
+            taskWeight = new float[tasks];
+        }
+    }
+
+    private static class Task {
+        final int id;
+        double lat;
+        double lng;
+        float weight;
+        Unit assignee;
+
+        Task(int id) {
+            this.id = id;
+        }
+    }
+
+    private static class Unit {
+        Rescuer position;
+        double cosLat;
+        Task task;
+
+        double cost(Task task) {
+            return AssignmentSolver.cost(
+                    position.lat, position.lng, cosLat, task.lat, task.lng, task.weight);
+        }
+    }
+
+    private final Map<Integer, Unit> units = new HashMap<>();
+    private final Map<Integer, Task> tasks = new HashMap<>();
+
+    /**
+     * เพิ่มหรืออัปเดตตำแหน่งหน่วยกู้ภัย ตำแหน่งที่เก่ากว่าของเดิมถูกข้าม คืน true ถ้ามีการเปลี่ยน
+     */
+    public boolean updateRescuer(Rescuer position) {
+        Unit unit = units.get(position.id);
+        if (unit != null && unit.position.updatedAt >= position.updatedAt) return false;
+        boolean added = unit == null;
+        if (added) {
+            unit = new Unit();
+            units.put(position.id, unit);
+        }
+        unit.position = position;
+        unit.cosLat = Math.cos(Math.toRadians(position.lat));
+        // หน่วยที่ขยับแล้วยังคงงานเดิมไว้ให้ solve() ตัดสิน
+        if (unit.task == null) fill(unit);
+        return true;
+    }
+
+    public void removeRescuer(int rescuerId) {
+        Unit unit = units.remove(rescuerId);
+        if (unit == null || unit.task == null) return;
+        Task task = unit.task;
+        task.assignee = null;
+        insert(task, false);
+    }
+
+    /**
+     * ลบหน่วยที่ไม่ได้อัปเดตตำแหน่งตั้งแต่ before
+     */
+    public void expireRescuers(long before) {
+        List<Integer> expired = new ArrayList<>();
+        for (Map.Entry<Integer, Unit> entry : units.entrySet()) {
+            if (entry.getValue().position.updatedAt < before) expired.add(entry.getKey());
+        }
+        for (int id : expired) removeRescuer(id);
+    }
+
+    /**
+     * เพิ่มหรืออัปเดตรายงาน รายงานที่มีคนไปแล้ว (EN_ROUTE ขึ้นไป) ถูกเอาออกจากการจับคู่
+     */
+    public void putReport(MainActivity.Report report) {
+        if (!isOpen(report.status)) {
+            removeReport(report.id);
+            return;
+        }
+        Task task = tasks.get(report.id);
+        boolean added = task == null;
+        if (added) {
+            task = new Task(report.id);
+            tasks.put(report.id, task);
+        }
+        task.lat = report.location.lat;
+        task.lng = report.location.lng;
+        task.weight = 1 << report.level.code;
+        if (added) insert(task, true);
+    }
+
+    public void removeReport(int reportId) {
+        Task task = tasks.remove(reportId);
+        if (task == null || task.assignee == null) return;
+        Unit unit = task.assignee;
+        unit.task = null;
+        fill(unit);
+    }
+
+    public void clearReports() {
+        tasks.clear();
+        for (Unit unit : units.values()) unit.task = null;
+    }
+
+    /**
+     * id รายงานที่หน่วยนี้ควรไป หรือ UNASSIGNED
+     */
+    public int getAssignment(int rescuerId) {
+        Unit unit = units.get(rescuerId);
+        return unit != null && unit.task != null ? unit.task.id : UNASSIGNED;
+    }
+
+    public boolean isAssigned(int reportId) {
+        Task task = tasks.get(reportId);
+        return task != null && task.assignee != null;
+    }
+
+    public int getRescuerCount() {
+        return units.size();
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * ตำแหน่งหน่วยทั้งหมด ใหม่สุดก่อน ไม่เกิน MAX_SHARED_RESCUERS สำหรับส่งต่อ
+     */
+    public List<Rescuer> getRescuers() {
+        List<Rescuer> result = new ArrayList<>(units.size());
+        for (Unit unit : units.values()) result.add(unit.position);
+        Collections.sort(result, (a, b) -> Long.compare(b.updatedAt, a.updatedAt));
+        return result.size() > MAX_SHARED_RESCUERS
+                ? new ArrayList<>(result.subList(0, MAX_SHARED_RESCUERS))
+                : result;
+    }
+
+    public Problem snapshot() {
+        Problem problem = new Problem(units.size(), tasks.size());
+        Map<Task, Integer> taskIndex = new HashMap<>(tasks.size() * 2);
+        int t = 0;
+        for (Task task : tasks.values()) {
+            problem.taskIds[t] = task.id;
+            problem.taskLat[t] = task.lat;
+            problem.taskLng[t] = task.lng;
+            problem.taskWeight[t] = task.weight;
+            if (task.assignee != null) taskIndex.put(task, t);
+            t++;
+        }
+        int r = 0;
+        for (Unit unit : units.values()) {
+            problem.rescuerIds[r] = unit.position.id;
+            problem.rescuerLat[r] = unit.position.lat;
+            problem.rescuerLng[r] = unit.position.lng;
+            Integer current = unit.task != null ? taskIndex.get(unit.task) : null;
+            problem.current[r] = current != null ? current : -1;
+            r++;
+        }
+        return problem;
+    }
+
+    /**
+     * ใช้ผลของ solve() หน่วยหรือรายงานที่หายไประหว่างนั้นถูกข้าม หน่วยที่ยังว่างจับคู่แบบ greedy ต่อ
+     */
+    public void apply(Problem problem, int[] solution) {
+        for (int r = 0; r < solution.length; r++) {
+            Unit unit = units.get(problem.rescuerIds[r]);
+            if (unit == null || unit.task == null) continue;
+            unit.task.assignee = null;
+            unit.task = null;
+        }
+        List<Unit> idle = new ArrayList<>();
+        for (int r = 0; r < solution.length; r++) {
+            Unit unit = units.get(problem.rescuerIds[r]);
+            if (unit == null || unit.task != null) continue;
+            Task task = solution[r] >= 0 ? tasks.get(problem.taskIds[solution[r]]) : null;
+            if (task != null && task.assignee == null) {
+                assign(unit, task);
+            } else {
+                idle.add(unit);
+            }
+        }
+        for (Unit unit : idle) fill(unit);
+    }
+
+    /**
+     * คู่ที่ต้นทุนรวมต่ำสุด (Hungarian) คืน index ของงานต่อหน่วยใน problem หรือ -1
+     *
+     * ถ้าหน่วยมี R หน่วย คำตอบที่ดีที่สุดใช้แค่ R งานที่ถูกที่สุดของแต่ละหน่วย (งานนอกนั้นสลับกับงานที่
+     * ยังว่างในกลุ่มนี้ได้โดยไม่แพงขึ้น) จึงตัดเหลือคอลัมน์เหล่านี้ก่อน ถ้างานน้อยกว่าหน่วยก็สลับแถว/คอลัมน์
+     */
+    public static int[] solve(Problem problem) {
+        int rescuers = problem.rescuerIds.length;
+        int taskCount = problem.taskIds.length;
+        int[] solution = new int[rescuers];
+        Arrays.fill(solution, -1);
+        if (rescuers == 0 || taskCount == 0) return solution;
+
+        boolean byTask = taskCount < rescuers;
+        int rows = Math.min(rescuers, taskCount);
+        int cols = Math.max(rescuers, taskCount);
+        double[] cosLat = new double[rescuers];
+        for (int r = 0; r < rescuers; r++) cosLat[r] = Math.cos(Math.toRadians(problem.rescuerLat[r]));
+
+        // คอลัมน์ที่ถูกที่สุด rows อันของแต่ละแถว รวมกันเป็นคอลัมน์ที่ใช้จริง
+        float[] rowCost = new float[cols];
+        int[] heap = new int[rows];
+        int[] columnOf = new int[cols];
+        Arrays.fill(columnOf, -1);
+        int[][] candidates = new int[rows][];
+        int used = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                rowCost[col] = pairKey(problem, cosLat, byTask ? col : row, byTask ? row : col);
+            }
+            candidates[row] = cheapest(rowCost, cols, rows, heap);
+            for (int col : candidates[row]) {
+                if (columnOf[col] < 0) columnOf[col] = used++;
+            }
+        }
+        int[] originalColumn = new int[used];
+        for (int col = 0; col < cols; col++) {
+            if (columnOf[col] >= 0) originalColumn[columnOf[col]] = col;
+        }
+        float[][] cost = new float[rows][used];
+        for (int row = 0; row < rows; row++) {
+            Arrays.fill(cost[row], NO_EDGE);
+            for (int col : candidates[row]) {
+                cost[row][columnOf[col]] =
+                        pairCost(problem, cosLat, byTask ? col : row, byTask ? row : col);
+            }
+        }
+
+        int[] rowOfColumn = hungarian(cost, rows, used);
+        for (int c = 0; c < used; c++) {
+            int row = rowOfColumn[c];
+            if (row < 0) continue;
+            int col = originalColumn[c];
+            if (byTask) {
+                solution[col] = row;
+            } else {
+                solution[row] = col;
+            }
+        }
+        return solution;
+    }
+
+    private static float pairCost(Problem problem, double[] cosLat, int rescuer, int task) {
+        return (float) (Math.sqrt(pairKey(problem, cosLat, rescuer, task)) * METERS_PER_DEGREE);
+    }
+
+    /**
+     * กำลังสองของต้นทุนในหน่วยองศา ลำดับเหมือนต้นทุนจริงแต่ไม่ต้องถอดรากตอนคัดคอลัมน์
+     */
+    private static float pairKey(Problem problem, double[] cosLat, int rescuer, int task) {
+        double dy = problem.taskLat[task] - problem.rescuerLat[rescuer];
+        double dx = (problem.taskLng[task] - problem.rescuerLng[rescuer]) * cosLat[rescuer];
+        double weight = problem.taskWeight[task];
+        double key = (dx * dx + dy * dy) / (weight * weight);
+        return (float) (problem.current[rescuer] == task ? key * STICKY * STICKY : key);
+    }
+
+    /**
+     * index ของ k ค่าที่น้อยที่สุดใน values[0, n) ด้วย max-heap ขนาด k
+     */
+    private static int[] cheapest(float[] values, int n, int k, int[] heap) {
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size < k) {
+                int child = size++;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (values[heap[parent]] >= values[i]) break;
+                    heap[child] = heap[parent];
+                    child = parent;
+                }
+                heap[child] = i;
+            } else if (values[i] < values[heap[0]]) {
+                int parent = 0;
+                while (true) {
+                    int child = 2 * parent + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && values[heap[child + 1]] > values[heap[child]]) child++;
+                    if (values[heap[child]] <= values[i]) break;
+                    heap[parent] = heap[child];
+                    parent = child;
+                }
+                heap[parent] = i;
+            }
+        }
+        return Arrays.copyOf(heap, size);
+    }
+
+    /**
+     * Hungarian แบบ shortest augmenting path สำหรับ rows <= cols คืนแถวของแต่ละคอลัมน์หรือ -1
+     * O(rows^2 * cols) กรณีแย่สุด แต่ถ้าหน่วยอยู่คนละพื้นที่แต่ละแถวจบในไม่กี่รอบ
+     */
+    private static int[] hungarian(float[][] cost, int rows, int cols) {
+        double[] u = new double[rows + 1];
+        double[] v = new double[cols + 1];
+        int[] match = new int[cols + 1];
+        int[] way = new int[cols + 1];
+        double[] minv = new double[cols + 1];
+        boolean[] visited = new boolean[cols + 1];
+        for (int i = 1; i <= rows; i++) {
+            match[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(visited, false);
+            do {
+                visited[j0] = true;
+                int i0 = match[j0];
+                float[] row = cost[i0 - 1];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= cols; j++) {
+                    if (visited[j]) continue;
+                    double reduced = row[j - 1] - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; j++) {
+                    if (visited[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (match[j0] != 0);
+            do {
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int[] rowOfColumn = new int[cols];
+        for (int j = 1; j <= cols; j++) rowOfColumn[j - 1] = match[j] - 1;
+        return rowOfColumn;
+    }
+
+    private static boolean isOpen(MainActivity.ReportStatus status) {
+        return status == MainActivity.ReportStatus.WAITING
+                || status == MainActivity.ReportStatus.ACKNOWLEDGED;
+    }
+
+    private static double cost(
+            double fromLat, double fromLng, double cosLat, double toLat, double toLng, float weight) {
+        // equirectangular พอสำหรับเทียบกันในระยะไม่กี่สิบกิโลเมตร
+        double dy = toLat - fromLat;
+        double dx = (toLng - fromLng) * cosLat;
+        return Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE / weight;
+    }
+
+    /**
+     * รายงานใหม่หรือรายงานที่ถูกปล่อย: ให้หน่วยว่างที่ใกล้สุด ถ้าไม่มีหน่วยว่างและ steal
+     * ให้หน่วยที่งานใหม่ถูกกว่างานเดิมมากที่สุด (งานเดิมกลับไปรอ)
+     */
+    private void insert(Task task, boolean steal) {
+        Unit bestFree = null;
+        double bestFreeCost = Double.POSITIVE_INFINITY;
+        Unit bestBusy = null;
+        double bestRatio = STEAL_RATIO;
+        for (Unit unit : units.values()) {
+            double cost = unit.cost(task);
+            if (unit.task == null) {
+                if (cost < bestFreeCost) {
+                    bestFreeCost = cost;
+                    bestFree = unit;
+                }
+            } else if (steal && bestFree == null) {
+                double current = unit.cost(unit.task);
+                if (current > 0 && cost / current < bestRatio) {
+                    bestRatio = cost / current;
+                    bestBusy = unit;
+                }
+            }
+        }
+        if (bestFree != null) {
+            assign(bestFree, task);
+        } else if (bestBusy != null) {
+            bestBusy.task.assignee = null;
+            assign(bestBusy, task);
+        }
+    }
+
+    /**
+     * ให้งานที่ยังว่างและถูกที่สุดแก่หน่วยนี้ O(รายงาน)
+     */
+    private void fill(Unit unit) {
+        Task best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (Task task : tasks.values()) {
+            if (task.assignee != null) continue;
+            double cost = unit.cost(task);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = task;
+            }
+        }
+        if (best != null) assign(unit, best);
+    }
+
+    private void assign(Unit unit, Task task) {
+        unit.task = task;
+        task.assignee = unit;
+    }
+}
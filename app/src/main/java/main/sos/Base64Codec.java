@@ -0,0 +1,84 @@
+package main.sos;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * base64 มาตรฐาน (RFC 4648 มี padding ไม่ขึ้นบรรทัดใหม่) สำหรับ data ของ DeltaSubscription
+ *
+ * java.util.Base64 ต้องใช้ API 26 แต่ minSdk เป็น 23 และ android.util.Base64 ทดสอบบน JVM ไม่ได้
+ * decode แบบเข้มงวด: ความยาวต้องหารด้วย 4 ลงตัวและไม่มีอักขระอื่นปน
+ */
+final class Base64Codec {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) VALUES[ALPHABET[i]] = (byte) i;
+    }
+
+    private Base64Codec() {}
+
+    static String encode(byte[] data) {
+        char[] out = new char[(data.length + 2) / 3 * 4];
+        int o = 0;
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = data.length - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16;
+            if (remaining == 2) bits |= (data[i + 1] & 0xff) << 8;
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            out[o] = '=';
+        }
+        return new String(out);
+    }
+
+    static byte[] decode(String text) throws IOException {
+        int length = text.length();
+        if (length % 4 != 0) throw new IOException("Invalid base64 length");
+        int padding = 0;
+        if (length > 0 && text.charAt(length - 1) == '=') {
+            padding = text.charAt(length - 2) == '=' ? 2 : 1;
+        }
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int o = 0;
+        for (int i = 0; i < length; i += 4) {
+            boolean last = i + 4 == length;
+            int bits = value(text, i) << 18 | value(text, i + 1) << 12;
+            if (last && padding == 2) {
+                out[o] = (byte) (bits >>> 16);
+                break;
+            }
+            bits |= value(text, i + 2) << 6;
+            if (last && padding == 1) {
+                out[o++] = (byte) (bits >>> 16);
+                out[o] = (byte) (bits >>> 8);
+                break;
+            }
+            bits |= value(text, i + 3);
+            out[o++] = (byte) (bits >>> 16);
+            out[o++] = (byte) (bits >>> 8);
+            out[o++] = (byte) bits;
+        }
+        return out;
+    }
+
+    private static int value(String text, int index) throws IOException {
+        char c = text.charAt(index);
+        int value = c < 128 ? VALUES[c] : -1;
+        if (value < 0) throw new IOException("Invalid base64 character at " + index);
+        return value;
+    }
+}
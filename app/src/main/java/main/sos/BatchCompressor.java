@@ -0,0 +1,194 @@
+package main.sos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * บีบอัด batch ของรายงานด้วย DEFLATE พร้อม preset dictionary ของสิ่งที่ส่งบ่อยในรายงาน
+ * (วลีภาษาไทย ชื่อ เบอร์โทร และ header ของซอง) batch เล็กๆ จึงบีบอัดได้ดีตั้งแต่ไบต์แรก
+ * วัดผลด้วย CompressionBenchmark ใน src/test
+ *
+ * Deflater/Inflater และ buffer ใช้ซ้ำต่อ thread ไม่ต้องจองใหม่ทุก batch
+ * ข้อมูลที่บีบอัดเป็น zlib ที่มี DICTID ของ dictionary อยู่ใน header
+ * ถ้าเปลี่ยน dictionary ต้องเพิ่ม protocol version ของผู้ใช้ (เช่น ReportSync)
+ */
+public final class BatchCompressor {
+
+    /**
+     * ขนาดสูงสุดหลังคลายการบีบอัด กันข้อมูลที่ขยายตัวผิดปกติ
+     */
+    public static final int MAX_DECOMPRESSED = 4 * 1024 * 1024;
+
+    /**
+     * ขนาดสูงสุดของ frame ที่บีบอัดแล้ว: ข้อมูลขนาด MAX_DECOMPRESSED ที่บีบอัดไม่ได้เลย
+     * (stored block มี header 5 ไบต์ต่อ 64 KB) บวก zlib header, DICTID และ checksum
+     */
+    public static final int MAX_COMPRESSED =
+            MAX_DECOMPRESSED + (MAX_DECOMPRESSED / 65535 + 1) * 5 + 10;
+
+    private static final int MAX_RETAINED = 256 * 1024;
+
+    // DEFLATE อ้างอิงย้อนหลังได้ใกล้กว่าด้วยรหัสที่สั้นกว่า ส่วนที่พบบ่อยที่สุดจึงอยู่ท้าย
+    // มีเฉพาะไบต์ที่ส่งจริง: ระดับ/ประเภท/สถานะเป็น code 1 ไบต์ (ReportCodec) จึงไม่มีชื่อ label
+    // ข้อความเขียนด้วย writeUTF (modified UTF-8) ภาษาไทยตรงกับ UTF-8 แต่ emoji ไม่ตรง จึงไม่ใส่
+    private static final byte[] DICTIONARY = dictionary();
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+            new ThreadLocal<Deflater>() {
+                @Override
+                protected Deflater initialValue() {
+                    return new Deflater(Deflater.DEFAULT_COMPRESSION);
+                }
+            };
+
+    private static final ThreadLocal<Inflater> INFLATER =
+            new ThreadLocal<Inflater>() {
+                @Override
+                protected Inflater initialValue() {
+                    return new Inflater();
+                }
+            };
+
+    private static final ThreadLocal<byte[]> CHUNK =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[16 * 1024];
+                }
+            };
+
+    private static final ThreadLocal<Buffer> OUTPUT =
+            new ThreadLocal<Buffer>() {
+                @Override
+                protected Buffer initialValue() {
+                    return new Buffer();
+                }
+            };
+
+    private static final ThreadLocal<Buffer> RAW =
+            new ThreadLocal<Buffer>() {
+                @Override
+                protected Buffer initialValue() {
+                    return new Buffer();
+                }
+            };
+
+    private BatchCompressor() {}
+
+    private static byte[] dictionary() {
+        Buffer out = new Buffer();
+        // header ของ ReportEnvelope (VERSION 2, flags, 0x04 ของ public key) และต้นลายเซ็น DER
+        // ของ ECDSA P-256 นำด้วยความยาว ซ้ำทุกซองแต่ส่วนที่เหลือของซองเป็นไบต์สุ่ม
+        byte[] framing = {
+            2, 0, 4, 2, 1, 4, 0x46, 0x30, 0x44, 0x02, 0x20, 0x48, 0x30, 0x46, 0x02, 0x21, 0x00,
+            0x47, 0x30, 0x45, 0x02, 0x21, 0x00, 0x02, 0x20, 0x47, 0x30, 0x45, 0x02, 0x20
+        };
+        out.write(framing, 0, framing.length);
+        byte[] text =
+                (""
+                                + "LINE ID: Facebook: ติดต่อได้ที่เบอร์ โทร "
+                                + "บ้านเลขที่ หมู่ที่ ซอย ถนน ตำบล อำเภอ จังหวัด ต. อ. จ. "
+                                + "ใกล้โรงเรียน ใกล้วัด หลังวัด ตรงข้าม ใกล้สะพาน หมู่บ้าน "
+                                + "สัญญาณโทรศัพท์ไม่มี แบตโทรศัพท์ใกล้หมด ไฟฟ้าดับ "
+                                + "อาคารถล่ม ติดอยู่ในซากอาคาร ได้ยินเสียงคนเรียก บ้านพังบางส่วน "
+                                + "ถนนถูกตัดขาด เข้าออกไม่ได้ "
+                                + "ผู้ป่วยติดเตียง เคลื่อนย้ายเองไม่ได้ หญิงตั้งครรภ์ คนพิการ "
+                                + "สัตว์เลี้ยง ยาประจำตัวหมด ยารักษาโรค "
+                                + "บาดเจ็บสาหัส เลือดออกมาก หายใจลำบาก หายใจไม่ออก หมดสติ "
+                                + "ต้องการเรือด่วน ต้องการรถพยาบาล ต้องการอาหารและน้ำดื่ม "
+                                + "ออกจากบ้านไม่ได้ น้ำขึ้นสูงเรื่อยๆ ระดับน้ำประมาณ เมตร "
+                                + "น้ำท่วมถึงชั้น 2 แล้ว ติดอยู่บนหลังคาบ้าน น้ำท่วมสูง "
+                                + "มีผู้สูงอายุ มีเด็กเล็ก จำนวน คน "
+                                + "รอความช่วยเหลืออยู่ ต้องการความช่วยเหลือด่วน "
+                                + "ด.ช. ด.ญ. นางสาว นาง นาย "
+                                + "080-081-082-083-084-085-086-087-088-089-"
+                                + "061-062-063-064-065-090-091-092-093-094-095-096-097-098-099-"
+                                // ข้อความตั้งต้นของ SOS ด่วน (R.string.quick_sos_details)
+                                + "ส่งด่วนด้วยการกดค้าง ยังไม่มีรายละเอียด")
+                        .getBytes(StandardCharsets.UTF_8);
+        out.write(text, 0, text.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * buffer ว่างของ thread นี้สำหรับเขียนข้อมูลก่อนส่งเข้า compress
+     */
+    public static Buffer rawBuffer() {
+        Buffer raw = RAW.get();
+        raw.reset();
+        return raw;
+    }
+
+    public static byte[] compress(byte[] data, int offset, int length) {
+        Deflater deflater = DEFLATER.get();
+        byte[] chunk = CHUNK.get();
+        Buffer output = OUTPUT.get();
+        output.reset();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            output.write(chunk, 0, n);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * คลายการบีบอัด คืน buffer ที่ใช้ซ้ำของ thread นี้ (ใช้ได้จนกว่าจะเรียกครั้งถัดไป)
+     */
+    public static Buffer decompress(byte[] data, int offset, int length) throws IOException {
+        Inflater inflater = INFLATER.get();
+        byte[] chunk = CHUNK.get();
+        Buffer output = OUTPUT.get();
+        output.reset();
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0) {
+                    // ข้อมูลว่าง: หลังใส่ dictionary stream จบโดยไม่มีไบต์ออก
+                    if (inflater.finished()) break;
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else {
+                        throw new IOException("Truncated batch");
+                    }
+                    continue;
+                }
+                if (output.size() + n > MAX_DECOMPRESSED) {
+                    throw new IOException("Batch too large");
+                }
+                output.write(chunk, 0, n);
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            // IllegalArgumentException: dictionary ไม่ตรงกับที่ใช้บีบอัด
+            throw new IOException("Corrupt batch", e);
+        }
+        return output;
+    }
+
+    /**
+     * ByteArrayOutputStream ที่อ่าน buffer ภายในได้โดยไม่ copy
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+        public byte[] array() {
+            return buf;
+        }
+
+        /**
+         * คืนหน่วยความจำเมื่อ buffer โตเกินจำเป็นจาก batch ขนาดใหญ่ผิดปกติ
+         */
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            if (buf.length > MAX_RETAINED) buf = new byte[32];
+        }
+    }
+}
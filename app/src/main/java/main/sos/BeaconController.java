@@ -0,0 +1,78 @@
+package main.sos;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.Random;
+
+/**
+ * ขับ BeaconScheduler ด้วย Handler บน main looper
+ */
+public class BeaconController {
+
+    private final BeaconScheduler scheduler;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private BeaconScheduler.DutyCycle advertiseCycle = BeaconScheduler.DEFAULT_ADVERTISE;
+    private BeaconScheduler.DutyCycle scanCycle = BeaconScheduler.DEFAULT_SCAN;
+    private boolean scanning;
+
+    private final Runnable tick =
+            new Runnable() {
+                @Override
+                public void run() {
+                    long delay = scheduler.onTimer(SystemClock.elapsedRealtime());
+                    if (delay >= 0) {
+                        handler.postDelayed(this, Math.max(delay, 1));
+                    }
+                }
+            };
+
+    public BeaconController(BeaconRadio radio) {
+        this.scheduler = new BeaconScheduler(radio, new Random());
+    }
+
+    public void advertise(MainActivity.Report report) {
+        handler.removeCallbacks(tick);
+        scheduler.startAdvertising(
+                BeaconPayload.fromReport(report), advertiseCycle, SystemClock.elapsedRealtime());
+        scanning = false;
+        handler.post(tick);
+    }
+
+    /**
+     * เริ่มประกาศ payload ที่ encode ไว้แล้วทันทีในการเรียกนี้ ไม่รอรอบถัดไปของ main looper
+     * เรียกบน main thread
+     */
+    public void advertiseNow(byte[] encoded) {
+        handler.removeCallbacks(tick);
+        scheduler.startAdvertising(encoded, advertiseCycle, SystemClock.elapsedRealtime());
+        scanning = false;
+        tick.run();
+    }
+
+    public void scan(BeaconScheduler.Listener listener) {
+        handler.removeCallbacks(tick);
+        scheduler.startScanning(listener, scanCycle, SystemClock.elapsedRealtime());
+        scanning = true;
+        handler.post(tick);
+    }
+
+    /**
+     * duty cycle ที่ใช้ตอนประกาศ/ฟัง (WorkloadGovernor) งานที่กำลังทำอยู่เปลี่ยนตั้งแต่รอบถัดไป
+     */
+    public void setDutyCycles(
+            BeaconScheduler.DutyCycle advertise, BeaconScheduler.DutyCycle scan) {
+        this.advertiseCycle = advertise;
+        this.scanCycle = scan;
+        scheduler.setDutyCycle(scanning ? scan : advertise);
+    }
+
+    public void stop() {
+        handler.removeCallbacks(tick);
+        scheduler.stop(SystemClock.elapsedRealtime());
+    }
+
+    public BeaconScheduler getScheduler() {
+        return scheduler;
+    }
+}
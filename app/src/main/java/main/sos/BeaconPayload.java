@@ -0,0 +1,62 @@
+package main.sos;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ข้อมูลขนาดเล็กที่ใส่ใน BLE advertising data (service data 14 bytes)
+ * id, พิกัดแบบ fixed-point และระดับความรุนแรง
+ */
+public final class BeaconPayload {
+
+    public static final byte VERSION = 1;
+    public static final int SIZE = 14;
+
+    public final int reportId;
+    public final int latFixed;
+    public final int lngFixed;
+    public final MainActivity.Severity severity;
+
+    public BeaconPayload(int reportId, int latFixed, int lngFixed, MainActivity.Severity severity) {
+        this.reportId = reportId;
+        this.latFixed = latFixed;
+        this.lngFixed = lngFixed;
+        this.severity = severity;
+    }
+
+    public static BeaconPayload fromReport(MainActivity.Report report) {
+        return new BeaconPayload(
+                report.id,
+                ReportCodec.toFixed(report.location.lat),
+                ReportCodec.toFixed(report.location.lng),
+                report.level);
+    }
+
+    public byte[] encode() {
+        return ByteBuffer.allocate(SIZE)
+                .put(VERSION)
+                .putInt(reportId)
+                .putInt(latFixed)
+                .putInt(lngFixed)
+                .put(severity.code)
+                .array();
+    }
+
+    /**
+     * แปลงกลับจาก service data คืน null ถ้าข้อมูลไม่ถูกต้อง
+     */
+    public static BeaconPayload decode(byte[] data) {
+        if (data == null || data.length < SIZE || data[0] != VERSION) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, SIZE - 1);
+        int id = buffer.getInt();
+        int lat = buffer.getInt();
+        int lng = buffer.getInt();
+        MainActivity.Severity severity = MainActivity.Severity.fromCode(buffer.get());
+        if (severity == null) return null;
+        return new BeaconPayload(id, lat, lng, severity);
+    }
+
+    public MainActivity.Location getLocation() {
+        return new MainActivity.Location(
+                ReportCodec.fromFixed(latFixed), ReportCodec.fromFixed(lngFixed));
+    }
+}
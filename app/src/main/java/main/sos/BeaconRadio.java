@@ -0,0 +1,20 @@
+package main.sos;
+
+/**
+ * ชั้น abstraction ของวิทยุ BLE เพื่อให้ BeaconScheduler ทำงานได้ทั้งบนเครื่องจริง
+ * (AndroidBeaconRadio) และในการทดสอบบน JVM (SimulatedBeaconRadio ใน src/test)
+ */
+public interface BeaconRadio {
+
+    interface Listener {
+        void onBeaconReceived(byte[] payload, int rssi);
+    }
+
+    boolean startAdvertising(byte[] payload);
+
+    void stopAdvertising();
+
+    boolean startScan(Listener listener);
+
+    void stopScan();
+}
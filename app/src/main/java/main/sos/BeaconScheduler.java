@@ -0,0 +1,199 @@
+package main.sos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * ควบคุม duty cycle ของการ advertise (ผู้ประสบภัย) และ scan (กู้ภัย)
+ * ไม่ผูกกับ Android: ผู้เรียกต้องเรียก onTimer() ตามเวลาที่คืนค่ากลับมา
+ */
+public class BeaconScheduler {
+
+    public interface Listener {
+        void onBeacon(BeaconPayload payload, int rssi);
+    }
+
+    /**
+     * ช่วงเวลาเปิดวิทยุในแต่ละรอบ (มิลลิวินาที)
+     */
+    public static class DutyCycle {
+        public final long periodMs;
+        public final long windowMs;
+        public final long jitterMs;
+
+        public DutyCycle(long periodMs, long windowMs, long jitterMs) {
+            if (periodMs <= 0 || windowMs <= 0 || windowMs > periodMs || jitterMs < 0) {
+                throw new IllegalArgumentException("Invalid duty cycle");
+            }
+            this.periodMs = periodMs;
+            this.windowMs = windowMs;
+            this.jitterMs = jitterMs;
+        }
+
+        public double ratio() {
+            return (double) windowMs / periodMs;
+        }
+    }
+
+    public static final DutyCycle DEFAULT_ADVERTISE = new DutyCycle(4000, 1000, 250);
+    public static final DutyCycle DEFAULT_SCAN = new DutyCycle(10000, 2500, 500);
+
+    private static final int MAX_TRACKED_BEACONS = 1024;
+
+    private enum Role {
+        IDLE,
+        ADVERTISE,
+        SCAN
+    }
+
+    private final BeaconRadio radio;
+    private final Random random;
+    private final Map<Integer, BeaconPayload> seen =
+            new LinkedHashMap<Integer, BeaconPayload>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, BeaconPayload> eldest) {
+                    return size() > MAX_TRACKED_BEACONS;
+                }
+            };
+
+    private Role role = Role.IDLE;
+    private DutyCycle dutyCycle;
+    private byte[] payload;
+    private Listener listener;
+    private boolean radioOn;
+    private long cycleStart;
+    private long radioOnSince;
+    private long radioOnMillis;
+
+    private final BeaconRadio.Listener radioListener =
+            new BeaconRadio.Listener() {
+                @Override
+                public void onBeaconReceived(byte[] data, int rssi) {
+                    handleBeacon(data, rssi);
+                }
+            };
+
+    public BeaconScheduler(BeaconRadio radio, Random random) {
+        this.radio = radio;
+        this.random = random;
+    }
+
+    /**
+     * เริ่มประกาศสัญญาณ SOS ของเครื่องนี้
+     */
+    public void startAdvertising(BeaconPayload beacon, DutyCycle dutyCycle, long nowMillis) {
+        startAdvertising(beacon.encode(), dutyCycle, nowMillis);
+    }
+
+    /**
+     * เหมือนด้านบนแต่ใช้ payload ที่ encode ไว้แล้ว (QuickSos)
+     */
+    public void startAdvertising(byte[] encoded, DutyCycle dutyCycle, long nowMillis) {
+        stop(nowMillis);
+        this.role = Role.ADVERTISE;
+        this.payload = encoded;
+        this.dutyCycle = dutyCycle;
+        this.cycleStart = nowMillis;
+    }
+
+    /**
+     * เริ่มฟังสัญญาณ SOS จากเครื่องรอบข้าง
+     */
+    public void startScanning(Listener listener, DutyCycle dutyCycle, long nowMillis) {
+        stop(nowMillis);
+        this.role = Role.SCAN;
+        this.listener = listener;
+        this.dutyCycle = dutyCycle;
+        this.cycleStart = nowMillis;
+    }
+
+    /**
+     * ปรับ duty cycle ระหว่างทำงาน ช่วงเวลาของรอบปัจจุบันคิดใหม่ตามค่าใหม่ทันที
+     */
+    public void setDutyCycle(DutyCycle dutyCycle) {
+        this.dutyCycle = dutyCycle;
+    }
+
+    /**
+     * เปิด/ปิดวิทยุตามช่วงเวลาปัจจุบัน คืนค่าเวลา (ms) จนกว่าจะต้องเรียกอีกครั้ง หรือ -1 ถ้าหยุดแล้ว
+     */
+    public long onTimer(long nowMillis) {
+        if (role == Role.IDLE) return -1;
+
+        long windowEnd = cycleStart + dutyCycle.windowMs;
+        if (nowMillis < windowEnd) {
+            if (!radioOn) setRadio(true, nowMillis);
+            return windowEnd - nowMillis;
+        }
+
+        long cycleEnd = cycleStart + dutyCycle.periodMs;
+        if (nowMillis < cycleEnd) {
+            if (radioOn) setRadio(false, nowMillis);
+            return cycleEnd - nowMillis;
+        }
+
+        // เริ่มรอบใหม่ เลื่อนแบบสุ่มเล็กน้อยเพื่อไม่ให้หลายเครื่องชนกันทุกรอบ
+        long jitter = dutyCycle.jitterMs > 0 ? (long) (random.nextDouble() * dutyCycle.jitterMs) : 0;
+        cycleStart = nowMillis + jitter;
+        if (jitter > 0) {
+            if (radioOn) setRadio(false, nowMillis);
+            return jitter;
+        }
+        return onTimer(nowMillis);
+    }
+
+    public void stop(long nowMillis) {
+        if (radioOn) setRadio(false, nowMillis);
+        role = Role.IDLE;
+        payload = null;
+        listener = null;
+    }
+
+    public boolean isRadioOn() {
+        return radioOn;
+    }
+
+    /**
+     * เวลารวมที่วิทยุเปิดอยู่ ใช้ประเมินพลังงานที่ใช้
+     */
+    public long getRadioOnMillis(long nowMillis) {
+        return radioOnMillis + (radioOn ? nowMillis - radioOnSince : 0);
+    }
+
+    private void setRadio(boolean on, long nowMillis) {
+        if (on) {
+            boolean started =
+                    role == Role.ADVERTISE
+                            ? radio.startAdvertising(payload)
+                            : radio.startScan(radioListener);
+            if (!started) return;
+            radioOnSince = nowMillis;
+        } else {
+            if (role == Role.ADVERTISE) {
+                radio.stopAdvertising();
+            } else {
+                radio.stopScan();
+            }
+            radioOnMillis += nowMillis - radioOnSince;
+        }
+        radioOn = on;
+    }
+
+    private void handleBeacon(byte[] data, int rssi) {
+        Listener current = listener;
+        if (current == null) return;
+        BeaconPayload beacon = BeaconPayload.decode(data);
+        if (beacon == null) return;
+
+        // แจ้งเฉพาะสัญญาณใหม่ หรือสัญญาณที่ตำแหน่ง/ระดับเปลี่ยน
+        BeaconPayload previous = seen.put(beacon.reportId, beacon);
+        if (previous != null
+                && previous.latFixed == beacon.latFixed
+                && previous.lngFixed == beacon.lngFixed
+                && previous.severity == beacon.severity) {
+            return;
+        }
+        current.onBeacon(beacon, rssi);
+    }
+}
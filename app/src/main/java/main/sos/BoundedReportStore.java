@@ -0,0 +1,281 @@
+package main.sos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * คุมจำนวน/ขนาดของรายงานที่เครื่องนี้เก็บไว้ เมื่อเกินเพดานจะทิ้งรายงานตามลำดับ:
+ * ที่แก้ไขแล้ว (สถานะสุดท้าย) ก่อน, แล้วระดับต่ำ, ในระดับเดียวกันเก่าก่อน, อายุเท่ากันไกลก่อน
+ *
+ * รายงานวิกฤติที่ยังไม่แก้ไขและรายงานของเครื่องนี้เองถูก pin ไว้ ไม่ถูกทิ้ง
+ * (จึงอาจเกินเพดานได้ถ้ามีแต่รายงานที่ pin) ลำดับการทิ้งเก็บใน TreeSet
+ * เพิ่ม/ลบ/เปลี่ยนสถานะเป็น O(log n)
+ */
+public class BoundedReportStore {
+
+    public static class Config {
+        public final int maxReports;
+        public final long maxMemoryBytes;
+        public final long maxDiskBytes;
+
+        public Config(int maxReports, long maxMemoryBytes, long maxDiskBytes) {
+            if (maxReports <= 0 || maxMemoryBytes <= 0 || maxDiskBytes <= 0) {
+                throw new IllegalArgumentException("Invalid store config");
+            }
+            this.maxReports = maxReports;
+            this.maxMemoryBytes = maxMemoryBytes;
+            this.maxDiskBytes = maxDiskBytes;
+        }
+    }
+
+    public static final Config DEFAULT_CONFIG = new Config(5000, 8L * 1024 * 1024, 4L * 1024 * 1024);
+
+    private static final int FILE_VERSION = 1;
+    // อายุนับเป็นช่วงชั่วโมง รายงานในชั่วโมงเดียวกันเรียงตามระยะทางแทน
+    private static final long AGE_BUCKET_MS = 60 * 60 * 1000L;
+    private static final double RING_M = 5000;
+    // ค่าประมาณ overhead ของ object Report, Location และ String
+    private static final int REPORT_OVERHEAD_BYTES = 160;
+
+    private static final Comparator<Entry> EVICTION_ORDER =
+            (a, b) -> {
+                if (a.resolved != b.resolved) return a.resolved ? -1 : 1;
+                if (a.severity != b.severity) return Integer.compare(a.severity, b.severity);
+                if (a.ageBucket != b.ageBucket) return Long.compare(a.ageBucket, b.ageBucket);
+                if (a.ring != b.ring) return Integer.compare(b.ring, a.ring);
+                return Long.compare(a.sequence, b.sequence);
+            };
+
+    private static class Entry {
+        final MainActivity.Report report;
+        final long ageBucket;
+        final long sequence;
+        // ค่าที่ใช้เรียงใน TreeSet ต้องไม่เปลี่ยนขณะอยู่ใน set (ดู rank)
+        boolean resolved;
+        int severity;
+        int ring;
+        boolean pinned;
+        int bytes;
+
+        Entry(MainActivity.Report report, long ageBucket, long sequence) {
+            this.report = report;
+            this.ageBucket = ageBucket;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Config config;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> evictable = new TreeSet<>(EVICTION_ORDER);
+    private long memoryBytes;
+    private long nextSequence;
+    private int ownReportId;
+    private boolean hasOwnReport;
+    private boolean hasOrigin;
+    private double originLat;
+    private double originLng;
+
+    public BoundedReportStore(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * รายงานของเครื่องนี้ ไม่ถูกทิ้งเพราะงานส่งต่อรายงานของคนอื่น
+     */
+    public synchronized void setOwnReport(int reportId) {
+        hasOwnReport = true;
+        ownReportId = reportId;
+        Entry entry = entries.get(reportId);
+        if (entry != null) rank(entry);
+    }
+
+    /**
+     * ตำแหน่งอ้างอิงสำหรับลำดับ "ไกลก่อน" จัดลำดับใหม่เมื่อขยับเกินครึ่งวง (O(n log n))
+     */
+    public synchronized void setOrigin(double lat, double lng) {
+        if (hasOrigin && DistanceIndex.haversine(originLat, originLng, lat, lng) < RING_M / 2) {
+            return;
+        }
+        hasOrigin = true;
+        originLat = lat;
+        originLng = lng;
+        for (Entry entry : entries.values()) rank(entry);
+    }
+
+    /**
+     * เพิ่มรายงาน คืนรายงานที่ถูกทิ้งเพื่อให้เกินเพดานไม่ได้
+     * ถ้ารายงานใหม่มีลำดับต่ำสุดอาจเป็นตัวที่ถูกทิ้งเอง (อยู่ในรายการที่คืน)
+     */
+    public synchronized List<MainActivity.Report> put(MainActivity.Report report, long nowMillis) {
+        Entry entry = entries.get(report.id);
+        if (entry == null || entry.report != report) {
+            if (entry != null) discard(entry);
+            entry = new Entry(report, nowMillis / AGE_BUCKET_MS, nextSequence++);
+            entries.put(report.id, entry);
+        }
+        rank(entry);
+        return evictOverflow();
+    }
+
+    /**
+     * เรียกหลังสถานะ/ระดับ/ตำแหน่งของรายงานเปลี่ยน ไม่ทำอะไรถ้าไม่มีรายงานนี้
+     */
+    public synchronized void update(MainActivity.Report report) {
+        Entry entry = entries.get(report.id);
+        if (entry != null && entry.report == report) rank(entry);
+    }
+
+    public synchronized void remove(int reportId) {
+        Entry entry = entries.remove(reportId);
+        if (entry != null) discard(entry);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        evictable.clear();
+        memoryBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * เขียนรายงานลงไฟล์เรียงจากสำคัญที่สุด หยุดเมื่อถึงเพดาน disk
+     * เขียนไฟล์ชั่วคราวแล้ว rename เหมือน StatusLog
+     */
+    public void save(File file) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        synchronized (this) {
+            long budget = config.maxDiskBytes - 4;
+            List<Entry> order = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                if (entry.pinned) order.add(entry);
+            }
+            order.addAll(evictable.descendingSet());
+            for (Entry entry : order) {
+                byte[] codec = ReportCodec.encode(entry.report);
+                byte[] envelope = entry.report.envelope;
+                if (codec.length > 0xffff) continue;
+                int size = 4 + codec.length + (envelope != null ? envelope.length : 0);
+                if (size > budget) break;
+                budget -= size;
+                records.add(codec);
+                records.add(envelope);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_VERSION);
+            for (byte[] record : records) {
+                out.writeShort(record != null ? record.length : 0);
+                if (record != null) out.write(record);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * อ่านรายงานที่ save ไว้ ข้อมูลท้ายไฟล์ที่เขียนไม่ครบจะถูกตัดทิ้ง
+     */
+    public static List<MainActivity.Report> load(File file) throws IOException {
+        List<MainActivity.Report> reports = new ArrayList<>();
+        if (!file.exists()) return reports;
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) return reports;
+            while (true) {
+                MainActivity.Report report;
+                try {
+                    byte[] codec = new byte[in.readUnsignedShort()];
+                    in.readFully(codec);
+                    byte[] envelope = new byte[in.readUnsignedShort()];
+                    in.readFully(envelope);
+                    report = ReportCodec.decode(codec);
+                    if (envelope.length > 0) report.envelope = envelope;
+                } catch (EOFException e) {
+                    break;
+                }
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * คำนวณค่าที่ใช้เรียงใหม่ ต้องเอาออกจาก TreeSet ก่อนแก้แล้วใส่กลับ
+     */
+    private void rank(Entry entry) {
+        evictable.remove(entry);
+        memoryBytes -= entry.bytes;
+
+        MainActivity.Report report = entry.report;
+        entry.resolved = report.status.isFinal();
+        entry.severity = report.level.code;
+        entry.ring =
+                hasOrigin
+                        ? (int)
+                                (DistanceIndex.haversine(
+                                                originLat,
+                                                originLng,
+                                                report.location.lat,
+                                                report.location.lng)
+                                        / RING_M)
+                        : 0;
+        entry.pinned =
+                (hasOwnReport && report.id == ownReportId)
+                        || (!entry.resolved && report.level == MainActivity.Severity.CRITICAL);
+        entry.bytes = estimateBytes(report);
+
+        memoryBytes += entry.bytes;
+        if (!entry.pinned) evictable.add(entry);
+    }
+
+    private void discard(Entry entry) {
+        evictable.remove(entry);
+        memoryBytes -= entry.bytes;
+    }
+
+    private List<MainActivity.Report> evictOverflow() {
+        List<MainActivity.Report> evicted = new ArrayList<>();
+        while ((entries.size() > config.maxReports || memoryBytes > config.maxMemoryBytes)
+                && !evictable.isEmpty()) {
+            Entry entry = evictable.pollFirst();
+            entries.remove(entry.report.id);
+            memoryBytes -= entry.bytes;
+            evicted.add(entry.report);
+        }
+        return evicted;
+    }
+
+    private static int estimateBytes(MainActivity.Report report) {
+        int chars =
+                report.name.length()
+                        + report.contact.length()
+                        + report.details.length();
+        return REPORT_OVERHEAD_BYTES
+                + 2 * chars
+                + (report.envelope != null ? report.envelope.length : 0);
+    }
+}
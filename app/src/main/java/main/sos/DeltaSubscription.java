@@ -0,0 +1,315 @@
+package main.sos;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * รับรายงานแบบเรียลไทม์จากเซิร์ฟเวอร์ประสานงานผ่าน server-sent events (text/event-stream)
+ *
+ * ทุก event มีเลขลำดับ (id) เมื่อหลุดจะต่อใหม่พร้อม Last-Event-ID ให้เซิร์ฟเวอร์ส่งเฉพาะส่วนที่ขาด
+ * ถ้าเซิร์ฟเวอร์ไม่มีประวัติถึงเลขนั้นแล้ว (หรือเริ่มจาก 0) จะส่ง event "snapshot" ตามด้วยสถานะทั้งหมด
+ * รวมรายงานซ้ำได้โดยไม่เสียหาย (IngestionPipeline เทียบ version) จึงไม่ต้องล้างของเดิม
+ *
+ * event:
+ *   reports  data = base64 ของ batch แบบเดียวกับ ReportSync (ผ่าน verifier และ IngressGuard)
+ *            เซิร์ฟเวอร์ยืนยันตัวตนด้วย HTTPS จึงรับรายงานที่ไม่มีซองได้ (เช่นรับแจ้งทางโทรศัพท์)
+ *   status   data = base64 ของ StatusEvent batch (ต้องเซ็น ผ่าน verifier และ IngressGuard)
+ *   snapshot data = เลขลำดับที่ snapshot ตรงกับ
+ * เลขลำดับขยับเฉพาะ event ที่มี id (ส่วนกลางของ snapshot ไม่มี id หลุดกลางทางจึงได้ snapshot ใหม่)
+ * บรรทัด ":" คือ heartbeat ถ้าเงียบเกิน READ_TIMEOUT ถือว่าหลุด
+ */
+public class DeltaSubscription {
+
+    private static final String TAG = "DeltaSubscription";
+    private static final int CONNECT_TIMEOUT = 10000;
+    // เซิร์ฟเวอร์ส่ง heartbeat ทุก 15 วินาที
+    private static final int READ_TIMEOUT = 45000;
+    private static final long DEFAULT_RETRY = 1000;
+    private static final long MAX_RETRY = 30000;
+    // data ที่ยาวที่สุดที่ถูกต้องคือ base64 ของ batch ที่บีบอัดแล้วขนาด MAX_COMPRESSED
+    // (StatusEvent batch เล็กกว่านั้นมาก) เกินนี้ถือว่าเซิร์ฟเวอร์ผิดปกติ ตัดการเชื่อมต่อ
+    static final int MAX_EVENT_DATA = (BatchCompressor.MAX_COMPRESSED + 2) / 3 * 4;
+    // ชื่อ field และ ": " นำหน้า data
+    private static final int MAX_LINE = MAX_EVENT_DATA + 16;
+
+    static final String EVENT_REPORTS = "reports";
+    static final String EVENT_STATUS = "status";
+    static final String EVENT_SNAPSHOT = "snapshot";
+
+    /**
+     * ทุกเมธอดถูกเรียกบน thread ของ subscription เลขลำดับถูกบันทึกหลังเมธอดคืนค่า
+     */
+    public interface Listener {
+        void onReports(List<MainActivity.Report> reports);
+
+        void onStatus(List<StatusEvent> events);
+
+        /**
+         * เซิร์ฟเวอร์ต่อจากเลขเดิมไม่ได้ รายการที่ตามมาคือสถานะทั้งหมด ณ sequence
+         */
+        void onSnapshot(long sequence);
+
+        void onConnectionChanged(boolean connected);
+    }
+
+    private final URL endpoint;
+    private final ReportEnvelope.Verifier verifier;
+    private final IngressGuard guard;
+    private final Listener listener;
+    private volatile long lastSequence;
+    private volatile boolean running;
+    private volatile HttpURLConnection connection;
+    private Thread thread;
+    // ค่า "retry:" ล่าสุดจากเซิร์ฟเวอร์ retryDelay กลับเป็นค่านี้เมื่อได้ event
+    private long baseRetry = DEFAULT_RETRY;
+    private long retryDelay = DEFAULT_RETRY;
+    private long reconnects;
+    private long events;
+
+    /**
+     * verifier เป็น null ได้ รายงานที่มาเป็นซองจะถูกข้ามไป
+     */
+    public DeltaSubscription(
+            URL endpoint,
+            ReportEnvelope.Verifier verifier,
+            IngressGuard guard,
+            Listener listener) {
+        this.endpoint = endpoint;
+        this.verifier = verifier;
+        this.guard = guard;
+        this.listener = listener;
+    }
+
+    /**
+     * เริ่มรับต่อจาก sequence (0 = ยังไม่เคยรับ ได้ snapshot)
+     */
+    public synchronized void start(long sequence) {
+        if (running) return;
+        lastSequence = sequence;
+        running = true;
+        thread = new Thread(this::run, TAG);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        HttpURLConnection current = connection;
+        if (current != null) current.disconnect();
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * เลขลำดับล่าสุดที่ส่งให้ listener ครบแล้ว
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                stream();
+            } catch (IOException e) {
+                if (running) Log.w(TAG, "Stream lost: " + e.getMessage());
+            }
+            if (!running) break;
+            listener.onConnectionChanged(false);
+            synchronized (this) {
+                reconnects++;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            // ต่อไม่ติดซ้ำๆ ให้ห่างขึ้นเรื่อยๆ กลับเป็นค่าเดิมเมื่อได้ event
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY);
+        }
+    }
+
+    private void stream() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) endpoint.openConnection();
+        connection = conn;
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("Accept", "text/event-stream");
+            conn.setRequestProperty("Cache-Control", "no-cache");
+            long resume = lastSequence;
+            if (resume > 0) conn.setRequestProperty("Last-Event-ID", Long.toString(resume));
+            if (!running) return;
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code);
+            }
+            listener.onConnectionChanged(true);
+            try (BufferedReader reader =
+                    new BufferedReader(
+                            new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8),
+                            16 * 1024)) {
+                readEvents(reader);
+            }
+        } finally {
+            connection = null;
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * แยก event ตามรูปแบบ text/event-stream: field ต่อบรรทัด จบ event ด้วยบรรทัดว่าง
+     */
+    private void readEvents(BufferedReader reader) throws IOException {
+        String event = null;
+        String id = null;
+        StringBuilder data = new StringBuilder();
+        StringBuilder buffer = new StringBuilder();
+        while (running && readLine(reader, buffer)) {
+            String line = buffer.toString();
+            if (line.isEmpty()) {
+                if (data.length() > 0) dispatch(event, data.toString(), id);
+                event = null;
+                id = null;
+                data.setLength(0);
+                continue;
+            }
+            if (line.charAt(0) == ':') continue;
+            int colon = line.indexOf(':');
+            String field = colon < 0 ? line : line.substring(0, colon);
+            int start = colon < 0 ? line.length() : colon + 1;
+            if (start < line.length() && line.charAt(start) == ' ') start++;
+            String value = line.substring(start);
+            switch (field) {
+                case "event":
+                    event = value;
+                    break;
+                case "data":
+                    if (data.length() + 1 + value.length() > MAX_EVENT_DATA) {
+                        throw new IOException("Event data too large");
+                    }
+                    if (data.length() > 0) data.append('\n');
+                    data.append(value);
+                    break;
+                case "id":
+                    id = value;
+                    break;
+                case "retry":
+                    try {
+                        baseRetry = Math.max(100, Long.parseLong(value));
+                        retryDelay = baseRetry;
+                    } catch (NumberFormatException ignored) {
+                        // ไม่ใช่ตัวเลข ข้ามตามข้อกำหนด
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (running) throw new IOException("Stream closed by server");
+    }
+
+    /**
+     * อ่านหนึ่งบรรทัด (จบด้วย \n, \r\n หรือ \r) ลง line คืน false เมื่อสตรีมจบ
+     * ต่างจาก BufferedReader.readLine ตรงที่ไม่ยอมให้บรรทัดเดียวยาวเกิน MAX_LINE
+     */
+    private static boolean readLine(BufferedReader reader, StringBuilder line)
+            throws IOException {
+        line.setLength(0);
+        int c = reader.read();
+        if (c < 0) return false;
+        while (c >= 0 && c != '\n' && c != '\r') {
+            if (line.length() >= MAX_LINE) throw new IOException("Event line too long");
+            line.append((char) c);
+            c = reader.read();
+        }
+        if (c == '\r') {
+            reader.mark(1);
+            if (reader.read() != '\n') reader.reset();
+        }
+        return true;
+    }
+
+    private void dispatch(String event, String data, String id) throws IOException {
+        long sequence = -1;
+        if (id != null) {
+            try {
+                sequence = Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid event id: " + id);
+            }
+        }
+        if (EVENT_REPORTS.equals(event)) {
+            List<StatusEvent> statuses = new ArrayList<>();
+            List<MainActivity.Report> reports =
+                    ReportSync.decodeBatch(
+                            Base64Codec.decode(data),
+                            verifier,
+                            guard,
+                            endpoint.getHost(),
+                            true,
+                            statuses);
+            if (!reports.isEmpty()) listener.onReports(reports);
+            if (!statuses.isEmpty()) listener.onStatus(statuses);
+        } else if (EVENT_STATUS.equals(event)) {
+            byte[] bytes = Base64Codec.decode(data);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                List<StatusEvent> received = ReportSync.readStatusBatch(in);
+                List<StatusEvent> statuses =
+                        ReportSync.verifyStatus(received, verifier, guard, endpoint.getHost());
+                if (!statuses.isEmpty()) listener.onStatus(statuses);
+            }
+        } else if (EVENT_SNAPSHOT.equals(event)) {
+            try {
+                listener.onSnapshot(Long.parseLong(data.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid snapshot sequence: " + data);
+            }
+        } else {
+            // event ที่ไม่รู้จักจากเซิร์ฟเวอร์รุ่นใหม่กว่า ข้ามแต่ยังนับเลขลำดับ
+            Log.w(TAG, "Unknown event: " + event);
+        }
+        if (sequence >= 0) lastSequence = sequence;
+        retryDelay = baseRetry;
+        synchronized (this) {
+            events++;
+        }
+    }
+
+    /**
+     * data ของ event "status" (ใช้ฝั่งเซิร์ฟเวอร์ เช่น LocalDeltaServer ใน src/test)
+     */
+    static String encodeStatus(List<StatusEvent> events) throws IOException {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(4 + events.size() * StatusEvent.BASE_SIZE);
+        ReportSync.writeStatusBatch(new DataOutputStream(bytes), events);
+        return Base64Codec.encode(bytes.toByteArray());
+    }
+
+    /**
+     * data ของ event "reports" ไม่เกิน ReportSync.MAX_BATCH รายงาน
+     */
+    static String encodeReports(List<MainActivity.Report> reports) throws IOException {
+        return Base64Codec.encode(ReportSync.encodeBatch(reports));
+    }
+}
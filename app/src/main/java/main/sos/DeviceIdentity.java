@@ -0,0 +1,124 @@
+package main.sos;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+
+/**
+ * กุญแจประจำเครื่อง (ECDSA P-256) สำหรับเซ็นรายงาน
+ * บน Android เก็บใน AndroidKeyStore กุญแจส่วนตัวไม่ออกจาก keystore
+ */
+public class DeviceIdentity {
+
+    public static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    // public key แบบ uncompressed point: 0x04 || X || Y
+    public static final int PUBLIC_KEY_SIZE = 65;
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String ALIAS = "msos_device_identity";
+    private static final int COORDINATE_SIZE = 32;
+
+    private final PrivateKey privateKey;
+    private final ECPublicKey publicKey;
+    private final byte[] encodedPublicKey;
+
+    public DeviceIdentity(KeyPair keyPair) {
+        this.privateKey = keyPair.getPrivate();
+        this.publicKey = (ECPublicKey) keyPair.getPublic();
+        this.encodedPublicKey = encodePoint(publicKey);
+    }
+
+    /**
+     * โหลดกุญแจจาก AndroidKeyStore หรือสร้างใหม่ถ้ายังไม่มี
+     */
+    public static DeviceIdentity loadOrCreate() throws GeneralSecurityException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+            keyStore.load(null);
+            KeyStore.Entry entry = keyStore.getEntry(ALIAS, null);
+            if (entry instanceof KeyStore.PrivateKeyEntry) {
+                KeyStore.PrivateKeyEntry keyEntry = (KeyStore.PrivateKeyEntry) entry;
+                return new DeviceIdentity(
+                        new KeyPair(
+                                keyEntry.getCertificate().getPublicKey(), keyEntry.getPrivateKey()));
+            }
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Cannot open keystore", e);
+        }
+
+        KeyPairGenerator generator =
+                KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC, KEYSTORE);
+        generator.initialize(
+                new KeyGenParameterSpec.Builder(ALIAS, KeyProperties.PURPOSE_SIGN)
+                        .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
+                        .setDigests(KeyProperties.DIGEST_SHA256)
+                        .build());
+        return new DeviceIdentity(generator.generateKeyPair());
+    }
+
+    /**
+     * สร้างกุญแจในหน่วยความจำ (ใช้กับ simulator หรือเครื่องที่ไม่มี keystore)
+     */
+    public static DeviceIdentity generate() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return new DeviceIdentity(generator.generateKeyPair());
+    }
+
+    public byte[] sign(byte[] data, int offset, int length) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(privateKey);
+        signature.update(data, offset, length);
+        return signature.sign();
+    }
+
+    public byte[] getEncodedPublicKey() {
+        return encodedPublicKey.clone();
+    }
+
+    public ECParameterSpec getParams() {
+        return publicKey.getParams();
+    }
+
+    public static byte[] encodePoint(ECPublicKey key) {
+        byte[] encoded = new byte[PUBLIC_KEY_SIZE];
+        encoded[0] = 0x04;
+        writeCoordinate(key.getW().getAffineX(), encoded, 1);
+        writeCoordinate(key.getW().getAffineY(), encoded, 1 + COORDINATE_SIZE);
+        return encoded;
+    }
+
+    public static PublicKey decodePoint(byte[] data, int offset, ECParameterSpec params)
+            throws GeneralSecurityException {
+        if (data[offset] != 0x04) {
+            throw new GeneralSecurityException("Unsupported point encoding");
+        }
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(data, offset + 1, offset + 33));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(data, offset + 33, offset + 65));
+        return KeyFactory.getInstance("EC")
+                .generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params));
+    }
+
+    private static void writeCoordinate(BigInteger value, byte[] out, int offset) {
+        byte[] bytes = value.toByteArray();
+        // BigInteger อาจมี 0x00 นำหน้าหรือสั้นกว่า 32 ไบต์
+        int copy = Math.min(bytes.length, COORDINATE_SIZE);
+        System.arraycopy(bytes, bytes.length - copy, out, offset + COORDINATE_SIZE - copy, copy);
+    }
+}
@@ -0,0 +1,226 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ระยะทางและทิศจากตำแหน่งหน่วยกู้ภัยไปยังทุกรายงาน เก็บเป็น array ของ primitive
+ * คำนวณใหม่ทั้งหมดเฉพาะเมื่อผู้ใช้เคลื่อนที่เกิน threshold รายงานใหม่คำนวณทีละรายการ
+ */
+public class DistanceIndex {
+
+    public static final double EARTH_RADIUS_M = 6371008.8;
+
+    // ระยะเกินนี้ใช้ haversine แทน equirectangular
+    private static final double EQUIRECTANGULAR_LIMIT_M = 50000;
+    private static final double DEFAULT_RECOMPUTE_THRESHOLD_M = 25;
+    private static final String[] COMPASS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private final double recomputeThresholdM;
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+
+    private int size;
+    private int[] ids = new int[16];
+    private double[] latRad = new double[16];
+    private double[] lngRad = new double[16];
+    private double[] cosLat = new double[16];
+    private float[] distanceM = new float[16];
+    private float[] bearingDeg = new float[16];
+
+    private boolean hasOrigin;
+    private double originLatRad;
+    private double originLngRad;
+    private double originCos;
+
+    private int[] sortedSlots;
+
+    public DistanceIndex() {
+        this(DEFAULT_RECOMPUTE_THRESHOLD_M);
+    }
+
+    public DistanceIndex(double recomputeThresholdM) {
+        this.recomputeThresholdM = recomputeThresholdM;
+    }
+
+    /**
+     * ตั้งตำแหน่งปัจจุบันของหน่วยกู้ภัย คืน true ถ้ามีการคำนวณระยะทั้งหมดใหม่
+     */
+    public boolean setOrigin(double lat, double lng) {
+        double newLat = Math.toRadians(lat);
+        double newLng = Math.toRadians(lng);
+        if (hasOrigin
+                && distance(originLatRad, originLngRad, originCos, newLat, newLng, Math.cos(newLat))
+                        < recomputeThresholdM) {
+            return false;
+        }
+        hasOrigin = true;
+        originLatRad = newLat;
+        originLngRad = newLng;
+        originCos = Math.cos(newLat);
+        recomputeAll();
+        return true;
+    }
+
+    public boolean hasOrigin() {
+        return hasOrigin;
+    }
+
+    public void put(MainActivity.Report report) {
+        Integer existing = slotById.get(report.id);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            ensureCapacity(size + 1);
+            slot = size++;
+            slotById.put(report.id, slot);
+        }
+        ids[slot] = report.id;
+        latRad[slot] = Math.toRadians(report.location.lat);
+        lngRad[slot] = Math.toRadians(report.location.lng);
+        cosLat[slot] = Math.cos(latRad[slot]);
+        if (hasOrigin) compute(slot);
+        sortedSlots = null;
+    }
+
+    public void remove(int reportId) {
+        Integer slot = slotById.remove(reportId);
+        if (slot == null) return;
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            latRad[slot] = latRad[last];
+            lngRad[slot] = lngRad[last];
+            cosLat[slot] = cosLat[last];
+            distanceM[slot] = distanceM[last];
+            bearingDeg[slot] = bearingDeg[last];
+            slotById.put(ids[slot], slot);
+        }
+        sortedSlots = null;
+    }
+
+    public void clear() {
+        slotById.clear();
+        size = 0;
+        sortedSlots = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * ระยะทาง (เมตร) หรือ -1 ถ้ายังไม่มีตำแหน่งหน่วยกู้ภัยหรือไม่รู้จักรายงานนี้
+     */
+    public float getDistance(int reportId) {
+        Integer slot = slotById.get(reportId);
+        return slot == null || !hasOrigin ? -1 : distanceM[slot];
+    }
+
+    public float getBearing(int reportId) {
+        Integer slot = slotById.get(reportId);
+        return slot == null || !hasOrigin ? -1 : bearingDeg[slot];
+    }
+
+    /**
+     * id ของรายงานเรียงจากใกล้ไปไกล ผลถูก cache ไว้จนกว่าตำแหน่งหรือรายการจะเปลี่ยน
+     */
+    public int[] getIdsByDistance() {
+        if (sortedSlots == null) {
+            // เรียงด้วย long key: บิตบนคือระยะ (float ไม่ติดลบเรียงตามบิตได้) บิตล่างคือ slot
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) Float.floatToIntBits(distanceM[i]) << 32) | i;
+            }
+            Arrays.sort(keys);
+            sortedSlots = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedSlots[i] = (int) keys[i];
+            }
+        }
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = ids[sortedSlots[i]];
+        }
+        return result;
+    }
+
+    /**
+     * ข้อความเช่น "1.2 กม. · NE"
+     */
+    public String getLabel(int reportId) {
+        float distance = getDistance(reportId);
+        if (distance < 0) return null;
+        return formatDistance(distance) + " · " + compass(getBearing(reportId));
+    }
+
+    public static String formatDistance(double meters) {
+        if (meters < 1000) {
+            return String.format(Locale.US, "%d ม.", Math.round(meters));
+        }
+        return String.format(Locale.US, "%.1f กม.", meters / 1000);
+    }
+
+    public static String compass(float bearing) {
+        return COMPASS[(int) Math.floor(((bearing + 22.5) % 360) / 45) % COMPASS.length];
+    }
+
+    /**
+     * ระยะทาง haversine (เมตร) ระหว่างสองพิกัดองศา
+     */
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double p1 = Math.toRadians(lat1);
+        double p2 = Math.toRadians(lat2);
+        return haversineRad(p1, Math.toRadians(lng1), p2, Math.toRadians(lng2));
+    }
+
+    private void recomputeAll() {
+        // loop แบบ structure-of-arrays ไม่มี allocation ต่อรายงาน
+        for (int i = 0; i < size; i++) {
+            compute(i);
+        }
+        sortedSlots = null;
+    }
+
+    private void compute(int slot) {
+        double dLat = latRad[slot] - originLatRad;
+        double dLng = lngRad[slot] - originLngRad;
+        double meanCos = (originCos + cosLat[slot]) * 0.5;
+        double x = dLng * meanCos;
+        double d = Math.sqrt(x * x + dLat * dLat) * EARTH_RADIUS_M;
+        if (d > EQUIRECTANGULAR_LIMIT_M) {
+            d = haversineRad(originLatRad, originLngRad, latRad[slot], lngRad[slot]);
+        }
+        distanceM[slot] = (float) d;
+
+        double bearing = Math.toDegrees(Math.atan2(x, dLat));
+        bearingDeg[slot] = (float) (bearing < 0 ? bearing + 360 : bearing);
+    }
+
+    private static double distance(
+            double lat1, double lng1, double cos1, double lat2, double lng2, double cos2) {
+        double x = (lng2 - lng1) * (cos1 + cos2) * 0.5;
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_M;
+    }
+
+    private static double haversineRad(double lat1, double lng1, double lat2, double lng2) {
+        double sinLat = Math.sin((lat2 - lat1) * 0.5);
+        double sinLng = Math.sin((lng2 - lng1) * 0.5);
+        double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) return;
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        latRad = Arrays.copyOf(latRad, newCapacity);
+        lngRad = Arrays.copyOf(lngRad, newCapacity);
+        cosLat = Arrays.copyOf(cosLat, newCapacity);
+        distanceM = Arrays.copyOf(distanceM, newCapacity);
+        bearingDeg = Arrays.copyOf(bearingDeg, newCapacity);
+    }
+}
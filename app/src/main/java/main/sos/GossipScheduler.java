@@ -0,0 +1,278 @@
+package main.sos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * ตัวตัดสินใจว่าจะซิงก์กับเพื่อนบ้านเครื่องไหนและบ่อยแค่ไหน (anti-entropy gossip)
+ *
+ * - เพื่อนบ้านที่รายงานวิกฤติยังไม่ตรงกับเรา ส่งพร้อมกันได้ถึง fanout (ประมาณ log2(n + 1))
+ * - นอกนั้นคุยรอบละเครื่องเดียว เลือกจากเครื่องที่ digest ล่าสุดยังไม่ตรงกับเรา
+ * - แลก Digest ก่อนเสมอ ส่ง payload เฉพาะเมื่อ digest ไม่ตรงกัน
+ * - รอบถัดไปห่างขึ้นเรื่อยๆ เมื่อทุกอย่างตรงกัน และกลับมาถี่เมื่อมีข้อมูลใหม่
+ * - รายงานวิกฤติใหม่ทำให้เริ่มรอบภายในสุ่ม 0..interval/4 (ไม่ให้เพื่อนบ้านทุกเครื่องเริ่มพร้อมกัน)
+ */
+public class GossipScheduler {
+
+    public static class Config {
+        public final long minIntervalMs;
+        public final long maxIntervalMs;
+        public final int maxReportsPerExchange;
+
+        public Config(long minIntervalMs, long maxIntervalMs, int maxReportsPerExchange) {
+            if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs || maxReportsPerExchange <= 0) {
+                throw new IllegalArgumentException("Invalid gossip config");
+            }
+            this.minIntervalMs = minIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+            this.maxReportsPerExchange = maxReportsPerExchange;
+        }
+    }
+
+    public static final Config DEFAULT_CONFIG = new Config(2000, 120000, 64);
+
+    /**
+     * สรุปชุดรายงานแบบสั้น (XOR ของ hash id และ contentVersion ของซอง) อัปเดตทีละรายงานได้
+     * รายงานที่ผู้แจ้งแก้แล้วจึงทำให้ digest ต่างจากเครื่องที่ยังมีฉบับเก่า
+     */
+    public static class Digest {
+        public int count;
+        public long hash;
+        public int criticalCount;
+        public long criticalHash;
+
+        public Digest() {}
+
+        public Digest(int count, long hash, int criticalCount, long criticalHash) {
+            this.count = count;
+            this.hash = hash;
+            this.criticalCount = criticalCount;
+            this.criticalHash = criticalHash;
+        }
+
+        public void add(MainActivity.Report report) {
+            long h = hashOf(report);
+            count++;
+            hash ^= h;
+            if (report.level == MainActivity.Severity.CRITICAL) {
+                criticalCount++;
+                criticalHash ^= h;
+            }
+        }
+
+        public void remove(MainActivity.Report report) {
+            long h = hashOf(report);
+            count--;
+            hash ^= h;
+            if (report.level == MainActivity.Severity.CRITICAL) {
+                criticalCount--;
+                criticalHash ^= h;
+            }
+        }
+
+        public boolean matches(Digest other) {
+            return other != null && count == other.count && hash == other.hash;
+        }
+
+        public boolean criticalMatches(Digest other) {
+            return other != null
+                    && criticalCount == other.criticalCount
+                    && criticalHash == other.criticalHash;
+        }
+
+        public Digest copy() {
+            return new Digest(count, hash, criticalCount, criticalHash);
+        }
+
+        private static long hashOf(MainActivity.Report report) {
+            long version = ReportEnvelope.peekContentVersion(report.envelope);
+            return version == 0 ? hashId(report.id) : mix(hashId(report.id) + version);
+        }
+
+        public static long hashId(int id) {
+            return mix(id);
+        }
+
+        private static long mix(long value) {
+            long z = value * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    private static class Neighbor {
+        Digest lastDigest;
+        long lastExchangeAt = Long.MIN_VALUE;
+    }
+
+    /**
+     * ลำดับการส่ง: วิกฤติก่อน แล้วเรียงตามระดับความรุนแรง
+     */
+    public static final Comparator<MainActivity.Report> PRIORITY =
+            new Comparator<MainActivity.Report>() {
+                @Override
+                public int compare(MainActivity.Report a, MainActivity.Report b) {
+                    int bySeverity = Integer.compare(b.level.code, a.level.code);
+                    return bySeverity != 0 ? bySeverity : Integer.compare(a.id, b.id);
+                }
+            };
+
+    private final Config config;
+    private final Random random;
+    private final Map<String, Neighbor> neighbors = new HashMap<>();
+    private final Digest localDigest;
+
+    private int fanoutLimit = Integer.MAX_VALUE;
+    private long interval;
+    private long nextRoundAt;
+
+    public GossipScheduler(Config config, Digest localDigest, Random random, long nowMillis) {
+        this.config = config;
+        this.localDigest = localDigest;
+        this.random = random;
+        this.interval = config.minIntervalMs;
+        scheduleNext(nowMillis);
+    }
+
+    public void onNeighborSeen(String peer, long nowMillis) {
+        if (!neighbors.containsKey(peer)) {
+            neighbors.put(peer, new Neighbor());
+            // เพื่อนบ้านใหม่อาจมีข้อมูลที่เราไม่มี
+            resetInterval(nowMillis);
+        }
+    }
+
+    public void onNeighborLost(String peer) {
+        neighbors.remove(peer);
+    }
+
+    /**
+     * เรียกเมื่อได้รับ digest จากเพื่อนบ้าน คืน true ถ้าต้องแลก payload
+     */
+    public boolean onDigestReceived(String peer, Digest digest, long nowMillis) {
+        Neighbor neighbor = neighbors.get(peer);
+        if (neighbor == null) {
+            neighbor = new Neighbor();
+            neighbors.put(peer, neighbor);
+        }
+        neighbor.lastDigest = digest.copy();
+        neighbor.lastExchangeAt = nowMillis;
+        boolean differs = !localDigest.matches(digest);
+        if (differs) resetInterval(nowMillis);
+        return differs;
+    }
+
+    /**
+     * เรียกเมื่อได้รายงานใหม่ รายงานวิกฤติทำให้เริ่มรอบใหม่เกือบทันที
+     */
+    public void onNewReports(boolean critical, long nowMillis) {
+        interval = config.minIntervalMs;
+        long delay = critical ? (long) (random.nextDouble() * interval / 4) : interval;
+        nextRoundAt = Math.min(nextRoundAt, nowMillis + delay);
+    }
+
+    /**
+     * จำกัด fanout สูงสุดจากภายนอก (เช่น จาก governor ตามแบตเตอรี่)
+     */
+    public void setFanoutLimit(int limit) {
+        this.fanoutLimit = Math.max(1, limit);
+    }
+
+    public int fanout() {
+        int n = neighbors.size();
+        if (n == 0) return 0;
+        int adaptive = 32 - Integer.numberOfLeadingZeros(n); // ceil(log2(n + 1))
+        return Math.min(n, Math.min(adaptive, fanoutLimit));
+    }
+
+    public long getNextRoundAt() {
+        return nextRoundAt;
+    }
+
+    /**
+     * เลือกเพื่อนบ้านสำหรับรอบนี้ แล้วตั้งเวลารอบถัดไป
+     * เครื่องที่รายงานวิกฤติไม่ตรงกับเราได้ไม่เกิน fanout ถ้าไม่มี เลือกเครื่องที่ digest ไม่ตรงหนึ่งเครื่อง
+     * ถ้าทุกเครื่องตรงกันแล้ว ตรวจซ้ำเครื่องเดียวที่ไม่ได้คุยกันนานที่สุด (เผื่อข้อความหาย) แล้วเว้นห่างขึ้น
+     */
+    public List<String> selectPeers(long nowMillis) {
+        int fanout = fanout();
+        if (fanout == 0) {
+            backOff(nowMillis);
+            return Collections.emptyList();
+        }
+
+        List<String> critical = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        String oldest = null;
+        long oldestAt = Long.MAX_VALUE;
+        List<String> names = new ArrayList<>(neighbors.keySet());
+        Collections.sort(names);
+        Collections.shuffle(names, random);
+        for (String peer : names) {
+            Neighbor neighbor = neighbors.get(peer);
+            if (!localDigest.criticalMatches(neighbor.lastDigest)) {
+                critical.add(peer);
+            } else if (!localDigest.matches(neighbor.lastDigest)) {
+                stale.add(peer);
+            }
+            if (neighbor.lastExchangeAt < oldestAt) {
+                oldestAt = neighbor.lastExchangeAt;
+                oldest = peer;
+            }
+        }
+
+        List<String> selected = new ArrayList<>(fanout);
+        for (int i = 0; i < critical.size() && selected.size() < fanout; i++) {
+            selected.add(critical.get(i));
+        }
+        if (selected.isEmpty() && !stale.isEmpty()) {
+            selected.add(stale.get(0));
+        }
+        if (selected.isEmpty()) {
+            selected.add(oldest);
+            backOff(nowMillis);
+        } else {
+            scheduleNext(nowMillis);
+        }
+        for (String peer : selected) {
+            neighbors.get(peer).lastExchangeAt = nowMillis;
+        }
+        return selected;
+    }
+
+    /**
+     * เลือกรายงานที่จะส่งในการแลกหนึ่งครั้ง ตามลำดับ PRIORITY และไม่เกิน maxReportsPerExchange
+     */
+    public List<MainActivity.Report> prioritize(Collection<MainActivity.Report> missing) {
+        List<MainActivity.Report> ordered = new ArrayList<>(missing);
+        Collections.sort(ordered, PRIORITY);
+        return ordered.size() > config.maxReportsPerExchange
+                ? new ArrayList<>(ordered.subList(0, config.maxReportsPerExchange))
+                : ordered;
+    }
+
+    private void resetInterval(long nowMillis) {
+        interval = config.minIntervalMs;
+        nextRoundAt = Math.min(nextRoundAt, nowMillis + interval);
+    }
+
+    private void backOff(long nowMillis) {
+        interval = Math.min(interval * 2, config.maxIntervalMs);
+        scheduleNext(nowMillis);
+    }
+
+    /**
+     * สุ่มเวลาในครึ่งหลังของช่วง เพื่อไม่ให้ทุกเครื่องเริ่มรอบพร้อมกัน
+     */
+    private void scheduleNext(long nowMillis) {
+        long half = interval / 2;
+        nextRoundAt = nowMillis + half + (long) (random.nextDouble() * (interval - half));
+    }
+}
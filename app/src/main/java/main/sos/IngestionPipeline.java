@@ -0,0 +1,189 @@
+package main.sos;
+
+import android.util.Log;
+import android.view.Choreographer;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ทางเข้าเดียวของรายงาน/สถานะ/beacon จากทุกช่องทาง (BLE, WiFi Direct, ออนไลน์) สู่รายการบน UI
+ *
+ * ผู้ส่งอยู่ thread ไหนก็ได้ ใส่ลงคิว lock-free (ConcurrentLinkedQueue) แล้วกลับทันที
+ * main thread ดึงจากคิวครั้งละไม่เกิน frameBudgetNanos ต่อเฟรม (Choreographer)
+ * ส่งให้ Sink รวมเข้ารายการ แล้วเรียก publish ครั้งเดียวต่อเฟรมถ้ามีการเปลี่ยนแปลง
+ * ข้อมูลที่ถอดรหัส/ตรวจลายเซ็นต้องทำเสร็จก่อนเข้าคิว (ReportSync ทำบน thread ของ socket)
+ *
+ * คิวจำกัดที่ MAX_QUEUED รายการ ถ้าเต็ม offerAll/offerStatus รอให้ main thread ดึงออก
+ * (thread ของ socket ช้าลงตาม TCP ไม่ใช่หน่วยความจำโตไม่จำกัด) ไม่เกิน OFFER_TIMEOUT_MS แล้วทิ้ง
+ * beacon ไม่รอ ทิ้งทันทีเมื่อเต็มเพราะเครื่องต้นทางประกาศซ้ำเรื่อยๆ
+ */
+public final class IngestionPipeline {
+
+    /**
+     * ทุกเมธอดถูกเรียกบน main thread
+     */
+    public interface Sink {
+        void onReport(MainActivity.Report report);
+
+        void onStatusEvent(StatusEvent event);
+
+        void onBeacon(BeaconPayload payload);
+
+        /**
+         * ส่ง snapshot ของรายการให้ UI เรียกไม่เกินหนึ่งครั้งต่อเฟรม
+         */
+        void publish();
+    }
+
+    // เหลือเวลาส่วนใหญ่ของเฟรม 16 ms ไว้ให้ layout และวาด
+    static final long FRAME_BUDGET_NANOS = 4_000_000;
+
+    // มากกว่า ReportSync.MAX_BATCH หลายเท่า ให้ batch ถัดไปเข้าคิวได้ระหว่างที่ main thread ดึง
+    static final int MAX_QUEUED = 4096;
+    private static final long OFFER_TIMEOUT_MS = 5000;
+    private static final String TAG = "IngestionPipeline";
+
+    private final Sink sink;
+    private final Choreographer choreographer;
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    // ที่ว่างในคิว
+    private final Semaphore capacity = new Semaphore(MAX_QUEUED);
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Choreographer.FrameCallback frameCallback = this::drain;
+    private long frameBudgetNanos = FRAME_BUDGET_NANOS;
+    private boolean dirty;
+    private long frames;
+    private long items;
+
+    /**
+     * ต้องสร้างบน main thread (Choreographer ผูกกับ looper ของ thread ที่เรียก)
+     */
+    public IngestionPipeline(Sink sink) {
+        this.sink = sink;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * ปรับเวลาที่ใช้ต่อเฟรม (WorkloadGovernor) มีผลตั้งแต่เฟรมถัดไป เรียกบน main thread
+     */
+    public void setFrameBudgetNanos(long frameBudgetNanos) {
+        this.frameBudgetNanos = frameBudgetNanos;
+    }
+
+    /**
+     * เรียกจาก worker thread เท่านั้น (อาจรอถ้าคิวเต็ม) ไม่เกิน MAX_QUEUED รายการต่อครั้ง
+     */
+    public void offerAll(List<MainActivity.Report> reports) {
+        if (reports.isEmpty() || !reserve(reports.size())) return;
+        queue.addAll(reports);
+        schedule();
+    }
+
+    /**
+     * เรียกจาก worker thread เท่านั้น (อาจรอถ้าคิวเต็ม) ไม่เกิน MAX_QUEUED รายการต่อครั้ง
+     */
+    public void offerStatus(List<StatusEvent> events) {
+        if (events.isEmpty() || !reserve(events.size())) return;
+        queue.addAll(events);
+        schedule();
+    }
+
+    /**
+     * ไม่รอ ถ้าคิวเต็ม beacon ถูกทิ้ง
+     */
+    public void offer(BeaconPayload payload) {
+        if (!capacity.tryAcquire()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(payload);
+        schedule();
+    }
+
+    /**
+     * ขอ publish ในเฟรมถัดไป (เรียกบน main thread หลังแก้รายการโดยตรง)
+     * เรียกหลายครั้งในเฟรมเดียวกันได้ publish ครั้งเดียว
+     */
+    public void requestPublish() {
+        dirty = true;
+        schedule();
+    }
+
+    /**
+     * true ถ้าทุกอย่างที่ offer ก่อนการเรียกนี้ถูกส่งให้ Sink แล้ว (เรียกบน main thread)
+     */
+    public boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * จำนวนรายการที่ถูกทิ้งเพราะคิวเต็ม
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private boolean reserve(int count) {
+        boolean acquired;
+        try {
+            acquired = capacity.tryAcquire(count, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            dropped.addAndGet(count);
+            Log.w(TAG, "Queue full, dropped " + count + " items");
+        }
+        return acquired;
+    }
+
+    private void schedule() {
+        // postFrameCallback เรียกจาก thread อื่นได้ จะถูกส่งไปทำบน looper ของ Choreographer
+        if (scheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    private void drain(long frameTimeNanos) {
+        scheduled.set(false);
+        frames++;
+        long deadline = System.nanoTime() + frameBudgetNanos;
+        Object item;
+        while ((item = queue.poll()) != null) {
+            capacity.release();
+            dispatch(item);
+            items++;
+            dirty = true;
+            if (System.nanoTime() > deadline) break;
+        }
+        if (!queue.isEmpty()) schedule();
+        if (dirty) {
+            dirty = false;
+            sink.publish();
+        }
+    }
+
+    private void dispatch(Object item) {
+        if (item instanceof MainActivity.Report) {
+            sink.onReport((MainActivity.Report) item);
+        } else if (item instanceof StatusEvent) {
+            sink.onStatusEvent((StatusEvent) item);
+        } else if (item instanceof BeaconPayload) {
+            sink.onBeacon((BeaconPayload) item);
+        }
+    }
+}
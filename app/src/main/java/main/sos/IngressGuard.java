@@ -0,0 +1,241 @@
+package main.sos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ด่านกรองรายงานที่รับมาจากเครื่องอื่น ก่อนถึงขั้นตอนที่แพง (ตรวจลายเซ็น, ใส่ลงรายการ, วาด UI)
+ *
+ * ตรวจตามลำดับจากถูกไปแพง: รายงานที่เคยเห็นแล้ว (seen filter) และ token bucket ต่อเครื่องที่ส่งมา
+ * ก่อนตรวจลายเซ็น แล้วโควตาต่อผู้แจ้ง (origin) หลังลายเซ็นผ่าน (ซองปลอมจึงใช้โควตาของคนอื่นไม่ได้)
+ * โควตาคืนทีละน้อยตามเวลา หน่วยความจำคงที่: seen filter เป็น array ขนาดตายตัว
+ * ส่วนเครื่องที่ส่งและผู้แจ้งเก็บแบบ LRU จำกัดจำนวน
+ */
+public class IngressGuard {
+
+    public static class Config {
+        public final int burst;
+        public final double reportsPerSecond;
+        public final int maxPeers;
+        public final int originQuota;
+        public final long originWindowMs;
+        public final int maxOrigins;
+        public final int seenCapacity;
+
+        public Config(
+                int burst,
+                double reportsPerSecond,
+                int maxPeers,
+                int originQuota,
+                long originWindowMs,
+                int maxOrigins,
+                int seenCapacity) {
+            if (burst <= 0
+                    || reportsPerSecond <= 0
+                    || maxPeers <= 0
+                    || originQuota <= 0
+                    || originWindowMs <= 0
+                    || maxOrigins <= 0
+                    || Integer.bitCount(seenCapacity) != 1) {
+                throw new IllegalArgumentException("Invalid ingress config");
+            }
+            this.burst = burst;
+            this.reportsPerSecond = reportsPerSecond;
+            this.maxPeers = maxPeers;
+            this.originQuota = originQuota;
+            this.originWindowMs = originWindowMs;
+            this.maxOrigins = maxOrigins;
+            this.seenCapacity = seenCapacity;
+        }
+    }
+
+    // หนึ่ง batch ของ ReportSync ผ่านได้ทันที หลังจากนั้นเฉลี่ย 20 รายงาน/วินาทีต่อเครื่อง
+    // ผู้แจ้งหนึ่งคนไม่ควรมีรายงานเกิน 8 ฉบับต่อ 30 นาที
+    public static final Config DEFAULT_CONFIG =
+            new Config(256, 20, 64, 8, 30 * 60_000L, 8192, 1 << 16);
+
+    // เซิร์ฟเวอร์ประสานงาน (DeltaSubscription) ส่ง backlog ทีละมากและไม่ส่งซ้ำ เลขลำดับขยับ
+    // แม้รายงานถูกทิ้ง รายงานที่ทิ้งจึงหายจนกว่าจะได้ snapshot ไม่จำกัดทั้งอัตราและโควตา
+    // (เซิร์ฟเวอร์คัดกรองผู้แจ้งเองแล้ว) เหลือ seen filter
+    public static final Config SERVER_CONFIG =
+            new Config(
+                    Integer.MAX_VALUE,
+                    1e9,
+                    4,
+                    Integer.MAX_VALUE,
+                    30 * 60_000L,
+                    8192,
+                    1 << 16);
+
+    public enum Verdict {
+        ACCEPT,
+        DUPLICATE,
+        RATE_LIMITED,
+        QUOTA_EXCEEDED
+    }
+
+    private final Config config;
+    private final long[] seen;
+    private final Map<String, double[]> buckets;
+    private final Map<Long, double[]> origins;
+    private final long[] verdictCounts = new long[Verdict.values().length];
+
+    public IngressGuard(Config config) {
+        this.config = config;
+        this.seen = new long[config.seenCapacity];
+        this.buckets =
+                new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                        return size() > IngressGuard.this.config.maxPeers;
+                    }
+                };
+        this.origins =
+                new LinkedHashMap<Long, double[]>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                        return size() > IngressGuard.this.config.maxOrigins;
+                    }
+                };
+    }
+
+    /**
+     * ด่านแรกก่อนตรวจลายเซ็น ใช้แค่ id ที่อ่านจาก header ได้โดยไม่ต้อง decode
+     * รายงานถือว่า "เห็นแล้ว" หลัง markSeen เท่านั้น
+     * (ซองที่ลายเซ็นไม่ผ่านจึงไม่บล็อกรายงานจริงที่ใช้ id เดียวกัน)
+     */
+    public Verdict check(String peer, int reportId, long nowMillis) {
+        return check(peer, reportId, 0, nowMillis);
+    }
+
+    /**
+     * รายงานที่ถูกแก้ (contentVersion ใหม่, ดู ReportEnvelope) ไม่นับว่าซ้ำกับฉบับก่อน
+     */
+    public synchronized Verdict check(
+            String peer, int reportId, long contentVersion, long nowMillis) {
+        Verdict verdict;
+        if (isSeen(reportId, contentVersion)) {
+            verdict = Verdict.DUPLICATE;
+        } else if (!takeToken(peer, nowMillis)) {
+            verdict = Verdict.RATE_LIMITED;
+        } else {
+            verdict = Verdict.ACCEPT;
+        }
+        verdictCounts[verdict.ordinal()]++;
+        return verdict;
+    }
+
+    /**
+     * ด่านที่สองหลังลายเซ็นผ่าน นับรายงานเข้าโควตาของผู้แจ้ง
+     * โควตาเต็มแล้วคืนหนึ่งฉบับทุก originWindowMs / originQuota
+     */
+    public synchronized Verdict checkOrigin(long origin, long nowMillis) {
+        Verdict verdict = takeQuota(origin, nowMillis) ? Verdict.ACCEPT : Verdict.QUOTA_EXCEEDED;
+        verdictCounts[verdict.ordinal()]++;
+        return verdict;
+    }
+
+    /**
+     * StatusEvent ใช้ token bucket เดียวกับรายงานของเครื่องที่ส่ง (ไม่มี seen filter และโควตา
+     * เพราะรายงานหนึ่งมีได้หลาย event) เรียกก่อนตรวจลายเซ็น
+     */
+    public synchronized Verdict checkStatus(String peer, long nowMillis) {
+        Verdict verdict = takeToken(peer, nowMillis) ? Verdict.ACCEPT : Verdict.RATE_LIMITED;
+        verdictCounts[verdict.ordinal()]++;
+        return verdict;
+    }
+
+    public void markSeen(int reportId) {
+        markSeen(reportId, 0);
+    }
+
+    public synchronized void markSeen(int reportId, long contentVersion) {
+        seen[slot(reportId)] = key(reportId, contentVersion);
+    }
+
+    public synchronized long getCount(Verdict verdict) {
+        return verdictCounts[verdict.ordinal()];
+    }
+
+    /**
+     * origin ของซอง = hash ของ public key ผู้เซ็น อ่านจากตำแหน่งคงที่ใน header
+     */
+    public static long originOf(byte[] envelope) {
+        long h = 0xcbf29ce484222325L;
+        int end = Math.min(envelope.length, 2 + DeviceIdentity.PUBLIC_KEY_SIZE);
+        for (int i = 2; i < end; i++) {
+            h = (h ^ (envelope[i] & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * รายงานที่ไม่มีซองไม่รู้ผู้แจ้ง นับโควตารวมกับเครื่องที่ส่งมาแทน
+     */
+    public static long originOfPeer(String peer) {
+        long h = 0x84222325cbf29ce4L;
+        for (int i = 0; i < peer.length(); i++) {
+            h = (h ^ peer.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private boolean isSeen(int reportId, long contentVersion) {
+        return seen[slot(reportId)] == key(reportId, contentVersion);
+    }
+
+    /**
+     * เปิดช่องตาม hash ของ id ชนกันได้ (id ใหม่ทับ id เก่า) ผลคือรายงานเก่าอาจถูกตรวจซ้ำ
+     * ไม่ใช่รับซ้ำ เพราะชั้นถัดไปยังเช็ก id กับรายการจริงอีกครั้ง
+     */
+    private int slot(int reportId) {
+        return (int) (mix(reportId) >>> 40) & (seen.length - 1);
+    }
+
+    private static long key(int reportId, long contentVersion) {
+        // 0 คือช่องว่าง ฉบับใหม่ของ id เดิมอยู่ช่องเดิม จึงทับฉบับเก่า
+        return (((long) reportId << 1) | 1) ^ (mix(contentVersion) << 32);
+    }
+
+    private boolean takeToken(String peer, long nowMillis) {
+        // {tokens, เวลาที่เติมล่าสุด}
+        double[] bucket = buckets.get(peer);
+        if (bucket == null) {
+            bucket = new double[] {config.burst, nowMillis};
+            buckets.put(peer, bucket);
+        }
+        double elapsed = Math.max(0, nowMillis - bucket[1]) / 1000.0;
+        bucket[0] = Math.min(config.burst, bucket[0] + elapsed * config.reportsPerSecond);
+        bucket[1] = nowMillis;
+        if (bucket[0] < 1) return false;
+        bucket[0] -= 1;
+        return true;
+    }
+
+    private boolean takeQuota(long origin, long nowMillis) {
+        // ไม่จำกัดโควตา ไม่ต้องเก็บสถานะของผู้แจ้ง
+        if (config.originQuota == Integer.MAX_VALUE) return true;
+        // {ฉบับที่ยังรับได้, เวลาที่เติมล่าสุด}
+        double[] quota = origins.get(origin);
+        if (quota == null) {
+            quota = new double[] {config.originQuota, nowMillis};
+            origins.put(origin, quota);
+        }
+        double elapsed = Math.max(0, nowMillis - quota[1]);
+        quota[0] =
+                Math.min(
+                        config.originQuota,
+                        quota[0] + elapsed * config.originQuota / config.originWindowMs);
+        quota[1] = nowMillis;
+        if (quota[0] < 1) return false;
+        quota[0] -= 1;
+        return true;
+    }
+
+    private static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
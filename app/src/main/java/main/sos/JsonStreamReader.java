@@ -0,0 +1,362 @@
+package main.sos;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * ตัวอ่าน JSON แบบ pull ทีละ token สำหรับนำเข้า GeoJSON (ReportExport)
+ *
+ * API ตามแบบ android.util.JsonReader เฉพาะส่วนที่ใช้ แต่เป็น Java ล้วนจึงทดสอบบน JVM ได้
+ * หน่วยความจำคงที่ตามความลึกและความยาวสตริงที่ยาวที่สุด (ไม่เกิน MAX_STRING) ไม่ขึ้นกับขนาดไฟล์
+ * ข้อมูลผิดรูปแบบหรือ token ไม่ตรงกับที่เรียกโยน IOException
+ */
+final class JsonStreamReader {
+
+    enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    // ชื่อ/รายละเอียดที่ยาวกว่านี้ไม่ใช่รายงานจริง
+    static final int MAX_STRING = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final int[] scopes = new int[MAX_DEPTH];
+    private int depth = 1;
+    // token ที่ peek แล้วแต่ยังไม่ถูกอ่าน (เครื่องหมายเปิดของสตริงถูกอ่านไปแล้ว)
+    private Token peeked;
+    private int pushback = -1;
+    // อ่านจาก Reader ทีละก้อน (read() ทีละตัวของ BufferedReader ช้าเพราะ lock ทุกครั้ง)
+    private final char[] chars = new char[8192];
+    private int position;
+    private int limit;
+    private final StringBuilder buffer = new StringBuilder();
+
+    JsonStreamReader(Reader in) {
+        this.in = in;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+
+    Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int c;
+        switch (scopes[depth - 1]) {
+            case EMPTY_ARRAY:
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c != ',') throw syntaxError("Expected , or ]");
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') throw syntaxError("Expected , or }");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("Expected name");
+                scopes[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') throw syntaxError("Expected :");
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_DOCUMENT:
+                scopes[depth - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace();
+                break;
+            default:
+                c = nextNonWhitespace();
+                if (c < 0) return peeked = Token.END_DOCUMENT;
+                throw syntaxError("Trailing data");
+        }
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                pushback = c;
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                pushback = c;
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pushback = c;
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError(c < 0 ? "Unexpected end of input" : "Unexpected character");
+        }
+    }
+
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * อ่านสตริง (หรือตัวเลขเป็นข้อความ เหมือน android.util.JsonReader)
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString();
+        }
+        if (token == Token.NUMBER) return nextLiteral();
+        throw syntaxError("Expected string but was " + token);
+    }
+
+    boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if ("true".equals(literal)) return true;
+        if ("false".equals(literal)) return false;
+        throw syntaxError("Invalid literal " + literal);
+    }
+
+    /**
+     * ตัวเลข หรือสตริงที่เป็นตัวเลข (โปรแกรม GIS บางตัวเขียนพิกัดเป็นสตริง)
+     */
+    double nextDouble() throws IOException {
+        String text = peek() == Token.STRING ? nextString() : nextNumber();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number " + text);
+        }
+    }
+
+    int nextInt() throws IOException {
+        double value = nextDouble();
+        int result = (int) value;
+        if (result != value) throw syntaxError("Not an int: " + value);
+        return result;
+    }
+
+    void skipValue() throws IOException {
+        int open = 0;
+        do {
+            Token token = peek();
+            if (open == 0 && (token == Token.END_ARRAY || token == Token.END_OBJECT)) {
+                throw syntaxError("Expected value but was " + token);
+            }
+            switch (token) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    open++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    open++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    open--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    open--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    peeked = null;
+                    readString();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of input");
+                default:
+                    nextLiteral();
+            }
+        } while (open > 0);
+    }
+
+    private String nextNumber() throws IOException {
+        if (peek() != Token.NUMBER) throw syntaxError("Expected number but was " + peeked);
+        return nextLiteral();
+    }
+
+    /**
+     * ตัวเลข true false null ตรวจรูปแบบแล้วคืนเป็นข้อความ
+     */
+    private String nextLiteral() throws IOException {
+        Token token = peek();
+        String literal = readLiteral();
+        if (token == Token.NULL && !"null".equals(literal)) {
+            throw syntaxError("Invalid literal " + literal);
+        }
+        if (token == Token.NUMBER) {
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e'
+                        && c != 'E') {
+                    throw syntaxError("Invalid number " + literal);
+                }
+            }
+        }
+        return literal;
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) throw syntaxError("Expected " + expected + " but was " + token);
+        peeked = null;
+    }
+
+    private void push(int scope) throws IOException {
+        if (depth == scopes.length) throw syntaxError("Nesting too deep");
+        scopes[depth++] = scope;
+    }
+
+    private String readLiteral() throws IOException {
+        peeked = null;
+        buffer.setLength(0);
+        while (true) {
+            int c = read();
+            boolean part = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z') || c == '-' || c == '+' || c == '.';
+            if (!part) {
+                pushback = c;
+                break;
+            }
+            if (buffer.length() >= 64) throw syntaxError("Literal too long");
+            buffer.append((char) c);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * อ่านต่อจากเครื่องหมายคำพูดเปิดจนถึงตัวปิด
+     */
+    private String readString() throws IOException {
+        buffer.setLength(0);
+        while (true) {
+            int c = read();
+            if (c < 0) throw syntaxError("Unterminated string");
+            if (c == '"') break;
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'u':
+                        c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) throw syntaxError("Invalid \\u escape");
+                            c = (c << 4) | digit;
+                        }
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        break;
+                    default:
+                        throw syntaxError("Invalid escape");
+                }
+            } else if (c < 0x20) {
+                throw syntaxError("Control character in string");
+            }
+            if (buffer.length() >= MAX_STRING) throw syntaxError("String too long");
+            buffer.append((char) c);
+        }
+        return buffer.toString();
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = read();
+        // BOM ของ UTF-8 ถือเป็นช่องว่าง
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF') c = read();
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pushback >= 0) {
+            int c = pushback;
+            pushback = -1;
+            return c;
+        }
+        if (position == limit) {
+            limit = in.read(chars, 0, chars.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return chars[position++];
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
@@ -34,8 +34,10 @@ public class LocationLib {
     private SharedPreferences prefs;
     private LocationCallback locationCallback;
     private LocationListener listener;
+    private long updateInterval = UPDATE_INTERVAL;
+    private boolean highAccuracy = true;
     
-    private static final String PREF_NAME = "LocationPref";
+    public static final String PREF_NAME = "LocationPref";
     private static final String KEY_LAT = "last_latitude";
     private static final String KEY_LNG = "last_longitude";
     private static final String KEY_TIME = "last_time";
@@ -48,6 +50,9 @@ public class LocationLib {
     private static final long FASTEST_INTERVAL = 5000; // 5 วินาที
     private static final float MIN_DISTANCE = 10; // 10 เมตร
     
+    /**
+     * เรียกบน main thread เสมอ (location callback ใช้ main looper, Task listener ก็เช่นกัน)
+     */
     public interface LocationListener {
         void onLocationReceived(Location location);
         void onLocationError(String error);
@@ -211,15 +216,6 @@ public class LocationLib {
         // ดึงตำแหน่งล่าสุดจากระบบก่อน
         getLastKnownLocation();
         
-        // สร้าง LocationRequest
-        LocationRequest locationRequest = new LocationRequest.Builder(
-                Priority.PRIORITY_HIGH_ACCURACY, // ความแม่นยำสูง (GPS + Network)
-                UPDATE_INTERVAL)
-            .setMinUpdateIntervalMillis(FASTEST_INTERVAL)
-            .setMinUpdateDistanceMeters(MIN_DISTANCE)
-            .setWaitForAccurateLocation(false)
-            .build();
-        
         // สร้าง LocationCallback
         locationCallback = new LocationCallback() {
             @Override
@@ -235,6 +231,31 @@ public class LocationLib {
         };
         
         // เริ่ม request location updates
+        requestUpdates();
+    }
+    
+    /**
+     * ปรับความถี่และความแม่นยำในการอ่านตำแหน่ง (WorkloadGovernor)
+     * ถ้ากำลังรับตำแหน่งอยู่จะขอใหม่ทันทีด้วยค่าใหม่
+     */
+    public void setSamplingInterval(long intervalMillis, boolean highAccuracy) {
+        if (intervalMillis == updateInterval && highAccuracy == this.highAccuracy) return;
+        this.updateInterval = intervalMillis;
+        this.highAccuracy = highAccuracy;
+        if (locationCallback != null) requestUpdates();
+    }
+    
+    private void requestUpdates() {
+        // สร้าง LocationRequest ความแม่นยำสูงใช้ GPS + Network ถ้าประหยัดใช้ Network เป็นหลัก
+        LocationRequest locationRequest = new LocationRequest.Builder(
+                highAccuracy ? Priority.PRIORITY_HIGH_ACCURACY : Priority.PRIORITY_BALANCED_POWER_ACCURACY,
+                updateInterval)
+            .setMinUpdateIntervalMillis(Math.min(FASTEST_INTERVAL, updateInterval))
+            .setMinUpdateDistanceMeters(MIN_DISTANCE)
+            .setWaitForAccurateLocation(false)
+            .build();
+        
+        // ขอซ้ำด้วย callback เดิมจะแทนที่ request เก่า
         try {
             fusedLocationClient.requestLocationUpdates(
                 locationRequest,
@@ -3,8 +3,20 @@ package main.sos;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.location.Location;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Base64;
+import android.util.Log;
+import android.view.HapticFeedbackConstants;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
@@ -13,6 +25,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -22,14 +35,41 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
-import java.text.SimpleDateFormat;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+
     // UI Components
     private MaterialButton btnVictimMode;
     private MaterialButton btnRescuerMode;
@@ -58,26 +98,158 @@ public class MainActivity extends AppCompatActivity {
     private TextView tvLocationInfo;
     private MaterialButton btnSubmitSOS;
     private ImageView btnCloseForm;
+    private Severity selectedLevel;
+    private ReportType selectedType;
 
     // SharedPreferences Manager
     private PreferenceManager preferencesManager;
 
     // Rescuer Mode
     private TextView tvReportsHeader;
+    private TextInputEditText etSearchReports;
+    private AutoCompleteTextView etFilterSeverity;
     private RecyclerView rvReports;
+    private MaterialButton btnSyncPeers;
+    private MaterialButton btnExportReports;
+    private MaterialButton btnImportReports;
+    private MaterialButton btnHeatmap;
     private ReportsAdapter reportsAdapter;
 
     // Location
     private LocationLib locationLib;
     private boolean isLocationRequestInProgress = false;
 
+    // BLE Beacon
+    private BeaconController beaconController;
+    private Report beaconReport = null;
+
+    // WiFi Direct
+    private WifiDirectSync wifiDirectSync;
+
+    // รับรายงานเรียลไทม์จากเซิร์ฟเวอร์ประสานงาน (โหมดกู้ภัย + ออนไลน์ + ตั้ง coordination_url)
+    private DeltaSubscription deltaSubscription;
+    private final IngressGuard serverGuard = new IngressGuard(IngressGuard.SERVER_CONFIG);
+
+    // ลดงานเบื้องหลังตามแบตเตอรี่/ความร้อน ดู applyBudget
+    private final WorkloadGovernor workloadGovernor =
+            new WorkloadGovernor(WorkloadGovernor.DEFAULT_POLICY);
+
+    // Identity / envelopes (โหลดบน disk thread ดู setupIdentity)
+    private volatile DeviceIdentity deviceIdentity;
+    private volatile PublicKey rescueNetworkKey;
+    // public key เดียวกันแบบ 65 ไบต์ ใช้ตรวจสิทธิ์ของ StatusEvent จากหน่วยกู้ภัย
+    private volatile byte[] rescueNetworkKeyBytes;
+    // เครื่องของหน่วยกู้ภัย (มีกุญแจส่วนตัวของเครือข่าย) ใช้เซ็น ACKNOWLEDGED/EN_ROUTE
+    private volatile DeviceIdentity rescuerIdentity;
+    private volatile ReportEnvelope.Verifier envelopeVerifier;
+    // id รายงาน -> ครั้งล่าสุดที่สั่งเซ็น (main thread เท่านั้น ดู sealReport)
+    private final Map<Integer, Integer> sealRequests = new HashMap<>();
+    private int sealSequence;
+    private final IngressGuard ingressGuard = new IngressGuard(IngressGuard.DEFAULT_CONFIG);
+
+    private final AppExecutors executors = AppExecutors.get();
+
     // Data
     private Mode currentMode = Mode.VICTIM;
+    private final QuickSos quickSos = new QuickSos();
+    // รูปแบบที่เลือกไว้ระหว่างรอผู้ใช้เลือกไฟล์ปลายทาง
+    private ReportExport.Format pendingExportFormat;
     private boolean isOnline = true;
     private MainActivity.Location currentLocation = null;
-    private List<Report> reports = new ArrayList<>();
+    // แก้บน main thread เท่านั้น ที่อื่นอ่านจาก publishedReports
+    private final ReportList reports = new ReportList();
+    private final Map<Integer, Report> reportsById = new HashMap<>();
+    // สำเนาที่ thread อื่นอ่าน (snapshot ของ publishedCopies) ไม่ใช่ object เดียวกับใน reports
+    private volatile List<Report> publishedReports = Collections.emptyList();
+    // ลำดับเดียวกับ reports แต่เก็บสำเนา ตำแหน่งของ id ใน staleCopies ยังเป็นตัวจริง
+    // และถูกแทนด้วยสำเนาใหม่ตอน publishReports (main thread เท่านั้น)
+    private final ReportList publishedCopies = new ReportList();
+    private final Set<Integer> staleCopies = new HashSet<>();
+    private IngestionPipeline ingestion;
+    private final ReportClusterIndex clusterIndex = new ReportClusterIndex();
+    private final TimeWindowIndex timeIndex = new TimeWindowIndex();
+    private final AssignmentSolver assignmentSolver = new AssignmentSolver();
+    // id ของเครื่องนี้ในฐานะหน่วยกู้ภัย (จาก public key) UNASSIGNED จนกว่าจะโหลดกุญแจเสร็จ
+    private int ownRescuerId = AssignmentSolver.UNASSIGNED;
+    // ตำแหน่งหน่วยกู้ภัยที่ ReportSync ส่งต่อ (อ่านจาก worker thread)
+    private volatile List<AssignmentSolver.Rescuer> publishedRescuers = Collections.emptyList();
+    private boolean assignmentSolving;
+    // null จนกว่าจะมีรายงาน สร้างใหม่รอบจุดศูนย์กลางของรายงานทุกครั้งที่ indexAllReports
+    private SeverityHeatmap heatmap;
+    private final DistanceIndex distanceIndex = new DistanceIndex();
+    // ถูกแทนเมื่อ index ที่สร้างบน cpu thread เสร็จ (ดู indexAllReports)
+    private ReportSearchIndex searchIndex = new ReportSearchIndex();
+    // id ที่ถูกแก้/ลบระหว่างสร้าง index ใหม่ ใส่ซ้ำก่อนสลับ (null เมื่อไม่มีการสร้างค้างอยู่)
+    private Set<Integer> searchIndexPending;
+    private int searchIndexBuild;
+    private final BoundedReportStore reportStore =
+            new BoundedReportStore(BoundedReportStore.DEFAULT_CONFIG);
+    private StatusLog statusLog;
+    private SessionCheckpoint checkpoint;
+    // ยังไม่เขียน checkpoint จนกว่าจะอ่านของเดิมเสร็จ ไม่เช่นนั้นจะทับด้วยรายการที่ยังไม่ครบ
+    private boolean storedReportsLoaded;
+    // รายงานที่เพิ่ม/แก้/ลบตั้งแต่ checkpoint ครั้งก่อน (main thread)
+    private final Set<Integer> dirtyReportIds = new HashSet<>();
+    private final Set<Integer> removedReportIds = new HashSet<>();
+    private int checkpointScroll;
+    private final Handler checkpointHandler = new Handler(Looper.getMainLooper());
+    private final Runnable checkpointTask =
+            new Runnable() {
+                @Override
+                public void run() {
+                    checkpointSession();
+                    checkpointHandler.postDelayed(this, CHECKPOINT_INTERVAL_MS);
+                }
+            };
+    private final Runnable assignmentTask =
+            new Runnable() {
+                @Override
+                public void run() {
+                    optimizeAssignments();
+                    checkpointHandler.postDelayed(this, ASSIGNMENT_INTERVAL_MS);
+                }
+            };
+    private String searchQuery = "";
+    private Severity filterSeverity = null;
+    private volatile RoadGraph roadGraph = null;
+    private volatile TileCache<Bitmap> tileCache = null;
+    private TileStore tileStore = null;
+    private ReverseGeocoder geocoder = null;
+    private MainActivity.Location rescuerLocation = null;
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
+    private static final int BLUETOOTH_PERMISSION_REQUEST_CODE = 1003;
+    private static final int WIFI_PERMISSION_REQUEST_CODE = 1004;
+    private static final int EXPORT_REQUEST_CODE = 1005;
+    private static final int IMPORT_REQUEST_CODE = 1006;
+    private static final SecureRandom ID_RANDOM = new SecureRandom();
+    private static final String ROAD_GRAPH_FILE = "roads.bin";
+    private static final String TILE_FILE = "tiles.mtil";
+    // ขอบเขตตำบล/อำเภอ/จังหวัด มาจาก assets (ถ้ามี) คัดลอกมาไว้ที่นี่เพื่อ memory-map
+    private static final String BOUNDARY_FILE = "boundaries.mgeo";
+    // status.log รุ่นก่อนไม่มีลายเซ็น จึงไม่อ่านต่อ
+    private static final String STATUS_LOG_FILE = "status-signed.log";
+    private static final String CHECKPOINT_FILE = "session.ckpt";
+    private static final long CHECKPOINT_INTERVAL_MS = 30_000;
+    // template ที่เตรียมไว้นานกว่านี้จะใช้เวลาที่กดแทนเวลาที่เตรียม
+    private static final long QUICK_SOS_RESTAMP_MS = 60_000;
+    // ช่วงเวลาของสรุปบนหัวรายการ (ต้องตรงกับ R.string.time_summary)
+    private static final long RECENT_WINDOW_MS = 60 * 60_000L;
+    private static final long LONG_WAIT_MS = 30 * 60_000L;
+    private static final long ASSIGNMENT_INTERVAL_MS = 15_000;
+    // หน่วยกู้ภัยที่ไม่ได้ส่งตำแหน่งมานานกว่านี้ถือว่าออกจากพื้นที่
+    private static final long RESCUER_TTL_MS = 10 * 60_000L;
+    // 512 x 0.002 องศา ราว 110 กม. ต่อด้าน cell ละราว 220 ม.
+    private static final double HEATMAP_CELL_DEGREES = 0.002;
+    private static final int HEATMAP_SIZE = 512;
+    private static final int HEATMAP_ZOOM = 11;
+    private static final String REPORTS_FILE = "reports.bin";
+    private static final String BEACON_PEER = "ble";
+    // กุญแจของเครือข่ายกู้ภัย แจกจ่ายล่วงหน้า: public key (65 ไบต์) ทุกเครื่อง, private key เฉพาะหน่วยกู้ภัย
+    private static final String RESCUE_PUBLIC_KEY_FILE = "rescue_network.pub";
+    private static final String RESCUE_PRIVATE_KEY_FILE = "rescue_network.key";
+    private static final long TILE_CACHE_BYTES = 24L * 1024 * 1024;
+    private static final int PREFETCH_DISTANCE_M = 1000;
 
     public enum Mode {
         VICTIM,
@@ -94,16 +266,108 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * ระดับความรุนแรง เก็บและส่งต่อเป็น code 1 byte ข้อความที่แสดงผลดึงจาก resource ตอน render
+     */
+    public enum Severity {
+        LOW(0, R.string.severity_low),
+        MEDIUM(1, R.string.severity_medium),
+        HIGH(2, R.string.severity_high),
+        CRITICAL(3, R.string.severity_critical);
+
+        private static final Severity[] BY_CODE = values();
+
+        public final byte code;
+        public final int labelRes;
+
+        Severity(int code, int labelRes) {
+            this.code = (byte) code;
+            this.labelRes = labelRes;
+        }
+
+        public static Severity fromCode(int code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+    }
+
+    /**
+     * ประเภทเหตุการณ์ SOS ลำดับตรงกับ dropdown ใน setupTypeDropdown
+     */
+    public enum ReportType {
+        EARTHQUAKE(0, R.string.type_earthquake),
+        FLOOD(1, R.string.type_flood),
+        TSUNAMI(2, R.string.type_tsunami),
+        KIDNAPPING(3, R.string.type_kidnapping),
+        SHOOTING(4, R.string.type_shooting),
+        ACCIDENT(5, R.string.type_accident),
+        OTHER(6, R.string.type_other);
+
+        private static final ReportType[] BY_CODE = values();
+
+        public final byte code;
+        public final int labelRes;
+
+        ReportType(int code, int labelRes) {
+            this.code = (byte) code;
+            this.labelRes = labelRes;
+        }
+
+        public static ReportType fromCode(int code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+    }
+
+    /**
+     * สถานะเปลี่ยนไปข้างหน้าเท่านั้น RESCUED และ CANCELLED เป็นสถานะสุดท้าย
+     */
+    public enum ReportStatus {
+        WAITING(0, R.string.status_waiting),
+        ACKNOWLEDGED(1, R.string.status_acknowledged),
+        EN_ROUTE(2, R.string.status_en_route),
+        RESCUED(3, R.string.status_rescued),
+        CANCELLED(4, R.string.status_cancelled);
+
+        private static final ReportStatus[] BY_CODE = values();
+
+        public final byte code;
+        public final int labelRes;
+
+        ReportStatus(int code, int labelRes) {
+            this.code = (byte) code;
+            this.labelRes = labelRes;
+        }
+
+        public static ReportStatus fromCode(int code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+
+        public boolean isFinal() {
+            return this == RESCUED || this == CANCELLED;
+        }
+
+        public boolean canTransitionTo(ReportStatus next) {
+            if (isFinal() || next == this) return false;
+            return next.isFinal() || next.code > code;
+        }
+    }
+
     public static class Report {
         public int id;
         public String name;
         public String contact;
         public String details;
         public Location location;
-        public String timestamp;
-        public String level;
-        public String type;
-        public String status;
+        // epoch millis ตอนสร้าง (ReportTime.now()) หรือ ReportTime.UNKNOWN
+        public long timestamp;
+        public Severity level;
+        public ReportType type;
+        public ReportStatus status;
+        // เพิ่มขึ้นทุกครั้งที่สถานะเปลี่ยน (ดู StatusEvent)
+        public int statusVersion;
+        // event ที่เซ็นแล้วของสถานะปัจจุบัน ใช้ส่งต่อ (null ถ้าไม่มี ส่งต่อเป็น WAITING)
+        public StatusEvent statusEvent;
+        // ซองที่เซ็นโดยเครื่องผู้แจ้ง ส่งต่อทั้งก้อนแทนข้อมูลด้านบน (null ถ้าไม่มี)
+        public byte[] envelope;
         public boolean relayed;
 
         public Report(
@@ -112,10 +376,10 @@ public class MainActivity extends AppCompatActivity {
                 String contact,
                 String details,
                 Location location,
-                String timestamp,
-                String level,
-                String status,
-                String type,
+                long timestamp,
+                Severity level,
+                ReportStatus status,
+                ReportType type,
                 boolean relayed) {
             this.id = id;
             this.name = name;
@@ -138,6 +402,13 @@ public class MainActivity extends AppCompatActivity {
         // Initialize
         locationLib = new LocationLib(this);
         preferencesManager = new PreferenceManager(this);
+        // ก่อนสร้างหรือโหลดรายงานใด ๆ (ไฟล์ prefs นี้ถูกอ่านบน main อยู่แล้ว)
+        ReportTime.restore(preferencesManager.readLong(PreferenceManager.REPORT_TIME_KEY, 0));
+        beaconController = new BeaconController(new AndroidBeaconRadio(this));
+        ingestion = new IngestionPipeline(new ReportSink());
+        workloadGovernor.addListener(this::applyBudget);
+        workloadGovernor.start(this);
+        setupIdentity();
 
         // Initialize views
         initializeViews();
@@ -148,9 +419,13 @@ public class MainActivity extends AppCompatActivity {
 
         // Load sample data
         loadSampleReports();
+        indexAllReports();
+        loadStoredReports();
 
         // Setup RecyclerView
         setupRecyclerView();
+        setupReportSearch();
+        ingestion.requestPublish();
 
         // Set initial mode
         updateMode(Mode.VICTIM);
@@ -158,10 +433,16 @@ public class MainActivity extends AppCompatActivity {
 
         // Check for saved location when app starts
         checkSavedLocation();
+        prepareQuickSos();
+        loadRoadGraph();
+        openTileStore();
+        openGeocoder();
     }
 
     private void checkForReportAvalible() {
-        if (preferencesManager.report.isReported()) {
+        ReportStatus ownStatus = preferencesManager.report.getStatus();
+        if (preferencesManager.report.isReported()
+                && (ownStatus == null || !ownStatus.isFinal())) {
             showSOSForm();
             showGotHelpBtn();
         } else {
@@ -194,8 +475,14 @@ public class MainActivity extends AppCompatActivity {
         etName.setText(preferencesManager.report.getName());
         etContact.setText(preferencesManager.report.getContact());
         etDetails.setText(preferencesManager.report.getDetails());
-        etLevel.setText(preferencesManager.report.getLevel());
-        etType.setText(preferencesManager.report.getType());
+        selectedLevel = preferencesManager.report.getLevel();
+        selectedType = preferencesManager.report.getType();
+        if (selectedLevel != null) {
+            etLevel.setText(getString(selectedLevel.labelRes), false);
+        }
+        if (selectedType != null) {
+            etType.setText(getString(selectedType.labelRes), false);
+        }
         tvLocationInfo.setVisibility(View.VISIBLE);
     }
 
@@ -205,6 +492,8 @@ public class MainActivity extends AppCompatActivity {
         etDetails.getText().clear();
         etLevel.getText().clear();
         etType.getText().clear();
+        selectedLevel = null;
+        selectedType = null;
         currentLocation = null;
         tvLocationInfo.setVisibility(View.GONE);
         btnGetLocation.setText(getString(R.string.get_location));
@@ -245,16 +534,21 @@ public class MainActivity extends AppCompatActivity {
         // Rescuer mode views
         tvReportsHeader = findViewById(R.id.tvReportsHeader);
         rvReports = findViewById(R.id.rvReports);
+        btnSyncPeers = findViewById(R.id.btnSyncPeers);
+        btnExportReports = findViewById(R.id.btnExportReports);
+        btnImportReports = findViewById(R.id.btnImportReports);
+        btnHeatmap = findViewById(R.id.btnHeatmap);
+        etSearchReports = findViewById(R.id.etSearchReports);
+        etFilterSeverity = findViewById(R.id.etFilterSeverity);
     }
 
     private void setupSeverityDropdown() {
         etLevel = findViewById(R.id.etLevel);
-        String[] severityLevels = {
-            "🟢 ต่ำ - ไม่เร่งด่วน",
-            "🟡 ปานกลาง - ต้องการความช่วยเหลือ",
-            "🟠 สูง - เร่งด่วน",
-            "🔴 วิกฤติ - อันตรายถึงชีวิต"
-        };
+        Severity[] severities = Severity.values();
+        String[] severityLevels = new String[severities.length];
+        for (int i = 0; i < severities.length; i++) {
+            severityLevels[i] = getString(severities[i].labelRes);
+        }
         ArrayAdapter<String> adapter =
                 new ArrayAdapter<>(
                         this, android.R.layout.simple_dropdown_item_1line, severityLevels);
@@ -264,15 +558,12 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onItemClick(
                             AdapterView<?> parent, View view, int position, long id) {
-                        String selectedSeverity = severityLevels[position];
+                        selectedLevel = severities[position];
                         Toast.makeText(
                                         MainActivity.this,
-                                        "เลือก: " + selectedSeverity,
+                                        "เลือก: " + severityLevels[position],
                                         Toast.LENGTH_SHORT)
                                 .show();
-
-                        // สามารถเก็บค่าไว้ใช้ตอนส่งข้อมูลได้
-                        // เช่น int severityLevel = position;
                     }
                 });
     }
@@ -280,15 +571,11 @@ public class MainActivity extends AppCompatActivity {
     private void setupTypeDropdown() {
         etType = findViewById(R.id.etType);
 
-        String[] type = {
-            "แผ่นดินไหว 🌍🔊",
-            "น้ำท่วม 🌊🏠",
-            "สึนามิ 🌊🌴",
-            "ถูกลักพาตัว 🚨👤",
-            "เหตุกราดยิง 🔫😱",
-            "อุบัติเหตุ 💥🚑",
-            "อื่นๆ"
-        };
+        ReportType[] types = ReportType.values();
+        String[] type = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            type[i] = getString(types[i].labelRes);
+        }
         ArrayAdapter<String> adapter =
                 new ArrayAdapter<>(this, android.R.layout.simple_dropdown_item_1line, type);
         etType.setAdapter(adapter);
@@ -299,15 +586,12 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onItemClick(
                             AdapterView<?> parent, View view, int position, long id) {
-                        String selectedSeverity = type[position];
+                        selectedType = types[position];
                         Toast.makeText(
                                         MainActivity.this,
-                                        "เลือก: " + selectedSeverity,
+                                        "เลือก: " + type[position],
                                         Toast.LENGTH_SHORT)
                                 .show();
-
-                        // สามารถเก็บค่าไว้ใช้ตอนส่งข้อมูลได้
-                        // เช่น int severityLevel = position;
                     }
                 });
     }
@@ -351,12 +635,31 @@ public class MainActivity extends AppCompatActivity {
                     }
                 });
 
+        // กดค้าง: ส่ง SOS ทันทีจาก template ที่เตรียมไว้ ไม่ต้องกรอกแบบฟอร์ม
+        btnSendSOS.setOnLongClickListener(
+                new View.OnLongClickListener() {
+                    @Override
+                    public boolean onLongClick(View v) {
+                        long tapNanos = SystemClock.elapsedRealtimeNanos();
+                        v.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+                        sendQuickSOS(tapNanos);
+                        return true;
+                    }
+                });
+
         // Form actions
         btnCloseForm.setOnClickListener(
                 new View.OnClickListener() {
                     @Override
                     public void onClick(View v) {
+                        // เก็บชื่อ/ติดต่อไว้ใช้กับ SOS แบบกดค้าง แม้ยังไม่ได้ส่ง
+                        String name = etName.getText().toString().trim();
+                        String contact = etContact.getText().toString().trim();
+                        if (!name.isEmpty() && !contact.isEmpty()) {
+                            preferencesManager.report.saveProfile(name, contact);
+                        }
                         hideSOSForm();
+                        prepareQuickSos();
                     }
                 });
 
@@ -375,6 +678,49 @@ public class MainActivity extends AppCompatActivity {
                         submitSOSReport();
                     }
                 });
+
+        btnSyncPeers.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        startPeerSync();
+                    }
+                });
+
+        btnExportReports.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        chooseExportFormat();
+                    }
+                });
+
+        btnImportReports.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        intent.setType("*/*");
+                        startActivityForResult(intent, IMPORT_REQUEST_CODE);
+                    }
+                });
+
+        btnHeatmap.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        showHeatmap();
+                    }
+                });
+
+        btnSendGotHelp.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        sendGotHelp();
+                    }
+                });
     }
 
     private void updateMode(Mode mode) {
@@ -392,6 +738,12 @@ public class MainActivity extends AppCompatActivity {
                 // Show/hide content
                 victimModeContent.setVisibility(View.VISIBLE);
                 rescuerModeContent.setVisibility(View.GONE);
+
+                updateBeacon();
+                updateDeltaSubscription();
+                if (!isLocationRequestInProgress) {
+                    locationLib.stopLocationService();
+                }
                 break;
 
             case RESCUER:
@@ -408,12 +760,17 @@ public class MainActivity extends AppCompatActivity {
 
                 // Update reports count
                 updateReportsHeader();
+
+                updateBeacon();
+                updateDeltaSubscription();
+                startRescuerLocation();
                 break;
         }
     }
 
     private void updateConnectionStatus(boolean online) {
         isOnline = online;
+        updateDeltaSubscription();
 
         if (online) {
             // Online mode
@@ -460,74 +817,69 @@ public class MainActivity extends AppCompatActivity {
                 new LocationLib.LocationListener() {
                     @Override
                     public void onLocationReceived(android.location.Location location) {
-                        runOnUiThread(
-                                () -> {
-                                    isLocationRequestInProgress = false;
-                                    btnGetLocation.setEnabled(true);
-                                    locationLib.stopLocationService(); // หยุด service
-
-                                    if (location != null) {
-                                        currentLocation =
-                                                new MainActivity.Location(
-                                                        location.getLatitude(),
-                                                        location.getLongitude());
-
-                                        tvLocationInfo.setText(
-                                                getString(
-                                                        R.string.coordinates,
-                                                        String.format(
-                                                                Locale.getDefault(),
-                                                                "%.6f",
-                                                                currentLocation.lat),
-                                                        String.format(
-                                                                Locale.getDefault(),
-                                                                "%.6f",
-                                                                currentLocation.lng)));
-                                        tvLocationInfo.setVisibility(View.VISIBLE);
-                                        btnGetLocation.setText(getString(R.string.location_set));
+                        isLocationRequestInProgress = false;
+                        btnGetLocation.setEnabled(true);
+                        locationLib.stopLocationService(); // หยุด service
+
+                        if (location != null) {
+                            currentLocation =
+                                    new MainActivity.Location(
+                                            location.getLatitude(), location.getLongitude());
+
+                            tvLocationInfo.setText(
+                                    getString(
+                                            R.string.coordinates,
+                                            String.format(
+                                                    Locale.getDefault(),
+                                                    "%.6f",
+                                                    currentLocation.lat),
+                                            String.format(
+                                                    Locale.getDefault(),
+                                                    "%.6f",
+                                                    currentLocation.lng)));
+                            tvLocationInfo.setVisibility(View.VISIBLE);
+                            btnGetLocation.setText(getString(R.string.location_set));
+
+                            Report own = activeOwnReport();
+                            if (own != null) {
+                                own.location = currentLocation;
+                                updateOwnReport(own);
+                            } else {
+                                prepareQuickSos();
+                            }
 
-                                        Toast.makeText(
-                                                        MainActivity.this,
-                                                        "ได้ตำแหน่งแล้ว: "
-                                                                + location.getLatitude()
-                                                                + ", "
-                                                                + location.getLongitude(),
-                                                        Toast.LENGTH_SHORT)
-                                                .show();
-                                    } else {
-                                        btnGetLocation.setText(getString(R.string.get_location));
-                                    }
-                                });
+                            Toast.makeText(
+                                            MainActivity.this,
+                                            "ได้ตำแหน่งแล้ว: "
+                                                    + location.getLatitude()
+                                                    + ", "
+                                                    + location.getLongitude(),
+                                            Toast.LENGTH_SHORT)
+                                    .show();
+                        } else {
+                            btnGetLocation.setText(getString(R.string.get_location));
+                        }
                     }
 
                     @Override
                     public void onLocationError(String error) {
-                        runOnUiThread(
-                                () -> {
-                                    isLocationRequestInProgress = false;
-                                    btnGetLocation.setEnabled(true);
-                                    btnGetLocation.setText(getString(R.string.get_location));
-
-                                    Toast.makeText(
-                                                    MainActivity.this,
-                                                    "ผิดพลาด: " + error,
-                                                    Toast.LENGTH_SHORT)
-                                            .show();
-
-                                    useSavedLocation();
-                                });
+                        isLocationRequestInProgress = false;
+                        btnGetLocation.setEnabled(true);
+                        btnGetLocation.setText(getString(R.string.get_location));
+
+                        Toast.makeText(MainActivity.this, "ผิดพลาด: " + error, Toast.LENGTH_SHORT)
+                                .show();
+
+                        useSavedLocation();
                     }
 
                     @Override
                     public void onGPSEnabled() {
-                        runOnUiThread(
-                                () -> {
-                                    Toast.makeText(
-                                                    MainActivity.this,
-                                                    "GPS เปิดแล้ว กำลังดึงตำแหน่ง...",
-                                                    Toast.LENGTH_SHORT)
-                                            .show();
-                                });
+                        Toast.makeText(
+                                        MainActivity.this,
+                                        "GPS เปิดแล้ว กำลังดึงตำแหน่ง...",
+                                        Toast.LENGTH_SHORT)
+                                .show();
                     }
                 });
 
@@ -590,8 +942,6 @@ public class MainActivity extends AppCompatActivity {
         String name = etName.getText().toString().trim();
         String contact = etContact.getText().toString().trim();
         String details = etDetails.getText().toString().trim();
-        String level = etLevel.getText().toString().trim();
-        String type = etType.getText().toString().trim();
 
         // Validation
         if (name.isEmpty()) {
@@ -609,12 +959,12 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        if (level.isEmpty()) {
+        if (selectedLevel == null) {
             Toast.makeText(this, "กรุณาเลือกระดับการร้องขอของคุณ", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        if (type.isEmpty()) {
+        if (selectedType == null) {
             Toast.makeText(this, "กรุณาเลือกประเภท SOS", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -624,32 +974,980 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        preferencesManager.report.saveProfile(name, contact);
+
+        // รายงานที่ยังค้างอยู่ (เช่นจาก SOS แบบกดค้าง) ถูกแก้ด้วย id เดิม ไม่สร้างรายงานซ้ำ
+        Report own = activeOwnReport();
+        if (own != null) {
+            own.name = name;
+            own.contact = contact;
+            own.details = details;
+            own.level = selectedLevel;
+            own.type = selectedType;
+            own.location = currentLocation;
+            updateOwnReport(own);
+            Toast.makeText(this, "อัปเดตรายงาน SOS แล้ว", Toast.LENGTH_SHORT).show();
+            hideSOSForm();
+            showGotHelpBtn();
+            return;
+        }
+
         // Create new report
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm น.", new Locale("th", "TH"));
         Report newReport =
                 new Report(
-                        reports.size() + 1,
+                        newReportId(),
                         name,
                         contact,
                         details,
                         currentLocation,
-                        timeFormat.format(new Date()),
-                        level,
-                        "รอความช่วยเหลือ",
-                        type,
+                        ReportTime.now(),
+                        selectedLevel,
+                        ReportStatus.WAITING,
+                        selectedType,
                         !isOnline);
 
-        reports.add(0, newReport);
-        reportsAdapter.notifyItemInserted(0);
-        updateReportsHeader();
+        reportStore.setOwnReport(newReport.id);
+        insertReport(newReport);
+        ingestion.requestPublish();
 
+        sealReport(newReport);
         preferencesManager.report.storageReport(newReport);
 
+        // ออฟไลน์: ประกาศสัญญาณผ่าน BLE ให้หน่วยกู้ภัยที่อยู่ใกล้เห็น
+        if (!isOnline) {
+            beaconReport = newReport;
+            updateBeacon();
+        }
+
         Toast.makeText(this, "ส่งสัญญาณ SOS สำเร็จ", Toast.LENGTH_SHORT).show();
         hideSOSForm();
+        showGotHelpBtn();
+    }
+
+    /**
+     * ผู้ประสบภัยแจ้งว่าได้รับความช่วยเหลือแล้ว ส่งเป็น StatusEvent ไม่ต้องส่งรายงานใหม่ทั้งฉบับ
+     */
+    private void sendGotHelp() {
+        if (!preferencesManager.report.isReported()) return;
+        DeviceIdentity identity = deviceIdentity;
+        if (identity == null) {
+            Toast.makeText(this, "กำลังเตรียมกุญแจ กรุณาลองใหม่", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        int ownId = preferencesManager.report.getId();
+        StatusEvent latest = statusLog.get(ownId);
+        int version = latest != null ? latest.version : 0;
+        Report own = findReport(ownId);
+        if (own != null) version = Math.max(version, own.statusVersion);
+
+        long now = System.currentTimeMillis();
+        signStatusEvent(new StatusEvent(ownId, version + 1, ReportStatus.RESCUED, now), identity);
+        preferencesManager.report.setStatus(ReportStatus.RESCUED);
+
+        // ไม่ต้องประกาศ SOS ผ่าน BLE อีก
+        if (beaconReport != null && beaconReport.id == ownId) {
+            beaconReport = null;
+            updateBeacon();
+        }
+        hideGotHelpBtn();
+        Toast.makeText(this, R.string.got_help_sent, Toast.LENGTH_SHORT).show();
+        prepareQuickSos();
+    }
+
+    /**
+     * ส่ง SOS จาก template: เปิดวิทยุก่อน แล้วค่อยทำงานที่เหลือ (รายการ, prefs, ซอง)
+     * จากนั้นขอตำแหน่งใหม่และเปิดแบบฟอร์มให้เติมรายละเอียดเป็นการแก้รายงานเดิม
+     */
+    private void sendQuickSOS(long tapNanos) {
+        QuickSos.Template template = quickSos.take();
+        if (template == null) {
+            Toast.makeText(this, "ยังไม่มีตำแหน่งล่าสุด กรุณากรอกแบบฟอร์ม", Toast.LENGTH_SHORT)
+                    .show();
+            showSOSForm();
+            return;
+        }
+        Report report = template.report;
+        beaconReport = report;
+        if (hasBluetoothPermission()) {
+            beaconController.advertiseNow(template.beacon);
+            if (!quickSos.recordLatency(tapNanos, SystemClock.elapsedRealtimeNanos())) {
+                Log.w(
+                        TAG,
+                        "Quick SOS broadcast took "
+                                + quickSos.getLastLatencyNanos() / 1_000_000
+                                + " ms");
+            }
+        } else {
+            // ขอสิทธิ์ก่อน beacon จะเริ่มหลังได้รับสิทธิ์
+            updateBeacon();
+        }
+
+        // template เตรียมไว้นานแล้ว ใช้เวลาที่กดแทน (ต้องเซ็นใหม่ ระหว่างนั้นส่งต่อซองเดิม)
+        long now = ReportTime.now();
+        boolean restamped = now - report.timestamp >= QUICK_SOS_RESTAMP_MS;
+        if (restamped) report.timestamp = now;
+        report.relayed = !isOnline;
+        reportStore.setOwnReport(report.id);
+        insertReport(report);
+        ingestion.requestPublish();
+        if (restamped || report.envelope == null) sealReport(report);
+        preferencesManager.report.storageReport(report);
+
+        showSOSForm();
+        etDetails.getText().clear();
+        showGotHelpBtn();
+        requestLocation();
+        Toast.makeText(this, "ส่งสัญญาณ SOS แล้ว เพิ่มรายละเอียดในแบบฟอร์มได้", Toast.LENGTH_SHORT)
+                .show();
+    }
+
+    /**
+     * เตรียม template ของ SOS แบบกดค้างจากโปรไฟล์และตำแหน่งล่าสุด
+     * ไม่เตรียมถ้ามีรายงานของเครื่องนี้ค้างอยู่แล้ว หรือยังไม่เคยได้ตำแหน่ง
+     */
+    private void prepareQuickSos() {
+        MainActivity.Location fix = currentLocation;
+        if (fix == null && locationLib.hasSavedLocation()) {
+            android.location.Location saved = locationLib.getLastLocationFromPrefs();
+            if (saved != null) {
+                fix = new MainActivity.Location(saved.getLatitude(), saved.getLongitude());
+            }
+        }
+        if (activeOwnReport() != null || fix == null) {
+            quickSos.clear();
+            return;
+        }
+        String name = preferencesManager.report.getProfileName();
+        String contact = preferencesManager.report.getProfileContact();
+        QuickSos.Template template =
+                quickSos.prepare(
+                        newReportId(),
+                        name != null && !name.isEmpty() ? name : getString(R.string.quick_sos_name),
+                        contact != null ? contact : "",
+                        getString(R.string.quick_sos_details),
+                        fix,
+                        ReportTime.now());
+        // เซ็นล่วงหน้าบน cpu executor ถ้ากุญแจยังโหลดไม่เสร็จจะเซ็นตอนส่ง
+        sealReport(template.report);
+    }
+
+    /**
+     * รายงานของเครื่องนี้ที่ยังไม่ถึงสถานะสุดท้าย หรือ null
+     */
+    private Report activeOwnReport() {
+        if (!preferencesManager.report.isReported()) return null;
+        Report own = reportsById.get(preferencesManager.report.getId());
+        return own != null && !own.status.isFinal() ? own : null;
+    }
+
+    /**
+     * ส่งรายละเอียด/ตำแหน่งเพิ่มเติมเป็นการแก้รายงานเดิม (id เดิม) แทนการสร้างรายงานใหม่
+     * beacon ประกาศตำแหน่งและระดับใหม่ เครื่องที่มีแค่ข้อมูลจาก beacon อัปเดตตาม (onBeaconReceived)
+     * ซองเดิมยังส่งต่อได้จนกว่าซองใหม่จะเซ็นเสร็จ
+     */
+    private void updateOwnReport(Report own) {
+        indexReport(own);
+        sealReport(own);
+        preferencesManager.report.storageReport(own);
+        if (beaconReport == own) updateBeacon();
+        ingestion.requestPublish();
+    }
+
+    /**
+     * เลือกสถานะถัดไปของรายงาน จากสถานะที่เปลี่ยนไปได้และผู้ใช้มีสิทธิ์เท่านั้น
+     * ผู้แจ้งเปลี่ยนรายงานของตัวเองได้ทุกสถานะ หน่วยกู้ภัยได้แค่ ACKNOWLEDGED และ EN_ROUTE
+     */
+    private void showStatusChooser(Report report) {
+        if (report.status.isFinal()) {
+            Toast.makeText(this, R.string.status_final, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        boolean own = isOwnReport(report.id);
+        DeviceIdentity identity = own ? deviceIdentity : rescuerIdentity;
+        if (identity == null) {
+            Toast.makeText(this, "เปลี่ยนสถานะได้เฉพาะผู้แจ้งหรือหน่วยกู้ภัย", Toast.LENGTH_SHORT)
+                    .show();
+            return;
+        }
+        List<ReportStatus> options = new ArrayList<>();
+        for (ReportStatus status : ReportStatus.values()) {
+            if (!report.status.canTransitionTo(status)) continue;
+            if (own || status == ReportStatus.ACKNOWLEDGED || status == ReportStatus.EN_ROUTE) {
+                options.add(status);
+            }
+        }
+        if (options.isEmpty()) {
+            Toast.makeText(this, R.string.status_final, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        CharSequence[] labels = new CharSequence[options.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = getString(options.get(i).labelRes);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.change_status)
+                .setItems(
+                        labels,
+                        (dialog, which) -> {
+                            StatusEvent event =
+                                    StatusEvent.next(
+                                            report, options.get(which), System.currentTimeMillis());
+                            if (event != null) signStatusEvent(event, identity);
+                        })
+                .show();
+    }
+
+    /**
+     * เซ็น event บน cpu thread (keystore อาจช้า) แล้วใช้บน main thread
+     */
+    private void signStatusEvent(StatusEvent event, DeviceIdentity identity) {
+        executors.submit(
+                executors.cpu(),
+                () -> event.signedBy(identity),
+                this::applyStatusEvent,
+                e -> Log.w(TAG, "Cannot sign status event", e));
+    }
+
+    /**
+     * ผู้เซ็น event มีสิทธิ์เปลี่ยนสถานะของรายงานนี้หรือไม่ (report เป็น null ได้)
+     * รายงานของเครื่องนี้ที่ยังเซ็นซองไม่เสร็จ ยอมรับ event ที่เซ็นด้วยกุญแจของเครื่องนี้
+     */
+    private boolean isAuthorized(StatusEvent event, Report report) {
+        if (event.isAuthorizedFor(report, rescueNetworkKeyBytes)) return true;
+        DeviceIdentity identity = deviceIdentity;
+        return isOwnReport(event.reportId)
+                && identity != null
+                && event.signer != null
+                && Arrays.equals(event.signer, identity.getEncodedPublicKey());
+    }
+
+    /**
+     * event ใน log ที่มาถึงก่อนรายงาน ใช้ได้ถ้าผู้เซ็นมีสิทธิ์กับรายงานนี้
+     */
+    private StatusEvent pendingStatus(Report report) {
+        StatusEvent pending = statusLog.get(report.id);
+        return pending != null && isAuthorized(pending, report) ? pending : null;
+    }
+
+    /**
+     * ใช้ StatusEvent ที่เซ็นแล้ว (จากเครื่องนี้หรือเครื่องอื่น) บันทึกลง log และอัปเดตรายการ
+     * event ที่ผู้เซ็นไม่มีสิทธิ์ถูกทิ้ง
+     * event ของรายงานที่ยังไม่มีในเครื่อง (ของหน่วยกู้ภัยเท่านั้น) เก็บไว้ใช้เมื่อรายงานมาถึง
+     */
+    private void applyStatusEvent(StatusEvent event) {
+        Report report = reportsById.get(event.reportId);
+        if (!isAuthorized(event, report)) {
+            Log.w(TAG, "Unauthorized status for report " + event.reportId);
+            return;
+        }
+        executors
+                .disk()
+                .execute(
+                        () -> {
+                            try {
+                                statusLog.append(event);
+                            } catch (IOException e) {
+                                Log.w(TAG, "Cannot write status log", e);
+                            }
+                        });
+        if (report != null && event.applyTo(report)) {
+            indexReport(report);
+            ingestion.requestPublish();
+        }
+    }
+
+    private boolean isOwnReport(int id) {
+        return preferencesManager.report.isReported() && preferencesManager.report.getId() == id;
+    }
+
+    private Report findReport(int id) {
+        return reportsById.get(id);
+    }
+
+    /**
+     * โหลดกุญแจบน disk thread แล้วสร้าง WifiDirectSync (ต้องใช้ envelopeVerifier) บน main thread
+     */
+    private void setupIdentity() {
+        executors
+                .disk()
+                .execute(
+                        () -> {
+                            loadIdentity();
+                            executors
+                                    .main()
+                                    .execute(
+                                            () -> {
+                                                if (isDestroyed()) return;
+                                                if (deviceIdentity != null) {
+                                                    ownRescuerId =
+                                                            Arrays.hashCode(
+                                                                            deviceIdentity
+                                                                                    .getEncodedPublicKey())
+                                                                    & Integer.MAX_VALUE;
+                                                }
+                                                wifiDirectSync =
+                                                        new WifiDirectSync(
+                                                                this,
+                                                                new ActivityReportStore(),
+                                                                envelopeVerifier,
+                                                                ingressGuard);
+                                                wifiDirectSync.setFanoutLimit(
+                                                        workloadGovernor.getBudget().relayFanout);
+                                                QuickSos.Template template = quickSos.peek();
+                                                if (template != null) sealReport(template.report);
+                                                updateDeltaSubscription();
+                                            });
+                        });
+    }
+
+    /**
+     * โหลดกุญแจประจำเครื่อง และกุญแจเครือข่ายกู้ภัย (ไฟล์ก่อน แล้วค่อย R.string.rescue_network_key)
+     * ถ้า keystore ใช้ไม่ได้จะใช้กุญแจชั่วคราวในหน่วยความจำแทน
+     */
+    private void loadIdentity() {
+        try {
+            deviceIdentity = DeviceIdentity.loadOrCreate();
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Keystore unavailable, using session key", e);
+            try {
+                deviceIdentity = DeviceIdentity.generate();
+            } catch (GeneralSecurityException fatal) {
+                Log.e(TAG, "Cannot create device key", fatal);
+                return;
+            }
+        }
+
+        PrivateKey rescuerKey = null;
+        try {
+            byte[] publicKey = readFileIfExists(RESCUE_PUBLIC_KEY_FILE);
+            if (publicKey == null) publicKey = bundledRescueKey();
+            if (publicKey == null) {
+                Log.w(TAG, "No rescue network key, not encrypting");
+            } else {
+                rescueNetworkKey =
+                        ReportEnvelope.readRecipientKey(publicKey, deviceIdentity.getParams());
+                rescueNetworkKeyBytes = publicKey;
+            }
+            byte[] privateKey = readFileIfExists(RESCUE_PRIVATE_KEY_FILE);
+            if (privateKey != null) {
+                rescuerKey =
+                        KeyFactory.getInstance("EC")
+                                .generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+                if (rescueNetworkKey != null) {
+                    rescuerIdentity = new DeviceIdentity(new KeyPair(rescueNetworkKey, rescuerKey));
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            Log.w(TAG, "Cannot load rescue network key", e);
+        }
+        envelopeVerifier = new ReportEnvelope.Verifier(deviceIdentity.getParams(), rescuerKey);
+    }
+
+    private byte[] bundledRescueKey() throws GeneralSecurityException {
+        String encoded = getString(R.string.rescue_network_key).trim();
+        if (encoded.isEmpty()) return null;
+        try {
+            return Base64.decode(encoded, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid rescue_network_key", e);
+        }
+    }
+
+    private byte[] readFileIfExists(String name) throws IOException {
+        File file = new File(getFilesDir(), name);
+        if (!file.exists()) return null;
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    /**
+     * เซ็นรายงานของเครื่องนี้ และเข้ารหัสข้อมูลส่วนตัวถ้ามีกุญแจเครือข่ายกู้ภัย
+     * เซ็นสำเนาบน cpu thread (main thread แก้รายงานได้ระหว่างนั้น) แล้วแทนซองเดิมเมื่อเสร็จ
+     * รายงานที่ยังไม่เคยมีซองจะไม่ถูกส่งต่อจนกว่าจะเซ็นเสร็จ (ReportSync ส่งเฉพาะรายงานที่เซ็นแล้ว)
+     */
+    private void sealReport(Report report) {
+        DeviceIdentity identity = deviceIdentity;
+        if (identity == null) return;
+        PublicKey recipient = rescueNetworkKey;
+        Report content = SessionCheckpoint.copyOf(report);
+        // เวลาที่แก้ แต่ต้องมากกว่าซองเดิมเสมอ เครื่องอื่นจึงแทนฉบับเก่าด้วยฉบับนี้
+        long version =
+                Math.max(ReportTime.now(), ReportEnvelope.peekContentVersion(report.envelope) + 1);
+        int request = ++sealSequence;
+        sealRequests.put(report.id, request);
+        executors.submit(
+                executors.cpu(),
+                () -> ReportEnvelope.seal(content, identity, recipient, version),
+                envelope -> {
+                    // ซองของการแก้ครั้งก่อนที่เซ็นเสร็จช้ากว่าครั้งล่าสุดถูกทิ้ง
+                    Integer latest = sealRequests.get(report.id);
+                    if (latest == null || latest != request) return;
+                    sealRequests.remove(report.id);
+                    report.envelope = envelope;
+                    staleCopies.add(report.id);
+                    ingestion.requestPublish();
+                },
+                e -> Log.w(TAG, "Cannot seal report", e));
+    }
+
+    /**
+     * อ่าน status log และรายงานที่บันทึกไว้บน disk thread แล้วรวมเข้ารายการบน main thread
+     * status log ใช้งานได้ทันที event ที่บันทึกก่อนโหลดเสร็จจะต่อท้ายหลังการโหลด (disk thread เดียว)
+     */
+    private void loadStoredReports() {
+        statusLog = new StatusLog(new File(getFilesDir(), STATUS_LOG_FILE));
+        SessionCheckpoint session =
+                new SessionCheckpoint(new File(getFilesDir(), CHECKPOINT_FILE));
+        checkpoint = session;
+        File reportsFile = new File(getFilesDir(), REPORTS_FILE);
+        executors.submit(
+                executors.disk(),
+                () -> {
+                    try {
+                        statusLog.load();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Cannot read status log", e);
+                    }
+                    SessionCheckpoint.Restored restored = null;
+                    try {
+                        restored = session.read();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Cannot read checkpoint", e);
+                    }
+                    if (restored != null) return restored;
+                    // เครื่องที่ยังไม่เคยมี checkpoint ใช้ไฟล์ของ BoundedReportStore
+                    List<Report> saved = BoundedReportStore.load(reportsFile);
+                    Collections.reverse(saved);
+                    return new SessionCheckpoint.Restored(saved, null, 0);
+                },
+                this::onStoredReportsLoaded,
+                e -> {
+                    Log.w(TAG, "Cannot read saved reports", e);
+                    onStoredReportsLoaded(
+                            new SessionCheckpoint.Restored(new ArrayList<>(), null, 0));
+                });
+    }
+
+    /**
+     * รายงานใน checkpoint เรียงเก่าไปใหม่ ส่วนรายการบนจอเรียงใหม่ไปเก่า
+     * คำค้นหาที่ตัดไว้ใน checkpoint ใส่ index ได้เลยไม่ต้องตัดคำใหม่
+     */
+    private void onStoredReportsLoaded(SessionCheckpoint.Restored restored) {
+        if (isDestroyed()) return;
+        Set<Integer> known = new HashSet<>();
+        for (Report report : reports) {
+            known.add(report.id);
+        }
+        Map<Integer, String[]> tokens = new HashMap<>();
+        for (int i = restored.reports.size() - 1; i >= 0; i--) {
+            Report report = restored.reports.get(i);
+            if (!known.add(report.id)) continue;
+            reports.add(report);
+            if (restored.tokens != null) tokens.put(report.id, restored.tokens.get(i));
+        }
+        for (Report report : reports) {
+            StatusEvent event = pendingStatus(report);
+            // สถานะเปลี่ยนหลัง checkpoint ให้ผ่าน indexReport เพื่อเขียน checkpoint ใหม่
+            if (event != null && event.applyTo(report)) tokens.remove(report.id);
+        }
+        indexAllReports(tokens);
+        storedReportsLoaded = true;
+        ingestion.requestPublish();
+        if (restored.scrollPosition > 0) {
+            // LayoutManager จำตำแหน่งไว้จนถึง layout หลัง publish ในเฟรมเดียวกัน
+            ((LinearLayoutManager) rvReports.getLayoutManager())
+                    .scrollToPositionWithOffset(restored.scrollPosition, 0);
+        }
+    }
+
+    /**
+     * สำเนารายงานที่เปลี่ยนตั้งแต่ครั้งก่อนบน main thread แล้วเขียนต่อท้าย checkpoint บน disk thread
+     * ถ้า checkpoint ต้อง compact หรือยังไม่มีฐาน จะเขียนทั้งรายการแทน
+     */
+    private void checkpointSession() {
+        SessionCheckpoint target = checkpoint;
+        if (target == null || !storedReportsLoaded) return;
+        int scroll =
+                ((LinearLayoutManager) rvReports.getLayoutManager())
+                        .findFirstVisibleItemPosition();
+        boolean full = target.needsCompaction();
+        if (!full
+                && dirtyReportIds.isEmpty()
+                && removedReportIds.isEmpty()
+                && scroll == checkpointScroll) {
+            return;
+        }
+        List<Report> changed = new ArrayList<>(full ? reports.size() : dirtyReportIds.size());
+        for (int i = reports.size() - 1; i >= 0; i--) {
+            Report report = reports.get(i);
+            if (full || dirtyReportIds.contains(report.id)) {
+                changed.add(SessionCheckpoint.copyOf(report));
+            }
+        }
+        // เลขลำดับต้องอ่านก่อนเช็กคิว: event ถึงเลขนี้ถูก offer ไปแล้ว ถ้าคิวว่างก็อยู่ใน reports แล้ว
+        DeltaSubscription subscription = deltaSubscription;
+        long applied = subscription != null ? subscription.getLastSequence() : -1;
+        long deltaSequence = ingestion.isIdle() ? applied : -1;
+        String deltaKey = subscription != null ? deltaSequenceKey() : null;
+        int[] removed = new int[removedReportIds.size()];
+        int next = 0;
+        for (int id : removedReportIds) removed[next++] = id;
+        dirtyReportIds.clear();
+        removedReportIds.clear();
+        checkpointScroll = scroll;
+        executors
+                .disk()
+                .execute(
+                        () -> {
+                            try {
+                                target.write(changed, removed, Math.max(scroll, 0), full);
+                                // บันทึกหลัง checkpoint เขียนสำเร็จ ไม่งั้นต่อใหม่แล้วข้ามรายงานที่ยังไม่ถูกเก็บ
+                                if (deltaSequence > 0) {
+                                    preferencesManager.addData(
+                                            deltaKey, String.valueOf(deltaSequence));
+                                }
+                            } catch (IOException e) {
+                                Log.w(TAG, "Cannot write checkpoint", e);
+                            }
+                        });
+    }
+
+    /**
+     * เปิด subscription เมื่ออยู่โหมดกู้ภัย ออนไลน์ และตั้ง coordination_url ไว้ ปิดเมื่อไม่ใช่
+     * รอกุญแจโหลดเสร็จก่อน (setupIdentity เรียกซ้ำ) เพื่อให้เปิดซองได้
+     */
+    private void updateDeltaSubscription() {
+        String endpoint = getString(R.string.coordination_url);
+        boolean wanted =
+                currentMode == Mode.RESCUER
+                        && isOnline
+                        && !endpoint.isEmpty()
+                        && wifiDirectSync != null;
+        if (!wanted) {
+            if (deltaSubscription != null) {
+                deltaSubscription.stop();
+                deltaSubscription = null;
+            }
+            return;
+        }
+        if (deltaSubscription != null) return;
+        try {
+            deltaSubscription =
+                    new DeltaSubscription(
+                            new URL(endpoint),
+                            envelopeVerifier,
+                            serverGuard,
+                            new DeltaSubscription.Listener() {
+                                @Override
+                                public void onReports(List<Report> received) {
+                                    ingestion.offerAll(received);
+                                }
+
+                                @Override
+                                public void onStatus(List<StatusEvent> events) {
+                                    ingestion.offerStatus(events);
+                                }
+
+                                @Override
+                                public void onSnapshot(long sequence) {
+                                    Log.w(TAG, "Coordination snapshot at " + sequence);
+                                }
+
+                                @Override
+                                public void onConnectionChanged(boolean connected) {}
+                            });
+        } catch (MalformedURLException e) {
+            Log.w(TAG, "Invalid coordination_url", e);
+            return;
+        }
+        long sequence = 0;
+        String saved = preferencesManager.readData(deltaSequenceKey());
+        if (saved != null) {
+            try {
+                sequence = Long.parseLong(saved);
+            } catch (NumberFormatException ignored) {
+                // เริ่มใหม่ด้วย snapshot
+            }
+        }
+        deltaSubscription.start(sequence);
+    }
+
+    /**
+     * เลขลำดับใช้ได้กับเซิร์ฟเวอร์เดียว จึงเก็บแยกตาม url
+     */
+    private String deltaSequenceKey() {
+        return "DELTA_SEQUENCE:" + getString(R.string.coordination_url);
+    }
+
+    private static int newReportId() {
+        // id ต้องไม่ซ้ำข้ามเครื่อง เพราะถูกส่งต่อผ่าน beacon/mesh
+        return ID_RANDOM.nextInt() & Integer.MAX_VALUE;
+    }
+
+    private boolean hasBluetoothPermission() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true;
+        return ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_ADVERTISE)
+                        == PackageManager.PERMISSION_GRANTED
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN)
+                        == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * ผู้ประสบภัยที่มีรายงานค้างอยู่จะ advertise, โหมดกู้ภัยจะ scan
+     */
+    private void updateBeacon() {
+        if (currentMode == Mode.VICTIM && beaconReport == null) {
+            beaconController.stop();
+            return;
+        }
+
+        if (!hasBluetoothPermission()) {
+            ActivityCompat.requestPermissions(
+                    this,
+                    new String[] {
+                        Manifest.permission.BLUETOOTH_ADVERTISE,
+                        Manifest.permission.BLUETOOTH_SCAN,
+                        Manifest.permission.BLUETOOTH_CONNECT
+                    },
+                    BLUETOOTH_PERMISSION_REQUEST_CODE);
+            return;
+        }
+
+        if (currentMode == Mode.VICTIM) {
+            beaconController.advertise(beaconReport);
+        } else {
+            beaconController.scan(
+                    new BeaconScheduler.Listener() {
+                        @Override
+                        public void onBeacon(BeaconPayload payload, int rssi) {
+                            ingestion.offer(payload);
+                        }
+                    });
+        }
+    }
+
+    private void onBeaconReceived(BeaconPayload payload) {
+        Report known = reportsById.get(payload.reportId);
+        if (known != null) {
+            // beacon ไม่ได้เซ็น แก้ได้เฉพาะรายงานที่ไม่มีซอง (เช่นที่มาจาก beacon เอง) ซองชนะเสมอ
+            if (known.envelope != null || isOwnReport(known.id)) return;
+            known.location = payload.getLocation();
+            known.level = payload.severity;
+            indexReport(known);
+            ingestion.requestPublish();
+            return;
+        }
+
+        // beacon ไม่มีที่อยู่ผู้ส่งที่เชื่อถือได้ ทุก beacon ใช้ bucket เดียวกัน
+        if (ingressGuard.check(BEACON_PEER, payload.reportId, System.currentTimeMillis())
+                != IngressGuard.Verdict.ACCEPT) {
+            return;
+        }
+        ingressGuard.markSeen(payload.reportId);
+
+        Report report =
+                new Report(
+                        payload.reportId,
+                        getString(R.string.beacon_report_name),
+                        "",
+                        "",
+                        payload.getLocation(),
+                        ReportTime.now(),
+                        payload.severity,
+                        ReportStatus.WAITING,
+                        ReportType.OTHER,
+                        true);
+        insertReport(report);
+        ingestion.requestPublish();
+    }
+
+    private void startPeerSync() {
+        if (wifiDirectSync == null) {
+            // ยังโหลดกุญแจไม่เสร็จ (setupIdentity)
+            Toast.makeText(this, "กำลังเตรียมการซิงก์ กรุณาลองอีกครั้ง", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(
+                                this, Manifest.permission.NEARBY_WIFI_DEVICES)
+                        != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(
+                    this,
+                    new String[] {Manifest.permission.NEARBY_WIFI_DEVICES},
+                    WIFI_PERMISSION_REQUEST_CODE);
+            return;
+        }
+
+        wifiDirectSync.start(
+                new WifiDirectSync.Listener() {
+                    @Override
+                    public void onSyncFinished(ReportSync.Result result) {
+                        runOnUiThread(
+                                () ->
+                                        Toast.makeText(
+                                                        MainActivity.this,
+                                                        getString(
+                                                                R.string.sync_result,
+                                                                result.reportsSent,
+                                                                result.reportsReceived),
+                                                        Toast.LENGTH_SHORT)
+                                                .show());
+                    }
+
+                    @Override
+                    public void onSyncError(String error) {
+                        runOnUiThread(
+                                () ->
+                                        Toast.makeText(
+                                                        MainActivity.this,
+                                                        "ผิดพลาด: " + error,
+                                                        Toast.LENGTH_SHORT)
+                                                .show());
+                    }
+                });
+    }
+
+    /**
+     * เพิ่มรายงานที่ได้จากเครื่องอื่น ข้ามรายงานที่มี id ซ้ำ
+     * ยกเว้นซองฉบับแก้ (contentVersion ใหม่กว่า) จากผู้แจ้งคนเดิม ซึ่งแทนฉบับเดิมโดยคงสถานะไว้
+     */
+    private void mergeReport(Report report) {
+        Report known = reportsById.get(report.id);
+        if (known != null) {
+            // รายงานที่เซ็นแล้วแทนที่ของเดิมที่ไม่มีซอง (จาก beacon) ได้ แต่ไม่แทนรายงานของเครื่องนี้
+            if (report.envelope == null || isOwnReport(known.id)) return;
+            if (known.envelope != null && !isNewerEdit(report.envelope, known.envelope)) return;
+            if (known.envelope != null) {
+                // ซองไม่มีสถานะ ฉบับที่ได้มาเป็น WAITING เสมอ StatusEvent ที่ติดมาตามมาทีหลัง
+                report.status = known.status;
+                report.statusVersion = known.statusVersion;
+                report.statusEvent = known.statusEvent;
+            }
+            dropReport(known);
+        }
+        report.relayed = true;
+        if (report.envelope != null && report.name.isEmpty()) {
+            // ซองที่เครื่องนี้เปิดไม่ได้ ส่งต่อได้แต่ไม่เห็นข้อมูลส่วนตัว
+            report.name = getString(R.string.encrypted_report_name);
+        }
+        StatusEvent pending = pendingStatus(report);
+        if (pending != null) pending.applyTo(report);
+        insertReport(report);
+    }
+
+    private static boolean isNewerEdit(byte[] envelope, byte[] known) {
+        return ReportEnvelope.sameSigner(envelope, known)
+                && ReportEnvelope.peekContentVersion(envelope)
+                        > ReportEnvelope.peekContentVersion(known);
+    }
+
+    /**
+     * ReportSync อ่าน snapshot ล่าสุดที่ publish แล้ว (ไม่ต้องรอ main thread)
+     * และส่งของที่ได้รับเข้า IngestionPipeline
+     */
+    private class ActivityReportStore implements ReportSync.Store {
+        @Override
+        public List<Report> snapshot() {
+            return publishedReports;
+        }
+
+        @Override
+        public void addReports(List<Report> received) {
+            ingestion.offerAll(received);
+        }
+
+        @Override
+        public void applyStatus(List<StatusEvent> events) {
+            ingestion.offerStatus(events);
+        }
+
+        @Override
+        public List<AssignmentSolver.Rescuer> rescuers() {
+            return publishedRescuers;
+        }
+
+        @Override
+        public void applyRescuers(List<AssignmentSolver.Rescuer> received) {
+            executors.main().execute(() -> addRescuers(received));
+        }
+    }
+
+    private class ReportSink implements IngestionPipeline.Sink {
+        @Override
+        public void onReport(Report report) {
+            mergeReport(report);
+        }
+
+        @Override
+        public void onStatusEvent(StatusEvent event) {
+            applyStatusEvent(event);
+        }
+
+        @Override
+        public void onBeacon(BeaconPayload payload) {
+            onBeaconReceived(payload);
+        }
+
+        @Override
+        public void publish() {
+            publishReports();
+        }
+    }
+
+    /**
+     * ตำแหน่งหน่วยกู้ภัยที่ได้จากการซิงก์ (ของเครื่องนี้เองมาจาก GPS เท่านั้น)
+     */
+    private void addRescuers(List<AssignmentSolver.Rescuer> received) {
+        boolean changed = false;
+        for (AssignmentSolver.Rescuer rescuer : received) {
+            if (rescuer.id == ownRescuerId) continue;
+            changed |= assignmentSolver.updateRescuer(rescuer);
+        }
+        if (!changed) return;
+        publishedRescuers = assignmentSolver.getRescuers();
+        ingestion.requestPublish();
+    }
+
+    /**
+     * หาคู่หน่วย/รายงานที่ดีที่สุดใหม่บน cpu executor ระหว่างนั้นการเปลี่ยนแปลงใช้ greedy ไปก่อน
+     */
+    private void optimizeAssignments() {
+        assignmentSolver.expireRescuers(ReportTime.now() - RESCUER_TTL_MS);
+        publishedRescuers = assignmentSolver.getRescuers();
+        if (assignmentSolving
+                || assignmentSolver.getRescuerCount() == 0
+                || assignmentSolver.getTaskCount() == 0) {
+            return;
+        }
+        AssignmentSolver.Problem problem = assignmentSolver.snapshot();
+        assignmentSolving = true;
+        executors.submit(
+                executors.cpu(),
+                () -> AssignmentSolver.solve(problem),
+                solution -> {
+                    assignmentSolving = false;
+                    assignmentSolver.apply(problem, solution);
+                    ingestion.requestPublish();
+                },
+                e -> {
+                    assignmentSolving = false;
+                    Log.w(TAG, "Cannot solve assignments", e);
+                });
+    }
+
+    private void chooseExportFormat() {
+        ReportExport.Format[] formats = ReportExport.Format.values();
+        CharSequence[] labels = {"GeoJSON", "CSV", "mSOS (ส่งต่อระหว่างเครื่อง)"};
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.export_format_title)
+                .setItems(
+                        labels,
+                        (dialog, which) -> {
+                            pendingExportFormat = formats[which];
+                            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                            intent.addCategory(Intent.CATEGORY_OPENABLE);
+                            intent.setType(pendingExportFormat.mimeType);
+                            intent.putExtra(
+                                    Intent.EXTRA_TITLE,
+                                    "msos-reports." + pendingExportFormat.extension);
+                            startActivityForResult(intent, EXPORT_REQUEST_CODE);
+                        })
+                .show();
+    }
+
+    /**
+     * เขียน snapshot ที่ publish แล้วลงไฟล์บน disk thread (เป็นสำเนาที่ไม่มีใครแก้แล้ว)
+     */
+    private void exportReports(Uri uri, ReportExport.Format format) {
+        List<Report> snapshot = publishedReports;
+        executors.submit(
+                executors.disk(),
+                () -> {
+                    try (ParcelFileDescriptor pfd =
+                                    getContentResolver().openFileDescriptor(uri, "w");
+                            FileOutputStream out = new FileOutputStream(pfd.getFileDescriptor())) {
+                        FileChannel channel = out.getChannel();
+                        // ไฟล์เดิมที่ถูกเลือกทับอาจยาวกว่า
+                        channel.truncate(0);
+                        return ReportExport.export(snapshot, format, channel);
+                    }
+                },
+                count ->
+                        Toast.makeText(this, "ส่งออกแล้ว " + count + " รายงาน", Toast.LENGTH_SHORT)
+                                .show(),
+                e -> {
+                    Log.w(TAG, "Cannot export reports", e);
+                    Toast.makeText(this, "ส่งออกรายงานไม่สำเร็จ", Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    /**
+     * อ่านไฟล์บน disk thread แล้วส่งเป็นชุดมาใส่รายการบน main thread
+     * ไม่ index ทีละรายงาน แต่สร้าง index ใหม่ครั้งเดียวเมื่ออ่านครบ (indexAllReports)
+     */
+    private void importReports(Uri uri) {
+        executors.submit(
+                executors.disk(),
+                () -> {
+                    try (InputStream in =
+                            new BufferedInputStream(
+                                    getContentResolver().openInputStream(uri))) {
+                        ReportExport.Format format = ReportExport.detect(in);
+                        return ReportExport.importReports(
+                                Channels.newChannel(in),
+                                format,
+                                batch -> executors.main().execute(() -> addImportedReports(batch)));
+                    }
+                },
+                // ส่งหลังชุดสุดท้ายเพราะ main executor ทำตามลำดับ
+                count -> {
+                    if (isDestroyed()) return;
+                    indexAllReports();
+                    ingestion.requestPublish();
+                    Toast.makeText(this, "นำเข้าแล้ว " + count + " รายงาน", Toast.LENGTH_SHORT)
+                            .show();
+                },
+                e -> {
+                    Log.w(TAG, "Cannot import reports", e);
+                    Toast.makeText(this, "ไฟล์รายงานไม่ถูกต้อง", Toast.LENGTH_SHORT).show();
+                    if (!isDestroyed()) indexAllReports();
+                });
+    }
+
+    /**
+     * ใส่รายงานที่นำเข้าลงรายการและ BoundedReportStore (ให้หน่วยความจำอยู่ในเพดานระหว่างนำเข้า)
+     * แต่ยังไม่ index จนกว่าจะอ่านครบ
+     */
+    private void addImportedReports(List<Report> batch) {
+        if (isDestroyed()) return;
+        long now = ReportTime.now();
+        Set<Report> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Report report : batch) {
+            if (reportsById.containsKey(report.id)) continue;
+            report.relayed = true;
+            StatusEvent pending = pendingStatus(report);
+            if (pending != null) pending.applyTo(report);
+            reports.add(report);
+            publishedCopies.add(report);
+            staleCopies.add(report.id);
+            reportsById.put(report.id, report);
+            for (Report dropped : reportStore.put(report, now)) {
+                evicted.add(dropped);
+                reportsById.remove(dropped.id);
+                staleCopies.remove(dropped.id);
+            }
+        }
+        if (evicted.isEmpty()) return;
+        // ลบในรอบเดียวแทน reports.remove ทีละตัว
+        reports.removeAll(evicted);
+        publishedCopies.removeAll(evicted);
     }
 
     private void loadSampleReports() {
+        long now = ReportTime.now();
         reports.add(
                 new Report(
                         1,
@@ -657,10 +1955,10 @@ public class MainActivity extends AppCompatActivity {
                         "081-234-5678",
                         "ติดอยู่บนหลังคาบ้าน น้ำท่วมสูง ต้องการความช่วยเหลือด่วน",
                         new Location(13.7563, 100.5018),
-                        "10:30 น.",
-                        "🔴 วิกฤติ - อันตรายถึงชีวิต",
-                        "รอความช่วยเหลือ",
-                        "แผ่นดินไหว 🌍🔊",
+                        now - 45 * 60_000L,
+                        Severity.CRITICAL,
+                        ReportStatus.WAITING,
+                        ReportType.EARTHQUAKE,
                         false));
 
         reports.add(
@@ -670,35 +1968,529 @@ public class MainActivity extends AppCompatActivity {
                         "089-876-5432",
                         "มีผู้สูงอายุและเด็กเล็ก ต้องการอาหารและน้ำดื่ม",
                         new Location(13.7465, 100.5341),
-                        "09:15 น.",
-                        "🔴 วิกฤติ - อันตรายถึงชีวิต",
-                        "รอความช่วยเหลือ",
-                        "แผ่นดินไหว 🌍🔊",
+                        now - 2 * 60 * 60_000L,
+                        Severity.CRITICAL,
+                        ReportStatus.WAITING,
+                        ReportType.EARTHQUAKE,
                         true));
     }
 
+    private void indexAllReports() {
+        indexAllReports(Collections.<Integer, String[]>emptyMap());
+    }
+
+    /**
+     * tokens: คำค้นหาที่ตัดไว้แล้ว (จาก SessionCheckpoint) รายงานที่ไม่มีในนี้จะถูกตัดคำใหม่
+     * และนับเป็นรายงานที่ต้องเขียน checkpoint
+     */
+    private void indexAllReports(Map<Integer, String[]> tokens) {
+        clusterIndex.clear();
+        distanceIndex.clear();
+        searchIndex.clear();
+        timeIndex.clear();
+        assignmentSolver.clearReports();
+        heatmap = null;
+        reportStore.clear();
+        if (preferencesManager.report.isReported()) {
+            reportStore.setOwnReport(preferencesManager.report.getId());
+        }
+        long now = ReportTime.now();
+        // เก็บตัวที่ถูกทิ้งไว้ลบหลังจบรอบ ลบระหว่างไล่ตาม index ทำให้บางฉบับถูก put ซ้ำ
+        Set<Report> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = reports.size() - 1; i >= 0; i--) {
+            Report report = reports.get(i);
+            if (evicted.contains(report)) continue;
+            for (Report dropped : reportStore.put(report, now)) {
+                evicted.add(dropped);
+                dirtyReportIds.remove(dropped.id);
+                removedReportIds.add(dropped.id);
+            }
+        }
+        reports.removeAll(evicted);
+        publishedCopies.clear();
+        publishedCopies.addAll(reports);
+        staleCopies.clear();
+        reportsById.clear();
+        if (!reports.isEmpty()) {
+            double sumLat = 0;
+            double sumLng = 0;
+            for (Report report : reports) {
+                sumLat += report.location.lat;
+                sumLng += report.location.lng;
+            }
+            heatmap =
+                    new SeverityHeatmap(
+                            sumLat / reports.size(),
+                            sumLng / reports.size(),
+                            HEATMAP_CELL_DEGREES,
+                            HEATMAP_SIZE,
+                            ReportTime.now());
+        }
+        // รายการเรียงใหม่ไปเก่า แทรกทีละฉบับจะเลื่อนทั้ง array ทุกครั้ง จึงใส่ทั้งชุดก่อน
+        timeIndex.putAll(reports);
+        List<Report> tokenized = new ArrayList<>(tokens.size());
+        List<String[]> tokenizedTerms = new ArrayList<>(tokens.size());
+        for (Report report : reports) {
+            reportsById.put(report.id, report);
+            staleCopies.add(report.id);
+            String[] known = tokens.get(report.id);
+            if (known != null) {
+                clusterIndex.put(report);
+                distanceIndex.put(report);
+                assignmentSolver.putReport(report);
+                heatmap.put(report, now);
+                tokenized.add(report);
+                tokenizedTerms.add(known);
+            } else {
+                indexReport(report);
+            }
+        }
+        buildSearchIndex(tokenized, tokenizedTerms);
+    }
+
+    /**
+     * ใส่คำที่ตัดไว้แล้วลง index ใหม่บน cpu thread (ส่วนที่นานที่สุดของ restore) แล้วสลับบน main
+     * รายการขึ้นก่อน ระหว่างนั้นการค้นหาเห็นเฉพาะรายงานที่เพิ่ม/แก้หลัง indexAllReports
+     * report ที่ main thread แก้ระหว่างสร้างถูกจำใน searchIndexPending และใส่ซ้ำก่อนสลับ
+     */
+    private void buildSearchIndex(List<Report> tokenized, List<String[]> tokenizedTerms) {
+        int build = ++searchIndexBuild;
+        if (tokenized.isEmpty()) {
+            searchIndexPending = null;
+            return;
+        }
+        searchIndexPending = new HashSet<>();
+        ReportSearchIndex building = new ReportSearchIndex();
+        executors.submit(
+                executors.cpu(),
+                () -> {
+                    building.putAll(tokenized, tokenizedTerms);
+                    return building;
+                },
+                built -> {
+                    if (build != searchIndexBuild || isDestroyed()) return;
+                    for (int id : searchIndexPending) {
+                        Report report = reportsById.get(id);
+                        if (report != null) {
+                            built.put(report);
+                        } else {
+                            built.remove(id);
+                        }
+                    }
+                    searchIndexPending = null;
+                    searchIndex = built;
+                    if (isFilteringReports()) ingestion.requestPublish();
+                },
+                e -> Log.w(TAG, "Cannot build search index", e));
+    }
+
+    /**
+     * เพิ่มรายงานใหม่ไว้บนสุดของรายการ ทิ้งรายงานที่ reportStore เลือกเมื่อเกินเพดาน
+     * คืน false ถ้ารายงานใหม่เองเป็นตัวที่ถูกทิ้ง ผู้เรียกต้อง ingestion.requestPublish() เอง
+     */
+    private boolean insertReport(Report report) {
+        boolean kept = true;
+        for (Report evicted : reportStore.put(report, ReportTime.now())) {
+            if (evicted == report) {
+                kept = false;
+            } else {
+                dropReport(evicted);
+            }
+        }
+        if (!kept) return false;
+        reports.add(0, report);
+        // ใส่ตัวจริงไว้ก่อน indexReport ทำเครื่องหมายให้แทนด้วยสำเนาตอน publish
+        publishedCopies.add(0, report);
+        reportsById.put(report.id, report);
+        indexReport(report);
+        return true;
+    }
+
+    private void dropReport(Report report) {
+        dirtyReportIds.remove(report.id);
+        removedReportIds.add(report.id);
+        reports.remove(report);
+        reportsById.remove(report.id);
+        publishedCopies.remove(report);
+        staleCopies.remove(report.id);
+        if (searchIndexPending != null) searchIndexPending.add(report.id);
+        clusterIndex.remove(report.id);
+        distanceIndex.remove(report.id);
+        searchIndex.remove(report.id);
+        timeIndex.remove(report.id);
+        assignmentSolver.removeReport(report.id);
+        if (heatmap != null) heatmap.remove(report.id);
+    }
+
+    private void indexReport(Report report) {
+        dirtyReportIds.add(report.id);
+        staleCopies.add(report.id);
+        if (searchIndexPending != null) searchIndexPending.add(report.id);
+        removedReportIds.remove(report.id);
+        clusterIndex.put(report);
+        distanceIndex.put(report);
+        searchIndex.put(report);
+        timeIndex.put(report);
+        assignmentSolver.putReport(report);
+        if (heatmap == null) {
+            heatmap =
+                    new SeverityHeatmap(
+                            report.location.lat,
+                            report.location.lng,
+                            HEATMAP_CELL_DEGREES,
+                            HEATMAP_SIZE,
+                            ReportTime.now());
+        }
+        heatmap.put(report, ReportTime.now());
+        reportStore.update(report);
+    }
+
+    /**
+     * โหลดกราฟถนนออฟไลน์ (ถ้ามีไฟล์) สำหรับประมาณเวลาเดินทาง
+     */
+    private void loadRoadGraph() {
+        File file = new File(getFilesDir(), ROAD_GRAPH_FILE);
+        executors
+                .disk()
+                .execute(
+                        () -> {
+                            if (!file.exists()) return;
+                            try (FileInputStream in = new FileInputStream(file)) {
+                                roadGraph = RoadGraph.read(in);
+                            } catch (IOException e) {
+                                Log.w(TAG, "Cannot load road graph", e);
+                            }
+                        });
+    }
+
+    /**
+     * เปิดไฟล์ tile แผนที่ออฟไลน์ (ถ้ามี) บน disk thread tile ถูก decode บน cpu pool
+     */
+    private void openTileStore() {
+        File file = new File(getFilesDir(), TILE_FILE);
+        executors.submit(
+                executors.disk(),
+                () -> file.exists() ? new TileStore(file) : null,
+                store -> {
+                    if (store == null) return;
+                    if (isDestroyed()) {
+                        closeTileStore(store);
+                        return;
+                    }
+                    tileStore = store;
+                    tileCache =
+                            new TileCache<>(
+                                    store,
+                                    OfflineMapView.BITMAP_DECODER,
+                                    TILE_CACHE_BYTES,
+                                    executors.cpu());
+                },
+                e -> Log.w(TAG, "Cannot open tile file", e));
+    }
+
+    /**
+     * คัดลอกไฟล์ขอบเขตจาก assets เมื่อยังไม่มีหรือรุ่นข้อมูลไม่ตรง แล้วเปิดบน disk thread
+     * ไม่มีไฟล์ก็แสดงพิกัดเหมือนเดิม
+     */
+    private void openGeocoder() {
+        File file = new File(getFilesDir(), BOUNDARY_FILE);
+        executors.submit(
+                executors.disk(),
+                () -> {
+                    installBoundaryFile(file);
+                    return file.exists() ? new ReverseGeocoder(file) : null;
+                },
+                opened -> {
+                    if (opened == null) return;
+                    if (isDestroyed()) {
+                        closeGeocoder(opened);
+                        return;
+                    }
+                    geocoder = opened;
+                    reportsAdapter.setGeocoder(opened);
+                    reportsAdapter.notifyDataSetChanged();
+                },
+                e -> Log.w(TAG, "Cannot open boundary file", e));
+    }
+
+    /**
+     * header 12 ไบต์แรก (MAGIC, VERSION, dataVersion) ตรงกันถือว่าเป็นไฟล์เดียวกัน
+     */
+    private void installBoundaryFile(File file) throws IOException {
+        byte[] assetHeader = new byte[12];
+        InputStream asset;
+        try {
+            asset = getAssets().open(BOUNDARY_FILE);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(asset)) {
+            in.readFully(assetHeader);
+            if (file.exists()) {
+                byte[] fileHeader = new byte[12];
+                try (DataInputStream current = new DataInputStream(new FileInputStream(file))) {
+                    current.readFully(fileHeader);
+                } catch (EOFException ignored) {
+                    // ไฟล์เสีย เขียนทับ
+                }
+                if (Arrays.equals(assetHeader, fileHeader)) return;
+            }
+            File temp = new File(getFilesDir(), BOUNDARY_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(assetHeader);
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot install " + BOUNDARY_FILE);
+            }
+        }
+    }
+
+    private static void closeGeocoder(ReverseGeocoder opened) {
+        try {
+            opened.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void closeTileStore(TileStore store) {
+        try {
+            store.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * ติดตามตำแหน่งหน่วยกู้ภัยเพื่ออัปเดตระยะทางไปยังรายงาน
+     */
+    private void startRescuerLocation() {
+        if (!locationLib.hasLocationPermission() || isLocationRequestInProgress) return;
+        locationLib.startLocationService(
+                new LocationLib.LocationListener() {
+                    @Override
+                    public void onLocationReceived(android.location.Location location) {
+                        rescuerLocation =
+                                new MainActivity.Location(
+                                        location.getLatitude(), location.getLongitude());
+                        if (distanceIndex.setOrigin(rescuerLocation.lat, rescuerLocation.lng)) {
+                            // ระยะเปลี่ยน ลำดับรายการเปลี่ยนตาม
+                            ingestion.requestPublish();
+                        }
+                        reportStore.setOrigin(rescuerLocation.lat, rescuerLocation.lng);
+                        if (ownRescuerId != AssignmentSolver.UNASSIGNED) {
+                            assignmentSolver.updateRescuer(
+                                    new AssignmentSolver.Rescuer(
+                                            ownRescuerId,
+                                            rescuerLocation.lat,
+                                            rescuerLocation.lng,
+                                            ReportTime.now()));
+                            publishedRescuers = assignmentSolver.getRescuers();
+                            ingestion.requestPublish();
+                        }
+                        TileCache<Bitmap> cache = tileCache;
+                        if (cache != null && location.hasBearing()) {
+                            cache.prefetchAlong(
+                                    rescuerLocation.lat,
+                                    rescuerLocation.lng,
+                                    location.getBearing(),
+                                    OfflineMapView.DEFAULT_ZOOM,
+                                    PREFETCH_DISTANCE_M);
+                        }
+                    }
+
+                    @Override
+                    public void onLocationError(String error) {}
+
+                    @Override
+                    public void onGPSEnabled() {}
+                });
+    }
+
+    private void showReportDirections(Report report) {
+        String label = distanceIndex.getLabel(report.id);
+        String message = label != null ? report.name + "\n" + label : report.name;
+        OfflineMapView mapView = new OfflineMapView(this, tileCache, reports);
+        mapView.setCenter(report.location.lat, report.location.lng, OfflineMapView.DEFAULT_ZOOM);
+        mapView.setMinimumHeight(getResources().getDisplayMetrics().heightPixels / 2);
+        AlertDialog dialog =
+                new AlertDialog.Builder(this)
+                        .setTitle(message)
+                        .setView(mapView)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+
+        // ค้นเส้นทางบนกราฟถนนใช้เวลาหลายสิบ ms เปิด dialog ก่อนแล้วเติมเวลาเดินทางทีหลัง
+        RoadGraph graph = roadGraph;
+        MainActivity.Location from = rescuerLocation;
+        if (label == null || graph == null || from == null) return;
+        MainActivity.Location to = report.location;
+        executors.submit(
+                executors.cpu(),
+                () -> graph.estimateSeconds(from.lat, from.lng, to.lat, to.lng),
+                seconds -> {
+                    if (seconds < 0 || isDestroyed() || !dialog.isShowing()) return;
+                    dialog.setTitle(
+                            message + " · ประมาณ " + Math.round(seconds / 60) + " นาที");
+                },
+                null);
+    }
+
+    /**
+     * ภาพรวมความต้องการช่วยเหลือทั้งพื้นที่ (ไม่วาดหมุดรายงาน) อัปเดตเองขณะเปิดอยู่
+     */
+    private void showHeatmap() {
+        if (heatmap == null) {
+            Toast.makeText(this, "ยังไม่มีรายงาน", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        OfflineMapView mapView =
+                new OfflineMapView(this, tileCache, Collections.<Report>emptyList());
+        double lat = (heatmap.getNorth() + heatmap.getSouth()) / 2;
+        double lng = (heatmap.getWest() + heatmap.getEast()) / 2;
+        if (rescuerLocation != null) {
+            lat = rescuerLocation.lat;
+            lng = rescuerLocation.lng;
+        }
+        mapView.setCenter(lat, lng, HEATMAP_ZOOM);
+        mapView.setHeatmap(heatmap);
+        mapView.setMinimumHeight(getResources().getDisplayMetrics().heightPixels / 2);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.heatmap)
+                .setView(mapView)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
     private void setupRecyclerView() {
         reportsAdapter =
                 new ReportsAdapter(
-                        reports,
+                        publishedReports,
                         new ReportsAdapter.OnViewMapClickListener() {
                             @Override
                             public void onViewMapClick(Report report) {
-                                Toast.makeText(
-                                                MainActivity.this,
-                                                "เปิดแผนที่สำหรับ " + report.name,
-                                                Toast.LENGTH_SHORT)
-                                        .show();
-                                // TODO: Open map with location
+                                showReportDirections(report);
                             }
                         });
+        reportsAdapter.setDistanceIndex(distanceIndex);
+        reportsAdapter.setOnStatusClickListener(
+                new ReportsAdapter.OnStatusClickListener() {
+                    @Override
+                    public void onStatusClick(Report report) {
+                        showStatusChooser(report);
+                    }
+                });
 
         rvReports.setLayoutManager(new LinearLayoutManager(this));
         rvReports.setAdapter(reportsAdapter);
     }
 
     private void updateReportsHeader() {
-        tvReportsHeader.setText(getString(R.string.all_reports, reports.size()));
+        long now = ReportTime.now();
+        String header =
+                getString(R.string.all_reports, reports.size())
+                        + "\n"
+                        + getString(
+                                R.string.area_summary,
+                                clusterIndex.getAreaCount(),
+                                clusterIndex.getAreaCount(Severity.CRITICAL))
+                        + "\n"
+                        + getString(
+                                R.string.time_summary,
+                                timeIndex.countSince(now - RECENT_WINDOW_MS),
+                                timeIndex.countWaitingLongerThan(LONG_WAIT_MS, now));
+        Report assigned = reportsById.get(assignmentSolver.getAssignment(ownRescuerId));
+        if (assigned != null) {
+            String distance = distanceIndex.getLabel(assigned.id);
+            header +=
+                    "\n"
+                            + getString(
+                                    R.string.assignment_summary,
+                                    assigned.name,
+                                    distance != null ? distance : "",
+                                    assignmentSolver.getRescuerCount());
+        }
+        if (isFilteringReports()) {
+            header += "\n" + getString(R.string.search_result_count, reportsAdapter.getItemCount());
+        }
+        tvReportsHeader.setText(header);
+    }
+
+    private void setupReportSearch() {
+        Severity[] severities = Severity.values();
+        String[] options = new String[severities.length + 1];
+        options[0] = getString(R.string.filter_all);
+        for (int i = 0; i < severities.length; i++) {
+            options[i + 1] = getString(severities[i].labelRes);
+        }
+        etFilterSeverity.setAdapter(
+                new ArrayAdapter<>(this, android.R.layout.simple_dropdown_item_1line, options));
+        etFilterSeverity.setOnItemClickListener(
+                new AdapterView.OnItemClickListener() {
+                    @Override
+                    public void onItemClick(
+                            AdapterView<?> parent, View view, int position, long id) {
+                        filterSeverity = position == 0 ? null : severities[position - 1];
+                        ingestion.requestPublish();
+                    }
+                });
+
+        etSearchReports.addTextChangedListener(
+                new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(
+                            CharSequence s, int start, int count, int after) {}
+
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+                    @Override
+                    public void afterTextChanged(Editable s) {
+                        searchQuery = s.toString().trim();
+                        ingestion.requestPublish();
+                    }
+                });
+    }
+
+    private boolean isFilteringReports() {
+        return !searchQuery.isEmpty() || filterSeverity != null;
+    }
+
+    /**
+     * ส่ง snapshot ที่แก้ไขไม่ได้ของรายการ (หรือผลค้นหาจาก searchIndex) ให้ adapter
+     * ถ้ารู้ตำแหน่งหน่วยกู้ภัยแล้ว รายการปกติเรียงจากใกล้ไปไกลตาม distanceIndex
+     * publishedReports เป็นสำเนา copy ใหม่เฉพาะรายงานที่แก้ตั้งแต่ครั้งก่อน (ดู indexReport)
+     * snapshot ทั้งสองใช้ chunk ร่วมกับครั้งก่อน (ReportList) ไม่ copy ทั้งรายการทุกเฟรม
+     * เรียกจาก IngestionPipeline ไม่เกินหนึ่งครั้งต่อเฟรม ที่อื่นให้ใช้ ingestion.requestPublish()
+     */
+    private void publishReports() {
+        for (int id : staleCopies) {
+            Report report = reportsById.get(id);
+            if (report != null) publishedCopies.replace(SessionCheckpoint.copyOf(report));
+        }
+        staleCopies.clear();
+        publishedReports = publishedCopies.snapshot();
+        List<Report> snapshot = reports.snapshot();
+        if (isFilteringReports()) {
+            reportsAdapter.setReports(
+                    Collections.unmodifiableList(
+                            searchIndex.search(
+                                    searchQuery,
+                                    new ReportSearchIndex.Filter(filterSeverity, null, null))));
+        } else if (distanceIndex.hasOrigin()) {
+            List<Report> byDistance = new ArrayList<>(distanceIndex.size());
+            for (int id : distanceIndex.getIdsByDistance()) {
+                Report report = reportsById.get(id);
+                if (report != null) byDistance.add(report);
+            }
+            reportsAdapter.setReports(Collections.unmodifiableList(byDistance));
+        } else {
+            reportsAdapter.setReports(snapshot);
+        }
+        reportsAdapter.notifyDataSetChanged();
+        updateReportsHeader();
     }
 
     @Override
@@ -724,6 +2516,20 @@ public class MainActivity extends AppCompatActivity {
                 btnGetLocation.setText(getString(R.string.get_location));
                 Toast.makeText(this, "ต้องการสิทธิ์เข้าถึงตำแหน่ง", Toast.LENGTH_SHORT).show();
             }
+        } else if (requestCode == BLUETOOTH_PERMISSION_REQUEST_CODE) {
+            if (hasBluetoothPermission()) {
+                updateBeacon();
+            } else {
+                Toast.makeText(this, "ต้องการสิทธิ์ Bluetooth เพื่อส่งสัญญาณ SOS", Toast.LENGTH_SHORT)
+                        .show();
+            }
+        } else if (requestCode == WIFI_PERMISSION_REQUEST_CODE) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startPeerSync();
+            } else {
+                Toast.makeText(this, "ต้องการสิทธิ์ WiFi Direct เพื่อซิงก์รายงาน", Toast.LENGTH_SHORT)
+                        .show();
+            }
         }
     }
 
@@ -741,16 +2547,74 @@ public class MainActivity extends AppCompatActivity {
                 btnGetLocation.setText(getString(R.string.get_location));
                 Toast.makeText(this, "ต้องการ GPS เพื่อระบุตำแหน่ง", Toast.LENGTH_SHORT).show();
             }
+        } else if (requestCode == EXPORT_REQUEST_CODE) {
+            if (resultCode == RESULT_OK && data != null && pendingExportFormat != null) {
+                exportReports(data.getData(), pendingExportFormat);
+            }
+            pendingExportFormat = null;
+        } else if (requestCode == IMPORT_REQUEST_CODE) {
+            if (resultCode == RESULT_OK && data != null) {
+                importReports(data.getData());
+            }
         }
     }
 
+    /**
+     * ส่ง Budget ของ WorkloadGovernor ให้ทุกระบบย่อย เรียกบน main thread
+     */
+    private void applyBudget(WorkloadGovernor.Budget budget) {
+        locationLib.setSamplingInterval(budget.locationIntervalMs, budget.highAccuracyLocation);
+        beaconController.setDutyCycles(budget.advertise, budget.scan);
+        ingestion.setFrameBudgetNanos(budget.indexFrameBudgetNanos);
+        if (wifiDirectSync != null) wifiDirectSync.setFanoutLimit(budget.relayFanout);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        checkpointHandler.postDelayed(checkpointTask, CHECKPOINT_INTERVAL_MS);
+        checkpointHandler.postDelayed(assignmentTask, ASSIGNMENT_INTERVAL_MS);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // แอปอาจถูกปิดได้ทุกเมื่อหลังจากนี้
+        checkpointHandler.removeCallbacks(checkpointTask);
+        checkpointHandler.removeCallbacks(assignmentTask);
+        checkpointSession();
+        // เวลารายงานไม่ถอยหลังข้าม process (ดู ReportTime.restore ใน onCreate)
+        preferencesManager
+                .edit()
+                .putLong(PreferenceManager.REPORT_TIME_KEY, ReportTime.last())
+                .apply();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
+        workloadGovernor.stop();
+
         // หยุดการติดตามตำแหน่งเมื่อ Activity ถูกทำลาย
         if (locationLib != null) {
             locationLib.stopLocationService();
         }
+        if (beaconController != null) {
+            beaconController.stop();
+        }
+        if (wifiDirectSync != null) {
+            wifiDirectSync.stop();
+        }
+        if (deltaSubscription != null) {
+            deltaSubscription.stop();
+            deltaSubscription = null;
+        }
+        if (tileStore != null) {
+            closeTileStore(tileStore);
+        }
+        if (geocoder != null) {
+            closeGeocoder(geocoder);
+        }
     }
 }
@@ -0,0 +1,188 @@
+package main.sos;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.View;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * แผนที่ออฟไลน์อย่างง่าย วาด tile จาก TileCache และหมุดของรายงานจากรายการในหน่วยความจำ
+ * onDraw ไม่ decode tile เอง tile ที่ยังไม่อยู่ใน cache ถูก prefetch แล้ววาดใหม่เมื่อโหลดเสร็จ
+ * ถ้ามี SeverityHeatmap จะวาดทับเป็น bitmap เดียว ตรวจทุกวินาทีและ render ใหม่เมื่อข้อมูลเปลี่ยน
+ */
+public class OfflineMapView extends View {
+
+    public static final int DEFAULT_ZOOM = 16;
+
+    private static final long HEATMAP_REFRESH_MS = 1000;
+
+    /**
+     * decode tile PNG/WebP เป็น Bitmap
+     */
+    public static final TileCache.Decoder<Bitmap> BITMAP_DECODER =
+            new TileCache.Decoder<Bitmap>() {
+                @Override
+                public Bitmap decode(ByteBuffer data) {
+                    byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                }
+
+                @Override
+                public int sizeOf(Bitmap tile) {
+                    return tile.getByteCount();
+                }
+            };
+
+    private static final int[] SEVERITY_COLORS = {
+        Color.parseColor("#16A34A"),
+        Color.parseColor("#CA8A04"),
+        Color.parseColor("#EA580C"),
+        Color.parseColor("#DC2626")
+    };
+
+    private final TileCache<Bitmap> tileCache;
+    private final List<MainActivity.Report> reports;
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint placeholderPaint = new Paint();
+    private final Paint pinPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pinBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TileCache.Listener tileListener = (z, x, y) -> postInvalidate();
+    private final Paint heatmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF heatmapBounds = new RectF();
+    private final Runnable heatmapRefresh =
+            new Runnable() {
+                @Override
+                public void run() {
+                    refreshHeatmap();
+                    postDelayed(this, HEATMAP_REFRESH_MS);
+                }
+            };
+
+    private SeverityHeatmap heatmap;
+    private Bitmap heatmapBitmap;
+    private int[] heatmapPixels;
+    private int renderedModCount;
+
+    private double centerLat;
+    private double centerLng;
+    private int zoom = DEFAULT_ZOOM;
+
+    /**
+     * tileCache เป็น null ได้ (ไม่มีไฟล์ tile) จะวาดเฉพาะหมุดบนพื้นหลังเปล่า
+     */
+    public OfflineMapView(
+            Context context, TileCache<Bitmap> tileCache, List<MainActivity.Report> reports) {
+        super(context);
+        this.tileCache = tileCache;
+        this.reports = reports;
+        placeholderPaint.setColor(Color.parseColor("#E5E7EB"));
+        pinBorderPaint.setColor(Color.WHITE);
+        pinBorderPaint.setStyle(Paint.Style.STROKE);
+        pinBorderPaint.setStrokeWidth(3);
+    }
+
+    public void setCenter(double lat, double lng, int zoom) {
+        this.centerLat = lat;
+        this.centerLng = lng;
+        this.zoom = Math.max(0, Math.min(TileStore.MAX_ZOOM, zoom));
+        invalidate();
+    }
+
+    /**
+     * heatmap ต้องถูกแก้บน main thread เท่านั้น (เหมือน view นี้) null เพื่อเลิกวาด
+     */
+    public void setHeatmap(SeverityHeatmap heatmap) {
+        this.heatmap = heatmap;
+        heatmapBitmap = null;
+        heatmapPixels = null;
+        if (heatmap != null) {
+            int size = heatmap.getSize();
+            heatmapPixels = new int[size * size];
+            heatmapBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            renderedModCount = heatmap.getModCount() - 1;
+            refreshHeatmap();
+        }
+    }
+
+    private void refreshHeatmap() {
+        if (heatmap == null || heatmap.getModCount() == renderedModCount) return;
+        int size = heatmap.getSize();
+        heatmap.render(heatmapPixels);
+        heatmapBitmap.setPixels(heatmapPixels, 0, size, 0, 0, size, size);
+        renderedModCount = heatmap.getModCount();
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (tileCache != null) tileCache.setListener(tileListener);
+        postDelayed(heatmapRefresh, HEATMAP_REFRESH_MS);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(heatmapRefresh);
+        if (tileCache != null && tileCache.getListener() == tileListener) {
+            tileCache.setListener(null);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        double left = TileMath.pixelX(centerLng, zoom) - width / 2.0;
+        double top = TileMath.pixelY(centerLat, zoom) - height / 2.0;
+
+        int firstX = (int) Math.floor(left / TileMath.TILE_SIZE);
+        int firstY = (int) Math.floor(top / TileMath.TILE_SIZE);
+        int lastX = (int) Math.floor((left + width) / TileMath.TILE_SIZE);
+        int lastY = (int) Math.floor((top + height) / TileMath.TILE_SIZE);
+        for (int x = firstX; x <= lastX; x++) {
+            for (int y = firstY; y <= lastY; y++) {
+                float dx = (float) (x * TileMath.TILE_SIZE - left);
+                float dy = (float) (y * TileMath.TILE_SIZE - top);
+                Bitmap tile = tileCache != null ? tileCache.peek(zoom, x, y) : null;
+                if (tile == null && tileCache != null) tileCache.prefetch(zoom, x, y);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, dx, dy, tilePaint);
+                } else {
+                    canvas.drawRect(
+                            dx + 1,
+                            dy + 1,
+                            dx + TileMath.TILE_SIZE - 1,
+                            dy + TileMath.TILE_SIZE - 1,
+                            placeholderPaint);
+                }
+            }
+        }
+
+        if (heatmapBitmap != null) {
+            heatmapBounds.set(
+                    (float) (TileMath.pixelX(heatmap.getWest(), zoom) - left),
+                    (float) (TileMath.pixelY(heatmap.getNorth(), zoom) - top),
+                    (float) (TileMath.pixelX(heatmap.getEast(), zoom) - left),
+                    (float) (TileMath.pixelY(heatmap.getSouth(), zoom) - top));
+            canvas.drawBitmap(heatmapBitmap, null, heatmapBounds, heatmapPaint);
+        }
+
+        for (MainActivity.Report report : reports) {
+            float px = (float) (TileMath.pixelX(report.location.lng, zoom) - left);
+            float py = (float) (TileMath.pixelY(report.location.lat, zoom) - top);
+            if (px < 0 || py < 0 || px > width || py > height) continue;
+            pinPaint.setColor(SEVERITY_COLORS[report.level.code]);
+            canvas.drawCircle(px, py, 14, pinPaint);
+            canvas.drawCircle(px, py, 14, pinBorderPaint);
+        }
+    }
+}
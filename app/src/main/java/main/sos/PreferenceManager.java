@@ -10,6 +10,8 @@ import com.google.common.graph.PredecessorsFunction;
 public class PreferenceManager {
     private Context context;
     public static final String SECTION = "MAIN_PREF";
+    // ReportTime.last() ของ process ก่อน (long)
+    public static final String REPORT_TIME_KEY = "REPORT_TIME_LAST";
     private SharedPreferences prefs;
     public ReportPreferencesManager report;
 
@@ -25,11 +27,24 @@ public class PreferenceManager {
         editor.apply();
     }
 
+    /**
+     * editor สำหรับเขียนหลาย key ใน apply() ครั้งเดียว (ไฟล์ถูกเขียนบน thread ของ SharedPreferences)
+     */
+    public SharedPreferences.Editor edit() {
+        prefs = context.getSharedPreferences(SECTION, Context.MODE_PRIVATE);
+        return prefs.edit();
+    }
+
     public String readData(String key) {
         prefs = context.getSharedPreferences(SECTION, Context.MODE_PRIVATE);
         return prefs.getString(key, null);
     }
     
+    public long readLong(String key, long fallback) {
+        prefs = context.getSharedPreferences(SECTION, Context.MODE_PRIVATE);
+        return prefs.getLong(key, fallback);
+    }
+
     public Boolean isKeyAvalible(String key){
         prefs = context.getSharedPreferences(SECTION, Context.MODE_PRIVATE);
         String check = prefs.getString(key, null);
@@ -56,17 +71,21 @@ public class PreferenceManager {
         }
 
         public boolean storageReport(MainActivity.Report report) {
-            preferencesManager.addData("ID", String.valueOf(report.id));
-            preferencesManager.addData("NAME", report.name);
-            preferencesManager.addData("CONTACT", report.contact);
-            preferencesManager.addData("DETAIL", report.details);
-            preferencesManager.addData("LOCAION_LAT", String.valueOf(report.location.lat));
-            preferencesManager.addData("LOCAION_LNG", String.valueOf(report.location.lng));
-            preferencesManager.addData("TIMESTAMP", report.timestamp);
-            preferencesManager.addData("LEVEL", report.level);
-            preferencesManager.addData("TYPE", report.type);
-            preferencesManager.addData("STATUS", report.status);
-            preferencesManager.addData("RELAYED", String.valueOf(report.relayed));
+            // เขียนครั้งเดียว แทนการ apply ทีละ key ซึ่งเขียนไฟล์ทั้งไฟล์ใหม่ทุกครั้ง
+            preferencesManager
+                    .edit()
+                    .putString("ID", String.valueOf(report.id))
+                    .putString("NAME", report.name)
+                    .putString("CONTACT", report.contact)
+                    .putString("DETAIL", report.details)
+                    .putString("LOCAION_LAT", String.valueOf(report.location.lat))
+                    .putString("LOCAION_LNG", String.valueOf(report.location.lng))
+                    .putString("TIMESTAMP", String.valueOf(report.timestamp))
+                    .putString("LEVEL", String.valueOf(report.level.code))
+                    .putString("TYPE", String.valueOf(report.type.code))
+                    .putString("STATUS", String.valueOf(report.status.code))
+                    .putString("RELAYED", String.valueOf(report.relayed))
+                    .apply();
             if (isReported()){
             return true;}
             return false;
@@ -102,25 +121,67 @@ public class PreferenceManager {
             return Float.parseFloat(preferencesManager.readData("LOCATION_LNG"));
         }
         
-        public String getTimestamp() {
-            return (preferencesManager.readData("TIMESTAMP"));
+        // ค่าเก่าเป็นข้อความ ("10:30 น.") อ่านไม่ได้จะคืน ReportTime.UNKNOWN
+        public long getTimestamp() {
+            return ReportTime.parseIso(preferencesManager.readData("TIMESTAMP"));
         }
         
-        public String getLevel() {
-            return (preferencesManager.readData("LEVEL"));
+        public MainActivity.Severity getLevel() {
+            return MainActivity.Severity.fromCode(readCode("LEVEL"));
         }
         
-        public String getType() {
-            return (preferencesManager.readData("TYPE"));
+        public MainActivity.ReportType getType() {
+            return MainActivity.ReportType.fromCode(readCode("TYPE"));
         }
         
-        public String getStatus() {
-            return (preferencesManager.readData("STATUS"));
+        public MainActivity.ReportStatus getStatus() {
+            return MainActivity.ReportStatus.fromCode(readCode("STATUS"));
+        }
+
+        public void setStatus(MainActivity.ReportStatus status) {
+            preferencesManager.addData("STATUS", String.valueOf(status.code));
+        }
+
+        /**
+         * อ่าน code ที่เก็บไว้ คืน -1 ถ้าไม่มีหรือเป็นข้อความแบบเก่า
+         */
+        private int readCode(String key) {
+            String value = preferencesManager.readData(key);
+            if (value == null) return -1;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
         
         public Boolean getRelayed() {
             return Boolean.parseBoolean(preferencesManager.readData("RELAYED"));
         }
+
+        /**
+         * ชื่อ/ช่องทางติดต่อที่บันทึกไว้ล่วงหน้าสำหรับ SOS แบบกดค้าง (QuickSos)
+         */
+        public void saveProfile(String name, String contact) {
+            preferencesManager
+                    .edit()
+                    .putString("PROFILE_NAME", name)
+                    .putString("PROFILE_CONTACT", contact)
+                    .apply();
+        }
+
+        /**
+         * คืนชื่อจากรายงานล่าสุดถ้ายังไม่เคยบันทึกโปรไฟล์ หรือ null ถ้าไม่มีทั้งคู่
+         */
+        public String getProfileName() {
+            String name = preferencesManager.readData("PROFILE_NAME");
+            return name != null ? name : getName();
+        }
+
+        public String getProfileContact() {
+            String contact = preferencesManager.readData("PROFILE_CONTACT");
+            return contact != null ? contact : getContact();
+        }
     }
 
     //        readData("NAME");
@@ -0,0 +1,82 @@
+package main.sos;
+
+/**
+ * SOS แบบกดค้างครั้งเดียว เตรียมรายงานสำเร็จรูปไว้ล่วงหน้า (ชื่อ/ติดต่อจากโปรไฟล์, ตำแหน่งล่าสุด,
+ * ระดับวิกฤติ) พร้อม beacon ที่ encode แล้ว ตอนกดจึงเหลือแค่เปิดวิทยุ
+ *
+ * ซองที่เซ็นแล้วถูกใส่ใน template.report.envelope เมื่อ seal เสร็จ (ไม่รอตอนกด)
+ * ตำแหน่งที่แม่นขึ้นและรายละเอียดส่งตามทีหลังเป็นการแก้รายงาน id เดิม ใช้บน main thread เท่านั้น
+ */
+public final class QuickSos {
+
+    // จากกดถึงวิทยุเริ่มประกาศ
+    public static final long TARGET_LATENCY_NANOS = 100_000_000;
+
+    public static final class Template {
+        public final MainActivity.Report report;
+        public final byte[] beacon;
+
+        Template(MainActivity.Report report, byte[] beacon) {
+            this.report = report;
+            this.beacon = beacon;
+        }
+    }
+
+    private Template template;
+    private long lastLatencyNanos = -1;
+
+    /**
+     * สร้าง template ใหม่แทนอันเดิม เรียกเมื่อโปรไฟล์หรือตำแหน่งล่าสุดเปลี่ยน
+     */
+    public Template prepare(
+            int id,
+            String name,
+            String contact,
+            String details,
+            MainActivity.Location fix,
+            long timestamp) {
+        MainActivity.Report report =
+                new MainActivity.Report(
+                        id,
+                        name,
+                        contact,
+                        details,
+                        fix,
+                        timestamp,
+                        MainActivity.Severity.CRITICAL,
+                        MainActivity.ReportStatus.WAITING,
+                        MainActivity.ReportType.OTHER,
+                        false);
+        template = new Template(report, BeaconPayload.fromReport(report).encode());
+        return template;
+    }
+
+    /**
+     * เอา template ไปใช้ (ใช้ได้ครั้งเดียว) คืน null ถ้ายังไม่มีตำแหน่งให้เตรียม
+     */
+    public Template take() {
+        Template taken = template;
+        template = null;
+        return taken;
+    }
+
+    public Template peek() {
+        return template;
+    }
+
+    public void clear() {
+        template = null;
+    }
+
+    /**
+     * บันทึกเวลาจากกดถึงเปิดวิทยุ คืน true ถ้าอยู่ในเป้า
+     */
+    public boolean recordLatency(long tapNanos, long broadcastNanos) {
+        lastLatencyNanos = broadcastNanos - tapNanos;
+        return lastLatencyNanos <= TARGET_LATENCY_NANOS;
+    }
+
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+}
@@ -0,0 +1,180 @@
+package main.sos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * จัดกลุ่มรายงานตามพื้นที่แบบ grid อัปเดตทีละรายงาน (O(1) ต่อการเพิ่ม/ลบ)
+ * ใช้สรุปภาพรวมสำหรับโหมดกู้ภัยโดยไม่ต้องวนทั้งรายการ
+ * นับเฉพาะรายงานที่ยังต้องช่วย รายงานที่ช่วยแล้ว/ยกเลิก (ReportStatus.isFinal) ไม่อยู่ในสรุป
+ */
+public class ReportClusterIndex {
+
+    // ประมาณ 1.1 กม. ที่เส้นศูนย์สูตร
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+
+    private static final int SEVERITY_COUNT = MainActivity.Severity.values().length;
+
+    /**
+     * สรุปของหนึ่งพื้นที่
+     */
+    public static class Cluster {
+        public final long key;
+        private int count;
+        private double sumLat;
+        private double sumLng;
+        private final int[] bySeverity = new int[SEVERITY_COUNT];
+
+        Cluster(long key) {
+            this.key = key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getCount(MainActivity.Severity severity) {
+            return bySeverity[severity.code];
+        }
+
+        public MainActivity.Severity getWorstSeverity() {
+            for (int code = SEVERITY_COUNT - 1; code >= 0; code--) {
+                if (bySeverity[code] > 0) return MainActivity.Severity.fromCode(code);
+            }
+            return null;
+        }
+
+        public MainActivity.Location getCentroid() {
+            return count == 0 ? null : new MainActivity.Location(sumLat / count, sumLng / count);
+        }
+    }
+
+    private static class Entry {
+        final long cellKey;
+        final double lat;
+        final double lng;
+        final MainActivity.Severity severity;
+
+        Entry(long cellKey, double lat, double lng, MainActivity.Severity severity) {
+            this.cellKey = cellKey;
+            this.lat = lat;
+            this.lng = lng;
+            this.severity = severity;
+        }
+    }
+
+    private final double cellDegrees;
+    private final Map<Long, Cluster> clusters = new HashMap<>();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final int[] areasByWorst = new int[SEVERITY_COUNT];
+
+    public ReportClusterIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    public ReportClusterIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * เพิ่มหรืออัปเดตรายงาน (ถ้า id นี้มีอยู่แล้วจะย้ายไปตามตำแหน่ง/ระดับใหม่)
+     * ถ้าสถานะเป็น RESCUED หรือ CANCELLED จะถูกเอาออกจากสรุป
+     */
+    public void put(MainActivity.Report report) {
+        remove(report.id);
+        if (report.status.isFinal()) return;
+        double lat = report.location.lat;
+        double lng = report.location.lng;
+        long key = cellKey(lat, lng);
+        Entry entry = new Entry(key, lat, lng, report.level);
+        entries.put(report.id, entry);
+
+        Cluster cluster = clusters.get(key);
+        if (cluster == null) {
+            cluster = new Cluster(key);
+            clusters.put(key, cluster);
+        }
+        MainActivity.Severity worstBefore = cluster.getWorstSeverity();
+        cluster.count++;
+        cluster.sumLat += lat;
+        cluster.sumLng += lng;
+        cluster.bySeverity[report.level.code]++;
+        onWorstChanged(worstBefore, cluster.getWorstSeverity());
+    }
+
+    public void remove(int reportId) {
+        Entry entry = entries.remove(reportId);
+        if (entry == null) return;
+
+        Cluster cluster = clusters.get(entry.cellKey);
+        MainActivity.Severity worstBefore = cluster.getWorstSeverity();
+        cluster.count--;
+        cluster.sumLat -= entry.lat;
+        cluster.sumLng -= entry.lng;
+        cluster.bySeverity[entry.severity.code]--;
+        if (cluster.count == 0) {
+            clusters.remove(entry.cellKey);
+        }
+        onWorstChanged(worstBefore, cluster.getWorstSeverity());
+    }
+
+    public void clear() {
+        clusters.clear();
+        entries.clear();
+        for (int i = 0; i < SEVERITY_COUNT; i++) areasByWorst[i] = 0;
+    }
+
+    public int getReportCount() {
+        return entries.size();
+    }
+
+    public int getAreaCount() {
+        return clusters.size();
+    }
+
+    /**
+     * จำนวนพื้นที่ที่มีรายงานแย่สุดอยู่ในระดับนี้
+     */
+    public int getAreaCount(MainActivity.Severity worst) {
+        return areasByWorst[worst.code];
+    }
+
+    public Cluster getCluster(double lat, double lng) {
+        return clusters.get(cellKey(lat, lng));
+    }
+
+    /**
+     * รายการพื้นที่เรียงจากรุนแรงที่สุดและมีรายงานมากที่สุด
+     */
+    public List<Cluster> getClusters() {
+        List<Cluster> list = new ArrayList<>(clusters.values());
+        Collections.sort(
+                list,
+                new Comparator<Cluster>() {
+                    @Override
+                    public int compare(Cluster a, Cluster b) {
+                        int bySeverity =
+                                Integer.compare(
+                                        b.getWorstSeverity().code, a.getWorstSeverity().code);
+                        return bySeverity != 0 ? bySeverity : Integer.compare(b.count, a.count);
+                    }
+                });
+        return list;
+    }
+
+    private void onWorstChanged(MainActivity.Severity before, MainActivity.Severity after) {
+        if (before == after) return;
+        if (before != null) areasByWorst[before.code]--;
+        if (after != null) areasByWorst[after.code]++;
+    }
+
+    private long cellKey(double lat, double lng) {
+        long row = (long) Math.floor(lat / cellDegrees);
+        long col = (long) Math.floor(lng / cellDegrees);
+        return (row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,106 @@
+package main.sos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * รูปแบบไบนารีของ Report สำหรับเก็บและส่งต่อ
+ * ระดับ/ประเภท/สถานะ เป็น code 1 byte พิกัดเป็น fixed-point (องศา x 1e7)
+ * version 2 เพิ่ม statusVersion ต่อจากสถานะ version 3 เก็บเวลาเป็น epoch millis (long) แทนข้อความ
+ * ยังอ่าน version 1-2 ได้ โดยเวลาเป็น ReportTime.UNKNOWN
+ */
+public final class ReportCodec {
+
+    public static final byte VERSION = 3;
+
+    private static final double E7 = 1e7;
+    private static final int FLAG_RELAYED = 1;
+
+    private ReportCodec() {}
+
+    public static byte[] encode(MainActivity.Report report) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            write(new DataOutputStream(bytes), report);
+        } catch (IOException e) {
+            // ByteArrayOutputStream ไม่โยน IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static MainActivity.Report decode(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public static void write(DataOutput out, MainActivity.Report report) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(report.id);
+        out.writeInt(toFixed(report.location.lat));
+        out.writeInt(toFixed(report.location.lng));
+        out.writeByte(report.level.code);
+        out.writeByte(report.type.code);
+        out.writeByte(report.status.code);
+        out.writeInt(report.statusVersion);
+        out.writeByte(report.relayed ? FLAG_RELAYED : 0);
+        out.writeUTF(report.name);
+        out.writeUTF(report.contact);
+        out.writeUTF(report.details);
+        out.writeLong(report.timestamp);
+    }
+
+    public static MainActivity.Report read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported report version: " + version);
+        }
+        int id = in.readInt();
+        double lat = fromFixed(in.readInt());
+        double lng = fromFixed(in.readInt());
+        MainActivity.Severity level = MainActivity.Severity.fromCode(in.readUnsignedByte());
+        MainActivity.ReportType type = MainActivity.ReportType.fromCode(in.readUnsignedByte());
+        MainActivity.ReportStatus status = MainActivity.ReportStatus.fromCode(in.readUnsignedByte());
+        int statusVersion = version >= 2 ? in.readInt() : 0;
+        int flags = in.readUnsignedByte();
+        if (level == null || type == null || status == null) {
+            throw new IOException("Unknown code in report " + id);
+        }
+        String name = in.readUTF();
+        String contact = in.readUTF();
+        String details = in.readUTF();
+        long timestamp;
+        if (version >= 3) {
+            timestamp = in.readLong();
+        } else {
+            in.readUTF();
+            timestamp = ReportTime.UNKNOWN;
+        }
+        MainActivity.Report report =
+                new MainActivity.Report(
+                        id,
+                        name,
+                        contact,
+                        details,
+                        new MainActivity.Location(lat, lng),
+                        timestamp,
+                        level,
+                        status,
+                        type,
+                        (flags & FLAG_RELAYED) != 0);
+        report.statusVersion = statusVersion;
+        return report;
+    }
+
+    public static int toFixed(double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    public static double fromFixed(int fixed) {
+        return fixed / E7;
+    }
+}
@@ -0,0 +1,369 @@
+package main.sos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECParameterSpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ซองรายงานที่เซ็นโดยเครื่องผู้แจ้ง และเข้ารหัสชื่อ/ช่องทางติดต่อ/รายละเอียดให้เฉพาะหน่วยกู้ภัย
+ *
+ * เครื่องที่ส่งต่อ (relay) เห็นเฉพาะส่วนที่ไม่เป็นความลับ (id, พิกัด, ระดับ, ประเภท, เวลา)
+ * และส่งซองเดิมต่อไปทั้งก้อน เพราะเซ็นใหม่ไม่ได้
+ *
+ * รูปแบบ: byte VERSION, byte flags, signer public key (65), short publicLength,
+ * ReportCodec ของส่วนที่เปิดเผย, [ephemeral public key (65), short length, AES-GCM ciphertext],
+ * long contentVersion, byte signatureLength, ECDSA signature ของทุกไบต์ก่อนหน้า
+ * contentVersion เพิ่มทุกครั้งที่ผู้แจ้งแก้รายงาน ซองของ VERSION_1 ไม่มีช่องนี้ (นับเป็น 0)
+ *
+ * การเข้ารหัสเป็น ECIES: ECDH ระหว่างกุญแจชั่วคราวกับกุญแจของเครือข่ายกู้ภัย ผ่าน HKDF-SHA256
+ * ได้กุญแจ AES-128 ที่ใช้ครั้งเดียว จึงใช้ nonce ศูนย์ได้โดยไม่ต้องส่ง nonce
+ */
+public final class ReportEnvelope {
+
+    public static final byte VERSION = 2;
+    // ซองก่อนมี contentVersion ยังเปิดและส่งต่อได้ (เช่นที่อยู่ใน checkpoint เดิม)
+    static final byte VERSION_1 = 1;
+
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int TAG_BITS = 128;
+    private static final byte[] ZERO_NONCE = new byte[12];
+    private static final byte[] HKDF_INFO = "mSOS report envelope v1".getBytes();
+
+    private ReportEnvelope() {}
+
+    /**
+     * เซ็นรายงาน ถ้ามี recipient จะเข้ารหัสข้อมูลส่วนตัวด้วย
+     * สถานะและ flag relayed ไม่อยู่ในซอง เพราะเปลี่ยนได้ระหว่างทาง (ดู StatusEvent)
+     * contentVersion ต้องมากกว่าของซองก่อนหน้าของรายงานเดียวกัน เครื่องอื่นจึงแทนซองเดิมได้
+     */
+    public static byte[] seal(
+            MainActivity.Report report,
+            DeviceIdentity identity,
+            PublicKey recipient,
+            long contentVersion)
+            throws GeneralSecurityException {
+        boolean encrypt = recipient != null;
+        MainActivity.Report visible = canonical(report, !encrypt);
+        byte[] publicPart = ReportCodec.encode(visible);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(publicPart.length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(encrypt ? FLAG_ENCRYPTED : 0);
+            out.write(identity.getEncodedPublicKey());
+            out.writeShort(publicPart.length);
+            out.write(publicPart);
+            if (encrypt) {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(identity.getParams());
+                KeyPair ephemeral = generator.generateKeyPair();
+                byte[] secret = encodeSecret(report);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(
+                        Cipher.ENCRYPT_MODE,
+                        deriveKey(ephemeral.getPrivate(), recipient),
+                        new GCMParameterSpec(TAG_BITS, ZERO_NONCE));
+                cipher.updateAAD(publicPart);
+                byte[] ciphertext = cipher.doFinal(secret);
+                out.write(DeviceIdentity.encodePoint((ECPublicKey) ephemeral.getPublic()));
+                out.writeShort(ciphertext.length);
+                out.write(ciphertext);
+            }
+            out.writeLong(contentVersion);
+            byte[] signed = bytes.toByteArray();
+            byte[] signature = identity.sign(signed, 0, signed.length);
+            out.writeByte(signature.length);
+            out.write(signature);
+        } catch (IOException e) {
+            // ByteArrayOutputStream ไม่โยน IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ตำแหน่งของ id รายงานในซอง: header 2 ไบต์, public key, ความยาว 2 ไบต์, version ของ ReportCodec
+    private static final int REPORT_ID_OFFSET = 2 + DeviceIdentity.PUBLIC_KEY_SIZE + 2 + 1;
+
+    /**
+     * อ่าน id รายงานจาก header โดยไม่ decode หรือตรวจลายเซ็น คืน -1 ถ้า header ไม่ถูกต้อง
+     */
+    public static int peekReportId(byte[] envelope) {
+        if (envelope.length < REPORT_ID_OFFSET + 4 || !isKnownVersion(envelope[0])) return -1;
+        int id =
+                ((envelope[REPORT_ID_OFFSET] & 0xff) << 24)
+                        | ((envelope[REPORT_ID_OFFSET + 1] & 0xff) << 16)
+                        | ((envelope[REPORT_ID_OFFSET + 2] & 0xff) << 8)
+                        | (envelope[REPORT_ID_OFFSET + 3] & 0xff);
+        return id >= 0 ? id : -1;
+    }
+
+    /**
+     * อ่าน contentVersion โดยไม่ตรวจลายเซ็น คืน 0 ถ้าไม่มีซอง เป็น VERSION_1 หรือ header ไม่ถูกต้อง
+     */
+    public static long peekContentVersion(byte[] envelope) {
+        if (envelope == null || envelope.length < REPORT_ID_OFFSET || envelope[0] != VERSION) {
+            return 0;
+        }
+        int offset = 2 + DeviceIdentity.PUBLIC_KEY_SIZE;
+        offset += 2 + readUnsignedShort(envelope, offset);
+        if ((envelope[1] & FLAG_ENCRYPTED) != 0) {
+            offset += DeviceIdentity.PUBLIC_KEY_SIZE;
+            if (offset + 2 > envelope.length) return 0;
+            offset += 2 + readUnsignedShort(envelope, offset);
+        }
+        if (offset + 8 > envelope.length) return 0;
+        long version = 0;
+        for (int i = 0; i < 8; i++) version = (version << 8) | (envelope[offset + i] & 0xff);
+        return version;
+    }
+
+    /**
+     * ซองทั้งสองเซ็นด้วยกุญแจเดียวกัน (ผู้แจ้งคนเดียวกัน) หรือไม่ ดูจาก header เท่านั้น
+     */
+    public static boolean sameSigner(byte[] a, byte[] b) {
+        if (b.length < 2 + DeviceIdentity.PUBLIC_KEY_SIZE) return false;
+        return isSignedBy(a, Arrays.copyOfRange(b, 2, 2 + DeviceIdentity.PUBLIC_KEY_SIZE));
+    }
+
+    /**
+     * ซองนี้เซ็นด้วย publicKey หรือไม่ ดูจาก header เท่านั้น (ใช้กับซองที่ผ่าน Verifier มาแล้ว)
+     */
+    public static boolean isSignedBy(byte[] envelope, byte[] publicKey) {
+        if (publicKey.length != DeviceIdentity.PUBLIC_KEY_SIZE
+                || envelope.length < 2 + DeviceIdentity.PUBLIC_KEY_SIZE) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < DeviceIdentity.PUBLIC_KEY_SIZE; i++) {
+            diff |= envelope[2 + i] ^ publicKey[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * ตรวจลายเซ็นและเปิดซอง จำผลการตรวจตาม id รายงาน ซองเดิมที่ผ่านมาซ้ำไม่ต้องตรวจลายเซ็นอีก
+     */
+    public static class Verifier {
+        private static final int DEFAULT_CACHE_SIZE = 4096;
+
+        private final ECParameterSpec params;
+        private final PrivateKey recipientKey;
+        private final int cacheSize;
+        private final Map<Integer, byte[]> verified;
+        private long verifications;
+        private long cacheHits;
+
+        /**
+         * recipientKey เป็น null ได้ (เครื่องที่ไม่ใช่หน่วยกู้ภัย) จะได้เฉพาะส่วนที่เปิดเผย
+         */
+        public Verifier(ECParameterSpec params, PrivateKey recipientKey) {
+            this(params, recipientKey, DEFAULT_CACHE_SIZE);
+        }
+
+        public Verifier(ECParameterSpec params, PrivateKey recipientKey, int cacheSize) {
+            this.params = params;
+            this.recipientKey = recipientKey;
+            this.cacheSize = cacheSize;
+            this.verified =
+                    new LinkedHashMap<Integer, byte[]>(64, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                            return size() > Verifier.this.cacheSize;
+                        }
+                    };
+        }
+
+        /**
+         * ตรวจและเปิดซอง รายงานที่ได้มี envelope เดิมติดไปด้วยเพื่อส่งต่อ
+         */
+        public MainActivity.Report open(byte[] envelope) throws GeneralSecurityException, IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(envelope));
+            byte version = in.readByte();
+            if (!isKnownVersion(version)) {
+                throw new IOException("Unsupported envelope version");
+            }
+            int flags = in.readUnsignedByte();
+            int signerOffset = 2;
+            in.skipBytes(DeviceIdentity.PUBLIC_KEY_SIZE);
+            byte[] publicPart = new byte[in.readUnsignedShort()];
+            in.readFully(publicPart);
+            int ephemeralOffset = -1;
+            byte[] ciphertext = null;
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                ephemeralOffset = envelope.length - in.available();
+                in.skipBytes(DeviceIdentity.PUBLIC_KEY_SIZE);
+                ciphertext = new byte[in.readUnsignedShort()];
+                in.readFully(ciphertext);
+            }
+            if (version == VERSION) in.readLong();
+            int signedLength = envelope.length - in.available();
+            byte[] signature = new byte[in.readUnsignedByte()];
+            in.readFully(signature);
+            if (in.available() != 0) {
+                throw new IOException("Trailing bytes after envelope signature");
+            }
+
+            MainActivity.Report report = ReportCodec.decode(publicPart);
+            if (!isVerified(report.id, envelope)) {
+                Signature verifier = Signature.getInstance(DeviceIdentity.SIGNATURE_ALGORITHM);
+                verifier.initVerify(DeviceIdentity.decodePoint(envelope, signerOffset, params));
+                verifier.update(envelope, 0, signedLength);
+                synchronized (this) {
+                    verifications++;
+                }
+                if (!verifier.verify(signature)) {
+                    throw new GeneralSecurityException("Bad signature on report " + report.id);
+                }
+                remember(report.id, envelope);
+            }
+
+            if (ciphertext != null && recipientKey != null) {
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(
+                        Cipher.DECRYPT_MODE,
+                        deriveKey(
+                                recipientKey,
+                                DeviceIdentity.decodePoint(envelope, ephemeralOffset, params)),
+                        new GCMParameterSpec(TAG_BITS, ZERO_NONCE));
+                cipher.updateAAD(publicPart);
+                decodeSecret(cipher.doFinal(ciphertext), report);
+            }
+            report.envelope = envelope;
+            return report;
+        }
+
+        /**
+         * ตรวจลายเซ็นของ StatusEvent คืน false ถ้าไม่ได้เซ็นหรือลายเซ็นไม่ถูกต้อง
+         */
+        public boolean verifyStatus(StatusEvent event) {
+            if (!event.isSigned()) return false;
+            try {
+                synchronized (this) {
+                    verifications++;
+                }
+                return event.verify(params);
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+
+        public synchronized long getVerifications() {
+            return verifications;
+        }
+
+        public synchronized long getCacheHits() {
+            return cacheHits;
+        }
+
+        private synchronized boolean isVerified(int reportId, byte[] envelope)
+                throws GeneralSecurityException {
+            byte[] digest = verified.get(reportId);
+            if (digest != null && MessageDigest.isEqual(digest, digest(envelope))) {
+                cacheHits++;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void remember(int reportId, byte[] envelope)
+                throws GeneralSecurityException {
+            verified.put(reportId, digest(envelope));
+        }
+    }
+
+    private static boolean isKnownVersion(byte version) {
+        return version == VERSION || version == VERSION_1;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    private static MainActivity.Report canonical(MainActivity.Report report, boolean withSecret) {
+        return new MainActivity.Report(
+                report.id,
+                withSecret ? report.name : "",
+                withSecret ? report.contact : "",
+                withSecret ? report.details : "",
+                report.location,
+                report.timestamp,
+                report.level,
+                MainActivity.ReportStatus.WAITING,
+                report.type,
+                false);
+    }
+
+    private static byte[] encodeSecret(MainActivity.Report report) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(report.name);
+            out.writeUTF(report.contact);
+            out.writeUTF(report.details);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decodeSecret(byte[] secret, MainActivity.Report report) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(secret));
+        report.name = in.readUTF();
+        report.contact = in.readUTF();
+        report.details = in.readUTF();
+    }
+
+    /**
+     * ECDH แล้ว HKDF-SHA256 (RFC 5869) ได้กุญแจ AES-128
+     */
+    private static SecretKeySpec deriveKey(PrivateKey privateKey, PublicKey publicKey)
+            throws GeneralSecurityException {
+        KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+        agreement.init(privateKey);
+        agreement.doPhase(publicKey, true);
+        byte[] shared = agreement.generateSecret();
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        byte[] prk = mac.doFinal(shared);
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        mac.update(HKDF_INFO);
+        mac.update((byte) 1);
+        byte[] okm = mac.doFinal();
+        return new SecretKeySpec(Arrays.copyOf(okm, 16), "AES");
+    }
+
+    private static byte[] digest(byte[] data) throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    /**
+     * อ่าน public key ของเครือข่ายกู้ภัยแบบ uncompressed point (65 ไบต์)
+     */
+    public static PublicKey readRecipientKey(byte[] data, ECParameterSpec params)
+            throws GeneralSecurityException {
+        if (data.length != DeviceIdentity.PUBLIC_KEY_SIZE) {
+            throw new GeneralSecurityException("Invalid recipient key length: " + data.length);
+        }
+        return DeviceIdentity.decodePoint(data, 0, params);
+    }
+}
@@ -0,0 +1,604 @@
+package main.sos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ส่งออก/นำเข้ารายงานเป็นไฟล์สำหรับส่งต่อให้ศูนย์สั่งการ (USB, แชร์ไฟล์)
+ *
+ * เขียนทีละรายงานผ่าน ByteBuffer ขนาดคงที่ลง channel โดยตรง ไม่สร้างสตริง/array ของทั้งไฟล์
+ * อ่านกลับแบบ streaming ส่งต่อเป็นชุดละ IMPORT_BATCH รายงาน หน่วยความจำจึงไม่ขึ้นกับขนาดไฟล์
+ *
+ * GeoJSON และ CSV ไว้เปิดด้วยโปรแกรม GIS/ตาราง ไม่มีซองที่เซ็นไว้ เวลาเป็น ISO-8601 UTC
+ * BINARY เก็บ ReportCodec พร้อมซอง ใช้ส่งต่อระหว่างเครื่องโดยไม่เสียลายเซ็น
+ */
+public final class ReportExport {
+
+    public enum Format {
+        GEOJSON("geojson", "application/geo+json"),
+        CSV("csv", "text/csv"),
+        BINARY("msos", "application/octet-stream");
+
+        public final String extension;
+        public final String mimeType;
+
+        Format(String extension, String mimeType) {
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * รับรายงานที่นำเข้าทีละชุด (เรียกบน thread ที่อ่านไฟล์)
+     */
+    public interface Receiver {
+        void onReports(List<MainActivity.Report> batch);
+    }
+
+    static final int IMPORT_BATCH = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = {'M', 'S', 'O', 'S'};
+    private static final int FILE_VERSION = 1;
+    private static final String CSV_HEADER =
+            "id,lat,lng,severity,type,status,status_version,timestamp,relayed,name,contact,details";
+    private static final int CSV_COLUMNS = 12;
+
+    private ReportExport() {}
+
+    /**
+     * เขียนรายงานทั้งหมดลง channel คืนจำนวนที่เขียน ไม่ปิด channel
+     * reports ต้องไม่ถูกแก้ระหว่างเขียน (ใช้ snapshot ที่ publish แล้ว)
+     */
+    public static long export(
+            Iterable<MainActivity.Report> reports, Format format, WritableByteChannel channel)
+            throws IOException {
+        ChannelWriter out = new ChannelWriter(channel);
+        StringBuilder line = new StringBuilder(256);
+        long count = 0;
+        switch (format) {
+            case GEOJSON:
+                out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+                for (MainActivity.Report report : reports) {
+                    line.setLength(0);
+                    if (count > 0) line.append(',');
+                    appendFeature(line, report);
+                    out.write(line);
+                    count++;
+                }
+                out.write("]}\n");
+                break;
+            case CSV:
+                out.write(CSV_HEADER + "\r\n");
+                for (MainActivity.Report report : reports) {
+                    line.setLength(0);
+                    appendCsvRow(line, report);
+                    out.write(line);
+                    count++;
+                }
+                break;
+            case BINARY:
+                out.write(MAGIC);
+                out.writeInt(FILE_VERSION);
+                for (MainActivity.Report report : reports) {
+                    byte[] codec = ReportCodec.encode(report);
+                    byte[] envelope = report.envelope;
+                    if (codec.length > 0xffff || (envelope != null && envelope.length > 0xffff)) {
+                        continue;
+                    }
+                    out.writeShort(codec.length);
+                    out.write(codec);
+                    out.writeShort(envelope != null ? envelope.length : 0);
+                    if (envelope != null) out.write(envelope);
+                    count++;
+                }
+                break;
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * อ่านรายงานจาก channel ส่งให้ receiver เป็นชุด คืนจำนวนที่อ่านได้ ไม่ปิด channel
+     * ไฟล์ BINARY ที่ถูกตัดท้ายจะได้รายงานที่อ่านครบก่อนหน้าแทนที่จะล้มเหลวทั้งไฟล์
+     */
+    public static long importReports(ReadableByteChannel channel, Format format, Receiver receiver)
+            throws IOException {
+        Batcher batcher = new Batcher(receiver);
+        switch (format) {
+            case GEOJSON:
+                readGeoJson(newReader(channel), batcher);
+                break;
+            case CSV:
+                readCsv(newReader(channel), batcher);
+                break;
+            case BINARY:
+                readBinary(
+                        new DataInputStream(
+                                new BufferedInputStream(
+                                        Channels.newInputStream(channel), BUFFER_SIZE)),
+                        batcher);
+                break;
+        }
+        batcher.flush();
+        return batcher.count;
+    }
+
+    /**
+     * ดูรูปแบบจาก byte แรกของไฟล์ (in ต้องรองรับ mark) ไม่ใช้นามสกุลเพราะไฟล์จากแชร์มักไม่มีชื่อ
+     */
+    public static Format detect(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte[] head = new byte[MAGIC.length];
+        int read = 0;
+        while (read < head.length) {
+            int n = in.read(head, read, head.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        in.reset();
+        if (read == MAGIC.length && Arrays.equals(head, MAGIC)) return Format.BINARY;
+        for (int i = 0; i < read; i++) {
+            int b = head[i] & 0xff;
+            // ข้าม BOM ของ UTF-8 และช่องว่าง
+            if (b == 0xef || b == 0xbb || b == 0xbf || Character.isWhitespace(b)) continue;
+            return b == '{' ? Format.GEOJSON : Format.CSV;
+        }
+        return Format.CSV;
+    }
+
+    private static void appendFeature(StringBuilder sb, MainActivity.Report report) {
+        sb.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+        appendDegrees(sb, report.location.lng);
+        sb.append(',');
+        appendDegrees(sb, report.location.lat);
+        sb.append("]},\"properties\":{\"id\":").append(report.id);
+        sb.append(",\"severity\":\"").append(report.level.name());
+        sb.append("\",\"type\":\"").append(report.type.name());
+        sb.append("\",\"status\":\"").append(report.status.name());
+        sb.append("\",\"statusVersion\":").append(report.statusVersion);
+        sb.append(",\"timestamp\":");
+        appendJsonString(sb, ReportTime.formatIso(report.timestamp));
+        sb.append(",\"relayed\":").append(report.relayed);
+        sb.append(",\"name\":");
+        appendJsonString(sb, report.name);
+        sb.append(",\"contact\":");
+        appendJsonString(sb, report.contact);
+        sb.append(",\"details\":");
+        appendJsonString(sb, report.details);
+        sb.append("}}");
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(Character.forDigit(c >> 4, 16));
+                        sb.append(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendCsvRow(StringBuilder sb, MainActivity.Report report) {
+        sb.append(report.id).append(',');
+        appendDegrees(sb, report.location.lat);
+        sb.append(',');
+        appendDegrees(sb, report.location.lng);
+        sb.append(',').append(report.level.name());
+        sb.append(',').append(report.type.name());
+        sb.append(',').append(report.status.name());
+        sb.append(',').append(report.statusVersion).append(',');
+        appendCsvField(sb, ReportTime.formatIso(report.timestamp));
+        sb.append(',').append(report.relayed).append(',');
+        appendCsvField(sb, report.name);
+        sb.append(',');
+        appendCsvField(sb, report.contact);
+        sb.append(',');
+        appendCsvField(sb, report.details);
+        sb.append("\r\n");
+    }
+
+    /**
+     * RFC 4180: ใส่เครื่องหมายคำพูดเมื่อมี , " หรือขึ้นบรรทัดใหม่ และ " ข้างในเขียนเป็น ""
+     */
+    private static void appendCsvField(StringBuilder sb, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * ทศนิยม 7 ตำแหน่งเท่ากับความละเอียดของ ReportCodec อ่านกลับแล้วได้ค่าเดิม
+     * (ไม่ใช้ String.format ซึ่งช้าและขึ้นกับ locale)
+     */
+    private static void appendDegrees(StringBuilder sb, double degrees) {
+        long fixed = ReportCodec.toFixed(degrees);
+        if (fixed < 0) {
+            sb.append('-');
+            fixed = -fixed;
+        }
+        sb.append(fixed / 10_000_000).append('.');
+        String fraction = Long.toString(fixed % 10_000_000);
+        for (int i = fraction.length(); i < 7; i++) sb.append('0');
+        sb.append(fraction);
+    }
+
+    private static Reader newReader(ReadableByteChannel channel) {
+        return new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    private static void readBinary(DataInputStream in, Batcher batcher) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readInt() != FILE_VERSION) {
+            throw new IOException("Not a report export file");
+        }
+        while (true) {
+            MainActivity.Report report;
+            try {
+                byte[] codec = new byte[in.readUnsignedShort()];
+                in.readFully(codec);
+                byte[] envelope = new byte[in.readUnsignedShort()];
+                in.readFully(envelope);
+                report = ReportCodec.decode(codec);
+                if (envelope.length > 0) report.envelope = envelope;
+            } catch (EOFException e) {
+                break;
+            }
+            batcher.add(report);
+        }
+    }
+
+    private static void readCsv(Reader in, Batcher batcher) throws IOException {
+        List<String> fields = new ArrayList<>(CSV_COLUMNS);
+        StringBuilder field = new StringBuilder();
+        if (!readCsvRecord(in, fields, field)) return;
+        if (!fields.isEmpty() && fields.get(0).startsWith("\uFEFF")) {
+            fields.set(0, fields.get(0).substring(1));
+        }
+        if (!"id".equals(fields.get(0))) throw new IOException("Missing CSV header");
+        long row = 1;
+        while (readCsvRecord(in, fields, field)) {
+            row++;
+            if (fields.size() == 1 && fields.get(0).isEmpty()) continue;
+            if (fields.size() != CSV_COLUMNS) {
+                throw new IOException("Bad CSV row " + row);
+            }
+            try {
+                batcher.add(
+                        newReport(
+                                Integer.parseInt(fields.get(0)),
+                                Double.parseDouble(fields.get(1)),
+                                Double.parseDouble(fields.get(2)),
+                                fields.get(3),
+                                fields.get(4),
+                                fields.get(5),
+                                Integer.parseInt(fields.get(6)),
+                                fields.get(7),
+                                Boolean.parseBoolean(fields.get(8)),
+                                fields.get(9),
+                                fields.get(10),
+                                fields.get(11)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad CSV row " + row, e);
+            }
+        }
+    }
+
+    /**
+     * อ่านหนึ่ง record (อาจหลายบรรทัดถ้ามีช่องในเครื่องหมายคำพูด) คืน false เมื่อหมดไฟล์
+     */
+    private static boolean readCsvRecord(Reader in, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c = in.read();
+        if (c < 0) return false;
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) throw new IOException("Unterminated CSV field");
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c < 0) {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    private static void readGeoJson(Reader in, Batcher batcher) throws IOException {
+        JsonStreamReader json = new JsonStreamReader(in);
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!"features".equals(json.nextName())) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                batcher.add(readFeature(json));
+            }
+            json.endArray();
+        }
+        json.endObject();
+        if (json.peek() != JsonStreamReader.Token.END_DOCUMENT) {
+            throw new IOException("Trailing data after GeoJSON");
+        }
+    }
+
+    private static MainActivity.Report readFeature(JsonStreamReader json) throws IOException {
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+        int id = -1;
+        String severity = null;
+        String type = null;
+        String status = null;
+        int statusVersion = 0;
+        String timestamp = "";
+        boolean relayed = false;
+        String name = "";
+        String contact = "";
+        String details = "";
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            JsonStreamReader.Token value = json.peek();
+            if ("geometry".equals(key) && value == JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if ("coordinates".equals(json.nextName())) {
+                        json.beginArray();
+                        lng = json.nextDouble();
+                        lat = json.nextDouble();
+                        while (json.hasNext()) json.skipValue();
+                        json.endArray();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else if ("properties".equals(key) && value == JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String property = json.nextName();
+                    if (json.peek() == JsonStreamReader.Token.NULL) {
+                        json.skipValue();
+                        continue;
+                    }
+                    switch (property) {
+                        case "id":
+                            id = json.nextInt();
+                            break;
+                        case "severity":
+                            severity = json.nextString();
+                            break;
+                        case "type":
+                            type = json.nextString();
+                            break;
+                        case "status":
+                            status = json.nextString();
+                            break;
+                        case "statusVersion":
+                            statusVersion = json.nextInt();
+                            break;
+                        case "timestamp":
+                            timestamp = json.nextString();
+                            break;
+                        case "relayed":
+                            relayed = json.nextBoolean();
+                            break;
+                        case "name":
+                            name = json.nextString();
+                            break;
+                        case "contact":
+                            contact = json.nextString();
+                            break;
+                        case "details":
+                            details = json.nextString();
+                            break;
+                        default:
+                            json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (id < 0 || Double.isNaN(lat) || severity == null || type == null || status == null) {
+            throw new IOException("Incomplete GeoJSON feature");
+        }
+        try {
+            return newReport(
+                    id, lat, lng, severity, type, status, statusVersion, timestamp, relayed, name,
+                    contact, details);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad GeoJSON feature " + id, e);
+        }
+    }
+
+    private static MainActivity.Report newReport(
+            int id,
+            double lat,
+            double lng,
+            String severity,
+            String type,
+            String status,
+            int statusVersion,
+            String timestamp,
+            boolean relayed,
+            String name,
+            String contact,
+            String details) {
+        if (id < 0) throw new IllegalArgumentException("Negative id " + id);
+        MainActivity.Report report =
+                new MainActivity.Report(
+                        id,
+                        name,
+                        contact,
+                        details,
+                        new MainActivity.Location(lat, lng),
+                        ReportTime.parseIso(timestamp),
+                        MainActivity.Severity.valueOf(severity),
+                        MainActivity.ReportStatus.valueOf(status),
+                        MainActivity.ReportType.valueOf(type),
+                        relayed);
+        report.statusVersion = statusVersion;
+        return report;
+    }
+
+    private static final class Batcher {
+        private final Receiver receiver;
+        private List<MainActivity.Report> batch = new ArrayList<>(IMPORT_BATCH);
+        long count;
+
+        Batcher(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        void add(MainActivity.Report report) {
+            batch.add(report);
+            count++;
+            if (batch.size() >= IMPORT_BATCH) flush();
+        }
+
+        void flush() {
+            if (batch.isEmpty()) return;
+            // receiver อาจส่งชุดนี้ไป thread อื่น จึงเริ่ม list ใหม่แทนการ clear
+            receiver.onReports(batch);
+            batch = new ArrayList<>(IMPORT_BATCH);
+        }
+    }
+
+    /**
+     * ByteBuffer เดียวใช้ซ้ำตลอดไฟล์ เขียนลง channel เมื่อเต็ม
+     */
+    private static final class ChannelWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    break;
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) drain();
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) drain();
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void writeShort(int value) throws IOException {
+            if (buffer.remaining() < 2) drain();
+            buffer.putShort((short) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            if (buffer.remaining() < 4) drain();
+            buffer.putInt(value);
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
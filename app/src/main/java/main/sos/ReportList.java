@@ -0,0 +1,331 @@
+package main.sos;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * รายการรายงานที่แก้บน main thread และ snapshot ได้โดยไม่ copy ทั้งรายการ
+ *
+ * เก็บเป็น chunk ละไม่เกิน CHUNK_SIZE รายงาน snapshot ใช้ chunk ร่วมกับรายการ (copy-on-write):
+ * หลัง snapshot การแก้ครั้งแรกใน chunk ไหนจะสำเนาเฉพาะ chunk นั้น ตารางของ chunk สำเนาครั้งเดียว
+ * ลบตาม id หา chunk จาก map จึงไม่ต้องไล่ทั้งรายการ
+ *
+ * id ในรายการต้องไม่ซ้ำกัน remove/removeAll/replace เทียบด้วย id ไม่ใช่ object
+ * snapshot แก้ไม่ได้ ส่งให้ thread อื่นได้ (ผ่าน volatile) ตัวรายการเองใช้บน thread เดียว
+ */
+final class ReportList extends AbstractList<MainActivity.Report> implements RandomAccess {
+
+    static final int CHUNK_SIZE = 64;
+
+    private static final class Chunk {
+        final MainActivity.Report[] items;
+        int size;
+        // สร้างในรอบ snapshot ไหน ถ้าไม่ใช่รอบปัจจุบันแปลว่า snapshot ถืออยู่ ห้ามแก้
+        final int generation;
+
+        Chunk(int generation) {
+            this.items = new MainActivity.Report[CHUNK_SIZE];
+            this.generation = generation;
+        }
+
+        Chunk(Chunk source, int generation) {
+            this.items = source.items.clone();
+            this.size = source.size;
+            this.generation = generation;
+        }
+    }
+
+    private Chunk[] chunks = new Chunk[8];
+    private int chunkCount;
+    private int size;
+    private int generation;
+    // ตาราง chunks ถูก snapshot ถืออยู่
+    private boolean tableShared;
+    private Snapshot snapshot;
+    private final Map<Integer, Chunk> chunkOf = new HashMap<>();
+    // ตำแหน่งเริ่มของแต่ละ chunk สร้างใหม่เมื่อจำเป็น (null หลังแก้)
+    private int[] offsets;
+
+    /**
+     * สำเนาที่แก้ไม่ได้ O(1) ถ้าไม่มีอะไรเปลี่ยนตั้งแต่ครั้งก่อนจะได้ object เดิม
+     */
+    List<MainActivity.Report> snapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(chunks, chunkCount, size);
+            tableShared = true;
+            generation++;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public MainActivity.Report get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index);
+        if (offsets == null) offsets = offsets(chunks, chunkCount);
+        int chunk = chunkAt(offsets, chunkCount, index);
+        return chunks[chunk].items[index - offsets[chunk]];
+    }
+
+    /**
+     * ใส่ที่ต้นหรือท้ายรายการ (ตำแหน่งอื่นแบ่ง chunk)
+     */
+    @Override
+    public void add(int index, MainActivity.Report report) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("Index " + index);
+        if (chunkOf.containsKey(report.id)) {
+            throw new IllegalArgumentException("Duplicate report " + report.id);
+        }
+        changed();
+        int chunk;
+        int position;
+        if (index == 0) {
+            if (chunkCount == 0 || chunks[0].size == CHUNK_SIZE) insertChunk(0);
+            chunk = 0;
+            position = 0;
+        } else if (index == size) {
+            if (chunks[chunkCount - 1].size == CHUNK_SIZE) insertChunk(chunkCount);
+            chunk = chunkCount - 1;
+            position = chunks[chunk].size;
+        } else {
+            int[] starts = offsets(chunks, chunkCount);
+            chunk = chunkAt(starts, chunkCount, index);
+            position = index - starts[chunk];
+            if (chunks[chunk].size == CHUNK_SIZE) {
+                split(chunk);
+                if (position > CHUNK_SIZE / 2) {
+                    chunk++;
+                    position -= CHUNK_SIZE / 2;
+                }
+            }
+        }
+        Chunk target = writable(chunk);
+        System.arraycopy(
+                target.items, position, target.items, position + 1, target.size - position);
+        target.items[position] = report;
+        target.size++;
+        chunkOf.put(report.id, target);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * ลบรายงานที่มี id เดียวกับ o
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof MainActivity.Report)) return false;
+        int id = ((MainActivity.Report) o).id;
+        Chunk found = chunkOf.get(id);
+        if (found == null) return false;
+        changed();
+        int chunk = indexOfChunk(found);
+        Chunk target = writable(chunk);
+        int position = 0;
+        while (target.items[position].id != id) position++;
+        System.arraycopy(
+                target.items, position + 1, target.items, position, target.size - position - 1);
+        target.items[--target.size] = null;
+        chunkOf.remove(id);
+        if (target.size == 0) removeChunk(chunk);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * ลบทุกรายงานที่มี id ตรงกับใน c ในรอบเดียว (เรียงชิดกันใหม่ทั้งรายการ)
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Set<Integer> ids = new HashSet<>();
+        for (Object o : c) {
+            if (o instanceof MainActivity.Report) {
+                int id = ((MainActivity.Report) o).id;
+                if (chunkOf.containsKey(id)) ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) return false;
+        Chunk[] old = chunks;
+        int oldCount = chunkCount;
+        changed();
+        chunks = new Chunk[Math.max(8, chunks.length)];
+        tableShared = false;
+        chunkCount = 0;
+        size = 0;
+        chunkOf.clear();
+        for (int c0 = 0; c0 < oldCount; c0++) {
+            for (int i = 0; i < old[c0].size; i++) {
+                MainActivity.Report report = old[c0].items[i];
+                if (!ids.contains(report.id)) add(size, report);
+            }
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * แทนรายงานที่มี id เดียวกันในตำแหน่งเดิม คืน false ถ้าไม่มี
+     */
+    boolean replace(MainActivity.Report report) {
+        Chunk found = chunkOf.get(report.id);
+        if (found == null) return false;
+        changed();
+        Chunk target = writable(indexOfChunk(found));
+        int position = 0;
+        while (target.items[position].id != report.id) position++;
+        target.items[position] = report;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof MainActivity.Report
+                && chunkOf.containsKey(((MainActivity.Report) o).id);
+    }
+
+    @Override
+    public void clear() {
+        changed();
+        chunks = new Chunk[8];
+        tableShared = false;
+        chunkCount = 0;
+        size = 0;
+        chunkOf.clear();
+        modCount++;
+    }
+
+    private void changed() {
+        snapshot = null;
+        offsets = null;
+    }
+
+    /**
+     * chunk ที่แก้ได้ สำเนาก่อนถ้า snapshot ถืออยู่
+     */
+    private Chunk writable(int index) {
+        Chunk chunk = chunks[index];
+        if (chunk.generation == generation) return chunk;
+        Chunk copy = new Chunk(chunk, generation);
+        for (int i = 0; i < copy.size; i++) chunkOf.put(copy.items[i].id, copy);
+        ownTable();
+        chunks[index] = copy;
+        return copy;
+    }
+
+    private void ownTable() {
+        if (!tableShared) return;
+        Chunk[] copy = new Chunk[Math.max(8, chunkCount * 2)];
+        System.arraycopy(chunks, 0, copy, 0, chunkCount);
+        chunks = copy;
+        tableShared = false;
+    }
+
+    private void insertChunk(int index) {
+        ownTable();
+        if (chunkCount == chunks.length) {
+            Chunk[] grown = new Chunk[chunkCount * 2];
+            System.arraycopy(chunks, 0, grown, 0, chunkCount);
+            chunks = grown;
+        }
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        chunks[index] = new Chunk(generation);
+        chunkCount++;
+    }
+
+    private void removeChunk(int index) {
+        ownTable();
+        System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+        chunks[--chunkCount] = null;
+    }
+
+    /**
+     * แบ่ง chunk ที่เต็มเป็นสองครึ่ง
+     */
+    private void split(int index) {
+        Chunk full = writable(index);
+        insertChunk(index + 1);
+        Chunk upper = chunks[index + 1];
+        int half = CHUNK_SIZE / 2;
+        System.arraycopy(full.items, half, upper.items, 0, CHUNK_SIZE - half);
+        for (int i = half; i < CHUNK_SIZE; i++) {
+            chunkOf.put(full.items[i].id, upper);
+            full.items[i] = null;
+        }
+        upper.size = CHUNK_SIZE - half;
+        full.size = half;
+    }
+
+    private int indexOfChunk(Chunk chunk) {
+        for (int i = 0; i < chunkCount; i++) {
+            if (chunks[i] == chunk) return i;
+        }
+        throw new IllegalStateException("Chunk not in list");
+    }
+
+    private static int[] offsets(Chunk[] chunks, int count) {
+        int[] starts = new int[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            starts[i] = start;
+            start += chunks[i].size;
+        }
+        return starts;
+    }
+
+    /**
+     * chunk สุดท้ายที่เริ่มไม่เกิน index
+     */
+    private static int chunkAt(int[] starts, int count, int index) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static final class Snapshot extends AbstractList<MainActivity.Report>
+            implements RandomAccess {
+        private final Chunk[] chunks;
+        private final int chunkCount;
+        private final int size;
+        private final int[] starts;
+
+        Snapshot(Chunk[] chunks, int chunkCount, int size) {
+            this.chunks = chunks;
+            this.chunkCount = chunkCount;
+            this.size = size;
+            this.starts = offsets(chunks, chunkCount);
+        }
+
+        @Override
+        public MainActivity.Report get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index);
+            }
+            int chunk = chunkAt(starts, chunkCount, index);
+            return chunks[chunk].items[index - starts[chunk]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package main.sos;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * index ค้นหารายงานในหน่วยความจำ (inverted index) ตัดคำภาษาไทยด้วย BreakIterator
+ * รองรับค้นหาแบบ prefix ระหว่างพิมพ์ และกรองด้วย bitset ตามระดับความรุนแรง/ประเภท/สถานะ
+ *
+ * รายงานแต่ละฉบับได้ slot ตามลำดับที่เพิ่มเข้ามา การแก้ไขจะได้ slot ใหม่และทิ้ง slot เดิม
+ * (postings ไม่ต้องลบทีละตัว) เมื่อ slot ที่ทิ้งมีมากกว่าที่ใช้อยู่จะจัด slot ใหม่ให้ต่อกัน
+ * postings แต่ละคำแปลงเป็น slot ใหม่ตอนถูกใช้ครั้งแรก หรือทยอยทีละ SWEEP_BATCH คำต่อ put
+ * (ไม่ตัดคำใหม่ และไม่ไล่ทุกคำในครั้งเดียวบน main thread)
+ *
+ * คำที่ขึ้นต้นด้วยตัวเลข (เบอร์โทรแทบไม่ซ้ำกันเลย) มี postings แยกตาม prefix ตัวเลขไม่เกิน
+ * DIGIT_PREFIX_LENGTH ตัว prefix สั้นๆ อย่าง "08" จึงอ่าน postings เดียวแทนการไล่ทุกเบอร์ใน TreeMap
+ */
+public class ReportSearchIndex {
+
+    private static final Locale THAI = new Locale("th", "TH");
+    private static final int MIN_COMPACT_SLOTS = 1024;
+    private static final int DIGIT_PREFIX_LENGTH = 4;
+    private static final int SWEEP_BATCH = 64;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final TreeMap<String, Postings> digitPrefixes = new TreeMap<>();
+    private final Map<Integer, Entry> entryById = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final BitSet[] bySeverity = newBitSets(MainActivity.Severity.values().length);
+    private final BitSet[] byType = newBitSets(MainActivity.ReportType.values().length);
+    private final BitSet[] byStatus = newBitSets(MainActivity.ReportStatus.values().length);
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    private Entry[] slots = new Entry[256];
+    private int slotCount;
+
+    // รุ่นของเลข slot เพิ่มทุกครั้งที่ compact และ slot รุ่นก่อน -> slot ปัจจุบัน (-1 คือทิ้ง)
+    private int epoch;
+    private int[] moved;
+    // postings ที่ยังอาจเป็นเลข slot รุ่นก่อน ไล่จาก terms แล้วต่อด้วย digitPrefixes
+    private TreeMap<String, Postings> sweepMap;
+    private String sweepKey;
+
+    /**
+     * เงื่อนไขกรอง ค่า null หมายถึงไม่กรองด้านนั้น
+     */
+    public static class Filter {
+        public final MainActivity.Severity severity;
+        public final MainActivity.ReportType type;
+        public final MainActivity.ReportStatus status;
+
+        public static final Filter NONE = new Filter(null, null, null);
+
+        public Filter(
+                MainActivity.Severity severity,
+                MainActivity.ReportType type,
+                MainActivity.ReportStatus status) {
+            this.severity = severity;
+            this.type = type;
+            this.status = status;
+        }
+    }
+
+    /**
+     * ตัดคำแบบเดียวกับ index ไม่ thread-safe (BreakIterator) ใช้หนึ่งตัวต่อ thread
+     */
+    public static final class Tokenizer {
+        private final BreakIterator wordIterator = BreakIterator.getWordInstance(THAI);
+
+        /**
+         * คำทั้งหมดที่ใช้ค้นหารายงานนี้ได้ ไม่ซ้ำกัน
+         */
+        public Set<String> tokensOf(MainActivity.Report report) {
+            Set<String> tokens = new LinkedHashSet<>();
+            tokens.addAll(tokenize(report.name));
+            tokens.addAll(tokenize(report.contact));
+            tokens.addAll(tokenize(report.details));
+            // เบอร์โทรค้นได้ทั้งแบบมีขีดและตัวเลขติดกัน
+            if (report.contact != null) {
+                StringBuilder digits = new StringBuilder();
+                for (int i = 0; i < report.contact.length(); i++) {
+                    char c = report.contact.charAt(i);
+                    if (c >= '0' && c <= '9') digits.append(c);
+                }
+                if (digits.length() > 0) tokens.add(digits.toString());
+            }
+            return tokens;
+        }
+
+        /**
+         * ตัดคำตามขอบเขตคำของ locale ไทย (ภาษาอื่นตัดตามช่องว่าง/เครื่องหมายตามปกติ)
+         */
+        public List<String> tokenize(String text) {
+            List<String> tokens = new ArrayList<>();
+            if (text == null || text.isEmpty()) return tokens;
+            String lower = text.toLowerCase(THAI);
+            wordIterator.setText(lower);
+            int start = wordIterator.first();
+            for (int end = wordIterator.next();
+                    end != BreakIterator.DONE;
+                    start = end, end = wordIterator.next()) {
+                if (Character.isLetterOrDigit(lower.codePointAt(start))) {
+                    tokens.add(lower.substring(start, end));
+                }
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * เพิ่มหรือแก้ไขรายงาน (เรียกซ้ำด้วย id เดิมหลังจากข้อมูลเปลี่ยน)
+     */
+    public synchronized void put(MainActivity.Report report) {
+        put(report, tokenizer.tokensOf(report));
+    }
+
+    /**
+     * เหมือน put(report) แต่ใช้คำที่ตัดไว้แล้ว (เช่นจาก SessionCheckpoint) ไม่ต้องตัดคำใหม่
+     */
+    public synchronized void put(MainActivity.Report report, Iterable<String> tokens) {
+        Entry previous = entryById.get(report.id);
+        if (previous != null) clearSlot(previous.slot);
+        if (slotCount == slots.length) {
+            if (needsCompaction()) {
+                compact();
+            }
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+        }
+        int slot = slotCount++;
+        slots[slot] = new Entry(report, slot);
+        entryById.put(report.id, slots[slot]);
+        live.set(slot);
+        bySeverity[report.level.code].set(slot);
+        byType[report.type.code].set(slot);
+        byStatus[report.status.code].set(slot);
+        for (String token : tokens) {
+            Postings postings = terms.get(token);
+            if (postings == null) {
+                postings = new Postings(epoch);
+                terms.put(token, postings);
+            }
+            current(postings).add(slot);
+            addDigitPrefixes(token, slot);
+        }
+        sweep(SWEEP_BATCH);
+    }
+
+    /**
+     * เพิ่มรายงานจำนวนมากพร้อมคำที่ตัดไว้แล้ว (tokens ตำแหน่งเดียวกับ reports)
+     * รวม postings ใน HashMap ก่อน แล้วใส่ TreeMap ครั้งเดียวต่อคำ แทนครั้งเดียวต่อคำต่อรายงาน
+     */
+    public synchronized void putAll(List<MainActivity.Report> reports, List<String[]> tokens) {
+        Map<String, Postings> staged = new HashMap<>();
+        for (int i = 0; i < reports.size(); i++) {
+            MainActivity.Report report = reports.get(i);
+            Entry previous = entryById.get(report.id);
+            if (previous != null) clearSlot(previous.slot);
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, slotCount + reports.size()));
+            }
+            int slot = slotCount++;
+            slots[slot] = new Entry(report, slot);
+            entryById.put(report.id, slots[slot]);
+            live.set(slot);
+            bySeverity[report.level.code].set(slot);
+            byType[report.type.code].set(slot);
+            byStatus[report.status.code].set(slot);
+            for (String token : tokens.get(i)) {
+                Postings postings = staged.get(token);
+                if (postings == null) {
+                    postings = terms.get(token);
+                    postings = postings == null ? new Postings(epoch) : current(postings);
+                    staged.put(token, postings);
+                }
+                postings.add(slot);
+                addDigitPrefixes(token, slot);
+            }
+        }
+        terms.putAll(staged);
+    }
+
+    public synchronized void remove(int reportId) {
+        Entry entry = entryById.remove(reportId);
+        if (entry != null) clearSlot(entry.slot);
+    }
+
+    public synchronized void clear() {
+        terms.clear();
+        digitPrefixes.clear();
+        entryById.clear();
+        live.clear();
+        clearAll(bySeverity);
+        clearAll(byType);
+        clearAll(byStatus);
+        Arrays.fill(slots, 0, slotCount, null);
+        slotCount = 0;
+        moved = null;
+        sweepMap = null;
+        sweepKey = null;
+    }
+
+    public synchronized int size() {
+        return entryById.size();
+    }
+
+    /**
+     * ค้นหารายงานที่มีทุกคำใน query (แต่ละคำจับคู่แบบ prefix) และผ่านตัวกรอง
+     * เรียงจากรายงานที่เพิ่ม/แก้ไขล่าสุดก่อน query ว่างคืนทุกรายงานที่ผ่านตัวกรอง
+     */
+    public synchronized List<MainActivity.Report> search(String query, Filter filter) {
+        BitSet result = (BitSet) live.clone();
+        if (filter.severity != null) result.and(bySeverity[filter.severity.code]);
+        if (filter.type != null) result.and(byType[filter.type.code]);
+        if (filter.status != null) result.and(byStatus[filter.status.code]);
+
+        for (String token : tokenizer.tokenize(query)) {
+            if (result.isEmpty()) break;
+            result.and(matchPrefix(token));
+        }
+
+        List<MainActivity.Report> reports = new ArrayList<>(result.cardinality());
+        for (int slot = result.previousSetBit(slotCount - 1);
+                slot >= 0;
+                slot = result.previousSetBit(slot - 1)) {
+            reports.add(slots[slot].report);
+        }
+        return reports;
+    }
+
+    private BitSet matchPrefix(String prefix) {
+        BitSet matches = new BitSet(slotCount);
+        if (prefix.length() <= DIGIT_PREFIX_LENGTH && digitCount(prefix) == prefix.length()) {
+            Postings postings = digitPrefixes.get(prefix);
+            if (postings != null) {
+                current(postings);
+                for (int i = 0; i < postings.size; i++) {
+                    matches.set(postings.slots[i]);
+                }
+            }
+            return matches;
+        }
+        SortedMap<String, Postings> range = terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Postings postings : range.values()) {
+            current(postings);
+            for (int i = 0; i < postings.size; i++) {
+                matches.set(postings.slots[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * ใส่ slot ลงทุก prefix ตัวเลขของคำ (เช่น "0812" ได้ "0", "08", "081", "0812")
+     */
+    private void addDigitPrefixes(String token, int slot) {
+        int digits = Math.min(digitCount(token), DIGIT_PREFIX_LENGTH);
+        for (int length = 1; length <= digits; length++) {
+            String prefix = token.substring(0, length);
+            Postings postings = digitPrefixes.get(prefix);
+            if (postings == null) {
+                postings = new Postings(epoch);
+                digitPrefixes.put(prefix, postings);
+            }
+            current(postings).add(slot);
+        }
+    }
+
+    /**
+     * จำนวนตัวเลข 0-9 ที่ขึ้นต้นข้อความ
+     */
+    private static int digitCount(String text) {
+        int count = 0;
+        while (count < text.length() && text.charAt(count) >= '0' && text.charAt(count) <= '9') {
+            count++;
+        }
+        return count;
+    }
+
+    private void clearSlot(int slot) {
+        MainActivity.Report report = slots[slot].report;
+        live.clear(slot);
+        bySeverity[report.level.code].clear(slot);
+        byType[report.type.code].clear(slot);
+        byStatus[report.status.code].clear(slot);
+    }
+
+    private boolean needsCompaction() {
+        int dead = slotCount - entryById.size();
+        return slotCount >= MIN_COMPACT_SLOTS && dead > entryById.size();
+    }
+
+    /**
+     * ย้าย slot ที่ยังใช้อยู่มาต่อกันโดยรักษาลำดับเดิม ใช้เวลาตามจำนวนรายงาน ไม่ใช่จำนวนคำ
+     * postings ยังเป็นเลขรุ่นก่อนจนกว่า current() หรือ sweep() จะแปลง
+     */
+    private void compact() {
+        // รอบก่อนยังแปลงไม่ครบ ต้องให้ครบก่อนเพราะเก็บ moved ไว้รุ่นเดียว
+        sweep(Integer.MAX_VALUE);
+        int[] map = new int[slotCount];
+        Arrays.fill(map, -1);
+        int next = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            map[slot] = next;
+            slots[next] = slots[slot];
+            slots[next].slot = next;
+            next++;
+        }
+        Arrays.fill(slots, next, slotCount, null);
+        slotCount = next;
+
+        live.clear();
+        clearAll(bySeverity);
+        clearAll(byType);
+        clearAll(byStatus);
+        live.set(0, slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            MainActivity.Report report = slots[slot].report;
+            bySeverity[report.level.code].set(slot);
+            byType[report.type.code].set(slot);
+            byStatus[report.status.code].set(slot);
+        }
+
+        epoch++;
+        moved = map;
+        sweepMap = terms;
+        sweepKey = null;
+    }
+
+    /**
+     * แปลง postings เป็นเลข slot รุ่นปัจจุบันถ้ายังไม่ได้แปลง
+     */
+    private Postings current(Postings postings) {
+        if (postings.epoch != epoch) {
+            postings.remap(moved);
+            postings.epoch = epoch;
+        }
+        return postings;
+    }
+
+    /**
+     * แปลง postings ที่ค้างจาก compact ไม่เกิน budget คำ คำที่ไม่เหลือรายงานถูกลบออก
+     */
+    private void sweep(int budget) {
+        while (sweepMap != null && budget-- > 0) {
+            Map.Entry<String, Postings> entry =
+                    sweepKey == null ? sweepMap.firstEntry() : sweepMap.higherEntry(sweepKey);
+            if (entry == null) {
+                sweepMap = sweepMap == terms ? digitPrefixes : null;
+                sweepKey = null;
+                continue;
+            }
+            sweepKey = entry.getKey();
+            if (current(entry.getValue()).size == 0) sweepMap.remove(sweepKey);
+        }
+        if (sweepMap == null) moved = null;
+    }
+
+    private static BitSet[] newBitSets(int count) {
+        BitSet[] sets = new BitSet[count];
+        for (int i = 0; i < count; i++) sets[i] = new BitSet();
+        return sets;
+    }
+
+    private static void clearAll(BitSet[] sets) {
+        for (BitSet set : sets) set.clear();
+    }
+
+    /**
+     * รายงานใน slot หนึ่ง เก็บเลข slot ไว้เองเพื่อให้ compact ย้ายได้โดยไม่ต้องแก้ HashMap
+     */
+    private static class Entry {
+        final MainActivity.Report report;
+        int slot;
+
+        Entry(MainActivity.Report report, int slot) {
+            this.report = report;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * รายการ slot ของคำหนึ่งคำ เก็บเป็น int[] ที่ขยายได้
+     */
+    private static class Postings {
+        int[] slots = new int[4];
+        int size;
+        int epoch;
+
+        Postings(int epoch) {
+            this.epoch = epoch;
+        }
+
+        void add(int slot) {
+            // slot เพิ่มขึ้นเสมอ คำเดียวกันในรายงานเดียวกัน (เช่น prefix ตัวเลข) เก็บครั้งเดียว
+            if (size > 0 && slots[size - 1] == slot) return;
+            if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+
+        /**
+         * แปลง slot ตาม moved (-1 คือทิ้ง)
+         */
+        void remap(int[] moved) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int slot = moved[slots[i]];
+                if (slot >= 0) slots[kept++] = slot;
+            }
+            size = kept;
+        }
+    }
+}
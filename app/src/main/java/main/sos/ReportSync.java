@@ -0,0 +1,651 @@
+package main.sos;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ซิงก์ชุดรายงานระหว่างสองเครื่องผ่าน stream socket ด้วย range-hash set reconciliation
+ * ส่งเฉพาะรายงานที่อีกฝั่งยังไม่มี เป็น batch ของ ReportCodec ที่บีบอัดด้วย BatchCompressor
+ * fingerprint รวมสถานะ (StatusEvent.stateKey) ด้วย รายงานที่มีทั้งสองฝั่งแต่สถานะต่างกัน
+ * จึงส่งแค่ StatusEvent ฉบับล่าสุดแทนการส่งรายงานทั้งฉบับ
+ * และรวม contentVersion ของซอง รายงานที่ผู้แจ้งแก้หลังอีกฝั่งได้ไปแล้วจึงส่งซองใหม่ทั้งฉบับ
+ * ส่งต่อเฉพาะสถานะที่มี StatusEvent ที่เซ็นแล้ว สถานะที่พิสูจน์ไม่ได้นับเป็น WAITING
+ *
+ * หลัง handshake ทั้งสองฝั่งส่งตำแหน่งหน่วยกู้ภัยที่รู้ (AssignmentSolver.Rescuer) ให้กัน
+ * โพรโทคอลเป็นรอบสลับกัน แต่ละรอบคือรายการ item ปิดท้ายด้วย END_ROUND
+ * ฝั่งที่ส่งรอบว่างหรือได้รับรอบว่างถือว่าจบ
+ */
+public class ReportSync {
+
+    public interface Store {
+        /**
+         * รายงานทั้งหมด ณ ตอนเริ่มซิงก์ (เรียกจาก worker thread)
+         */
+        List<MainActivity.Report> snapshot();
+
+        /**
+         * รายงานที่ได้รับจากอีกฝั่ง (เรียกจาก worker thread)
+         */
+        void addReports(List<MainActivity.Report> received);
+
+        /**
+         * สถานะที่ใหม่กว่าจากอีกฝั่ง ลายเซ็นตรวจแล้ว แต่ Store ต้องตรวจ StatusEvent.isAuthorizedFor
+         * เองเพราะต้องใช้รายงานในเครื่อง (เรียกจาก worker thread หลัง addReports ของ batch นั้น)
+         */
+        void applyStatus(List<StatusEvent> events);
+
+        /**
+         * ตำแหน่งหน่วยกู้ภัยที่รู้ ไม่เกิน AssignmentSolver.MAX_SHARED_RESCUERS (เรียกจาก worker thread)
+         */
+        List<AssignmentSolver.Rescuer> rescuers();
+
+        /**
+         * ตำแหน่งหน่วยกู้ภัยจากอีกฝั่ง (เรียกจาก worker thread)
+         */
+        void applyRescuers(List<AssignmentSolver.Rescuer> received);
+    }
+
+    public static class Result {
+        public int rounds;
+        public int reportsSent;
+        public int reportsReceived;
+        public int statusSent;
+        public int statusReceived;
+        public long bytesSent;
+        public long bytesReceived;
+    }
+
+    private static final String TAG = "ReportSync";
+
+    static final int MAGIC = 0x6d534f53; // "mSOS"
+    static final byte PROTOCOL_VERSION = 9;
+
+    private static final byte END_ROUND = 0;
+    private static final byte FINGERPRINT = 1;
+    private static final byte IDS = 2;
+    private static final byte NEED = 3;
+    static final byte REPORTS = 4;
+    private static final byte STATUS = 5;
+    private static final byte NEED_STATUS = 6;
+
+    // ช่วงที่มีรายงานไม่เกินนี้ส่งรายชื่อ id ตรงๆ แทนการแบ่งย่อย
+    private static final int ID_LIST_THRESHOLD = 32;
+    private static final int SPLIT_FACTOR = 16;
+    static final int MAX_BATCH = 256;
+    private static final long ID_SPACE_END = 1L << 31;
+
+    // รายการใน batch: รายงานธรรมดา หรือ ReportEnvelope ตามด้วย StatusEvent ที่เซ็นแล้ว (ถ้ามี)
+    private static final byte ENTRY_PLAIN = 0;
+    private static final byte ENTRY_ENVELOPE = 1;
+
+    private final Store store;
+    private final ReportEnvelope.Verifier verifier;
+    private final IngressGuard guard;
+    private final String peer;
+
+    private int[] ids;
+    private long[] states;
+    private long[] versions;
+    private StatusEvent[] events;
+    private long[] prefixHash;
+    private MainActivity.Report[] byIndex;
+
+    /**
+     * เมื่อมี verifier (โหลดกุญแจแล้ว) รับและส่งเฉพาะรายงานที่เป็นซอง ที่ไม่ได้เซ็นไม่ถูกส่งต่อ
+     * verifier เป็น null ได้ (ยังไม่มีกุญแจ) จะซิงก์เฉพาะรายงานธรรมดาและข้าม StatusEvent ทั้งหมด
+     * รายงานและ StatusEvent ที่รับมาทุกฉบับผ่าน guard โดยนับว่ามาจาก peer
+     */
+    public ReportSync(
+            Store store, ReportEnvelope.Verifier verifier, IngressGuard guard, String peer) {
+        this.store = store;
+        this.verifier = verifier;
+        this.guard = guard;
+        this.peer = peer;
+    }
+
+    /**
+     * รันการซิงก์จนจบ ฝั่ง initiator ส่งรอบแรก
+     */
+    public Result run(InputStream rawIn, OutputStream rawOut, boolean initiator) throws IOException {
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(rawIn));
+        CountingOutputStream countingOut =
+                new CountingOutputStream(new BufferedOutputStream(rawOut));
+        DataInputStream in = new DataInputStream(counting);
+        DataOutputStream out = new DataOutputStream(countingOut);
+        Result result = new Result();
+
+        loadSnapshot();
+        out.writeInt(MAGIC);
+        out.writeByte(PROTOCOL_VERSION);
+        writeRescuers(out, store.rescuers());
+        out.flush();
+        if (in.readInt() != MAGIC || in.readByte() != PROTOCOL_VERSION) {
+            throw new IOException("Peer is not speaking the mSOS sync protocol");
+        }
+        store.applyRescuers(readRescuers(in));
+
+        if (initiator) {
+            Round first = new Round();
+            first.fingerprint(0, ID_SPACE_END, rangeHash(0, ids.length), ids.length);
+            first.writeTo(out);
+            result.rounds++;
+        }
+
+        while (true) {
+            Round response = new Round();
+            boolean empty = readRound(in, response, result);
+            if (empty) break;
+
+            result.reportsSent += response.reportCount;
+            result.statusSent += response.statusCount;
+            response.writeTo(out);
+            result.rounds++;
+            if (response.isEmpty()) break;
+        }
+
+        out.flush();
+        result.bytesSent = countingOut.count;
+        result.bytesReceived = counting.count;
+        return result;
+    }
+
+    private void loadSnapshot() {
+        List<MainActivity.Report> snapshot = store.snapshot();
+        if (verifier != null) {
+            List<MainActivity.Report> signed = new ArrayList<>(snapshot.size());
+            for (MainActivity.Report report : snapshot) {
+                if (report.envelope != null) signed.add(report);
+            }
+            snapshot = signed;
+        }
+        byIndex = snapshot.toArray(new MainActivity.Report[0]);
+        Arrays.sort(byIndex, (a, b) -> Integer.compare(a.id, b.id));
+        ids = new int[byIndex.length];
+        states = new long[byIndex.length];
+        versions = new long[byIndex.length];
+        events = new StatusEvent[byIndex.length];
+        prefixHash = new long[byIndex.length + 1];
+        for (int i = 0; i < byIndex.length; i++) {
+            ids[i] = byIndex[i].id;
+            events[i] = shareableStatus(byIndex[i]);
+            states[i] =
+                    events[i] != null
+                            ? events[i].stateKey()
+                            : StatusEvent.stateKey(0, MainActivity.ReportStatus.WAITING);
+            versions[i] = ReportEnvelope.peekContentVersion(byIndex[i].envelope);
+            prefixHash[i + 1] = prefixHash[i] ^ mix(mix(mix(ids[i]) + versions[i]) + states[i]);
+        }
+    }
+
+    /**
+     * อ่านหนึ่งรอบจากอีกฝั่งแล้วสร้างรอบตอบกลับ คืน true ถ้ารอบที่อ่านว่าง
+     */
+    private boolean readRound(DataInputStream in, Round response, Result result)
+            throws IOException {
+        boolean empty = true;
+        while (true) {
+            byte type = in.readByte();
+            if (type == END_ROUND) return empty;
+            empty = false;
+            switch (type) {
+                case FINGERPRINT:
+                    onFingerprint(in.readLong(), in.readLong(), in.readLong(), in.readInt(), response);
+                    break;
+                case IDS:
+                    long lo = in.readLong();
+                    long hi = in.readLong();
+                    int[] peerIds = readIntArray(in);
+                    long[] peerStates = new long[peerIds.length];
+                    for (int i = 0; i < peerStates.length; i++) peerStates[i] = in.readLong();
+                    long[] peerVersions = new long[peerIds.length];
+                    for (int i = 0; i < peerVersions.length; i++) peerVersions[i] = in.readLong();
+                    onIds(lo, hi, peerIds, peerStates, peerVersions, response);
+                    break;
+                case NEED:
+                    for (int id : readIntArray(in)) {
+                        int index = Arrays.binarySearch(ids, id);
+                        if (index >= 0) response.report(byIndex[index]);
+                    }
+                    break;
+                case REPORTS:
+                    int length = in.readInt();
+                    if (length < 0 || length > BatchCompressor.MAX_COMPRESSED) {
+                        throw new IOException("Invalid batch length: " + length);
+                    }
+                    byte[] compressed = new byte[length];
+                    in.readFully(compressed);
+                    List<StatusEvent> embedded = new ArrayList<>();
+                    List<MainActivity.Report> received =
+                            decodeBatch(
+                                    compressed, verifier, guard, peer, verifier == null, embedded);
+                    result.reportsReceived += received.size();
+                    store.addReports(received);
+                    if (!embedded.isEmpty()) store.applyStatus(embedded);
+                    break;
+                case STATUS:
+                    List<StatusEvent> statuses =
+                            verifyStatus(readStatusBatch(in), verifier, guard, peer);
+                    result.statusReceived += statuses.size();
+                    if (!statuses.isEmpty()) store.applyStatus(statuses);
+                    break;
+                case NEED_STATUS:
+                    for (int id : readIntArray(in)) {
+                        int index = Arrays.binarySearch(ids, id);
+                        if (index >= 0 && events[index] != null) response.status(events[index]);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown sync item: " + type);
+            }
+        }
+    }
+
+    private void onFingerprint(long lo, long hi, long peerHash, int peerCount, Round response) {
+        int from = lowerBound(lo);
+        int to = lowerBound(hi);
+        int count = to - from;
+        if (count == peerCount && rangeHash(from, to) == peerHash) return;
+
+        if (count <= ID_LIST_THRESHOLD) {
+            response.ids(
+                    lo,
+                    hi,
+                    Arrays.copyOfRange(ids, from, to),
+                    Arrays.copyOfRange(states, from, to),
+                    Arrays.copyOfRange(versions, from, to));
+            return;
+        }
+
+        // แบ่งช่วงตามตำแหน่งของ id ฝั่งเรา ให้แต่ละช่วงย่อยมีจำนวนใกล้เคียงกัน
+        long start = lo;
+        for (int part = 1; part <= SPLIT_FACTOR; part++) {
+            long end = part == SPLIT_FACTOR ? hi : ids[from + (int) ((long) count * part / SPLIT_FACTOR)];
+            if (end <= start) continue;
+            int a = lowerBound(start);
+            int b = lowerBound(end);
+            response.fingerprint(start, end, rangeHash(a, b), b - a);
+            start = end;
+        }
+    }
+
+    private void onIds(
+            long lo,
+            long hi,
+            int[] peerIds,
+            long[] peerStates,
+            long[] peerVersions,
+            Round response) {
+        int from = lowerBound(lo);
+        int to = lowerBound(hi);
+
+        // merge สองรายการที่เรียงแล้ว
+        List<Integer> need = new ArrayList<>();
+        List<Integer> needStatus = new ArrayList<>();
+        int i = from;
+        int j = 0;
+        while (i < to || j < peerIds.length) {
+            if (j == peerIds.length || (i < to && ids[i] < peerIds[j])) {
+                response.report(byIndex[i++]);
+            } else if (i == to || peerIds[j] < ids[i]) {
+                need.add(peerIds[j++]);
+            } else {
+                // ซองที่ใหม่กว่ามี StatusEvent ล่าสุดของฝั่งที่ส่งติดไปด้วย
+                if (versions[i] > peerVersions[j]) {
+                    response.report(byIndex[i]);
+                } else if (states[i] > peerStates[j]) {
+                    // states[i] มากกว่าค่าต่ำสุด จึงมี event เสมอ
+                    response.status(events[i]);
+                }
+                if (versions[i] < peerVersions[j]) {
+                    need.add(ids[i]);
+                } else if (states[i] < peerStates[j]) {
+                    needStatus.add(ids[i]);
+                }
+                i++;
+                j++;
+            }
+        }
+        if (!need.isEmpty()) response.need(NEED, need);
+        if (!needStatus.isEmpty()) response.need(NEED_STATUS, needStatus);
+    }
+
+    private int lowerBound(long value) {
+        if (value >= ID_SPACE_END) return ids.length;
+        int index = Arrays.binarySearch(ids, (int) value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private long rangeHash(int from, int to) {
+        return prefixHash[to] ^ prefixHash[from];
+    }
+
+    private static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > ID_LIST_THRESHOLD * SPLIT_FACTOR * 64) {
+            throw new IOException("Invalid id list length: " + length);
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) values[i] = in.readInt();
+        return values;
+    }
+
+    private static void writeRescuers(
+            DataOutputStream out, List<AssignmentSolver.Rescuer> rescuers) throws IOException {
+        int count = Math.min(rescuers.size(), AssignmentSolver.MAX_SHARED_RESCUERS);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) rescuers.get(i).write(out);
+    }
+
+    private static List<AssignmentSolver.Rescuer> readRescuers(DataInputStream in)
+            throws IOException {
+        int count = in.readUnsignedShort();
+        if (count > AssignmentSolver.MAX_SHARED_RESCUERS) {
+            throw new IOException("Invalid rescuer count: " + count);
+        }
+        List<AssignmentSolver.Rescuer> rescuers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) rescuers.add(AssignmentSolver.Rescuer.read(in));
+        return rescuers;
+    }
+
+    private static boolean admit(IngressGuard guard, String peer, int reportId) {
+        return admit(guard, peer, reportId, 0);
+    }
+
+    private static boolean admit(
+            IngressGuard guard, String peer, int reportId, long contentVersion) {
+        return guard.check(peer, reportId, contentVersion, System.currentTimeMillis())
+                == IngressGuard.Verdict.ACCEPT;
+    }
+
+    private static boolean admitOrigin(IngressGuard guard, long origin) {
+        return guard.checkOrigin(origin, System.currentTimeMillis())
+                == IngressGuard.Verdict.ACCEPT;
+    }
+
+    /**
+     * StatusEvent ของรายงานที่ส่งต่อได้ (เซ็นแล้ว) หรือ null
+     */
+    private static StatusEvent shareableStatus(MainActivity.Report report) {
+        StatusEvent event = report.statusEvent;
+        return event != null && event.isSigned() ? event : null;
+    }
+
+    /**
+     * กรอง StatusEvent ด้วย token bucket ของ peer แล้วตรวจลายเซ็น คืนเฉพาะที่ผ่าน
+     */
+    static List<StatusEvent> verifyStatus(
+            List<StatusEvent> events,
+            ReportEnvelope.Verifier verifier,
+            IngressGuard guard,
+            String peer) {
+        List<StatusEvent> verified = new ArrayList<>(events.size());
+        if (verifier == null) return verified;
+        for (StatusEvent event : events) {
+            if (!event.isSigned()
+                    || guard.checkStatus(peer, System.currentTimeMillis())
+                            != IngressGuard.Verdict.ACCEPT) {
+                continue;
+            }
+            if (verifier.verifyStatus(event)) verified.add(event);
+        }
+        return verified;
+    }
+
+    static byte[] encodeBatch(List<MainActivity.Report> batch) throws IOException {
+        BatchCompressor.Buffer raw = BatchCompressor.rawBuffer();
+        writeBatch(new DataOutputStream(raw), batch);
+        return BatchCompressor.compress(raw.array(), 0, raw.size());
+    }
+
+    /**
+     * batch ก่อนบีบอัด (ใช้วัดผลการบีบอัดใน src/test ด้วย)
+     */
+    static void writeBatch(DataOutputStream out, List<MainActivity.Report> batch)
+            throws IOException {
+        out.writeInt(batch.size());
+        for (MainActivity.Report report : batch) {
+            if (report.envelope != null) {
+                out.writeByte(ENTRY_ENVELOPE);
+                out.writeShort(report.envelope.length);
+                out.write(report.envelope);
+                StatusEvent status = shareableStatus(report);
+                out.writeBoolean(status != null);
+                if (status != null) status.write(out);
+            } else {
+                out.writeByte(ENTRY_PLAIN);
+                ReportCodec.write(out, report);
+            }
+        }
+    }
+
+    /**
+     * สถานะไม่เกิน MAX_BATCH รายการ: int จำนวน ตามด้วย StatusEvent
+     */
+    static void writeStatusBatch(DataOutput out, List<StatusEvent> events) throws IOException {
+        out.writeInt(events.size());
+        for (StatusEvent event : events) event.write(out);
+    }
+
+    static List<StatusEvent> readStatusBatch(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_BATCH) {
+            throw new IOException("Invalid status count: " + count);
+        }
+        List<StatusEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) events.add(StatusEvent.read(in));
+        return events;
+    }
+
+    /**
+     * ซองทั้ง batch ถูกตรวจบน worker thread นี้ ซองที่เคยตรวจแล้วใช้ผลจาก cache ของ verifier
+     * ซองถูกกรองด้วย guard จาก header ก่อนตรวจลายเซ็น และนับโควตาผู้แจ้งหลังลายเซ็นผ่าน
+     * ซองที่ไม่ผ่านถูกข้าม ไม่ทำให้ทั้งการซิงก์ล้มเหลว
+     * รายงานธรรมดา (ไม่มีซอง) รับเฉพาะเมื่อ acceptPlain
+     * รายงานที่ได้มีสถานะ WAITING เสมอ StatusEvent ที่มากับซองและลายเซ็นผ่านถูกใส่ใน statuses
+     * ให้ผู้เรียกส่งเข้า Store.applyStatus หลังรายงาน
+     */
+    static List<MainActivity.Report> decodeBatch(
+            byte[] compressed,
+            ReportEnvelope.Verifier verifier,
+            IngressGuard guard,
+            String peer,
+            boolean acceptPlain,
+            List<StatusEvent> statuses)
+            throws IOException {
+        BatchCompressor.Buffer raw = BatchCompressor.decompress(compressed, 0, compressed.length);
+        try (DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(raw.array(), 0, raw.size()))) {
+            int count = in.readInt();
+            if (count < 0 || count > MAX_BATCH) {
+                throw new IOException("Invalid batch size: " + count);
+            }
+            List<MainActivity.Report> reports = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte entry = in.readByte();
+                if (entry == ENTRY_PLAIN) {
+                    MainActivity.Report report = ReportCodec.read(in);
+                    // สถานะของรายงานที่ไม่มีซองพิสูจน์ไม่ได้
+                    report.status = MainActivity.ReportStatus.WAITING;
+                    report.statusVersion = 0;
+                    if (acceptPlain
+                            && admit(guard, peer, report.id)
+                            && admitOrigin(guard, IngressGuard.originOfPeer(peer))) {
+                        guard.markSeen(report.id);
+                        reports.add(report);
+                    }
+                    continue;
+                }
+                if (entry != ENTRY_ENVELOPE) {
+                    throw new IOException("Unknown batch entry: " + entry);
+                }
+                byte[] envelope = new byte[in.readUnsignedShort()];
+                in.readFully(envelope);
+                StatusEvent status = in.readBoolean() ? StatusEvent.read(in) : null;
+                if (verifier == null) continue;
+                int id = ReportEnvelope.peekReportId(envelope);
+                long version = ReportEnvelope.peekContentVersion(envelope);
+                if (id < 0 || !admit(guard, peer, id, version)) continue;
+                try {
+                    MainActivity.Report report = verifier.open(envelope);
+                    // นับโควตาหลังลายเซ็นผ่าน ยังไม่ markSeen เพื่อรับใหม่ได้เมื่อโควตาคืน
+                    if (!admitOrigin(guard, IngressGuard.originOf(envelope))) continue;
+                    guard.markSeen(report.id, version);
+                    reports.add(report);
+                    if (status != null
+                            && status.reportId == report.id
+                            && verifier.verifyStatus(status)) {
+                        statuses.add(status);
+                    }
+                } catch (GeneralSecurityException | IOException e) {
+                    Log.w(TAG, "Rejected envelope: " + e.getMessage());
+                }
+            }
+            return reports;
+        }
+    }
+
+    /**
+     * รอบที่กำลังสร้าง รายงานที่จะส่งถูกรวมเป็น batch ตอนเขียน
+     */
+    private static class Round {
+        private final ByteArrayOutputStream items = new ByteArrayOutputStream();
+        private final DataOutputStream itemOut = new DataOutputStream(items);
+        private final List<MainActivity.Report> reports = new ArrayList<>();
+        private final List<StatusEvent> statuses = new ArrayList<>();
+        int reportCount;
+        int statusCount;
+
+        void fingerprint(long lo, long hi, long hash, int count) {
+            try {
+                itemOut.writeByte(FINGERPRINT);
+                itemOut.writeLong(lo);
+                itemOut.writeLong(hi);
+                itemOut.writeLong(hash);
+                itemOut.writeInt(count);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void ids(long lo, long hi, int[] values, long[] valueStates, long[] valueVersions) {
+            try {
+                itemOut.writeByte(IDS);
+                itemOut.writeLong(lo);
+                itemOut.writeLong(hi);
+                itemOut.writeInt(values.length);
+                for (int value : values) itemOut.writeInt(value);
+                for (long state : valueStates) itemOut.writeLong(state);
+                for (long version : valueVersions) itemOut.writeLong(version);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void need(byte type, List<Integer> values) {
+            try {
+                itemOut.writeByte(type);
+                itemOut.writeInt(values.size());
+                for (int value : values) itemOut.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void report(MainActivity.Report report) {
+            reports.add(report);
+            reportCount++;
+        }
+
+        void status(StatusEvent event) {
+            statuses.add(event);
+            statusCount++;
+        }
+
+        boolean isEmpty() {
+            return items.size() == 0 && reports.isEmpty() && statuses.isEmpty();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            items.writeTo(out);
+            for (int start = 0; start < reports.size(); start += MAX_BATCH) {
+                byte[] batch =
+                        encodeBatch(reports.subList(start, Math.min(reports.size(), start + MAX_BATCH)));
+                out.writeByte(REPORTS);
+                out.writeInt(batch.length);
+                out.write(batch);
+            }
+            for (int start = 0; start < statuses.size(); start += MAX_BATCH) {
+                out.writeByte(STATUS);
+                writeStatusBatch(
+                        out, statuses.subList(start, Math.min(statuses.size(), start + MAX_BATCH)));
+            }
+            out.writeByte(END_ROUND);
+            out.flush();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package main.sos;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * เวลาของรายงานเป็น epoch millis (UTC) แปลงเป็นข้อความเฉพาะตอนแสดงผลหรือ export
+ *
+ * SimpleDateFormat ไม่ thread-safe จึงเก็บไว้ thread ละชุด แทนการสร้างใหม่ทุกครั้ง
+ */
+public final class ReportTime {
+
+    // รายงานเก่าที่เก็บเวลาเป็นข้อความ ("10:30 น.") หรือไม่รู้เวลาสร้าง
+    public static final long UNKNOWN = 0;
+
+    // ค่าจาก process ก่อนล้ำนาฬิกาเครื่องได้ไม่เกินนี้ (นาฬิกาถูกปรับย้อนเล็กน้อย)
+    static final long MAX_RESTORE_SKEW_MS = 5 * 60 * 1000;
+
+    private static final Locale THAI = new Locale("th", "TH");
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private static final ThreadLocal<SimpleDateFormat> TIME =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("HH:mm น.", THAI);
+                }
+            };
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_TIME =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("d MMM HH:mm น.", THAI);
+                }
+            };
+
+    private static final ThreadLocal<SimpleDateFormat> ISO =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat format =
+                            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    return format;
+                }
+            };
+
+    private static final ThreadLocal<Calendar> CALENDAR =
+            new ThreadLocal<Calendar>() {
+                @Override
+                protected Calendar initialValue() {
+                    return Calendar.getInstance();
+                }
+            };
+
+    private ReportTime() {}
+
+    /**
+     * เวลาปัจจุบันที่ไม่ถอยหลัง ถ้านาฬิกาเครื่องถูกตั้งย้อนจะคืนค่าล่าสุดแทน
+     * ไม่ถอยหลังข้าม process ด้วย (ภายใน MAX_RESTORE_SKEW_MS) ถ้าเรียก restore ก่อนสร้างรายงานแรก
+     */
+    public static long now() {
+        long wall = System.currentTimeMillis();
+        while (true) {
+            long last = LAST.get();
+            if (wall <= last) return last;
+            if (LAST.compareAndSet(last, wall)) return wall;
+        }
+    }
+
+    /**
+     * ค่าล่าสุดที่ now() คืน ให้บันทึกไว้ก่อน process ถูกปิด
+     */
+    public static long last() {
+        return LAST.get();
+    }
+
+    /**
+     * ไม่ให้ now() คืนค่าน้อยกว่า saved (ค่า last() ที่บันทึกไว้จาก process ก่อน)
+     * แต่ไม่เกินนาฬิกาเครื่องบวก MAX_RESTORE_SKEW_MS: ค่าที่ล้ำไปไกล (เคยตั้งนาฬิกาไปอนาคต
+     * หรือค่าเสีย) จะไม่ทำให้ทุกรายงานหลังจากนี้ได้เวลาเดียวกันจนกว่านาฬิกาจะตามทัน
+     */
+    public static void restore(long saved) {
+        long millis = Math.min(saved, System.currentTimeMillis() + MAX_RESTORE_SKEW_MS);
+        while (true) {
+            long last = LAST.get();
+            if (millis <= last || LAST.compareAndSet(last, millis)) return;
+        }
+    }
+
+    /**
+     * ข้อความสำหรับรายการ: "HH:mm น." ถ้าเป็นวันเดียวกับ now นอกนั้นมีวันที่ด้วย คืน "" ถ้าไม่รู้เวลา
+     */
+    public static String format(long millis, long nowMillis) {
+        if (millis == UNKNOWN) return "";
+        Date date = new Date(millis);
+        return sameDay(millis, nowMillis) ? TIME.get().format(date) : DATE_TIME.get().format(date);
+    }
+
+    /**
+     * ISO-8601 UTC สำหรับ export คืน "" ถ้าไม่รู้เวลา
+     */
+    public static String formatIso(long millis) {
+        return millis == UNKNOWN ? "" : ISO.get().format(new Date(millis));
+    }
+
+    /**
+     * อ่านค่าจาก formatIso หรือ epoch millis เป็นตัวเลข ข้อความรูปแบบอื่น (ไฟล์รุ่นเก่า) คืน UNKNOWN
+     */
+    public static long parseIso(String text) {
+        if (text == null || text.isEmpty()) return UNKNOWN;
+        char first = text.charAt(0);
+        if (first >= '0' && first <= '9' && text.indexOf('-') < 0) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                return UNKNOWN;
+            }
+        }
+        try {
+            return ISO.get().parse(text).getTime();
+        } catch (ParseException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static boolean sameDay(long a, long b) {
+        Calendar calendar = CALENDAR.get();
+        calendar.setTimeInMillis(a);
+        int year = calendar.get(Calendar.YEAR);
+        int day = calendar.get(Calendar.DAY_OF_YEAR);
+        calendar.setTimeInMillis(b);
+        return year == calendar.get(Calendar.YEAR) && day == calendar.get(Calendar.DAY_OF_YEAR);
+    }
+}
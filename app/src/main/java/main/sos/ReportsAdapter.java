@@ -15,16 +15,52 @@ public class ReportsAdapter extends RecyclerView.Adapter<ReportsAdapter.ReportVi
     
     private List<MainActivity.Report> reports;
     private OnViewMapClickListener onViewMapClickListener;
+    private DistanceIndex distanceIndex;
+    private ReverseGeocoder geocoder;
+    private OnStatusClickListener onStatusClickListener;
     
     public interface OnViewMapClickListener {
         void onViewMapClick(MainActivity.Report report);
     }
+
+    public interface OnStatusClickListener {
+        void onStatusClick(MainActivity.Report report);
+    }
     
     public ReportsAdapter(List<MainActivity.Report> reports, OnViewMapClickListener onViewMapClickListener) {
         this.reports = reports;
         this.onViewMapClickListener = onViewMapClickListener;
+        // id คงที่ทำให้ notifyDataSetChanged ยังคงตำแหน่งเลื่อนและ animation ของแต่ละแถว
+        setHasStableIds(true);
     }
     
+    /**
+     * เปลี่ยนรายการที่แสดง (snapshot ที่แก้ไขไม่ได้ หรือผลการค้นหา) ผู้เรียกต้อง notify เอง
+     */
+    public void setReports(List<MainActivity.Report> reports) {
+        this.reports = reports;
+    }
+
+    public void setDistanceIndex(DistanceIndex distanceIndex) {
+        this.distanceIndex = distanceIndex;
+    }
+
+    /**
+     * แสดงชื่อตำบล/อำเภอ/จังหวัดแทนพิกัดเมื่อหาได้
+     */
+    public void setGeocoder(ReverseGeocoder geocoder) {
+        this.geocoder = geocoder;
+    }
+
+    public void setOnStatusClickListener(OnStatusClickListener onStatusClickListener) {
+        this.onStatusClickListener = onStatusClickListener;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return reports.get(position).id;
+    }
+
     @NonNull
     @Override
     public ReportViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -38,16 +74,25 @@ public class ReportsAdapter extends RecyclerView.Adapter<ReportsAdapter.ReportVi
         MainActivity.Report report = reports.get(position);
         
         holder.tvReporterName.setText(report.name);
-        holder.tvTimestamp.setText(report.timestamp);
-        holder.tvStatus.setText(report.status);
-        holder.tvLevel.setText(report.level);
-        holder.tvType.setText(report.type);
+        // แปลงเป็นข้อความตอนแสดงเท่านั้น ("HH:mm น." หรือมีวันที่ถ้าไม่ใช่วันนี้)
+        holder.tvTimestamp.setText(ReportTime.format(report.timestamp, System.currentTimeMillis()));
+        holder.tvStatus.setText(report.status.labelRes);
+        holder.tvLevel.setText(report.level.labelRes);
+        holder.tvType.setText(report.type.labelRes);
         
-        holder.tvLocation.setText(holder.itemView.getContext().getString(
-            R.string.coordinates,
-            String.valueOf(report.location.lat),
-            String.valueOf(report.location.lng)
-        ));
+        // ค้นในไฟล์ที่ map ไว้ราวหนึ่งไมโครวินาที ทำตอน bind ได้
+        String coordinates = geocoder != null
+            ? geocoder.getLabel(report.location.lat, report.location.lng)
+            : null;
+        if (coordinates == null) {
+            coordinates = holder.itemView.getContext().getString(
+                R.string.coordinates,
+                String.valueOf(report.location.lat),
+                String.valueOf(report.location.lng)
+            );
+        }
+        String distance = distanceIndex != null ? distanceIndex.getLabel(report.id) : null;
+        holder.tvLocation.setText(distance != null ? coordinates + " (" + distance + ")" : coordinates);
         
         holder.tvContact.setText(holder.itemView.getContext().getString(
             R.string.contact_label,
@@ -66,6 +111,15 @@ public class ReportsAdapter extends RecyclerView.Adapter<ReportsAdapter.ReportVi
                 onViewMapClickListener.onViewMapClick(report);
             }
         });
+
+        holder.tvStatus.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (onStatusClickListener != null) {
+                    onStatusClickListener.onStatusClick(report);
+                }
+            }
+        });
     }
     
     @Override
@@ -0,0 +1,224 @@
+package main.sos;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * แปลงพิกัดเป็นชื่อ ตำบล/อำเภอ/จังหวัด แบบออฟไลน์ จากไฟล์ขอบเขตการปกครองที่เปิดด้วย memory-map
+ *
+ * เก็บเฉพาะรูปของตำบล (ระดับที่ละเอียดสุด) พร้อมชื่ออำเภอและจังหวัด ค้นผ่าน grid:
+ * แต่ละ cell มีรายการตำบลที่ทับ cell นั้น cell ที่อยู่ในตำบลเดียวทั้งหมดถูกทำเครื่องหมายไว้
+ * ตอบได้ทันทีโดยไม่ต้องทดสอบ point-in-polygon ที่เหลือทดสอบแบบ even-odd เฉพาะตำบลใน cell
+ * จุดยอดเก็บเป็น unsigned short เทียบกรอบของตำบล (ละเอียดราว 1 เมตรสำหรับตำบลกว้าง 0.5 องศา)
+ * ขอบที่ติดกันของสองตำบลจึงอาจคลาดกันไม่เกินหนึ่งหน่วยนั้น อ่านพร้อมกันหลาย thread ได้
+ *
+ * รูปแบบไฟล์ (big-endian, พิกัดเป็น ReportCodec.toFixed):
+ * header (HEADER_SIZE): int MAGIC, int VERSION, int dataVersion, int minLat, int minLng,
+ *   int cellSize, int columns, int rows, int regionCount, int ringCount, int entryCount,
+ *   int vertexCount, int stringsLength
+ * regions: regionCount x (int subdistrict, int district, int province (offset ใน strings),
+ *   int minLat, int minLng, int maxLat, int maxLng, int firstRing, int ringCount)
+ * rings: ringCount x (int firstVertex, int vertexCount)
+ * cells: (columns * rows + 1) x int ตำแหน่งเริ่มใน entries (แถวละ columns จากใต้ขึ้นเหนือ)
+ * entries: entryCount x int (region << 1 | FULL)
+ * vertices: vertexCount x (short lat, short lng) ไม่มีเครื่องหมาย ตัวแรกของ ring เป็นค่าจริง
+ *   ตัวถัดไปเป็นผลต่างจากตัวก่อน (mod 2^16) ทดสอบ point-in-polygon ไล่ตามลำดับอยู่แล้ว
+ *   ผลต่างมีค่าเล็กจึงบีบอัดใน APK ได้ดีกว่าค่าจริงมาก
+ * strings: ชื่อแบบ short ความยาว + UTF-8
+ * ไฟล์สร้างตอนเตรียมข้อมูลด้วย BoundaryFileWriter (src/test) ตัวเขียนจึงไม่อยู่ใน APK
+ */
+public class ReverseGeocoder implements Closeable {
+
+    public static final int MAGIC = 0x6d47454f; // "mGEO"
+    public static final int VERSION = 1;
+    public static final int NOT_FOUND = -1;
+
+    private static final int HEADER_SIZE = 13 * 4;
+    private static final int REGION_SIZE = 9 * 4;
+    private static final int RING_SIZE = 2 * 4;
+    static final int FULL = 1;
+    static final int QUANT = 0xffff;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int dataVersion;
+    private final int minLat;
+    private final int minLng;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int regionCount;
+    private final int regionsOffset;
+    private final int ringsOffset;
+    private final int cellsOffset;
+    private final int entriesOffset;
+    private final int verticesOffset;
+    private final int stringsOffset;
+    // ข้อความของแต่ละตำบล สร้างเมื่อใช้ครั้งแรก (String ไม่เปลี่ยนค่า หลาย thread สร้างซ้ำได้ไม่เสียหาย)
+    private final String[] labels;
+
+    public ReverseGeocoder(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a boundary file: " + path);
+            }
+            dataVersion = buffer.getInt(8);
+            minLat = buffer.getInt(12);
+            minLng = buffer.getInt(16);
+            cellSize = buffer.getInt(20);
+            columns = buffer.getInt(24);
+            rows = buffer.getInt(28);
+            regionCount = buffer.getInt(32);
+            int ringCount = buffer.getInt(36);
+            int entryCount = buffer.getInt(40);
+            int vertexCount = buffer.getInt(44);
+            int stringsLength = buffer.getInt(48);
+            if (cellSize <= 0 || columns <= 0 || rows <= 0 || regionCount < 0 || ringCount < 0
+                    || entryCount < 0 || vertexCount < 0 || stringsLength < 0) {
+                throw new IOException("Corrupt boundary header: " + path);
+            }
+            long offset = HEADER_SIZE;
+            regionsOffset = (int) offset;
+            offset += (long) regionCount * REGION_SIZE;
+            ringsOffset = (int) offset;
+            offset += (long) ringCount * RING_SIZE;
+            cellsOffset = (int) offset;
+            offset += ((long) columns * rows + 1) * 4;
+            entriesOffset = (int) offset;
+            offset += (long) entryCount * 4;
+            verticesOffset = (int) offset;
+            offset += (long) vertexCount * 4;
+            stringsOffset = (int) offset;
+            offset += stringsLength;
+            if (offset != buffer.capacity()) {
+                throw new IOException("Corrupt boundary file: " + path);
+            }
+            labels = new String[regionCount];
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * รุ่นของข้อมูล (เช่นวันที่ของชุดขอบเขต) ใช้ตัดสินว่าต้องคัดลอกไฟล์ใหม่หรือไม่
+     */
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * ตำบลที่มีจุดนี้ หรือ NOT_FOUND (ทะเล นอกประเทศ)
+     */
+    public int lookup(double lat, double lng) {
+        double fixedLat = lat * 1e7;
+        double fixedLng = lng * 1e7;
+        long column = (long) Math.floor((fixedLng - minLng) / cellSize);
+        long row = (long) Math.floor((fixedLat - minLat) / cellSize);
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return NOT_FOUND;
+        int cell = cellsOffset + (int) (row * columns + column) * 4;
+        int from = buffer.getInt(cell);
+        int to = buffer.getInt(cell + 4);
+        for (int i = from; i < to; i++) {
+            int entry = buffer.getInt(entriesOffset + i * 4);
+            int region = entry >>> 1;
+            if ((entry & FULL) != 0 || contains(region, fixedLat, fixedLng)) return region;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * "ตำบล อำเภอ จังหวัด" ตามที่เก็บในไฟล์ (มีคำนำหน้าเช่น ต./แขวง มาจากข้อมูล) หรือ null
+     */
+    public String getLabel(double lat, double lng) {
+        int region = lookup(lat, lng);
+        return region == NOT_FOUND ? null : getLabel(region);
+    }
+
+    public String getLabel(int region) {
+        String label = labels[region];
+        if (label == null) {
+            int record = regionsOffset + region * REGION_SIZE;
+            label =
+                    readString(buffer.getInt(record))
+                            + " "
+                            + readString(buffer.getInt(record + 4))
+                            + " "
+                            + readString(buffer.getInt(record + 8));
+            labels[region] = label;
+        }
+        return label;
+    }
+
+    public String getProvince(int region) {
+        return readString(buffer.getInt(regionsOffset + region * REGION_SIZE + 8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean contains(int region, double fixedLat, double fixedLng) {
+        int record = regionsOffset + region * REGION_SIZE;
+        int south = buffer.getInt(record + 12);
+        int west = buffer.getInt(record + 16);
+        int north = buffer.getInt(record + 20);
+        int east = buffer.getInt(record + 24);
+        if (fixedLat < south || fixedLat > north || fixedLng < west || fixedLng > east) {
+            return false;
+        }
+        // ย้ายจุดไปอยู่ในหน่วยของจุดยอดแทนการแปลงจุดยอดทุกตัว
+        double y = (fixedLat - south) * QUANT / Math.max(1, north - south);
+        double x = (fixedLng - west) * QUANT / Math.max(1, east - west);
+        int firstRing = buffer.getInt(record + 28);
+        int ringCount = buffer.getInt(record + 32);
+        boolean inside = false;
+        for (int r = 0; r < ringCount; r++) {
+            int ring = ringsOffset + (firstRing + r) * RING_SIZE;
+            int vertex = verticesOffset + buffer.getInt(ring) * 4;
+            int count = buffer.getInt(ring + 4);
+            int end = vertex + count * 4;
+            int firstY = buffer.getShort(vertex) & QUANT;
+            int firstX = buffer.getShort(vertex + 2) & QUANT;
+            int prevY = firstY;
+            int prevX = firstX;
+            for (int v = vertex + 4; v < end; v += 4) {
+                int curY = (prevY + buffer.getShort(v)) & QUANT;
+                int curX = (prevX + buffer.getShort(v + 2)) & QUANT;
+                if (crosses(curY, curX, prevY, prevX, y, x)) inside = !inside;
+                prevY = curY;
+                prevX = curX;
+            }
+            // ขอบปิดจากตัวสุดท้ายกลับไปตัวแรก
+            if (crosses(firstY, firstX, prevY, prevX, y, x)) inside = !inside;
+        }
+        return inside;
+    }
+
+    private static boolean crosses(int aY, int aX, int bY, int bX, double y, double x) {
+        return (aY > y) != (bY > y) && x < (double) (bX - aX) * (y - aY) / (bY - aY) + aX;
+    }
+
+    private String readString(int offset) {
+        int position = stringsOffset + offset;
+        int length = buffer.getShort(position) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = buffer.get(position + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
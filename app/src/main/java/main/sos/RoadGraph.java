@@ -0,0 +1,286 @@
+package main.sos;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * กราฟถนนแบบออฟไลน์ (เตรียมไว้ล่วงหน้า) สำหรับประมาณเวลาเดินทางด้วย A*
+ * เก็บแบบ CSR: edgeStart[node]..edgeStart[node + 1] คือ edge ที่ออกจาก node
+ *
+ * รูปแบบไฟล์: int MAGIC, int nodeCount, int edgeCount,
+ * nodeCount x (int latE7, int lngE7), (nodeCount + 1) x int edgeStart,
+ * edgeCount x (int target, float seconds)
+ */
+public class RoadGraph {
+
+    public static final int MAGIC = 0x6d524752; // "mRGR"
+
+    private static final double CELL_DEGREES = 0.01;
+    private static final double MIN_MAX_SPEED_MPS = 40;
+
+    private final int nodeCount;
+    private final double[] nodeLat;
+    private final double[] nodeLng;
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final float[] edgeSeconds;
+    private final double maxSpeedMps;
+    private final Map<Long, int[]> grid = new HashMap<>();
+
+    // สถานะการค้นหา ใช้ซ้ำระหว่างการเรียกโดยเปลี่ยน epoch แทนการล้าง array
+    private final double[] gScore;
+    private final int[] visitedEpoch;
+    private final boolean[] closed;
+    private int epoch;
+
+    public RoadGraph(
+            double[] nodeLat,
+            double[] nodeLng,
+            int[] edgeStart,
+            int[] edgeTarget,
+            float[] edgeSeconds) {
+        this.nodeCount = nodeLat.length;
+        this.nodeLat = nodeLat;
+        this.nodeLng = nodeLng;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeSeconds = edgeSeconds;
+        this.gScore = new double[nodeCount];
+        this.visitedEpoch = new int[nodeCount];
+        this.closed = new boolean[nodeCount];
+
+        // ความเร็วสูงสุดบนกราฟ ทำให้ heuristic ไม่ประเมินเกินจริง (admissible)
+        double maxSpeed = MIN_MAX_SPEED_MPS;
+        for (int node = 0; node < nodeCount; node++) {
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                if (edgeSeconds[e] <= 0) continue;
+                int next = edgeTarget[e];
+                double meters =
+                        DistanceIndex.haversine(
+                                nodeLat[node], nodeLng[node], nodeLat[next], nodeLng[next]);
+                maxSpeed = Math.max(maxSpeed, meters / edgeSeconds[e]);
+            }
+        }
+        this.maxSpeedMps = maxSpeed;
+        buildGrid();
+    }
+
+    public static RoadGraph read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a road graph file");
+        }
+        int nodes = in.readInt();
+        int edges = in.readInt();
+        if (nodes < 0 || edges < 0) {
+            throw new IOException("Invalid road graph size");
+        }
+        double[] lat = new double[nodes];
+        double[] lng = new double[nodes];
+        for (int i = 0; i < nodes; i++) {
+            lat[i] = ReportCodec.fromFixed(in.readInt());
+            lng[i] = ReportCodec.fromFixed(in.readInt());
+        }
+        int[] start = new int[nodes + 1];
+        for (int i = 0; i <= nodes; i++) {
+            start[i] = in.readInt();
+            // ต้องเริ่มที่ 0 ไม่ลดลง และจบที่ edges พอดี ไม่อย่างนั้นค้นเส้นทางจะอ่านนอก array
+            int previous = i == 0 ? 0 : start[i - 1];
+            if (start[i] < previous || start[i] > edges || (i == 0 && start[i] != 0)) {
+                throw new IOException("Invalid edge start: " + start[i]);
+            }
+        }
+        if (start[nodes] != edges) {
+            throw new IOException("Edge count mismatch: " + start[nodes] + " != " + edges);
+        }
+        int[] target = new int[edges];
+        float[] seconds = new float[edges];
+        for (int i = 0; i < edges; i++) {
+            target[i] = in.readInt();
+            seconds[i] = in.readFloat();
+            if (target[i] < 0 || target[i] >= nodes) {
+                throw new IOException("Invalid edge target: " + target[i]);
+            }
+            if (!(seconds[i] >= 0)) {
+                throw new IOException("Invalid edge cost: " + seconds[i]);
+            }
+        }
+        return new RoadGraph(lat, lng, start, target, seconds);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * node ที่ใกล้พิกัดที่สุด หรือ -1 ถ้ากราฟว่าง
+     */
+    public int nearestNode(double lat, double lng) {
+        long row = (long) Math.floor(lat / CELL_DEGREES);
+        long col = (long) Math.floor(lng / CELL_DEGREES);
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (long r = row - 1; r <= row + 1; r++) {
+            for (long c = col - 1; c <= col + 1; c++) {
+                int[] bucket = grid.get(key(r, c));
+                if (bucket == null) continue;
+                for (int node : bucket) {
+                    double d = DistanceIndex.haversine(lat, lng, nodeLat[node], nodeLng[node]);
+                    if (d < bestDistance) {
+                        bestDistance = d;
+                        best = node;
+                    }
+                }
+            }
+        }
+        if (best >= 0) return best;
+
+        // ไม่มี node ในช่องรอบข้าง ค้นทั้งกราฟ
+        for (int node = 0; node < nodeCount; node++) {
+            double d = DistanceIndex.haversine(lat, lng, nodeLat[node], nodeLng[node]);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * เวลาเดินทางโดยประมาณ (วินาที) ระหว่างสองพิกัด หรือ -1 ถ้าไปไม่ถึง
+     */
+    public double estimateSeconds(double fromLat, double fromLng, double toLat, double toLng) {
+        int source = nearestNode(fromLat, fromLng);
+        int target = nearestNode(toLat, toLng);
+        if (source < 0 || target < 0) return -1;
+        return shortestSeconds(source, target);
+    }
+
+    /**
+     * A* จาก source ไป target คืนเวลารวม (วินาที) หรือ -1 ถ้าไปไม่ถึง
+     */
+    public synchronized double shortestSeconds(int source, int target) {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(visitedEpoch, 0);
+            epoch = 1;
+        }
+        MinHeap open = new MinHeap();
+        touch(source, 0);
+        open.push(heuristic(source, target), source);
+
+        while (!open.isEmpty()) {
+            int node = open.popNode();
+            if (closed[node]) continue;
+            if (node == target) return gScore[node];
+            closed[node] = true;
+
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                int next = edgeTarget[e];
+                double g = gScore[node] + edgeSeconds[e];
+                if (visitedEpoch[next] != epoch) {
+                    touch(next, g);
+                } else if (closed[next] || g >= gScore[next]) {
+                    continue;
+                } else {
+                    gScore[next] = g;
+                }
+                open.push(g + heuristic(next, target), next);
+            }
+        }
+        return -1;
+    }
+
+    private void touch(int node, double g) {
+        visitedEpoch[node] = epoch;
+        gScore[node] = g;
+        closed[node] = false;
+    }
+
+    private double heuristic(int node, int target) {
+        return DistanceIndex.haversine(nodeLat[node], nodeLng[node], nodeLat[target], nodeLng[target])
+                / maxSpeedMps;
+    }
+
+    private void buildGrid() {
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int node = 0; node < nodeCount; node++) {
+            long k =
+                    key(
+                            (long) Math.floor(nodeLat[node] / CELL_DEGREES),
+                            (long) Math.floor(nodeLng[node] / CELL_DEGREES));
+            List<Integer> bucket = buckets.get(k);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(k, bucket);
+            }
+            bucket.add(node);
+        }
+        for (Map.Entry<Long, List<Integer>> entry : buckets.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] nodes = new int[list.size()];
+            for (int i = 0; i < nodes.length; i++) nodes[i] = list.get(i);
+            grid.put(entry.getKey(), nodes);
+        }
+    }
+
+    private static long key(long row, long col) {
+        return (row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * binary heap ของ (priority, node) ใน primitive array
+     */
+    private static class MinHeap {
+        private double[] priority = new double[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(double p, int node) {
+            if (size == nodes.length) {
+                priority = Arrays.copyOf(priority, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (priority[parent] <= p) break;
+                priority[i] = priority[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            priority[i] = p;
+            nodes[i] = node;
+        }
+
+        int popNode() {
+            int top = nodes[0];
+            size--;
+            double p = priority[size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && priority[child + 1] < priority[child]) child++;
+                if (priority[child] >= p) break;
+                priority[i] = priority[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            priority[i] = p;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
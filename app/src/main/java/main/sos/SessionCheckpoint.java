@@ -0,0 +1,344 @@
+package main.sos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * checkpoint ของรายการรายงานฝั่งกู้ภัย ให้เปิดแอปใหม่แล้วได้รายการ, index และตำแหน่งเลื่อนเดิม
+ * โดยไม่ต้องซิงก์ใหม่จากเครื่องอื่น
+ *
+ * ไฟล์เป็น segment ต่อท้ายกัน แต่ละ segment มีเฉพาะรายงานที่เปลี่ยนและ id ที่ถูกลบตั้งแต่ครั้งก่อน
+ * พร้อมคำค้นหาที่ตัดไว้แล้ว (ตัดบน disk thread ตอนเขียน) ตอนเปิดอ่านผ่าน memory map
+ * ใส่ index ได้ทันทีโดยไม่ต้องตัดคำหรือ decode ReportCodec segment ที่เขียนไม่ครบ (CRC ไม่ตรง)
+ * จะถูกตัดทิ้งพร้อม segment หลังจากนั้น เมื่อ segment สะสมมากจะเขียนใหม่ทั้งไฟล์ (compact)
+ *
+ * index เชิงพื้นที่และ triage ไม่ได้เก็บในไฟล์ สร้างใหม่จากรายงานเร็วกว่าอ่านรูปแบบที่สอง
+ * วัดด้วย CheckpointBenchmark ที่ 50k รายงานบน JVM: รายการขึ้นใน ~0.25 วินาที แต่ถ้า JIT
+ * ยังไม่ทำงาน (เปิดแอปครั้งแรก) ใช้ ~0.85 วินาที ไม่ถึงเป้า "ต่ำกว่าหนึ่งวินาทีมาก"
+ * ค้นหาได้ช้ากว่านั้นอีก 0.2-0.7 วินาที (ReportSearchIndex สร้างบน cpu thread)
+ */
+public class SessionCheckpoint {
+
+    public static class Restored {
+        // เรียงจากเก่าไปใหม่ (ลำดับที่ถูกเพิ่ม/แก้ไขล่าสุด)
+        public final List<MainActivity.Report> reports;
+        // คำค้นหาของ reports ตำแหน่งเดียวกัน (null ถ้าไม่มี ต้องตัดคำใหม่)
+        public final List<String[]> tokens;
+        public final int scrollPosition;
+
+        Restored(List<MainActivity.Report> reports, List<String[]> tokens, int scrollPosition) {
+            this.reports = reports;
+            this.tokens = tokens;
+            this.scrollPosition = scrollPosition;
+        }
+    }
+
+    private static final int FILE_MAGIC = 0x4d53434b; // "MSCK"
+    // version 2 เก็บเวลารายงานเป็น epoch millis ไฟล์ version 1 ยังอ่านได้แต่จะถูกเขียนใหม่ทั้งไฟล์
+    private static final int FILE_VERSION = 2;
+    private static final int SEGMENT_MAGIC = 0x53454731; // "SEG1"
+    // magic, ความยาว body, crc
+    private static final int SEGMENT_HEADER = 12;
+    private static final int MAX_SEGMENTS = 32;
+    private static final int FLAG_RELAYED = 1;
+
+    private final File file;
+    private final ReportSearchIndex.Tokenizer tokenizer = new ReportSearchIndex.Tokenizer();
+    private int segments;
+    private long baseBytes;
+    private long appendedBytes;
+
+    public SessionCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * segment ต่อท้ายมากเกินไปหรือใหญ่กว่าฐาน ครั้งถัดไปควรเขียนทั้งหมด (write แบบ full)
+     */
+    public synchronized boolean needsCompaction() {
+        return segments == 0 || segments >= MAX_SEGMENTS || appendedBytes > baseBytes;
+    }
+
+    /**
+     * เขียน checkpoint เรียกบน disk thread
+     * reports ต้องเป็นสำเนาที่ main thread ไม่แก้แล้ว (ดู copyOf) เรียงจากเก่าไปใหม่
+     * full = true เขียนไฟล์ใหม่ทั้งไฟล์จาก reports (removed ถูกละไว้)
+     * ต้องเป็น full เมื่อ needsCompaction() เป็นจริง ไม่เช่นนั้นรายงานที่ไม่เปลี่ยนจะหายจากไฟล์
+     */
+    public synchronized void write(
+            List<MainActivity.Report> reports, int[] removed, int scrollPosition, boolean full)
+            throws IOException {
+        if (!full && segments == 0) {
+            throw new IllegalStateException("Incremental checkpoint without a base");
+        }
+        byte[] segment = encodeSegment(reports, full ? new int[0] : removed, scrollPosition);
+        try {
+            writeSegment(segment, full);
+        } catch (IOException e) {
+            // ไม่รู้ว่า segment ลงไฟล์ครบหรือไม่ ครั้งถัดไปเขียนใหม่ทั้งไฟล์
+            segments = 0;
+            throw e;
+        }
+    }
+
+    private void writeSegment(byte[] segment, boolean full) throws IOException {
+        if (full) {
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+                out.write(header.array());
+                out.write(segment);
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+            segments = 1;
+            baseBytes = segment.length;
+            appendedBytes = 0;
+        } else {
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(segment);
+                out.getFD().sync();
+            }
+            segments++;
+            appendedBytes += segment.length;
+        }
+    }
+
+    /**
+     * อ่าน checkpoint ทั้งไฟล์ผ่าน memory map คืน null ถ้าไม่มีไฟล์หรือไม่ใช่รูปแบบนี้
+     * รายงานที่ถูกแก้ใน segment หลังจะย้ายไปท้ายรายการ (เหมือนลำดับของ ReportSearchIndex)
+     */
+    public synchronized Restored read() throws IOException {
+        if (!file.exists()) return null;
+        Map<Integer, MainActivity.Report> reports = new LinkedHashMap<>();
+        Map<Integer, String[]> tokens = new HashMap<>();
+        int scrollPosition = 0;
+        int count = 0;
+        long validBytes = 8;
+        long fileBytes;
+        int version;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            fileBytes = channel.size();
+            if (fileBytes < 8) return null;
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt() != FILE_MAGIC) return null;
+            version = map.getInt();
+            if (version < 1 || version > FILE_VERSION) return null;
+            CRC32 crc = new CRC32();
+            while (map.remaining() >= SEGMENT_HEADER) {
+                int start = map.position();
+                if (map.getInt() != SEGMENT_MAGIC) break;
+                int length = map.getInt();
+                int expected = map.getInt();
+                if (length < 0 || length > map.remaining()) break;
+                ByteBuffer body = map.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != expected) break;
+                scrollPosition = decodeSegment(body, version, reports, tokens);
+                map.position(map.position() + length);
+                validBytes = map.position();
+                count++;
+                if (count == 1) baseBytes = map.position() - start;
+            }
+        }
+        // ท้ายไฟล์เสียหรือเป็น version เก่า ต่อท้ายไม่ได้แล้ว ให้ครั้งถัดไปเขียนใหม่ทั้งไฟล์
+        segments = validBytes == fileBytes && version == FILE_VERSION ? count : 0;
+        appendedBytes = Math.max(0, validBytes - 8 - baseBytes);
+        if (count == 0) return null;
+
+        List<MainActivity.Report> ordered = new ArrayList<>(reports.values());
+        List<String[]> orderedTokens = new ArrayList<>(ordered.size());
+        for (MainActivity.Report report : ordered) {
+            orderedTokens.add(tokens.get(report.id));
+        }
+        return new Restored(ordered, orderedTokens, scrollPosition);
+    }
+
+    /**
+     * สำเนาตื้นของรายงาน (String, envelope และ StatusEvent ไม่ถูกแก้ในที่ จึงใช้ร่วมกันได้)
+     */
+    public static MainActivity.Report copyOf(MainActivity.Report report) {
+        MainActivity.Report copy =
+                new MainActivity.Report(
+                        report.id,
+                        report.name,
+                        report.contact,
+                        report.details,
+                        new MainActivity.Location(report.location.lat, report.location.lng),
+                        report.timestamp,
+                        report.level,
+                        report.status,
+                        report.type,
+                        report.relayed);
+        copy.statusVersion = report.statusVersion;
+        copy.envelope = report.envelope;
+        copy.statusEvent = report.statusEvent;
+        return copy;
+    }
+
+    /**
+     * segment = header (magic, ความยาว, crc) + body:
+     * scroll, จำนวน id ที่ลบ + ids, พจนานุกรมคำ, แล้วรายงานที่อ้างคำด้วยเลขลำดับในพจนานุกรม
+     */
+    private byte[] encodeSegment(List<MainActivity.Report> reports, int[] removed, int scroll)
+            throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[][] termIds = new int[reports.size()][];
+        for (int i = 0; i < reports.size(); i++) {
+            Set<String> reportTokens = tokenizer.tokensOf(reports.get(i));
+            int[] ids = new int[reportTokens.size()];
+            int j = 0;
+            for (String token : reportTokens) {
+                Integer id = dictionary.get(token);
+                if (id == null) {
+                    id = dictionary.size();
+                    dictionary.put(token, id);
+                }
+                ids[j++] = id;
+            }
+            termIds[i] = ids;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + reports.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(scroll);
+        out.writeInt(removed.length);
+        for (int id : removed) out.writeInt(id);
+        out.writeInt(dictionary.size());
+        for (String term : dictionary.keySet()) writeString(out, term);
+        out.writeInt(reports.size());
+        for (int i = 0; i < reports.size(); i++) {
+            MainActivity.Report report = reports.get(i);
+            out.writeInt(report.id);
+            out.writeInt(ReportCodec.toFixed(report.location.lat));
+            out.writeInt(ReportCodec.toFixed(report.location.lng));
+            out.writeByte(report.level.code);
+            out.writeByte(report.type.code);
+            out.writeByte(report.status.code);
+            out.writeByte(report.relayed ? FLAG_RELAYED : 0);
+            out.writeInt(report.statusVersion);
+            out.writeShort(termIds[i].length);
+            for (int id : termIds[i]) out.writeInt(id);
+            writeString(out, report.name);
+            writeString(out, report.contact);
+            writeString(out, report.details);
+            out.writeLong(report.timestamp);
+            byte[] envelope = report.envelope;
+            out.writeInt(envelope != null ? envelope.length : 0);
+            if (envelope != null) out.write(envelope);
+        }
+        out.flush();
+
+        byte[] segment = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(segment, SEGMENT_HEADER, segment.length - SEGMENT_HEADER);
+        ByteBuffer.wrap(segment)
+                .putInt(SEGMENT_MAGIC)
+                .putInt(segment.length - SEGMENT_HEADER)
+                .putInt((int) crc.getValue());
+        return segment;
+    }
+
+    private static int decodeSegment(
+            ByteBuffer in,
+            int version,
+            Map<Integer, MainActivity.Report> reports,
+            Map<Integer, String[]> tokens)
+            throws IOException {
+        int scroll = in.getInt();
+        int removed = in.getInt();
+        for (int i = 0; i < removed; i++) {
+            int id = in.getInt();
+            reports.remove(id);
+            tokens.remove(id);
+        }
+        String[] dictionary = new String[in.getInt()];
+        for (int i = 0; i < dictionary.length; i++) dictionary[i] = readString(in);
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            double lat = ReportCodec.fromFixed(in.getInt());
+            double lng = ReportCodec.fromFixed(in.getInt());
+            MainActivity.Severity level = MainActivity.Severity.fromCode(in.get());
+            MainActivity.ReportType type = MainActivity.ReportType.fromCode(in.get());
+            MainActivity.ReportStatus status = MainActivity.ReportStatus.fromCode(in.get());
+            int flags = in.get();
+            int statusVersion = in.getInt();
+            String[] reportTokens = new String[in.getShort() & 0xffff];
+            for (int j = 0; j < reportTokens.length; j++) {
+                reportTokens[j] = dictionary[in.getInt()];
+            }
+            String name = readString(in);
+            String contact = readString(in);
+            String details = readString(in);
+            long timestamp;
+            if (version >= 2) {
+                timestamp = in.getLong();
+            } else {
+                readString(in);
+                timestamp = ReportTime.UNKNOWN;
+            }
+            byte[] envelope = new byte[in.getInt()];
+            in.get(envelope);
+            if (level == null || type == null || status == null) {
+                throw new IOException("Bad checkpoint record " + id);
+            }
+
+            MainActivity.Report report =
+                    new MainActivity.Report(
+                            id,
+                            name,
+                            contact,
+                            details,
+                            new MainActivity.Location(lat, lng),
+                            timestamp,
+                            level,
+                            status,
+                            type,
+                            (flags & FLAG_RELAYED) != 0);
+            report.statusVersion = statusVersion;
+            if (envelope.length > 0) report.envelope = envelope;
+            // ลบก่อนใส่ให้รายงานที่ถูกแก้ย้ายไปท้าย LinkedHashMap
+            reports.remove(id);
+            reports.put(id, report);
+            tokens.put(id, reportTokens);
+        }
+        return scroll;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,220 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ภาพความหนาแน่นของความต้องการช่วยเหลือบน grid ขนาดคงที่ (float[] หนึ่งช่องต่อ cell)
+ * สำหรับดูภาพรวมเหตุการณ์ใหญ่ในโหมดกู้ภัยแทนการไล่รายการ
+ *
+ * น้ำหนักของรายงาน = ระดับความรุนแรง (วิกฤติ 8, สูง 4, ปานกลาง 2, ต่ำ 1) x สถานะ
+ * (รอ 1, รับเรื่องแล้ว 0.5, มีคนไปแล้ว 0) แล้วลดลงครึ่งหนึ่งทุก HALF_LIFE_MS ตามอายุรายงาน
+ * การลดตามเวลาไม่แตะทุก cell: ค่าที่เก็บถูกคูณ 2^((เวลารายงาน - epoch) / half-life) ไว้ตอนเพิ่ม
+ * แล้วค่อยคูณ 2^(-(now - epoch) / half-life) ตอนอ่าน เพิ่ม/ลบ/เปลี่ยนสถานะจึงเป็น O(1)
+ * ใช้บน main thread เท่านั้น
+ */
+public class SeverityHeatmap {
+
+    public static final long HALF_LIFE_MS = 6 * 60 * 60_000L;
+
+    // ย้าย epoch เมื่อค่าที่เก็บโตเกิน 2^REBASE_HALF_LIVES (float ยังแม่นพอ)
+    private static final int REBASE_HALF_LIVES = 16;
+
+    // โปร่งใส -> เหลือง -> ส้ม -> แดง
+    private static final int[] PALETTE = buildPalette();
+
+    private static class Entry {
+        final int cell;
+        final float weight;
+        final long time;
+
+        Entry(int cell, float weight, long time) {
+            this.cell = cell;
+            this.weight = weight;
+            this.time = time;
+        }
+    }
+
+    private final double north;
+    private final double west;
+    private final double cellDegrees;
+    private final int size;
+    private final float[] cells;
+    // จำนวนรายงานในแต่ละ cell cell ที่ว่างแล้วตั้งเป็น 0 พอดี ไม่เหลือเศษจาก float
+    private final int[] counts;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private long epoch;
+    private int modCount;
+    private int outside;
+
+    /**
+     * grid size x size cell กว้าง cellDegrees องศา มีจุดศูนย์กลางที่ (centerLat, centerLng)
+     */
+    public SeverityHeatmap(
+            double centerLat, double centerLng, double cellDegrees, int size, long nowMillis) {
+        this.cellDegrees = cellDegrees;
+        this.size = size;
+        this.north = centerLat + cellDegrees * size / 2;
+        this.west = centerLng - cellDegrees * size / 2;
+        this.cells = new float[size * size];
+        this.counts = new int[size * size];
+        this.epoch = nowMillis;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getNorth() {
+        return north;
+    }
+
+    public double getSouth() {
+        return north - cellDegrees * size;
+    }
+
+    public double getWest() {
+        return west;
+    }
+
+    public double getEast() {
+        return west + cellDegrees * size;
+    }
+
+    /**
+     * จำนวนรายงานที่อยู่นอก grid (ไม่ถูกนับ)
+     */
+    public int getOutsideCount() {
+        return outside;
+    }
+
+    /**
+     * เพิ่มขึ้นทุกครั้งที่ค่าใน grid เปลี่ยน ใช้ตัดสินว่าต้องวาดใหม่หรือไม่
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * เพิ่มหรืออัปเดตรายงาน (เรียกใหม่เมื่อสถานะ/ตำแหน่ง/ระดับเปลี่ยน)
+     */
+    public void put(MainActivity.Report report, long nowMillis) {
+        remove(report.id);
+        int cell = cellOf(report.location.lat, report.location.lng);
+        if (cell < 0) {
+            outside++;
+            entries.put(report.id, new Entry(-1, 0, 0));
+            return;
+        }
+        float weight = weightOf(report);
+        if (weight == 0) return;
+        long time = report.timestamp != ReportTime.UNKNOWN ? report.timestamp : nowMillis;
+        if (time - epoch > REBASE_HALF_LIVES * HALF_LIFE_MS) rebase(time);
+        Entry entry = new Entry(cell, weight, time);
+        entries.put(report.id, entry);
+        cells[cell] += scaled(entry);
+        counts[cell]++;
+        modCount++;
+    }
+
+    public void remove(int reportId) {
+        Entry entry = entries.remove(reportId);
+        if (entry == null) return;
+        if (entry.cell < 0) {
+            outside--;
+            return;
+        }
+        // ลบด้วยค่าเดียวกับตอนเพิ่ม (หลัง rebase) เศษจาก float ไม่ให้ติดลบ
+        cells[entry.cell] =
+                --counts[entry.cell] == 0 ? 0 : Math.max(0, cells[entry.cell] - scaled(entry));
+        modCount++;
+    }
+
+    public void clear() {
+        Arrays.fill(cells, 0);
+        Arrays.fill(counts, 0);
+        entries.clear();
+        outside = 0;
+        modCount++;
+    }
+
+    /**
+     * ค่าความร้อนของ cell ณ เวลา nowMillis
+     */
+    public float valueAt(int column, int row, long nowMillis) {
+        return (float) (cells[row * size + column] * decay(nowMillis));
+    }
+
+    /**
+     * เขียนสี ARGB ของทุก cell ลง pixels (ขนาด size * size แถวละ size) เทียบกับ cell ที่ร้อนที่สุด
+     * แบบ log ให้พื้นที่ที่มีรายงานน้อยยังมองเห็น O(cell) ไม่ขึ้นกับจำนวนรายงาน
+     */
+    public void render(int[] pixels) {
+        float max = 0;
+        for (float value : cells) {
+            if (value > max) max = value;
+        }
+        if (max <= 0) {
+            Arrays.fill(pixels, 0, cells.length, 0);
+            return;
+        }
+        // log1p(v * k) / log1p(max * k) ค่าเดียวกันทุกช่องจึงไม่ขึ้นกับ decay (คูณทั้ง grid เท่ากัน)
+        float k = 64 / max;
+        float norm = (PALETTE.length - 1) / (float) Math.log1p(max * k);
+        for (int i = 0; i < cells.length; i++) {
+            float value = cells[i];
+            // ปัดเศษ: ตัดทิ้งทำให้ cell ร้อนสุดได้ 254.99 แล้วไม่ถึงสีสุดท้าย
+            pixels[i] = value > 0 ? PALETTE[(int) (Math.log1p(value * k) * norm + 0.5f)] : 0;
+        }
+    }
+
+    private int cellOf(double lat, double lng) {
+        int column = (int) Math.floor((lng - west) / cellDegrees);
+        int row = (int) Math.floor((north - lat) / cellDegrees);
+        if (column < 0 || row < 0 || column >= size || row >= size) return -1;
+        return row * size + column;
+    }
+
+    private float scaled(Entry entry) {
+        return (float) (entry.weight * Math.pow(2, (entry.time - epoch) / (double) HALF_LIFE_MS));
+    }
+
+    private double decay(long nowMillis) {
+        return Math.pow(2, -(nowMillis - epoch) / (double) HALF_LIFE_MS);
+    }
+
+    /**
+     * ย้าย epoch ไป newEpoch แล้วย่อทุก cell ตาม O(cell) เกิดราวทุก REBASE_HALF_LIVES half-life
+     */
+    private void rebase(long newEpoch) {
+        float factor = (float) Math.pow(2, -(newEpoch - epoch) / (double) HALF_LIFE_MS);
+        for (int i = 0; i < cells.length; i++) cells[i] *= factor;
+        epoch = newEpoch;
+    }
+
+    private static float weightOf(MainActivity.Report report) {
+        float severity = 1 << report.level.code;
+        switch (report.status) {
+            case WAITING:
+                return severity;
+            case ACKNOWLEDGED:
+                return severity / 2;
+            default:
+                return 0;
+        }
+    }
+
+    private static int[] buildPalette() {
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            float t = i / 255f;
+            int alpha = (int) (60 + 160 * t);
+            int red = 255;
+            int green = (int) (220 * (1 - t));
+            int blue = (int) (40 * (1 - t));
+            palette[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+        return palette;
+    }
+}
@@ -0,0 +1,48 @@
+package main.sos;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+
+/**
+ * เปิด StrictMode ใน debug build และโหลด SharedPreferences ล่วงหน้าบน disk thread
+ * (การอ่านครั้งแรกบล็อกจนกว่าไฟล์จะถูกอ่านเสร็จ)
+ */
+public class SosApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            enableStrictMode();
+        }
+        AppExecutors.get()
+                .disk()
+                .execute(
+                        () -> {
+                            getSharedPreferences(PreferenceManager.SECTION, Context.MODE_PRIVATE)
+                                    .getAll();
+                            getSharedPreferences(LocationLib.PREF_NAME, Context.MODE_PRIVATE)
+                                    .getAll();
+                        });
+    }
+
+    private static void enableStrictMode() {
+        StrictMode.setThreadPolicy(
+                new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .detectNetwork()
+                        .penaltyLog()
+                        .penaltyFlashScreen()
+                        .build());
+        StrictMode.setVmPolicy(
+                new StrictMode.VmPolicy.Builder()
+                        .detectLeakedClosableObjects()
+                        .detectLeakedSqlLiteObjects()
+                        .detectActivityLeaks()
+                        .penaltyLog()
+                        .build());
+    }
+}
@@ -0,0 +1,202 @@
+package main.sos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.spec.ECParameterSpec;
+import java.util.Arrays;
+
+/**
+ * การเปลี่ยนสถานะของรายงานหนึ่งครั้ง ส่งต่อแยกจากตัวรายงานได้ (encodedSize ไบต์)
+ *
+ * version เพิ่มขึ้นทีละหนึ่งจากสถานะล่าสุดที่เครื่องนั้นรู้ เมื่อสองเครื่องเปลี่ยนพร้อมกัน
+ * ตัวที่ version สูงกว่าชนะ ถ้าเท่ากันใช้สถานะที่ code สูงกว่า ทุกเครื่องจึงได้ผลเดียวกัน
+ *
+ * event ที่ส่งต่อต้องเซ็นด้วยกุญแจของผู้เปลี่ยน (ดู isAuthorizedFor)
+ * รูปแบบ: int reportId, int version, byte status, long time, byte signatureLength,
+ * [signer public key (65), ECDSA signature] (signatureLength = 0 คือไม่ได้เซ็น)
+ */
+public final class StatusEvent {
+
+    // ขนาดเมื่อไม่ได้เซ็น
+    public static final int BASE_SIZE = 18;
+
+    private static final byte[] SIGNATURE_DOMAIN = "mSOS status v1".getBytes();
+
+    public final int reportId;
+    public final int version;
+    public final MainActivity.ReportStatus status;
+    public final long timeMillis;
+    // public key ของผู้เซ็นและลายเซ็น (null ถ้าไม่ได้เซ็น)
+    public final byte[] signer;
+    public final byte[] signature;
+
+    public StatusEvent(int reportId, int version, MainActivity.ReportStatus status, long timeMillis) {
+        this(reportId, version, status, timeMillis, null, null);
+    }
+
+    private StatusEvent(
+            int reportId,
+            int version,
+            MainActivity.ReportStatus status,
+            long timeMillis,
+            byte[] signer,
+            byte[] signature) {
+        this.reportId = reportId;
+        this.version = version;
+        this.status = status;
+        this.timeMillis = timeMillis;
+        this.signer = signer;
+        this.signature = signature;
+    }
+
+    /**
+     * event ถัดไปของรายงาน ถ้าสถานะปัจจุบันเปลี่ยนไป next ได้ หรือ null ถ้าไม่ได้
+     */
+    public static StatusEvent next(
+            MainActivity.Report report, MainActivity.ReportStatus next, long timeMillis) {
+        if (!report.status.canTransitionTo(next)) return null;
+        return new StatusEvent(report.id, report.statusVersion + 1, next, timeMillis);
+    }
+
+    /**
+     * ค่าเดียวที่เรียงได้ตามกฎ "ใหม่กว่า" ใช้เทียบและใส่ใน fingerprint ของการซิงก์
+     */
+    public static long stateKey(int version, MainActivity.ReportStatus status) {
+        return ((long) version << 8) | status.code;
+    }
+
+    public long stateKey() {
+        return stateKey(version, status);
+    }
+
+    public boolean isNewerThan(int otherVersion, MainActivity.ReportStatus otherStatus) {
+        return stateKey() > stateKey(otherVersion, otherStatus);
+    }
+
+    /**
+     * ใช้ event กับรายงานถ้าใหม่กว่า คืน true ถ้าสถานะเปลี่ยน
+     * event ที่ตรงกับสถานะปัจจุบันถูกเก็บไว้ส่งต่อถ้ารายงานยังไม่มี event ของสถานะนั้น
+     */
+    public boolean applyTo(MainActivity.Report report) {
+        if (report.id != reportId) return false;
+        if (!isNewerThan(report.statusVersion, report.status)) {
+            if (report.statusEvent == null
+                    && stateKey() == stateKey(report.statusVersion, report.status)) {
+                report.statusEvent = this;
+            }
+            return false;
+        }
+        report.status = status;
+        report.statusVersion = version;
+        report.statusEvent = this;
+        return true;
+    }
+
+    public boolean isSigned() {
+        return signature != null;
+    }
+
+    /**
+     * สำเนาที่เซ็นด้วย identity (ทำบน worker thread เพราะ keystore อาจช้า)
+     */
+    public StatusEvent signedBy(DeviceIdentity identity) throws GeneralSecurityException {
+        byte[] data = signedBytes();
+        return new StatusEvent(
+                reportId,
+                version,
+                status,
+                timeMillis,
+                identity.getEncodedPublicKey(),
+                identity.sign(data, 0, data.length));
+    }
+
+    /**
+     * ตรวจลายเซ็นเท่านั้น ผู้เซ็นมีสิทธิ์หรือไม่ดูที่ isAuthorizedFor
+     */
+    public boolean verify(ECParameterSpec params) throws GeneralSecurityException {
+        if (signature == null) return false;
+        Signature verifier = Signature.getInstance(DeviceIdentity.SIGNATURE_ALGORITHM);
+        verifier.initVerify(DeviceIdentity.decodePoint(signer, 0, params));
+        verifier.update(signedBytes());
+        return verifier.verify(signature);
+    }
+
+    /**
+     * ผู้แจ้ง (ผู้เซ็นซองของรายงาน) เปลี่ยนเป็นสถานะใดก็ได้
+     * หน่วยกู้ภัย (กุญแจเครือข่ายกู้ภัย rescuerKey) เปลี่ยนได้แค่ ACKNOWLEDGED และ EN_ROUTE
+     * report เป็น null ได้ (ยังไม่มีรายงานในเครื่อง) จะรับเฉพาะ event ของหน่วยกู้ภัย
+     */
+    public boolean isAuthorizedFor(MainActivity.Report report, byte[] rescuerKey) {
+        if (signer == null) return false;
+        if (report != null
+                && report.id == reportId
+                && report.envelope != null
+                && ReportEnvelope.isSignedBy(report.envelope, signer)) {
+            return true;
+        }
+        return rescuerKey != null
+                && Arrays.equals(signer, rescuerKey)
+                && (status == MainActivity.ReportStatus.ACKNOWLEDGED
+                        || status == MainActivity.ReportStatus.EN_ROUTE);
+    }
+
+    public int encodedSize() {
+        return signature == null ? BASE_SIZE : BASE_SIZE + signer.length + signature.length;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        writeFields(out);
+        if (signature == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(signature.length);
+            out.write(signer);
+            out.write(signature);
+        }
+    }
+
+    private void writeFields(DataOutput out) throws IOException {
+        out.writeInt(reportId);
+        out.writeInt(version);
+        out.writeByte(status.code);
+        out.writeLong(timeMillis);
+    }
+
+    private byte[] signedBytes() {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(SIGNATURE_DOMAIN.length + BASE_SIZE);
+        try {
+            bytes.write(SIGNATURE_DOMAIN);
+            writeFields(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // ByteArrayOutputStream ไม่โยน IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static StatusEvent read(DataInput in) throws IOException {
+        int reportId = in.readInt();
+        int version = in.readInt();
+        int code = in.readUnsignedByte();
+        long time = in.readLong();
+        MainActivity.ReportStatus status = MainActivity.ReportStatus.fromCode(code);
+        if (status == null || version < 0) {
+            throw new IOException("Invalid status event for report " + reportId);
+        }
+        int signatureLength = in.readUnsignedByte();
+        if (signatureLength == 0) {
+            return new StatusEvent(reportId, version, status, time);
+        }
+        byte[] signer = new byte[DeviceIdentity.PUBLIC_KEY_SIZE];
+        in.readFully(signer);
+        byte[] signature = new byte[signatureLength];
+        in.readFully(signature);
+        return new StatusEvent(reportId, version, status, time, signer, signature);
+    }
+}
@@ -0,0 +1,113 @@
+package main.sos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * บันทึก StatusEvent แบบต่อท้ายไฟล์อย่างเดียว เขียนเฉพาะ event ที่ใหม่กว่าที่รู้อยู่
+ * ตอนเปิดจะอ่านทั้งไฟล์เพื่อหา event ล่าสุดของแต่ละรายงาน
+ * และเขียนไฟล์ใหม่ให้เหลือเฉพาะ event ล่าสุดเมื่อ event เก่ามีมากเกินไป
+ */
+public class StatusLog {
+
+    private static final int MIN_COMPACT_EVENTS = 256;
+
+    private final File file;
+    private final Map<Integer, StatusEvent> latest = new HashMap<>();
+    private int eventCount;
+
+    public StatusLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * อ่าน event จากไฟล์ ข้อมูลท้ายไฟล์ที่เขียนไม่ครบ (เช่นแอปถูกปิดกลางคัน) จะถูกตัดทิ้ง
+     */
+    public synchronized void load() throws IOException {
+        latest.clear();
+        eventCount = 0;
+        if (!file.exists()) return;
+        long complete = 0;
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                StatusEvent event;
+                try {
+                    event = StatusEvent.read(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                eventCount++;
+                complete += event.encodedSize();
+                remember(event);
+            }
+        }
+        if (file.length() != complete) {
+            compact();
+        }
+    }
+
+    /**
+     * บันทึก event ถ้าใหม่กว่าที่รู้ คืน true ถ้าบันทึก
+     */
+    public synchronized boolean append(StatusEvent event) throws IOException {
+        StatusEvent current = latest.get(event.reportId);
+        if (current != null && !event.isNewerThan(current.version, current.status)) {
+            return false;
+        }
+        try (DataOutputStream out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            event.write(out);
+        }
+        latest.put(event.reportId, event);
+        eventCount++;
+        if (eventCount >= MIN_COMPACT_EVENTS && eventCount > latest.size() * 2) {
+            compact();
+        }
+        return true;
+    }
+
+    public synchronized StatusEvent get(int reportId) {
+        return latest.get(reportId);
+    }
+
+    public synchronized List<StatusEvent> getLatest() {
+        return new ArrayList<>(latest.values());
+    }
+
+    private void remember(StatusEvent event) {
+        StatusEvent current = latest.get(event.reportId);
+        if (current == null || event.isNewerThan(current.version, current.status)) {
+            latest.put(event.reportId, event);
+        }
+    }
+
+    /**
+     * เขียนไฟล์ใหม่ด้วย event ล่าสุดเท่านั้น แล้วแทนที่ไฟล์เดิมด้วย rename
+     */
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (StatusEvent event : latest.values()) {
+                event.write(out);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        eventCount = latest.size();
+    }
+}
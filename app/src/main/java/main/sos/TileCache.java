@@ -0,0 +1,177 @@
+package main.sos;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * cache ของ tile ที่ decode แล้ว แบบ LRU จำกัดตามขนาดหน่วยความจำ
+ * พร้อม prefetch tile ข้างหน้าตามทิศที่หน่วยกู้ภัยกำลังเคลื่อนที่
+ */
+public class TileCache<T> {
+
+    public interface Decoder<T> {
+        /**
+         * decode tile คืน null ถ้าข้อมูลเสีย
+         */
+        T decode(ByteBuffer data);
+
+        int sizeOf(T tile);
+    }
+
+    public interface Listener {
+        void onTileLoaded(int zoom, int x, int y);
+    }
+
+    private final TileStore store;
+    private final Decoder<T> decoder;
+    private final long maxBytes;
+    private final Executor prefetchExecutor;
+    private final LinkedHashMap<Long, T> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Long> pending = new HashSet<>();
+    private volatile Listener listener;
+
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+    public TileCache(TileStore store, Decoder<T> decoder, long maxBytes, Executor prefetchExecutor) {
+        this.store = store;
+        this.decoder = decoder;
+        this.maxBytes = maxBytes;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * คืน tile จาก cache หรือ decode จาก store (null ถ้าไม่มี tile นี้)
+     */
+    public T get(int zoom, int x, int y) {
+        long key = TileStore.key(zoom, x, y);
+        synchronized (this) {
+            T cached = tiles.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        return load(key, zoom, x, y);
+    }
+
+    /**
+     * คืน tile เฉพาะที่อยู่ใน cache แล้ว ไม่ decode (ใช้บน UI thread คู่กับ prefetch)
+     */
+    public synchronized T peek(int zoom, int x, int y) {
+        T cached = tiles.get(TileStore.key(zoom, x, y));
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+
+    /**
+     * รับแจ้งเมื่อ tile ถูก decode เข้า cache (เรียกจาก thread ที่โหลด)
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * โหลด tile ล่วงหน้าตามทิศทาง (bearing องศา) เป็นระยะ distanceM จากตำแหน่งปัจจุบัน
+     */
+    public void prefetchAlong(double lat, double lng, float bearing, int zoom, double distanceM) {
+        double tileMeters = TileMath.tileSizeMeters(lat, zoom);
+        int steps = (int) Math.ceil(distanceM / tileMeters);
+        double rad = Math.toRadians(bearing);
+        for (int step = 0; step <= steps; step++) {
+            double d = step * tileMeters;
+            double pLat = lat + Math.toDegrees(d * Math.cos(rad) / DistanceIndex.EARTH_RADIUS_M);
+            double pLng =
+                    lng
+                            + Math.toDegrees(
+                                    d * Math.sin(rad)
+                                            / (DistanceIndex.EARTH_RADIUS_M
+                                                    * Math.cos(Math.toRadians(lat))));
+            int x = TileMath.tileX(pLng, zoom);
+            int y = TileMath.tileY(pLat, zoom);
+            // tile ที่จุดนั้นและด้านข้าง เผื่อทางโค้ง
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    prefetch(zoom, x + dx, y + dy);
+                }
+            }
+        }
+    }
+
+    public void prefetch(final int zoom, final int x, final int y) {
+        final long key = TileStore.key(zoom, x, y);
+        synchronized (this) {
+            if (tiles.containsKey(key) || !pending.add(key)) return;
+        }
+        prefetchExecutor.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        load(key, zoom, x, y);
+                    }
+                });
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        currentBytes = 0;
+    }
+
+    private T load(long key, int zoom, int x, int y) {
+        int max = 1 << zoom;
+        ByteBuffer data = x >= 0 && y >= 0 && x < max && y < max ? store.getTile(zoom, x, y) : null;
+        T tile = data != null ? decoder.decode(data) : null;
+        synchronized (this) {
+            pending.remove(key);
+            if (tile == null) return null;
+            T previous = tiles.put(key, tile);
+            if (previous != null) currentBytes -= decoder.sizeOf(previous);
+            currentBytes += decoder.sizeOf(tile);
+            trim();
+        }
+        Listener current = listener;
+        if (current != null) current.onTileLoaded(zoom, x, y);
+        return tile;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, T>> iterator = tiles.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, T> eldest = iterator.next();
+            currentBytes -= decoder.sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package main.sos;
+
+/**
+ * แปลงพิกัดเป็นตำแหน่ง tile แบบ Web Mercator (256 px ต่อ tile)
+ */
+public final class TileMath {
+
+    public static final int TILE_SIZE = 256;
+
+    private TileMath() {}
+
+    /**
+     * ตำแหน่ง x แบบ pixel รวมทั้งโลกที่ zoom นี้
+     */
+    public static double pixelX(double lng, int zoom) {
+        return (lng + 180) / 360 * TILE_SIZE * (1 << zoom);
+    }
+
+    public static double pixelY(double lat, int zoom) {
+        double clamped = Math.max(-85.05112878, Math.min(85.05112878, lat));
+        double rad = Math.toRadians(clamped);
+        double y = (1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2;
+        return y * TILE_SIZE * (1 << zoom);
+    }
+
+    public static int tileX(double lng, int zoom) {
+        return (int) Math.floor(pixelX(lng, zoom) / TILE_SIZE);
+    }
+
+    public static int tileY(double lat, int zoom) {
+        return (int) Math.floor(pixelY(lat, zoom) / TILE_SIZE);
+    }
+
+    /**
+     * ความกว้างโดยประมาณของหนึ่ง tile (เมตร) ที่ละติจูดนี้
+     */
+    public static double tileSizeMeters(double lat, int zoom) {
+        double equator = 2 * Math.PI * DistanceIndex.EARTH_RADIUS_M;
+        return equator * Math.cos(Math.toRadians(lat)) / (1 << zoom);
+    }
+}
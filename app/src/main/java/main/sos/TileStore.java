@@ -0,0 +1,119 @@
+package main.sos;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ไฟล์ tile แผนที่แบบออฟไลน์ เปิดด้วย memory-map อ่าน tile ได้โดยไม่ต้อง copy หรือ parse ทั้งไฟล์
+ *
+ * รูปแบบไฟล์ (big-endian): int MAGIC, int tileCount,
+ * tileCount x (long key, int offset, int length) เรียงตาม key, ตามด้วยข้อมูล tile (PNG/WebP)
+ */
+public class TileStore implements Closeable {
+
+    public static final int MAGIC = 0x6d54494c; // "mTIL"
+    public static final int MAX_ZOOM = 20;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 16;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int tileCount;
+
+    public TileStore(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a tile file: " + path);
+            }
+            tileCount = buffer.getInt(4);
+            if (tileCount < 0 || HEADER_SIZE + (long) tileCount * ENTRY_SIZE > buffer.capacity()) {
+                throw new IOException("Corrupt tile index: " + path);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public static long key(int zoom, int x, int y) {
+        return ((long) zoom << 40) | ((long) x << 20) | y;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * ข้อมูล tile เป็น slice ของไฟล์ที่ map ไว้ (ไม่ copy) หรือ null ถ้าไม่มี
+     */
+    public ByteBuffer getTile(int zoom, int x, int y) {
+        long target = key(zoom, x, y);
+        int lo = 0;
+        int hi = tileCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = HEADER_SIZE + mid * ENTRY_SIZE;
+            long k = buffer.getLong(entry);
+            if (k < target) {
+                lo = mid + 1;
+            } else if (k > target) {
+                hi = mid - 1;
+            } else {
+                int offset = buffer.getInt(entry + 8);
+                int length = buffer.getInt(entry + 12);
+                if (offset < 0 || length < 0 || (long) offset + length > buffer.capacity()) {
+                    return null;
+                }
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(offset);
+                slice.limit(offset + length);
+                return slice.slice();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * เขียนไฟล์ tile จากชุดข้อมูลที่เตรียมไว้ (ใช้สร้างไฟล์ตัวอย่างหรือไฟล์ที่ดาวน์โหลดล่วงหน้า)
+     */
+    public static void write(File path, Map<Long, byte[]> tiles) throws IOException {
+        TreeMap<Long, byte[]> sorted = new TreeMap<>(tiles);
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sorted.size());
+            long offset = HEADER_SIZE + (long) sorted.size() * ENTRY_SIZE;
+            for (Map.Entry<Long, byte[]> entry : sorted.entrySet()) {
+                if (offset + entry.getValue().length > Integer.MAX_VALUE) {
+                    throw new IOException("Tile file larger than 2 GB");
+                }
+                out.writeLong(entry.getKey());
+                out.writeInt((int) offset);
+                out.writeInt(entry.getValue().length);
+                offset += entry.getValue().length;
+            }
+            for (byte[] data : sorted.values()) {
+                out.write(data);
+            }
+        }
+    }
+}
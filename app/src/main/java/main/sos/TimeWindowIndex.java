@@ -0,0 +1,215 @@
+package main.sos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * รายงานเรียงตามเวลาสร้าง สำหรับ "รายงานใน N นาทีล่าสุด" และ "รอความช่วยเหลือนานกว่า X"
+ *
+ * นับจำนวนได้ใน O(log n) (binary search บน array ที่เรียงอยู่เสมอ) ดึงรายการ O(log n + k)
+ * รายงานใหม่ส่วนใหญ่ใหม่กว่าตัวล่าสุดจึงเพิ่มท้าย array ได้ O(1) ที่มาไม่เรียง (relay)
+ * แทรกตรงตำแหน่งจาก binary search (เลื่อนด้วย arraycopy) โหลดทั้งชุดใช้ putAll ซึ่งเรียงครั้งเดียว
+ * รายงานที่ไม่รู้เวลา (ReportTime.UNKNOWN) ไม่ถูกเก็บ ใช้บน main thread เท่านั้น
+ */
+public class TimeWindowIndex {
+
+    private static final Comparator<Entry> ORDER =
+            new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    if (a.time != b.time) return Long.compare(a.time, b.time);
+                    return Integer.compare(a.id, b.id);
+                }
+            };
+
+    private static class Entry {
+        final long time;
+        final int id;
+        final MainActivity.Report report;
+        final boolean waiting;
+
+        Entry(MainActivity.Report report) {
+            this.time = report.timestamp;
+            this.id = report.id;
+            this.report = report;
+            this.waiting = report.status == MainActivity.ReportStatus.WAITING;
+        }
+    }
+
+    private static class Run {
+        private Entry[] entries = new Entry[64];
+        private int size;
+
+        void add(Entry entry) {
+            grow(size + 1);
+            if (size == 0 || ORDER.compare(entries[size - 1], entry) < 0) {
+                entries[size++] = entry;
+                return;
+            }
+            int index = -Arrays.binarySearch(entries, 0, size, entry, ORDER) - 1;
+            System.arraycopy(entries, index, entries, index + 1, size - index);
+            entries[index] = entry;
+            size++;
+        }
+
+        /**
+         * ต่อท้ายโดยยังไม่เรียง ผู้เรียกต้อง sort() ก่อน query
+         */
+        void append(Entry entry) {
+            grow(size + 1);
+            entries[size++] = entry;
+        }
+
+        void sort() {
+            Arrays.sort(entries, 0, size, ORDER);
+        }
+
+        void remove(Entry entry) {
+            int index = Arrays.binarySearch(entries, 0, size, entry, ORDER);
+            if (index < 0) return;
+            System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+            entries[--size] = null;
+        }
+
+        /**
+         * ตำแหน่งแรกที่เวลา >= time
+         */
+        int lowerBound(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (entries[mid].time < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void clear() {
+            Arrays.fill(entries, 0, size, null);
+            size = 0;
+        }
+
+        private void grow(int capacity) {
+            if (capacity > entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(capacity, entries.length * 2));
+            }
+        }
+    }
+
+    private final Map<Integer, Entry> byId = new HashMap<>();
+    private final Run all = new Run();
+    private final Run waiting = new Run();
+
+    /**
+     * เพิ่มหรืออัปเดตรายงาน (เรียกใหม่เมื่อสถานะเปลี่ยน)
+     */
+    public void put(MainActivity.Report report) {
+        Entry old = byId.get(report.id);
+        if (old != null) {
+            if (old.time == report.timestamp
+                    && old.waiting == (report.status == MainActivity.ReportStatus.WAITING)
+                    && old.report == report) {
+                return;
+            }
+            remove(report.id);
+        }
+        if (report.timestamp == ReportTime.UNKNOWN) return;
+        Entry entry = new Entry(report);
+        byId.put(report.id, entry);
+        all.add(entry);
+        if (entry.waiting) waiting.add(entry);
+    }
+
+    /**
+     * เพิ่มทีละมาก (เช่น index ใหม่ทั้งชุด) ต่อท้ายแล้วเรียงครั้งเดียว O(n log n)
+     * แทนการแทรกทีละฉบับที่เลื่อน array O(n) ต่อฉบับเมื่อมาไม่เรียง
+     */
+    public void putAll(Collection<MainActivity.Report> reports) {
+        for (MainActivity.Report report : reports) {
+            if (byId.containsKey(report.id)) remove(report.id);
+            if (report.timestamp == ReportTime.UNKNOWN) continue;
+            Entry entry = new Entry(report);
+            byId.put(report.id, entry);
+            all.append(entry);
+            if (entry.waiting) waiting.append(entry);
+        }
+        all.sort();
+        waiting.sort();
+    }
+
+    public void remove(int reportId) {
+        Entry entry = byId.remove(reportId);
+        if (entry == null) return;
+        all.remove(entry);
+        if (entry.waiting) waiting.remove(entry);
+    }
+
+    public void clear() {
+        byId.clear();
+        all.clear();
+        waiting.clear();
+    }
+
+    public int size() {
+        return all.size;
+    }
+
+    /**
+     * จำนวนรายงานที่สร้างตั้งแต่ fromMillis
+     */
+    public int countSince(long fromMillis) {
+        return all.size - all.lowerBound(fromMillis);
+    }
+
+    /**
+     * รายงานที่สร้างตั้งแต่ fromMillis ใหม่สุดก่อน
+     */
+    public List<MainActivity.Report> since(long fromMillis) {
+        int from = all.lowerBound(fromMillis);
+        List<MainActivity.Report> result = new ArrayList<>(all.size - from);
+        for (int i = all.size - 1; i >= from; i--) {
+            result.add(all.entries[i].report);
+        }
+        return result;
+    }
+
+    /**
+     * จำนวนรายงานที่ยังรอความช่วยเหลือมานานกว่า ageMillis
+     */
+    public int countWaitingLongerThan(long ageMillis, long nowMillis) {
+        return waiting.lowerBound(nowMillis - ageMillis);
+    }
+
+    /**
+     * รายงานที่ยังรอความช่วยเหลือมานานกว่า ageMillis รอนานสุดก่อน
+     */
+    public List<MainActivity.Report> waitingLongerThan(long ageMillis, long nowMillis) {
+        int to = waiting.lowerBound(nowMillis - ageMillis);
+        List<MainActivity.Report> result = new ArrayList<>(to);
+        for (int i = 0; i < to; i++) {
+            result.add(waiting.entries[i].report);
+        }
+        return result;
+    }
+
+    /**
+     * รายงานที่สร้างก่อน beforeMillis เก่าสุดก่อน ใช้หารายงานที่หมดอายุ
+     */
+    public List<MainActivity.Report> olderThan(long beforeMillis) {
+        int to = all.lowerBound(beforeMillis);
+        List<MainActivity.Report> result = new ArrayList<>(to);
+        for (int i = 0; i < to; i++) {
+            result.add(all.entries[i].report);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,448 @@
+package main.sos;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.p2p.WifiP2pConfig;
+import android.net.wifi.p2p.WifiP2pDevice;
+import android.net.wifi.p2p.WifiP2pDeviceList;
+import android.net.wifi.p2p.WifiP2pInfo;
+import android.net.wifi.p2p.WifiP2pManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * ช่องทางซิงก์รายงานจำนวนมากระหว่างทีมกู้ภัยผ่าน WiFi Direct
+ * group owner เปิด ServerSocket อีกฝั่งเชื่อมต่อเข้ามาแล้วเริ่ม ReportSync
+ * GossipScheduler เลือกว่ารอบนี้ซิงก์กับเครื่องไหน (ทีละเครื่องต่อกัน ไม่เกิน fanoutLimit จาก WorkloadGovernor)
+ * และตั้งเวลารอบถัดไปเองจนกว่าจะ stop()
+ */
+public class WifiDirectSync {
+
+    private static final String TAG = "WifiDirectSync";
+    private static final int PORT = 8988;
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int SOCKET_TIMEOUT = 30000;
+    private static final int CONNECT_ATTEMPTS = 5;
+    private static final long RETRY_DELAY = 1000;
+
+    public interface Listener {
+        void onSyncFinished(ReportSync.Result result);
+
+        void onSyncError(String error);
+    }
+
+    private final Context context;
+    private final ReportSync.Store store;
+    private final ReportEnvelope.Verifier verifier;
+    private final IngressGuard guard;
+    private final WifiP2pManager manager;
+    private WifiP2pManager.Channel channel;
+    private Listener listener;
+    private volatile boolean syncRunning = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // ใช้บน main thread เท่านั้น
+    private final GossipScheduler.Digest localDigest = new GossipScheduler.Digest();
+    private final GossipScheduler gossip;
+    private final Set<String> nearbyPeers = new HashSet<>();
+    private final ArrayDeque<String> roundPeers = new ArrayDeque<>();
+    private final Runnable nextRound = this::startRound;
+    private boolean roundPending = false;
+    private String connectingPeer;
+
+    private final BroadcastReceiver receiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    String action = intent.getAction();
+                    if (WifiP2pManager.WIFI_P2P_PEERS_CHANGED_ACTION.equals(action)) {
+                        requestPeers();
+                    } else if (WifiP2pManager.WIFI_P2P_CONNECTION_CHANGED_ACTION.equals(action)) {
+                        requestConnectionInfo();
+                    }
+                }
+            };
+
+    public WifiDirectSync(
+            Context context,
+            ReportSync.Store store,
+            ReportEnvelope.Verifier verifier,
+            IngressGuard guard) {
+        this.context = context.getApplicationContext();
+        this.store = store;
+        this.verifier = verifier;
+        this.guard = guard;
+        this.manager = (WifiP2pManager) context.getSystemService(Context.WIFI_P2P_SERVICE);
+        this.gossip =
+                new GossipScheduler(
+                        GossipScheduler.DEFAULT_CONFIG,
+                        localDigest,
+                        new Random(),
+                        SystemClock.elapsedRealtime());
+        gossip.setFanoutLimit(1);
+    }
+
+    /**
+     * เริ่มค้นหาอุปกรณ์ใกล้เคียง และซิงก์เมื่อเชื่อมต่อสำเร็จ
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        if (manager == null) {
+            listener.onSyncError("WiFi Direct is not supported");
+            return;
+        }
+        if (channel == null) {
+            channel = manager.initialize(context, Looper.getMainLooper(), null);
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(WifiP2pManager.WIFI_P2P_PEERS_CHANGED_ACTION);
+            filter.addAction(WifiP2pManager.WIFI_P2P_CONNECTION_CHANGED_ACTION);
+            context.registerReceiver(receiver, filter);
+        }
+        startRound();
+    }
+
+    /**
+     * จำนวนเครื่องสูงสุดที่ซิงก์ต่อรอบ อย่างน้อย 1 เพราะผู้ใช้กดซิงก์เอง
+     */
+    public void setFanoutLimit(int fanoutLimit) {
+        gossip.setFanoutLimit(fanoutLimit);
+    }
+
+    public void stop() {
+        mainHandler.removeCallbacks(nextRound);
+        roundPending = false;
+        roundPeers.clear();
+        if (channel == null) return;
+        context.unregisterReceiver(receiver);
+        manager.removeGroup(channel, null);
+        channel.close();
+        channel = null;
+        listener = null;
+    }
+
+    /**
+     * เริ่มรอบ gossip: อัปเดต digest ของเรา แล้วค้นหาเพื่อนบ้าน (เลือกเครื่องเมื่อได้รายชื่อ)
+     */
+    private void startRound() {
+        if (channel == null) return;
+        setLocalDigest(digestOf(store.snapshot(), null));
+        roundPending = true;
+        try {
+            manager.discoverPeers(channel, new ErrorReportingListener("Peer discovery failed"));
+        } catch (SecurityException e) {
+            reportError("Missing WiFi Direct permission");
+        }
+    }
+
+    private void scheduleRound() {
+        mainHandler.removeCallbacks(nextRound);
+        if (channel == null) return;
+        long delay = gossip.getNextRoundAt() - SystemClock.elapsedRealtime();
+        mainHandler.postDelayed(nextRound, Math.max(0, delay));
+    }
+
+    private void requestPeers() {
+        if (channel == null) return;
+        try {
+            manager.requestPeers(
+                    channel,
+                    new WifiP2pManager.PeerListListener() {
+                        @Override
+                        public void onPeersAvailable(WifiP2pDeviceList peers) {
+                            updateNeighbors(peers);
+                            if (!roundPending || connectingPeer != null || syncRunning) return;
+                            roundPending = false;
+                            roundPeers.addAll(gossip.selectPeers(SystemClock.elapsedRealtime()));
+                            connectNext();
+                        }
+                    });
+        } catch (SecurityException e) {
+            reportError("Missing WiFi Direct permission");
+        }
+    }
+
+    private void updateNeighbors(WifiP2pDeviceList peers) {
+        long now = SystemClock.elapsedRealtime();
+        Set<String> seen = new HashSet<>();
+        for (WifiP2pDevice device : peers.getDeviceList()) {
+            seen.add(device.deviceAddress);
+            gossip.onNeighborSeen(device.deviceAddress, now);
+        }
+        for (String peer : nearbyPeers) {
+            if (!seen.contains(peer)) gossip.onNeighborLost(peer);
+        }
+        nearbyPeers.clear();
+        nearbyPeers.addAll(seen);
+    }
+
+    /**
+     * เชื่อมต่อเครื่องถัดไปที่ scheduler เลือกไว้และยังอยู่ใกล้ ถ้าหมดแล้วรอรอบถัดไป
+     */
+    private void connectNext() {
+        while (!roundPeers.isEmpty()) {
+            String peer = roundPeers.poll();
+            if (nearbyPeers.contains(peer)) {
+                connect(peer);
+                return;
+            }
+        }
+        scheduleRound();
+    }
+
+    private void connect(String deviceAddress) {
+        WifiP2pConfig config = new WifiP2pConfig();
+        config.deviceAddress = deviceAddress;
+        connectingPeer = deviceAddress;
+        try {
+            manager.connect(
+                    channel,
+                    config,
+                    new ErrorReportingListener("Connect failed") {
+                        @Override
+                        public void onFailure(int reason) {
+                            connectingPeer = null;
+                            super.onFailure(reason);
+                            connectNext();
+                        }
+                    });
+        } catch (SecurityException e) {
+            reportError("Missing WiFi Direct permission");
+        }
+    }
+
+    private void requestConnectionInfo() {
+        if (channel == null) return;
+        manager.requestConnectionInfo(
+                channel,
+                new WifiP2pManager.ConnectionInfoListener() {
+                    @Override
+                    public void onConnectionInfoAvailable(WifiP2pInfo info) {
+                        if (info == null || !info.groupFormed || syncRunning) return;
+                        syncRunning = true;
+                        new Thread(() -> runSync(info), TAG).start();
+                    }
+                });
+    }
+
+    private ReportSync newSync(Socket socket, TrackingStore tracking) {
+        return new ReportSync(
+                tracking, verifier, guard, socket.getInetAddress().getHostAddress());
+    }
+
+    /**
+     * ทำงานบน background thread
+     */
+    private void runSync(WifiP2pInfo info) {
+        TrackingStore tracking = new TrackingStore(store);
+        GossipScheduler.Digest after = null;
+        try {
+            ReportSync.Result result;
+            if (info.isGroupOwner) {
+                try (ServerSocket server = new ServerSocket(PORT)) {
+                    server.setSoTimeout(SOCKET_TIMEOUT);
+                    try (Socket socket = server.accept()) {
+                        socket.setSoTimeout(SOCKET_TIMEOUT);
+                        result = newSync(socket, tracking)
+                                .run(socket.getInputStream(), socket.getOutputStream(), false);
+                    }
+                }
+            } else {
+                try (Socket socket = connectToOwner(info)) {
+                    socket.setSoTimeout(SOCKET_TIMEOUT);
+                    result = newSync(socket, tracking)
+                            .run(socket.getInputStream(), socket.getOutputStream(), true);
+                }
+            }
+            after = digestOf(tracking.snapshot, tracking.received);
+            Log.d(TAG, "Synced: sent=" + result.reportsSent + " received=" + result.reportsReceived);
+            Listener current = listener;
+            if (current != null) current.onSyncFinished(result);
+        } catch (IOException e) {
+            reportError("Sync failed: " + e.getMessage());
+        } finally {
+            syncRunning = false;
+            GossipScheduler.Digest synced = after;
+            boolean critical = tracking.receivedCritical();
+            mainHandler.post(() -> onSyncDone(synced, critical));
+        }
+    }
+
+    /**
+     * ซิงก์ครบแล้วทั้งสองฝั่งมีชุดรายงานเดียวกัน (snapshot รวมที่ได้รับ) จึงใช้เป็น digest ของเพื่อนบ้านได้
+     * แล้วไปเครื่องถัดไปของรอบ หรือรอรอบถัดไป
+     */
+    private void onSyncDone(GossipScheduler.Digest synced, boolean critical) {
+        long now = SystemClock.elapsedRealtime();
+        if (synced != null) {
+            boolean grew = synced.count != localDigest.count || synced.hash != localDigest.hash;
+            setLocalDigest(synced);
+            if (connectingPeer != null) gossip.onDigestReceived(connectingPeer, synced, now);
+            if (grew) gossip.onNewReports(critical, now);
+        }
+        if (connectingPeer == null) {
+            // อีกฝั่งเป็นผู้เชื่อมต่อเข้ามา ไม่ได้อยู่ในรอบของเรา
+            scheduleRound();
+            return;
+        }
+        connectingPeer = null;
+        if (channel == null) return;
+        if (roundPeers.isEmpty()) {
+            scheduleRound();
+            return;
+        }
+        manager.removeGroup(
+                channel,
+                new ErrorReportingListener("Leave group failed") {
+                    @Override
+                    public void onSuccess() {
+                        connectNext();
+                    }
+                });
+    }
+
+    private void setLocalDigest(GossipScheduler.Digest digest) {
+        localDigest.count = digest.count;
+        localDigest.hash = digest.hash;
+        localDigest.criticalCount = digest.criticalCount;
+        localDigest.criticalHash = digest.criticalHash;
+    }
+
+    /**
+     * digest ของ snapshot รวมรายงานที่ได้รับ (id ซ้ำนับครั้งเดียว ใช้ contentVersion ใหม่สุด)
+     * นับเฉพาะรายงานที่ ReportSync ส่งต่อ (มี verifier แล้วต้องเป็นซอง) ไม่ให้ digest ต่างกันตลอดไป
+     */
+    private GossipScheduler.Digest digestOf(
+            List<MainActivity.Report> snapshot, List<MainActivity.Report> received) {
+        Map<Integer, MainActivity.Report> latest = new HashMap<>();
+        for (MainActivity.Report report : snapshot) {
+            if (verifier != null && report.envelope == null) continue;
+            keepLatest(latest, report);
+        }
+        if (received != null) {
+            for (MainActivity.Report report : received) keepLatest(latest, report);
+        }
+        GossipScheduler.Digest digest = new GossipScheduler.Digest();
+        for (MainActivity.Report report : latest.values()) digest.add(report);
+        return digest;
+    }
+
+    private static void keepLatest(
+            Map<Integer, MainActivity.Report> latest, MainActivity.Report report) {
+        MainActivity.Report known = latest.get(report.id);
+        if (known == null
+                || ReportEnvelope.peekContentVersion(report.envelope)
+                        > ReportEnvelope.peekContentVersion(known.envelope)) {
+            latest.put(report.id, report);
+        }
+    }
+
+    /**
+     * group owner อาจยังไม่เปิด ServerSocket ลองเชื่อมต่อซ้ำสองสามครั้ง
+     */
+    private Socket connectToOwner(WifiP2pInfo info) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(
+                        new InetSocketAddress(info.groupOwnerAddress, PORT), CONNECT_TIMEOUT);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                last = e;
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        throw last != null ? last : new IOException("Interrupted");
+    }
+
+    private void reportError(String error) {
+        Log.w(TAG, error);
+        Listener current = listener;
+        if (current != null) current.onSyncError(error);
+    }
+
+    /**
+     * ส่งต่อไปยัง Store จริง และจำ snapshot กับรายงานที่ได้รับไว้คำนวณ digest หลังซิงก์
+     * (รายงานที่ได้รับเข้า store จริงแบบ async จึงอ่านกลับจาก store ทันทีไม่ได้)
+     */
+    private static class TrackingStore implements ReportSync.Store {
+        private final ReportSync.Store delegate;
+        List<MainActivity.Report> snapshot = new ArrayList<>();
+        final List<MainActivity.Report> received = new ArrayList<>();
+
+        TrackingStore(ReportSync.Store delegate) {
+            this.delegate = delegate;
+        }
+
+        boolean receivedCritical() {
+            for (MainActivity.Report report : received) {
+                if (report.level == MainActivity.Severity.CRITICAL) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public List<MainActivity.Report> snapshot() {
+            snapshot = delegate.snapshot();
+            return snapshot;
+        }
+
+        @Override
+        public void addReports(List<MainActivity.Report> reports) {
+            received.addAll(reports);
+            delegate.addReports(reports);
+        }
+
+        @Override
+        public void applyStatus(List<StatusEvent> events) {
+            delegate.applyStatus(events);
+        }
+
+        @Override
+        public List<AssignmentSolver.Rescuer> rescuers() {
+            return delegate.rescuers();
+        }
+
+        @Override
+        public void applyRescuers(List<AssignmentSolver.Rescuer> rescuers) {
+            delegate.applyRescuers(rescuers);
+        }
+    }
+
+    private class ErrorReportingListener implements WifiP2pManager.ActionListener {
+        private final String message;
+
+        ErrorReportingListener(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public void onSuccess() {}
+
+        @Override
+        public void onFailure(int reason) {
+            reportError(message + ": " + reason);
+        }
+    }
+}
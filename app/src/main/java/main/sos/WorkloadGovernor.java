@@ -0,0 +1,296 @@
+package main.sos;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ปรับงานเบื้องหลังตามแบตเตอรี่ การชาร์จ และความร้อนของเครื่อง ผ่าน Policy เดียว
+ * ได้ Budget ชุดเดียวที่ทุกระบบย่อยใช้ร่วมกัน: จำนวนเครื่องที่ส่งต่อต่อรอบ, duty cycle ของ beacon,
+ * เวลาที่ใช้รวมรายงานต่อเฟรม และความถี่อ่านตำแหน่ง
+ *
+ * Policy เป็นฟังก์ชันของ DeviceState ล้วน ทดสอบได้โดยส่งสถานะเข้าไปตรงๆ ผ่าน update()
+ * start() อ่านสถานะจริงจาก ACTION_BATTERY_CHANGED และ PowerManager (API 29+) ใช้บน main thread
+ */
+public class WorkloadGovernor {
+
+    // ตรงกับ PowerManager.THERMAL_STATUS_* (API 29)
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+
+    public static class DeviceState {
+        // 0-100 หรือ -1 ถ้าไม่รู้
+        public final int batteryPercent;
+        public final boolean charging;
+        public final int thermalStatus;
+
+        public DeviceState(int batteryPercent, boolean charging, int thermalStatus) {
+            this.batteryPercent = batteryPercent;
+            this.charging = charging;
+            this.thermalStatus = thermalStatus;
+        }
+    }
+
+    /**
+     * ระดับการประหยัด เรียงจากทำงานเต็มที่ไปหาประหยัดสุด
+     */
+    public enum Tier {
+        NORMAL,
+        SAVER,
+        CRITICAL,
+        EMERGENCY
+    }
+
+    public static class Budget {
+        public final Tier tier;
+        // จำนวนเครื่องที่ซิงก์ต่อการค้นหาหนึ่งครั้ง (อย่างน้อย 1 เมื่อผู้ใช้กดซิงก์เอง)
+        public final int relayFanout;
+        public final BeaconScheduler.DutyCycle advertise;
+        public final BeaconScheduler.DutyCycle scan;
+        // เวลาที่ IngestionPipeline ใช้รวมรายงาน/ทำ index ต่อเฟรม
+        public final long indexFrameBudgetNanos;
+        public final long locationIntervalMs;
+        public final boolean highAccuracyLocation;
+
+        public Budget(
+                Tier tier,
+                int relayFanout,
+                BeaconScheduler.DutyCycle advertise,
+                BeaconScheduler.DutyCycle scan,
+                long indexFrameBudgetNanos,
+                long locationIntervalMs,
+                boolean highAccuracyLocation) {
+            this.tier = tier;
+            this.relayFanout = relayFanout;
+            this.advertise = advertise;
+            this.scan = scan;
+            this.indexFrameBudgetNanos = indexFrameBudgetNanos;
+            this.locationIntervalMs = locationIntervalMs;
+            this.highAccuracyLocation = highAccuracyLocation;
+        }
+    }
+
+    public interface Policy {
+        /**
+         * current คือ Budget ที่ใช้อยู่ (null ครั้งแรก) ใช้ทำ hysteresis ได้
+         */
+        Budget budgetFor(DeviceState state, Budget current);
+    }
+
+    /**
+     * ทุกเมธอดถูกเรียกบน thread ที่เรียก update() (main thread เมื่อใช้ start())
+     */
+    public interface Listener {
+        void onBudgetChanged(Budget budget);
+    }
+
+    public static final Budget NORMAL_BUDGET =
+            new Budget(
+                    Tier.NORMAL,
+                    4,
+                    BeaconScheduler.DEFAULT_ADVERTISE,
+                    BeaconScheduler.DEFAULT_SCAN,
+                    4_000_000,
+                    10_000,
+                    true);
+
+    public static final Budget SAVER_BUDGET =
+            new Budget(
+                    Tier.SAVER,
+                    2,
+                    new BeaconScheduler.DutyCycle(8000, 1000, 500),
+                    new BeaconScheduler.DutyCycle(20000, 2500, 1000),
+                    3_000_000,
+                    30_000,
+                    false);
+
+    public static final Budget CRITICAL_BUDGET =
+            new Budget(
+                    Tier.CRITICAL,
+                    1,
+                    new BeaconScheduler.DutyCycle(15000, 1000, 1000),
+                    new BeaconScheduler.DutyCycle(60000, 2500, 2000),
+                    2_000_000,
+                    60_000,
+                    false);
+
+    // beacon ของผู้ประสบภัยยังประกาศต่อเสมอ ลดแค่ความถี่
+    public static final Budget EMERGENCY_BUDGET =
+            new Budget(
+                    Tier.EMERGENCY,
+                    1,
+                    new BeaconScheduler.DutyCycle(30000, 1000, 2000),
+                    new BeaconScheduler.DutyCycle(120000, 2500, 4000),
+                    1_000_000,
+                    120_000,
+                    false);
+
+    /**
+     * ระดับตามแบตเตอรี่ (ไม่นับถ้าชาร์จอยู่) หรือความร้อน เอาที่หนักกว่า
+     * แบตเตอรี่ต้องขึ้นเกินเกณฑ์ HYSTERESIS_PERCENT ก่อนจะกลับไประดับที่เบากว่า กันสลับไปมา
+     */
+    public static final Policy DEFAULT_POLICY =
+            new Policy() {
+                @Override
+                public Budget budgetFor(DeviceState state, Budget current) {
+                    Tier tier = max(batteryTier(state, current), thermalTier(state.thermalStatus));
+                    switch (tier) {
+                        case SAVER:
+                            return SAVER_BUDGET;
+                        case CRITICAL:
+                            return CRITICAL_BUDGET;
+                        case EMERGENCY:
+                            return EMERGENCY_BUDGET;
+                        default:
+                            return NORMAL_BUDGET;
+                    }
+                }
+            };
+
+    static final int SAVER_BELOW_PERCENT = 50;
+    static final int CRITICAL_BELOW_PERCENT = 20;
+    static final int EMERGENCY_BELOW_PERCENT = 5;
+    static final int HYSTERESIS_PERCENT = 3;
+
+    private final Policy policy;
+    private final List<Listener> listeners = new ArrayList<>();
+    private DeviceState state;
+    private Budget budget;
+    private Context context;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private int thermalStatus = THERMAL_NONE;
+
+    private final BroadcastReceiver batteryReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    update(readBattery(intent, thermalStatus));
+                }
+            };
+
+    public WorkloadGovernor(Policy policy) {
+        this.policy = policy;
+        this.budget = policy.budgetFor(new DeviceState(-1, false, THERMAL_NONE), null);
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    public DeviceState getState() {
+        return state;
+    }
+
+    /**
+     * listener ได้ Budget ปัจจุบันทันทีตอนเพิ่ม
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        listener.onBudgetChanged(budget);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * ใส่สถานะเครื่องใหม่ แจ้ง listener เมื่อ Budget เปลี่ยน
+     */
+    public void update(DeviceState state) {
+        this.state = state;
+        this.thermalStatus = state.thermalStatus;
+        Budget next = policy.budgetFor(state, budget);
+        if (next == budget) return;
+        budget = next;
+        for (Listener listener : new ArrayList<>(listeners)) listener.onBudgetChanged(next);
+    }
+
+    /**
+     * เริ่มอ่านสถานะจริงของเครื่อง (ACTION_BATTERY_CHANGED เป็น sticky broadcast ได้ค่าแรกทันที)
+     */
+    public void start(Context context) {
+        if (this.context != null) return;
+        this.context = context.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (power != null) {
+                thermalStatus = power.getCurrentThermalStatus();
+                thermalListener =
+                        status -> {
+                            DeviceState current = state;
+                            update(
+                                    current != null
+                                            ? new DeviceState(
+                                                    current.batteryPercent, current.charging, status)
+                                            : new DeviceState(-1, false, status));
+                        };
+                power.addThermalStatusListener(thermalListener);
+            }
+        }
+        Intent sticky =
+                this.context.registerReceiver(
+                        batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (sticky != null) update(readBattery(sticky, thermalStatus));
+    }
+
+    public void stop() {
+        if (context == null) return;
+        context.unregisterReceiver(batteryReceiver);
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (power != null) power.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+        context = null;
+    }
+
+    static DeviceState readBattery(Intent intent, int thermalStatus) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int percent = level >= 0 && scale > 0 ? level * 100 / scale : -1;
+        boolean charging =
+                status == BatteryManager.BATTERY_STATUS_CHARGING
+                        || status == BatteryManager.BATTERY_STATUS_FULL;
+        return new DeviceState(percent, charging, thermalStatus);
+    }
+
+    private static Tier batteryTier(DeviceState state, Budget current) {
+        if (state.charging || state.batteryPercent < 0) return Tier.NORMAL;
+        // กำลังจะกลับไประดับที่เบากว่า ต้องเกินเกณฑ์ไปอีก HYSTERESIS_PERCENT
+        int percent = state.batteryPercent;
+        Tier previous = current != null ? current.tier : Tier.NORMAL;
+        if (percent < threshold(EMERGENCY_BELOW_PERCENT, previous, Tier.EMERGENCY)) {
+            return Tier.EMERGENCY;
+        }
+        if (percent < threshold(CRITICAL_BELOW_PERCENT, previous, Tier.CRITICAL)) {
+            return Tier.CRITICAL;
+        }
+        if (percent < threshold(SAVER_BELOW_PERCENT, previous, Tier.SAVER)) return Tier.SAVER;
+        return Tier.NORMAL;
+    }
+
+    private static int threshold(int below, Tier previous, Tier tier) {
+        return previous.compareTo(tier) >= 0 ? below + HYSTERESIS_PERCENT : below;
+    }
+
+    private static Tier thermalTier(int thermalStatus) {
+        if (thermalStatus >= THERMAL_CRITICAL) return Tier.EMERGENCY;
+        if (thermalStatus >= THERMAL_SEVERE) return Tier.CRITICAL;
+        if (thermalStatus >= THERMAL_MODERATE) return Tier.SAVER;
+        return Tier.NORMAL;
+    }
+
+    private static Tier max(Tier a, Tier b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
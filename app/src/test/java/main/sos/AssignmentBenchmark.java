@@ -0,0 +1,82 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * วัดเวลาของ AssignmentSolver: จับคู่แบบ greedy ตอนเพิ่มรายงาน, snapshot และ solve() บน worker
+ * พร้อมเทียบต้นทุนรวมของ greedy กับคำตอบที่ดีที่สุด
+ *
+ * args: [จำนวนหน่วย] [จำนวนรายงาน]
+ */
+public class AssignmentBenchmark {
+
+    private static final int RUNS = 11;
+
+    public static void main(String[] args) {
+        int rescuers = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int reports = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Random random = new Random(46);
+        AssignmentSolver solver = new AssignmentSolver();
+
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rescuers; r++) {
+            solver.updateRescuer(
+                    new AssignmentSolver.Rescuer(
+                            r,
+                            13.60 + random.nextDouble() * 0.3,
+                            100.40 + random.nextDouble() * 0.3,
+                            1));
+        }
+        for (int i = 1; i <= reports; i++) {
+            MainActivity.Report report = MemoryReportStore.report(i);
+            report.location =
+                    new MainActivity.Location(
+                            13.60 + random.nextDouble() * 0.3, 100.40 + random.nextDouble() * 0.3);
+            report.level = MainActivity.Severity.values()[random.nextInt(4)];
+            solver.putReport(report);
+        }
+        long t1 = System.nanoTime();
+
+        long[] snapshotNanos = new long[RUNS];
+        long[] solveNanos = new long[RUNS];
+        AssignmentSolver.Problem problem = null;
+        int[] solution = null;
+        for (int run = -3; run < RUNS; run++) {
+            long t = System.nanoTime();
+            problem = solver.snapshot();
+            long s = System.nanoTime();
+            solution = AssignmentSolver.solve(problem);
+            long e = System.nanoTime();
+            if (run >= 0) {
+                snapshotNanos[run] = s - t;
+                solveNanos[run] = e - s;
+            }
+        }
+        double greedy = AssignmentSolverTest.total(problem, problem.current);
+        double solved = AssignmentSolverTest.total(problem, solution);
+        solver.apply(problem, solution);
+        Arrays.sort(snapshotNanos);
+        Arrays.sort(solveNanos);
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%d rescuers x %d reports: greedy put %.0f ms, snapshot %.2f ms,"
+                                + " solve median %.2f ms (max %.2f ms)",
+                        rescuers,
+                        reports,
+                        (t1 - t0) / 1e6,
+                        snapshotNanos[RUNS / 2] / 1e6,
+                        solveNanos[RUNS / 2] / 1e6,
+                        solveNanos[RUNS - 1] / 1e6));
+        // current ของ snapshot คือคำตอบของ greedy
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "total cost: greedy %.4f, solved %.4f (%.1f%% lower)",
+                        greedy,
+                        solved,
+                        100 * (1 - solved / greedy)));
+    }
+}
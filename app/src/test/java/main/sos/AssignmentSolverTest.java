@@ -0,0 +1,128 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class AssignmentSolverTest {
+
+    /**
+     * โจทย์สุ่มในพื้นที่ราว 10 กม. มีงานเดิม (sticky) และจุดซ้ำกันบ้างให้ต้นทุนเท่ากัน
+     */
+    static AssignmentSolver.Problem random(Random random, int rescuers, int tasks) {
+        AssignmentSolver.Problem problem = new AssignmentSolver.Problem(rescuers, tasks);
+        for (int t = 0; t < tasks; t++) {
+            problem.taskIds[t] = t + 1;
+            boolean same = t > 0 && random.nextInt(6) == 0;
+            problem.taskLat[t] = same ? problem.taskLat[t - 1] : 13.70 + random.nextDouble() * 0.1;
+            problem.taskLng[t] = same ? problem.taskLng[t - 1] : 100.50 + random.nextDouble() * 0.1;
+            problem.taskWeight[t] = 1 << random.nextInt(4);
+        }
+        boolean[] taken = new boolean[tasks];
+        for (int r = 0; r < rescuers; r++) {
+            problem.rescuerIds[r] = 1000 + r;
+            problem.rescuerLat[r] = 13.70 + random.nextDouble() * 0.1;
+            problem.rescuerLng[r] = 100.50 + random.nextDouble() * 0.1;
+            int current = random.nextInt(tasks + 1) - 1;
+            if (current >= 0 && !taken[current] && random.nextBoolean()) {
+                taken[current] = true;
+                problem.current[r] = current;
+            } else {
+                problem.current[r] = -1;
+            }
+        }
+        return problem;
+    }
+
+    /**
+     * ต้นทุนตามนิยามของ AssignmentSolver (ระยะ / น้ำหนัก งานเดิมถูกลง 10%)
+     * ไม่คูณเป็นเมตรเพราะใช้เทียบกันเองเท่านั้น
+     */
+    static double cost(AssignmentSolver.Problem problem, int rescuer, int task) {
+        double cosLat = Math.cos(Math.toRadians(problem.rescuerLat[rescuer]));
+        double dy = problem.taskLat[task] - problem.rescuerLat[rescuer];
+        double dx = (problem.taskLng[task] - problem.rescuerLng[rescuer]) * cosLat;
+        double cost = Math.sqrt(dx * dx + dy * dy) / problem.taskWeight[task];
+        return problem.current[rescuer] == task ? cost * 0.9 : cost;
+    }
+
+    static double total(AssignmentSolver.Problem problem, int[] solution) {
+        double total = 0;
+        for (int r = 0; r < solution.length; r++) {
+            if (solution[r] >= 0) total += cost(problem, r, solution[r]);
+        }
+        return total;
+    }
+
+    /**
+     * ต้นทุนต่ำสุดจากทุกการจับคู่ที่ใช้คู่ได้มากที่สุด min(หน่วย, งาน)
+     */
+    private static double bruteForce(AssignmentSolver.Problem problem) {
+        int rescuers = problem.rescuerIds.length;
+        int tasks = problem.taskIds.length;
+        return search(problem, 0, new boolean[tasks], Math.min(rescuers, tasks), 0);
+    }
+
+    private static double search(
+            AssignmentSolver.Problem problem, int rescuer, boolean[] used, int pairs, double sum) {
+        int rescuers = problem.rescuerIds.length;
+        if (pairs == 0) return sum;
+        // หน่วยที่เหลือไม่พอให้ครบจำนวนคู่
+        if (rescuers - rescuer < pairs) return Double.POSITIVE_INFINITY;
+        double best = Double.POSITIVE_INFINITY;
+        if (rescuers - rescuer > pairs) {
+            best = search(problem, rescuer + 1, used, pairs, sum);
+        }
+        for (int t = 0; t < used.length; t++) {
+            if (used[t]) continue;
+            used[t] = true;
+            best =
+                    Math.min(
+                            best,
+                            search(problem, rescuer + 1, used, pairs - 1,
+                                    sum + cost(problem, rescuer, t)));
+            used[t] = false;
+        }
+        return best;
+    }
+
+    @Test
+    public void prunedHungarianMatchesBruteForce() {
+        Random random = new Random(46);
+        for (int instance = 0; instance < 500; instance++) {
+            int rescuers = 1 + random.nextInt(6);
+            int tasks = 1 + random.nextInt(8);
+            AssignmentSolver.Problem problem = random(random, rescuers, tasks);
+            int[] solution = AssignmentSolver.solve(problem);
+
+            assertEquals(rescuers, solution.length);
+            boolean[] used = new boolean[tasks];
+            int pairs = 0;
+            for (int task : solution) {
+                if (task < 0) continue;
+                assertTrue("task used twice", !used[task]);
+                used[task] = true;
+                pairs++;
+            }
+            assertEquals(Math.min(rescuers, tasks), pairs);
+            double expected = bruteForce(problem);
+            // ต้นทุนใน solve เป็น float
+            assertEquals(
+                    "instance " + instance + " " + Arrays.toString(solution),
+                    expected,
+                    total(problem, solution),
+                    expected * 1e-5);
+        }
+    }
+
+    @Test
+    public void emptyProblemsLeaveEveryoneUnassigned() {
+        AssignmentSolver.Problem noTasks = random(new Random(1), 3, 0);
+        assertArrayEquals(new int[] {-1, -1, -1}, AssignmentSolver.solve(noTasks));
+        assertEquals(0, AssignmentSolver.solve(random(new Random(1), 0, 5)).length);
+    }
+}
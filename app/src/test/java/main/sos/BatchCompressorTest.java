@@ -0,0 +1,141 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.Test;
+
+public class BatchCompressorTest {
+
+    private static byte[] batch(int seed, int size) throws IOException {
+        List<MainActivity.Report> reports = CompressionBenchmark.corpus(new Random(seed), size);
+        BatchCompressor.Buffer raw = new BatchCompressor.Buffer();
+        ReportSync.writeBatch(new DataOutputStream(raw), reports);
+        return raw.toByteArray();
+    }
+
+    private static byte[] roundTrip(byte[] data) throws IOException {
+        byte[] compressed = BatchCompressor.compress(data, 0, data.length);
+        return BatchCompressor.decompress(compressed, 0, compressed.length).toByteArray();
+    }
+
+    @Test
+    public void pooledCoderRoundTripsOnSameThread() throws IOException {
+        byte[] small = batch(1, 8);
+        byte[] full = batch(2, ReportSync.MAX_BATCH);
+        // batch ใหญ่กว่า MAX_RETAINED ทำให้ buffer ของ thread ถูกคืนแล้วจองใหม่
+        byte[] large = new byte[1024 * 1024];
+        new Random(3).nextBytes(large);
+
+        for (int round = 0; round < 3; round++) {
+            assertArrayEquals(small, roundTrip(small));
+            assertArrayEquals(full, roundTrip(full));
+            assertArrayEquals(large, roundTrip(large));
+            // หลังใส่ dictionary รอบสุดท้ายจบ stream โดยไม่มีไบต์ออก
+            assertArrayEquals(new byte[0], roundTrip(new byte[0]));
+        }
+
+        // บีบอัดสลับกันแล้วคลายทีหลัง: ผลของ compress เป็นสำเนา ไม่ถูกเขียนทับ
+        byte[] a = BatchCompressor.compress(small, 0, small.length);
+        byte[] b = BatchCompressor.compress(full, 0, full.length);
+        assertArrayEquals(full, BatchCompressor.decompress(b, 0, b.length).toByteArray());
+        assertArrayEquals(small, BatchCompressor.decompress(a, 0, a.length).toByteArray());
+
+        // offset/length ภายใน array ที่ใหญ่กว่า
+        byte[] padded = new byte[small.length + 20];
+        System.arraycopy(small, 0, padded, 7, small.length);
+        byte[] c = BatchCompressor.compress(padded, 7, small.length);
+        assertArrayEquals(small, BatchCompressor.decompress(c, 0, c.length).toByteArray());
+    }
+
+    @Test
+    public void dictionaryShrinksSmallThaiBatches() throws IOException {
+        byte[] raw = batch(4, 8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] chunk = new byte[raw.length + 64];
+        int plain = 0;
+        while (!deflater.finished()) plain += deflater.deflate(chunk);
+        deflater.end();
+        int compressed = BatchCompressor.compress(raw, 0, raw.length).length;
+        assertTrue(compressed + " vs " + plain, compressed < plain * 0.9);
+    }
+
+    @Test
+    public void separateThreadsDoNotShareBuffers() throws Exception {
+        byte[][] inputs = new byte[4][];
+        for (int i = 0; i < inputs.length; i++) inputs[i] = batch(10 + i, 32 + i * 40);
+        Throwable[] errors = new Throwable[inputs.length];
+        Thread[] threads = new Thread[inputs.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] =
+                    new Thread(
+                            () -> {
+                                try {
+                                    for (int round = 0; round < 50; round++) {
+                                        byte[] input = inputs[index];
+                                        if (!Arrays.equals(input, roundTrip(input))) {
+                                            throw new AssertionError("thread " + index);
+                                        }
+                                    }
+                                } catch (Throwable e) {
+                                    errors[index] = e;
+                                }
+                            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (Throwable error : errors) {
+            if (error != null) throw new AssertionError(error);
+        }
+    }
+
+    @Test
+    public void rejectsCorruptTruncatedAndForeignData() throws IOException {
+        byte[] raw = "น้ำท่วมสูง ต้องการเรือด่วน".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = BatchCompressor.compress(raw, 0, raw.length);
+        assertRejected(Arrays.copyOf(compressed, compressed.length - 5));
+        byte[] flipped = compressed.clone();
+        flipped[flipped.length / 2] ^= 0x55;
+        assertRejected(flipped);
+
+        // zlib ที่บีบอัดด้วย dictionary อื่น (DICTID ไม่ตรง)
+        Deflater deflater = new Deflater();
+        deflater.setDictionary("another dictionary".getBytes(StandardCharsets.UTF_8));
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] chunk = new byte[256];
+        int n = deflater.deflate(chunk);
+        deflater.end();
+        assertRejected(Arrays.copyOf(chunk, n));
+
+        // ข้อมูลที่ขยายเกิน MAX_DECOMPRESSED
+        byte[] zeros = new byte[BatchCompressor.MAX_DECOMPRESSED + 1];
+        assertRejected(BatchCompressor.compress(zeros, 0, zeros.length));
+
+        // ใช้ coder ของ thread นี้ต่อได้หลังเจอข้อมูลเสีย
+        assertArrayEquals(raw, roundTrip(raw));
+        assertArrayEquals(
+                raw, BatchCompressor.decompress(compressed, 0, compressed.length).toByteArray());
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            BatchCompressor.decompress(data, 0, data.length);
+            fail("accepted " + data.length + " bytes");
+        } catch (IOException expected) {
+            assertEquals(IOException.class, expected.getClass());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BeaconPayloadTest {
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        BeaconPayload payload =
+                new BeaconPayload(
+                        0x7abcdef0,
+                        ReportCodec.toFixed(13.7563),
+                        ReportCodec.toFixed(-100.5018),
+                        MainActivity.Severity.HIGH);
+        byte[] encoded = payload.encode();
+        assertEquals(BeaconPayload.SIZE, encoded.length);
+
+        BeaconPayload decoded = BeaconPayload.decode(encoded);
+        assertEquals(payload.reportId, decoded.reportId);
+        assertEquals(payload.latFixed, decoded.latFixed);
+        assertEquals(payload.lngFixed, decoded.lngFixed);
+        assertEquals(MainActivity.Severity.HIGH, decoded.severity);
+        assertEquals(13.7563, decoded.getLocation().lat, 1e-6);
+        assertEquals(-100.5018, decoded.getLocation().lng, 1e-6);
+        assertArrayEquals(encoded, decoded.encode());
+    }
+
+    @Test
+    public void decodeRejectsInvalidData() {
+        byte[] encoded = new BeaconPayload(1, 0, 0, MainActivity.Severity.LOW).encode();
+        assertNull(BeaconPayload.decode(null));
+        assertNull(BeaconPayload.decode(new byte[BeaconPayload.SIZE - 1]));
+
+        byte[] wrongVersion = encoded.clone();
+        wrongVersion[0] = (byte) (BeaconPayload.VERSION + 1);
+        assertNull(BeaconPayload.decode(wrongVersion));
+
+        byte[] unknownSeverity = encoded.clone();
+        unknownSeverity[BeaconPayload.SIZE - 1] = 42;
+        assertNull(BeaconPayload.decode(unknownSeverity));
+    }
+}
@@ -0,0 +1,131 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class BeaconSchedulerTest {
+
+    private static final BeaconPayload PAYLOAD =
+            new BeaconPayload(
+                    42,
+                    ReportCodec.toFixed(13.75),
+                    ReportCodec.toFixed(100.5),
+                    MainActivity.Severity.CRITICAL);
+
+    private final SimulatedBeaconRadio.Air air = new SimulatedBeaconRadio.Air();
+    private final List<BeaconPayload> received = new ArrayList<>();
+
+    @Test
+    public void advertisesOnlyInsideWindow() {
+        SimulatedBeaconRadio radio = air.newRadio();
+        BeaconScheduler scheduler = new BeaconScheduler(radio, new Random(1));
+        scheduler.startAdvertising(PAYLOAD, new BeaconScheduler.DutyCycle(4000, 1000, 0), 0);
+
+        assertEquals(1000, scheduler.onTimer(0));
+        assertTrue(radio.isAdvertising());
+        assertEquals(500, scheduler.onTimer(500));
+        assertEquals(3000, scheduler.onTimer(1000));
+        assertFalse(radio.isAdvertising());
+        assertEquals(1000, scheduler.onTimer(4000));
+        assertTrue(radio.isAdvertising());
+        assertEquals(2, radio.getAdvertiseStarts());
+
+        scheduler.stop(4200);
+        assertFalse(radio.isAdvertising());
+        assertEquals(-1, scheduler.onTimer(5000));
+        assertEquals(1200, scheduler.getRadioOnMillis(5000));
+    }
+
+    @Test
+    public void radioOnTimeMatchesDutyCycleWithJitter() {
+        SimulatedBeaconRadio radio = air.newRadio();
+        BeaconScheduler scheduler = new BeaconScheduler(radio, new Random(7));
+        BeaconScheduler.DutyCycle cycle = BeaconScheduler.DEFAULT_SCAN;
+        scheduler.startScanning((payload, rssi) -> {}, cycle, 0);
+
+        long end = 6 * 60 * 60_000L;
+        long now = 0;
+        while (now < end) {
+            now += scheduler.onTimer(now);
+        }
+        double measured = (double) scheduler.getRadioOnMillis(now) / now;
+        // jitter เฉลี่ยครึ่งหนึ่งของ jitterMs ทำให้รอบยาวขึ้นเล็กน้อย
+        double expected =
+                (double) cycle.windowMs / (cycle.periodMs + cycle.jitterMs / 2.0);
+        assertEquals(expected, measured, 0.005);
+        assertTrue(measured <= cycle.ratio());
+    }
+
+    @Test
+    public void scannerHearsAdvertiserWhenWindowsOverlap() {
+        BeaconScheduler victim = new BeaconScheduler(air.newRadio(), new Random(3));
+        BeaconScheduler rescuer = new BeaconScheduler(air.newRadio(), new Random(4));
+        victim.startAdvertising(PAYLOAD, BeaconScheduler.DEFAULT_ADVERTISE, 0);
+        rescuer.startScanning(
+                (payload, rssi) -> received.add(payload), BeaconScheduler.DEFAULT_SCAN, 1500);
+
+        long heardAt = -1;
+        long victimNext = 0;
+        long rescuerNext = 1500;
+        for (long now = 0; now < 60_000 && heardAt < 0; now += 50) {
+            if (now >= victimNext) victimNext = now + victim.onTimer(now);
+            if (now >= rescuerNext) rescuerNext = now + rescuer.onTimer(now);
+            if (air.broadcast() > 0) heardAt = now;
+        }
+        assertTrue("beacon not heard within a minute", heardAt >= 0);
+        assertTrue(victim.isRadioOn() && rescuer.isRadioOn());
+        assertEquals(1, received.size());
+        assertEquals(PAYLOAD.reportId, received.get(0).reportId);
+        assertEquals(PAYLOAD.severity, received.get(0).severity);
+    }
+
+    @Test
+    public void repeatedBeaconIsReportedOnce() {
+        SimulatedBeaconRadio victimRadio = air.newRadio();
+        BeaconScheduler rescuer = new BeaconScheduler(air.newRadio(), new Random(5));
+        rescuer.startScanning(
+                (payload, rssi) -> received.add(payload), BeaconScheduler.DEFAULT_SCAN, 0);
+        rescuer.onTimer(0);
+
+        victimRadio.startAdvertising(PAYLOAD.encode());
+        air.broadcast();
+        air.broadcast();
+        assertEquals(1, received.size());
+
+        // ตำแหน่งหรือระดับเปลี่ยนต้องแจ้งอีกครั้ง
+        victimRadio.startAdvertising(
+                new BeaconPayload(
+                                PAYLOAD.reportId,
+                                PAYLOAD.latFixed + 10,
+                                PAYLOAD.lngFixed,
+                                PAYLOAD.severity)
+                        .encode());
+        air.broadcast();
+        assertEquals(2, received.size());
+
+        // ข้อมูลเสียไม่ถึง listener
+        victimRadio.startAdvertising(new byte[] {9, 9, 9});
+        air.broadcast();
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void setDutyCycleChangesWindowAndPeriod() {
+        SimulatedBeaconRadio radio = air.newRadio();
+        BeaconScheduler scheduler = new BeaconScheduler(radio, new Random(1));
+        scheduler.startAdvertising(PAYLOAD, new BeaconScheduler.DutyCycle(4000, 1000, 0), 0);
+        scheduler.onTimer(0);
+
+        scheduler.setDutyCycle(new BeaconScheduler.DutyCycle(8000, 500, 0));
+        assertEquals(7500, scheduler.onTimer(500));
+        assertFalse(radio.isAdvertising());
+        assertEquals(500, scheduler.onTimer(8000));
+        assertTrue(radio.isAdvertising());
+    }
+}
@@ -0,0 +1,303 @@
+package main.sos;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * สร้างไฟล์ขอบเขตของ ReverseGeocoder (assets/boundaries.mgeo) ตอนเตรียมข้อมูล ไม่อยู่ใน APK
+ *
+ * args: ไฟล์ขาเข้า ไฟล์ขาออก [ขนาด cell เป็นองศา] [dataVersion]
+ * ไฟล์ขาเข้า UTF-8 บรรทัดละตำบล คั่นด้วย tab: ตำบล อำเภอ จังหวัด ring
+ * ring เป็น "lat,lng lat,lng ..." หลาย ring คั่นด้วย ";" บรรทัดว่างหรือขึ้นต้นด้วย # ข้าม
+ */
+public class BoundaryFileWriter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BoundaryFileWriter input.tsv output.mgeo [cell] [version]");
+            System.exit(2);
+        }
+        double cellDegrees = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+        int dataVersion = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        List<Region> regions;
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+            regions = read(reader);
+        }
+        write(new File(args[1]), regions, cellDegrees, dataVersion);
+        System.out.println(regions.size() + " regions -> " + args[1]);
+    }
+
+    static List<Region> read(BufferedReader reader) throws IOException {
+        List<Region> regions = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.trim().isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            if (fields.length != 4) throw new IOException("Line " + number + ": expected 4 fields");
+            List<double[]> rings = new ArrayList<>();
+            for (String ring : fields[3].split(";")) rings.add(parseRing(ring.trim()));
+            regions.add(new Region(fields[0], fields[1], fields[2], rings));
+        }
+        return regions;
+    }
+
+    private static double[] parseRing(String ring) throws IOException {
+        String[] points = ring.split("\\s+");
+        double[] coordinates = new double[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            int comma = points[i].indexOf(',');
+            try {
+                coordinates[i * 2] = Double.parseDouble(points[i].substring(0, comma));
+                coordinates[i * 2 + 1] = Double.parseDouble(points[i].substring(comma + 1));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid point: " + points[i]);
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * ตำบลหนึ่ง ring ละ double[] {lat0, lng0, lat1, lng1, ...}
+     * หลาย ring ใช้ได้ทั้งรู (hole) และเกาะ (กฎ even-odd)
+     */
+    public static class Region {
+        public final String subdistrict;
+        public final String district;
+        public final String province;
+        public final List<double[]> rings;
+
+        public Region(String subdistrict, String district, String province, List<double[]> rings) {
+            this.subdistrict = subdistrict;
+            this.district = district;
+            this.province = province;
+            this.rings = rings;
+        }
+    }
+
+
+    /**
+     * เขียนไฟล์ขอบเขตจากข้อมูลที่เตรียมไว้
+     * cellDegrees: ขนาด cell ของ grid ยิ่งเล็ก cell ที่ตอบได้ทันทียิ่งมากแต่ไฟล์ใหญ่ขึ้น
+     */
+    public static void write(File path, List<Region> regions, double cellDegrees, int dataVersion)
+            throws IOException {
+        int cellSize = Math.max(1, (int) Math.round(cellDegrees * 1e7));
+        int minLat = Integer.MAX_VALUE;
+        int minLng = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE;
+        int maxLng = Integer.MIN_VALUE;
+        int[][] boxes = new int[regions.size()][];
+        for (int r = 0; r < regions.size(); r++) {
+            int[] box = {
+                Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE
+            };
+            for (double[] ring : regions.get(r).rings) {
+                if (ring.length < 6 || ring.length % 2 != 0) {
+                    throw new IllegalArgumentException(
+                            "Invalid ring in " + regions.get(r).subdistrict);
+                }
+                for (int i = 0; i < ring.length; i += 2) {
+                    int lat = ReportCodec.toFixed(ring[i]);
+                    int lng = ReportCodec.toFixed(ring[i + 1]);
+                    box[0] = Math.min(box[0], lat);
+                    box[1] = Math.min(box[1], lng);
+                    box[2] = Math.max(box[2], lat);
+                    box[3] = Math.max(box[3], lng);
+                }
+            }
+            boxes[r] = box;
+            minLat = Math.min(minLat, box[0]);
+            minLng = Math.min(minLng, box[1]);
+            maxLat = Math.max(maxLat, box[2]);
+            maxLng = Math.max(maxLng, box[3]);
+        }
+        if (regions.isEmpty()) {
+            minLat = minLng = 0;
+            maxLat = maxLng = 0;
+        }
+        int columns = (int) ((long) (maxLng - minLng) / cellSize + 1);
+        int rows = (int) ((long) (maxLat - minLat) / cellSize + 1);
+
+        // รายการต่อ cell: cell ที่มีขอบผ่าน (นับแบบเผื่อจากกรอบของขอบ) ต้องทดสอบ ที่เหลือในกรอบ
+        // ของตำบลทดสอบจุดกลาง cell ครั้งเดียว ถ้าอยู่ในก็เป็น ReverseGeocoder.FULL
+        List<List<Integer>> cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) cells.add(null);
+        Map<String, Integer> strings = new HashMap<>();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringOut = new DataOutputStream(stringBytes);
+        int[][] names = new int[regions.size()][3];
+        List<int[]> ringTable = new ArrayList<>();
+        ByteArrayOutputStream vertexBytes = new ByteArrayOutputStream();
+        DataOutputStream vertexOut = new DataOutputStream(vertexBytes);
+        int vertexCount = 0;
+        int[] firstRings = new int[regions.size()];
+        boolean[] crossed = new boolean[columns * rows];
+        for (int r = 0; r < regions.size(); r++) {
+            Region region = regions.get(r);
+            int[] box = boxes[r];
+            names[r][0] = intern(region.subdistrict, strings, stringOut);
+            names[r][1] = intern(region.district, strings, stringOut);
+            names[r][2] = intern(region.province, strings, stringOut);
+            firstRings[r] = ringTable.size();
+            int spanLat = Math.max(1, box[2] - box[0]);
+            int spanLng = Math.max(1, box[3] - box[1]);
+            int c0 = (box[1] - minLng) / cellSize;
+            int c1 = (box[3] - minLng) / cellSize;
+            int r0 = (box[0] - minLat) / cellSize;
+            int r1 = (box[2] - minLat) / cellSize;
+            List<Integer> touched = new ArrayList<>();
+            for (double[] ring : region.rings) {
+                int points = ring.length / 2;
+                ringTable.add(new int[] {vertexCount, points});
+                int prevY = 0;
+                int prevX = 0;
+                for (int i = 0; i < ring.length; i += 2) {
+                    long lat = ReportCodec.toFixed(ring[i]) - box[0];
+                    long lng = ReportCodec.toFixed(ring[i + 1]) - box[1];
+                    int y = (int) Math.round(lat * (double) ReverseGeocoder.QUANT / spanLat);
+                    int x = (int) Math.round(lng * (double) ReverseGeocoder.QUANT / spanLng);
+                    vertexOut.writeShort(y - prevY);
+                    vertexOut.writeShort(x - prevX);
+                    prevY = y;
+                    prevX = x;
+                }
+                vertexCount += points;
+                for (int i = 0; i < points; i++) {
+                    int j = (i + 1) % points;
+                    int la = ReportCodec.toFixed(ring[i * 2]) - minLat;
+                    int lb = ReportCodec.toFixed(ring[j * 2]) - minLat;
+                    int ga = ReportCodec.toFixed(ring[i * 2 + 1]) - minLng;
+                    int gb = ReportCodec.toFixed(ring[j * 2 + 1]) - minLng;
+                    for (int row = Math.min(la, lb) / cellSize;
+                            row <= Math.max(la, lb) / cellSize;
+                            row++) {
+                        for (int column = Math.min(ga, gb) / cellSize;
+                                column <= Math.max(ga, gb) / cellSize;
+                                column++) {
+                            int cell = row * columns + column;
+                            if (!crossed[cell]) {
+                                crossed[cell] = true;
+                                touched.add(cell);
+                            }
+                        }
+                    }
+                }
+            }
+            for (int row = r0; row <= r1; row++) {
+                for (int column = c0; column <= c1; column++) {
+                    int cell = row * columns + column;
+                    int entry;
+                    if (crossed[cell]) {
+                        entry = r << 1;
+                    } else {
+                        double lat = (minLat + (row + 0.5) * (double) cellSize) / 1e7;
+                        double lng = (minLng + (column + 0.5) * (double) cellSize) / 1e7;
+                        if (!containsExact(region, lat, lng)) continue;
+                        entry = r << 1 | ReverseGeocoder.FULL;
+                    }
+                    if (cells.get(cell) == null) cells.set(cell, new ArrayList<Integer>(2));
+                    List<Integer> list = cells.get(cell);
+                    // ReverseGeocoder.FULL ก่อน ตอบได้โดยไม่ต้องทดสอบตำบลอื่น
+                    if ((entry & ReverseGeocoder.FULL) != 0) {
+                        list.add(0, entry);
+                    } else {
+                        list.add(entry);
+                    }
+                }
+            }
+            for (int cell : touched) crossed[cell] = false;
+        }
+
+        int entryCount = 0;
+        for (List<Integer> list : cells) {
+            if (list != null) entryCount += list.size();
+        }
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(ReverseGeocoder.MAGIC);
+            out.writeInt(ReverseGeocoder.VERSION);
+            out.writeInt(dataVersion);
+            out.writeInt(minLat);
+            out.writeInt(minLng);
+            out.writeInt(cellSize);
+            out.writeInt(columns);
+            out.writeInt(rows);
+            out.writeInt(regions.size());
+            out.writeInt(ringTable.size());
+            out.writeInt(entryCount);
+            out.writeInt(vertexCount);
+            out.writeInt(stringBytes.size());
+            for (int r = 0; r < regions.size(); r++) {
+                out.writeInt(names[r][0]);
+                out.writeInt(names[r][1]);
+                out.writeInt(names[r][2]);
+                for (int value : boxes[r]) out.writeInt(value);
+                out.writeInt(firstRings[r]);
+                out.writeInt(regions.get(r).rings.size());
+            }
+            for (int[] ring : ringTable) {
+                out.writeInt(ring[0]);
+                out.writeInt(ring[1]);
+            }
+            int position = 0;
+            for (List<Integer> list : cells) {
+                out.writeInt(position);
+                if (list != null) position += list.size();
+            }
+            out.writeInt(position);
+            for (List<Integer> list : cells) {
+                if (list == null) continue;
+                for (int entry : list) out.writeInt(entry);
+            }
+            vertexBytes.writeTo(out);
+            stringBytes.writeTo(out);
+        }
+    }
+
+    private static int intern(String name, Map<String, Integer> strings, DataOutputStream out)
+            throws IOException {
+        Integer offset = strings.get(name);
+        if (offset != null) return offset;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) throw new IOException("Name too long: " + name);
+        offset = out.size();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        strings.put(name, offset);
+        return offset;
+    }
+
+    static boolean containsExact(Region region, double lat, double lng) {
+        boolean inside = false;
+        for (double[] ring : region.rings) {
+            int points = ring.length / 2;
+            for (int i = 0, j = points - 1; i < points; j = i++) {
+                double yi = ring[i * 2];
+                double xi = ring[i * 2 + 1];
+                double yj = ring[j * 2];
+                double xj = ring[j * 2 + 1];
+                if ((yi > lat) != (yj > lat) && lng < (xj - xi) * (lat - yi) / (yj - yi) + xi) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,138 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class BoundedReportStoreTest {
+
+    private static final double LAT = 13.75;
+    private static final double LNG = 100.50;
+    private static final double KM = 1 / 111.195;
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR = 60 * 60_000L;
+
+    private int nextPinned = 1000;
+
+    private static MainActivity.Report report(
+            int id, MainActivity.Severity level, MainActivity.ReportStatus status, double northKm) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        report.level = level;
+        report.status = status;
+        report.location = new MainActivity.Location(LAT + northKm * KM, LNG);
+        return report;
+    }
+
+    private static BoundedReportStore store(int maxReports) {
+        return new BoundedReportStore(
+                new BoundedReportStore.Config(maxReports, Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * ใส่รายงานวิกฤติที่ยังรอ (pin ไว้) ทีละฉบับ แต่ละครั้งบังคับให้ทิ้งหนึ่งฉบับจากที่ทิ้งได้
+     */
+    private List<Integer> evictAll(BoundedReportStore store, int rounds) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            MainActivity.Report pinned =
+                    report(
+                            ++nextPinned,
+                            MainActivity.Severity.CRITICAL,
+                            MainActivity.ReportStatus.WAITING,
+                            0);
+            for (MainActivity.Report evicted : store.put(pinned, NOW)) order.add(evicted.id);
+        }
+        return order;
+    }
+
+    @Test
+    public void evictsResolvedThenSeverityThenAgeThenDistanceRing() {
+        BoundedReportStore store = store(9);
+        store.setOrigin(LAT, LNG);
+        store.setOwnReport(9);
+        MainActivity.Severity low = MainActivity.Severity.LOW;
+        MainActivity.Severity medium = MainActivity.Severity.MEDIUM;
+        MainActivity.Severity high = MainActivity.Severity.HIGH;
+        MainActivity.ReportStatus waiting = MainActivity.ReportStatus.WAITING;
+        // ใส่สลับลำดับกับที่คาดว่าจะถูกทิ้ง
+        store.put(report(7, high, waiting, 0), NOW - 3 * HOUR);
+        store.put(report(6, medium, waiting, 1), NOW);
+        store.put(report(5, medium, MainActivity.ReportStatus.ACKNOWLEDGED, 7), NOW);
+        store.put(report(4, medium, waiting, 12), NOW);
+        store.put(report(3, medium, waiting, 0), NOW - 2 * HOUR);
+        store.put(report(2, low, waiting, 0), NOW);
+        store.put(report(1, high, MainActivity.ReportStatus.RESCUED, 0), NOW);
+        // pin: วิกฤติที่ยังไม่แก้ไข และรายงานของเครื่องนี้ (แม้ระดับต่ำ)
+        store.put(report(8, MainActivity.Severity.CRITICAL, waiting, 30), NOW - 5 * HOUR);
+        store.put(report(9, low, MainActivity.ReportStatus.CANCELLED, 30), NOW - 5 * HOUR);
+        assertEquals(9, store.size());
+
+        // 1 แก้ไขแล้ว, 2 ระดับต่ำ, 3 ปานกลางที่เก่าสุด, 4-6 ปานกลางชั่วโมงเดียวกัน ไกลก่อน, 7
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), evictAll(store, 7));
+        // เหลือแต่ที่ pin ไว้ ยอมเกินเพดานแทนการทิ้ง
+        assertEquals(Collections.<Integer>emptyList(), evictAll(store, 3));
+        assertEquals(12, store.size());
+    }
+
+    @Test
+    public void statusChangeUnpinsAndRequeues() {
+        BoundedReportStore store = store(2);
+        MainActivity.Report critical =
+                report(1, MainActivity.Severity.CRITICAL, MainActivity.ReportStatus.WAITING, 0);
+        MainActivity.Report low =
+                report(2, MainActivity.Severity.LOW, MainActivity.ReportStatus.WAITING, 0);
+        store.put(critical, NOW);
+        store.put(low, NOW);
+        critical.status = MainActivity.ReportStatus.RESCUED;
+        store.update(critical);
+        assertEquals(Collections.singletonList(1), evictAll(store, 1));
+        assertEquals(Collections.singletonList(2), evictAll(store, 1));
+    }
+
+    /**
+     * สองรายงานระดับและชั่วโมงเดียวกัน 9 กม. เหนือและใต้จุดเริ่ม (วงเดียวกัน ทิ้งตัวที่ใส่ก่อน)
+     * แล้วย้ายหน่วยกู้ภัยขึ้นเหนือ northKm กม. คืนรายงานที่ถูกทิ้งก่อน
+     */
+    private int firstEvictedAfterMove(double northKm) {
+        BoundedReportStore store = store(2);
+        store.setOrigin(LAT, LNG);
+        MainActivity.Severity medium = MainActivity.Severity.MEDIUM;
+        store.put(report(1, medium, MainActivity.ReportStatus.WAITING, 9), NOW);
+        store.put(report(2, medium, MainActivity.ReportStatus.WAITING, -9), NOW);
+        store.setOrigin(LAT + northKm * KM, LNG);
+        return evictAll(store, 1).get(0);
+    }
+
+    @Test
+    public void reranksWhenRescuerMovesMoreThanHalfARing() {
+        assertEquals(1, firstEvictedAfterMove(0));
+        // ขยับไม่ถึงครึ่งวง (2.5 กม.) ไม่จัดลำดับใหม่ แม้วงจริงของทั้งสองต่างกันแล้ว
+        assertEquals(1, firstEvictedAfterMove(2));
+        // เกินครึ่งวง: เหนือ 6 กม. (วง 1) ใต้ 12 กม. (วง 2) ทางใต้ไกลกว่าจึงถูกทิ้งก่อน
+        assertEquals(2, firstEvictedAfterMove(3));
+    }
+
+    @Test
+    public void keepsWithinMemoryBudget() {
+        BoundedReportStore store =
+                new BoundedReportStore(
+                        new BoundedReportStore.Config(100, 4000, Long.MAX_VALUE));
+        List<Integer> evicted = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            MainActivity.Report report =
+                    report(id, MainActivity.Severity.LOW, MainActivity.ReportStatus.WAITING, 0);
+            for (MainActivity.Report dropped : store.put(report, NOW + id * HOUR)) {
+                evicted.add(dropped.id);
+            }
+            assertTrue(store.getMemoryBytes() <= 4000);
+        }
+        // ระดับเดียวกัน เก่าก่อน
+        for (int i = 0; i < evicted.size(); i++) assertEquals(i + 1, (int) evicted.get(i));
+        assertEquals(100, evicted.size() + store.size());
+    }
+}
@@ -0,0 +1,93 @@
+package main.sos;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * วัดเวลา restore ของ SessionCheckpoint แยกตาม thread แบบเดียวกับ MainActivity.loadStoredReports
+ * disk = อ่านไฟล์, main = index ที่รายการต้องใช้ (cluster, distance, time, assignment, heatmap),
+ * cpu = ใส่คำที่ตัดไว้แล้วลง ReportSearchIndex (ทำหลังรายการขึ้นแล้ว)
+ * รอบแรกคือแอปที่เพิ่งเปิด (JIT ยังไม่ทำงาน) ที่เหลือรายงานค่ากลาง
+ *
+ * args: [จำนวนรายงาน คั่นด้วย ,]
+ */
+public class CheckpointBenchmark {
+
+    private static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? parseInts(args[0]) : new int[] {10_000, 50_000};
+        System.out.println(" size  run      disk(ms)  main(ms)  list(ms)  cpu(ms)");
+        for (int size : sizes) run(size);
+    }
+
+    private static void run(int size) throws Exception {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        List<MainActivity.Report> reports = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) reports.add(MemoryReportStore.report(id));
+        new SessionCheckpoint(file).write(reports, new int[0], 0, true);
+
+        long[][] nanos = new long[3][RUNS];
+        for (int run = 0; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            SessionCheckpoint.Restored restored = new SessionCheckpoint(file).read();
+            long read = System.nanoTime();
+
+            ReportClusterIndex clusters = new ReportClusterIndex();
+            DistanceIndex distances = new DistanceIndex();
+            distances.setOrigin(13.75, 100.5);
+            TimeWindowIndex times = new TimeWindowIndex();
+            AssignmentSolver solver = new AssignmentSolver();
+            long now = System.currentTimeMillis();
+            SeverityHeatmap heatmap = new SeverityHeatmap(13.75, 100.5, 0.002, 512, now);
+            for (MainActivity.Report report : restored.reports) {
+                clusters.put(report);
+                distances.put(report);
+                times.put(report);
+                solver.putReport(report);
+                heatmap.put(report, now);
+            }
+            long indexed = System.nanoTime();
+
+            new ReportSearchIndex().putAll(restored.reports, restored.tokens);
+            long searchable = System.nanoTime();
+            if (restored.reports.size() != size) {
+                throw new IllegalStateException("checkpoint lost reports");
+            }
+
+            if (run == 0) {
+                print(size, "first", read - start, indexed - read, searchable - indexed);
+            } else {
+                nanos[0][run - 1] = read - start;
+                nanos[1][run - 1] = indexed - read;
+                nanos[2][run - 1] = searchable - indexed;
+            }
+        }
+        for (long[] phase : nanos) Arrays.sort(phase);
+        print(size, "p50", nanos[0][RUNS / 2], nanos[1][RUNS / 2], nanos[2][RUNS / 2]);
+    }
+
+    private static void print(int size, String run, long disk, long main, long cpu) {
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%5d  %-6s  %8.1f  %8.1f  %8.1f  %7.1f",
+                        size,
+                        run,
+                        disk / 1e6,
+                        main / 1e6,
+                        (disk + main) / 1e6,
+                        cpu / 1e6));
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
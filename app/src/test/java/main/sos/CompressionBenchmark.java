@@ -0,0 +1,235 @@
+package main.sos;
+
+import java.io.DataOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * วัดอัตราการบีบอัดและ MB/s ของ BatchCompressor เทียบกับ DEFLATE ระดับเดียวกันที่ไม่มี dictionary
+ * บน batch แบบที่ ReportSync ส่งจริง (ReportSync.writeBatch) ขนาด MAX_BATCH และ batch เล็ก
+ *
+ * corpus: plain = รายงานไม่มีซอง (เช่นจากเซิร์ฟเวอร์), signed = ซองที่เซ็นแต่ไม่เข้ารหัส,
+ * encrypted = ซองที่เข้ารหัสชื่อ/ติดต่อ/รายละเอียดให้หน่วยกู้ภัย (ส่วนนั้นบีบอัดไม่ได้)
+ * MB/s นับจากขนาดก่อนบีบอัด
+ *
+ * args: [จำนวนรายงานต่อ corpus]
+ */
+public class CompressionBenchmark {
+
+    private static final int RUNS = 9;
+
+    private static final String[] TITLES = {"นาย", "นาง", "นางสาว", "ด.ช.", "ด.ญ.", ""};
+    private static final String[] GIVEN = {
+        "สมชาย", "สมหญิง", "วิชัย", "มาลี", "ประเสริฐ", "สุดา", "อนุชา", "กัญญา", "บุญมี", "ทองใบ",
+        "ณัฐพล", "พรทิพย์", "สมศักดิ์", "จันทร์เพ็ญ", "ธนากร", "ศิริพร"
+    };
+    private static final String[] FAMILY = {
+        "ใจดี", "ศรีสุข", "แก้วมณี", "บุญมา", "สุขสวัสดิ์", "ทองดี", "พึ่งบุญ", "มั่นคง", "รักไทย",
+        "วงศ์ใหญ่"
+    };
+    private static final String[] CLAUSES = {
+        "น้ำท่วมถึงชั้น 2 แล้ว", "ติดอยู่บนหลังคาบ้าน", "มีผู้สูงอายุ", "มีเด็กเล็ก",
+        "ผู้ป่วยติดเตียงเคลื่อนย้ายเองไม่ได้", "ต้องการเรือด่วน", "ต้องการอาหารและน้ำดื่ม",
+        "ยาประจำตัวหมด", "แบตโทรศัพท์ใกล้หมด", "ไฟฟ้าดับทั้งหมู่บ้าน", "น้ำขึ้นสูงเรื่อยๆ",
+        "มีคนบาดเจ็บ เลือดออกมาก", "หายใจลำบาก", "บ้านพังบางส่วน", "ต้องการรถพยาบาล",
+        "ออกจากบ้านไม่ได้", "หญิงตั้งครรภ์ใกล้คลอด", "มีสัตว์เลี้ยงด้วย",
+        "ได้ยินเสียงคนเรียกในซากอาคาร", "ถนนเข้าหมู่บ้านถูกตัดขาด", "รอความช่วยเหลืออยู่"
+    };
+    private static final String[] PLACES = {
+        "ซอยวัดใหม่", "ถนนมิตรภาพ", "ใกล้โรงเรียนบ้านหนองบัว", "ตรงข้ามเซเว่น", "หลังวัด",
+        "ใกล้สะพานข้ามคลอง", "หมู่บ้านสุขใจ"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        Random random = new Random(35);
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair rescuer = generator.generateKeyPair();
+
+        List<MainActivity.Report> plain = corpus(random, size);
+        List<MainActivity.Report> signed = corpus(random, size);
+        List<MainActivity.Report> encrypted = corpus(random, size);
+        for (MainActivity.Report report : signed) {
+            report.envelope = ReportEnvelope.seal(report, reporter, null, 1);
+        }
+        for (MainActivity.Report report : encrypted) {
+            report.envelope = ReportEnvelope.seal(report, reporter, rescuer.getPublic(), 1);
+        }
+
+        System.out.println(
+                "corpus     batch   raw(KB)  dict  none   dict MB/s in/out   none MB/s in/out");
+        for (int batch : new int[] {ReportSync.MAX_BATCH, 8}) {
+            run("plain", plain, batch);
+            run("signed", signed, batch);
+            run("encrypted", encrypted, batch);
+        }
+    }
+
+    /**
+     * รายงานภาษาไทยแบบที่ผู้ใช้พิมพ์: ชื่อ เบอร์โทรหลายรูปแบบ รายละเอียด 1-3 ประโยค
+     * บางฉบับเป็น SOS ด่วนที่ใช้ข้อความตั้งต้นของแอป
+     */
+    static List<MainActivity.Report> corpus(Random random, int size) {
+        List<MainActivity.Report> reports = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) reports.add(report(random));
+        return reports;
+    }
+
+    static MainActivity.Report report(Random random) {
+        MainActivity.Report report = MemoryReportStore.report(random.nextInt(1 << 30));
+        report.name =
+                (TITLES[random.nextInt(TITLES.length)]
+                                + GIVEN[random.nextInt(GIVEN.length)]
+                                + " "
+                                + FAMILY[random.nextInt(FAMILY.length)])
+                        .trim();
+        report.contact = phone(random);
+        report.details = details(random);
+        report.location =
+                new MainActivity.Location(
+                        13.5 + random.nextDouble() * 2, 99.8 + random.nextDouble() * 1.5);
+        report.timestamp = 1_760_000_000_000L + random.nextInt(3 * 86_400_000);
+        report.level = MainActivity.Severity.fromCode(random.nextInt(4));
+        return report;
+    }
+
+    private static String phone(Random random) {
+        String prefix = new String[] {"08", "09", "06"}[random.nextInt(3)] + random.nextInt(10);
+        String rest = String.format(Locale.US, "%07d", random.nextInt(10_000_000));
+        switch (random.nextInt(4)) {
+            case 0:
+                return prefix + "-" + rest.substring(0, 3) + "-" + rest.substring(3);
+            case 1:
+                return "โทร " + prefix + rest;
+            case 2:
+                return prefix + rest + " LINE: id" + random.nextInt(100_000);
+            default:
+                return prefix + rest;
+        }
+    }
+
+    private static String details(Random random) {
+        if (random.nextInt(8) == 0) return "ส่งด่วนด้วยการกดค้าง ยังไม่มีรายละเอียด";
+        StringBuilder details = new StringBuilder();
+        int clauses = 1 + random.nextInt(3);
+        for (int c = 0; c < clauses; c++) {
+            if (c > 0) details.append(' ');
+            details.append(CLAUSES[random.nextInt(CLAUSES.length)]);
+        }
+        if (random.nextBoolean()) {
+            details.append(" จำนวน ").append(1 + random.nextInt(8)).append(" คน");
+        }
+        if (random.nextInt(3) == 0) {
+            details.append(" หมู่ ")
+                    .append(1 + random.nextInt(12))
+                    .append(' ')
+                    .append(PLACES[random.nextInt(PLACES.length)]);
+        }
+        return details.toString();
+    }
+
+    private static void run(String name, List<MainActivity.Report> reports, int batchSize)
+            throws Exception {
+        List<byte[]> raw = new ArrayList<>();
+        long rawBytes = 0;
+        for (int start = 0; start < reports.size(); start += batchSize) {
+            BatchCompressor.Buffer buffer = new BatchCompressor.Buffer();
+            ReportSync.writeBatch(
+                    new DataOutputStream(buffer),
+                    reports.subList(start, Math.min(reports.size(), start + batchSize)));
+            raw.add(buffer.toByteArray());
+            rawBytes += buffer.size();
+        }
+
+        long dictBytes = 0;
+        long noneBytes = 0;
+        List<byte[]> dict = new ArrayList<>();
+        List<byte[]> none = new ArrayList<>();
+        for (byte[] batch : raw) {
+            byte[] compressed = BatchCompressor.compress(batch, 0, batch.length);
+            dict.add(compressed);
+            dictBytes += compressed.length;
+            byte[] plain = deflate(batch);
+            none.add(plain);
+            noneBytes += plain.length;
+            BatchCompressor.Buffer back =
+                    BatchCompressor.decompress(compressed, 0, compressed.length);
+            if (!Arrays.equals(batch, back.toByteArray())) {
+                throw new IllegalStateException("round trip failed");
+            }
+        }
+
+        long[][] nanos = new long[4][RUNS];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        Inflater inflater = new Inflater();
+        byte[] chunk = new byte[16 * 1024];
+        // รอบแรกเป็น warm-up ของ JIT
+        for (int run = -1; run < RUNS; run++) {
+            long t0 = System.nanoTime();
+            for (byte[] batch : raw) BatchCompressor.compress(batch, 0, batch.length);
+            long t1 = System.nanoTime();
+            for (byte[] batch : dict) BatchCompressor.decompress(batch, 0, batch.length);
+            long t2 = System.nanoTime();
+            for (byte[] batch : raw) {
+                deflater.reset();
+                deflater.setInput(batch);
+                deflater.finish();
+                while (!deflater.finished()) deflater.deflate(chunk);
+            }
+            long t3 = System.nanoTime();
+            for (byte[] batch : none) {
+                inflater.reset();
+                inflater.setInput(batch);
+                while (!inflater.finished()) inflater.inflate(chunk);
+            }
+            long t4 = System.nanoTime();
+            if (run < 0) continue;
+            nanos[0][run] = t1 - t0;
+            nanos[1][run] = t2 - t1;
+            nanos[2][run] = t3 - t2;
+            nanos[3][run] = t4 - t3;
+        }
+        deflater.end();
+        inflater.end();
+        for (long[] phase : nanos) Arrays.sort(phase);
+
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%-9s  %5d  %8.1f  %4.2f  %4.2f   %6.1f / %6.1f    %6.1f / %6.1f",
+                        name,
+                        batchSize,
+                        rawBytes / 1024.0,
+                        (double) dictBytes / rawBytes,
+                        (double) noneBytes / rawBytes,
+                        mbPerSecond(rawBytes, nanos[0][RUNS / 2]),
+                        mbPerSecond(rawBytes, nanos[1][RUNS / 2]),
+                        mbPerSecond(rawBytes, nanos[2][RUNS / 2]),
+                        mbPerSecond(rawBytes, nanos[3][RUNS / 2])));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+        BatchCompressor.Buffer out = new BatchCompressor.Buffer();
+        byte[] chunk = new byte[16 * 1024];
+        while (!deflater.finished()) out.write(chunk, 0, deflater.deflate(chunk));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return bytes / 1e6 / (nanos / 1e9);
+    }
+}
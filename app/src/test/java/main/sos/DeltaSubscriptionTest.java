@@ -0,0 +1,282 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class DeltaSubscriptionTest {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    /**
+     * นับทุกอย่างที่ listener ได้รับ (เรียกจาก thread ของ subscription)
+     */
+    private static class Recorder implements DeltaSubscription.Listener {
+        final Map<Integer, Integer> reports = new HashMap<>();
+        final Map<Integer, Integer> statuses = new HashMap<>();
+        final List<Long> snapshots = new ArrayList<>();
+        int connects;
+
+        @Override
+        public synchronized void onReports(List<MainActivity.Report> received) {
+            for (MainActivity.Report report : received) count(reports, report.id);
+        }
+
+        @Override
+        public synchronized void onStatus(List<StatusEvent> events) {
+            for (StatusEvent event : events) count(statuses, event.reportId);
+        }
+
+        @Override
+        public synchronized void onSnapshot(long sequence) {
+            snapshots.add(sequence);
+        }
+
+        @Override
+        public synchronized void onConnectionChanged(boolean connected) {
+            if (connected) connects++;
+        }
+
+        synchronized int connects() {
+            return connects;
+        }
+
+        synchronized int reportCount() {
+            return reports.size();
+        }
+
+        private static void count(Map<Integer, Integer> counts, int id) {
+            Integer previous = counts.get(id);
+            counts.put(id, previous == null ? 1 : previous + 1);
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void await(String what, Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitCaughtUp(DeltaSubscription subscription, LocalDeltaServer server)
+            throws InterruptedException {
+        await(
+                "sequence " + server.getSequence(),
+                () -> subscription.getLastSequence() == server.getSequence());
+    }
+
+    @Test
+    public void resumeDeliversEveryEventExactlyOnce() throws Exception {
+        DeviceIdentity rescuer = DeviceIdentity.generate();
+        IngressGuard guard = new IngressGuard(IngressGuard.SERVER_CONFIG);
+        Recorder recorder = new Recorder();
+        try (LocalDeltaServer server = new LocalDeltaServer(10_000, 20)) {
+            DeltaSubscription subscription =
+                    new DeltaSubscription(
+                            server.getUrl(),
+                            new ReportEnvelope.Verifier(rescuer.getParams(), null),
+                            guard,
+                            recorder);
+            subscription.start(0);
+            await("first connection", () -> recorder.connects() == 1);
+            awaitCaughtUp(subscription, server);
+
+            int id = 0;
+            for (int round = 0; round < 4; round++) {
+                // ส่งระหว่างต่ออยู่ ตัดกลางคัน แล้วส่งเพิ่มระหว่างที่ยังไม่ได้ต่อใหม่
+                for (int i = 0; i < 150; i++) {
+                    server.publish(MemoryReportStore.report(++id));
+                    if (id % 25 == 0) {
+                        server.publishStatus(
+                                new StatusEvent(id, 1, MainActivity.ReportStatus.ACKNOWLEDGED, 0)
+                                        .signedBy(rescuer));
+                    }
+                    if (i == 100) server.dropConnections();
+                }
+                awaitCaughtUp(subscription, server);
+            }
+            subscription.stop();
+
+            assertEquals(server.getSequence(), subscription.getLastSequence());
+            assertTrue(subscription.getReconnects() >= 4);
+            assertEquals(subscription.getReconnects(), server.getResumes());
+            synchronized (recorder) {
+                // snapshot เดียวคือครั้งแรก (เริ่มจาก 0) ทุกการต่อใหม่ได้เฉพาะส่วนที่ขาด
+                assertEquals(Collections.singletonList(0L), recorder.snapshots);
+                assertEquals(1, server.getSnapshots());
+                assertEquals(id, recorder.reports.size());
+                assertEquals(id / 25, recorder.statuses.size());
+                for (int count : recorder.reports.values()) assertEquals(1, count);
+                for (int count : recorder.statuses.values()) assertEquals(1, count);
+            }
+            // ไม่มีรายงานซ้ำที่ seen filter ต้องกรองทิ้ง
+            assertEquals(0, guard.getCount(IngressGuard.Verdict.DUPLICATE));
+        }
+    }
+
+    @Test
+    public void fallsBackToSnapshotWhenHistoryIsGone() throws Exception {
+        IngressGuard guard = new IngressGuard(IngressGuard.SERVER_CONFIG);
+        Recorder recorder = new Recorder();
+        try (LocalDeltaServer server = new LocalDeltaServer(20, 20)) {
+            for (int id = 1; id <= 10; id++) server.publish(MemoryReportStore.report(id));
+            DeltaSubscription subscription =
+                    new DeltaSubscription(server.getUrl(), null, guard, recorder);
+            subscription.start(0);
+            awaitCaughtUp(subscription, server);
+            subscription.stop();
+            long seen = subscription.getLastSequence();
+
+            // ระหว่างปิดแอป delta เกิน retention: ต่อจากเลขเดิมไม่ได้
+            for (int id = 11; id <= 60; id++) server.publish(MemoryReportStore.report(id));
+            DeltaSubscription reopened =
+                    new DeltaSubscription(server.getUrl(), null, guard, recorder);
+            reopened.start(seen);
+            awaitCaughtUp(reopened, server);
+            reopened.stop();
+
+            // เซิร์ฟเวอร์เริ่มใหม่ เลขที่ขอมากกว่าที่มี
+            DeltaSubscription restarted =
+                    new DeltaSubscription(server.getUrl(), null, guard, recorder);
+            restarted.start(server.getSequence() + 1000);
+            awaitCaughtUp(restarted, server);
+            restarted.stop();
+
+            assertEquals(3, server.getSnapshots());
+            assertEquals(0, server.getResumes());
+            synchronized (recorder) {
+                assertEquals(Arrays.asList(10L, 60L, 60L), recorder.snapshots);
+                assertEquals(60, recorder.reports.size());
+                // ส่วนที่เห็นแล้วใน snapshot ถูก seen filter กรอง listener ได้รายงานละครั้ง
+                for (int count : recorder.reports.values()) assertEquals(1, count);
+            }
+        }
+    }
+
+    @Test
+    public void dropsOversizedEventsWithoutBufferingThem() throws Exception {
+        Recorder recorder = new Recorder();
+        AtomicLong written = new AtomicLong();
+        String valid =
+                DeltaSubscription.encodeReports(
+                        Collections.singletonList(MemoryReportStore.report(9)));
+        try (ServerSocket server = new ServerSocket(0, 4, InetAddress.getLoopbackAddress())) {
+            Thread serverThread =
+                    new Thread(
+                            () -> {
+                                try {
+                                    // บรรทัดยาวเกิน, data หลายบรรทัดรวมกันเกิน, event ปกติ
+                                    serve(server.accept(), 0, written);
+                                    serve(server.accept(), 1, written);
+                                    serve(server.accept(), 2, written, valid);
+                                } catch (IOException ignored) {
+                                    // ปิด server
+                                }
+                            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            DeltaSubscription subscription =
+                    new DeltaSubscription(
+                            new URL("http://127.0.0.1:" + server.getLocalPort() + "/deltas"),
+                            null,
+                            new IngressGuard(IngressGuard.SERVER_CONFIG),
+                            recorder);
+            subscription.start(0);
+            await("valid event", () -> recorder.reportCount() == 1);
+            subscription.stop();
+
+            assertEquals(1, subscription.getLastSequence());
+            assertEquals(2, subscription.getReconnects());
+            // client ตัดการเชื่อมต่อเองก่อนเซิร์ฟเวอร์ส่งครบ ไม่อ่านทั้งก้อนเข้าหน่วยความจำ
+            assertTrue(written.get() < 8L * DeltaSubscription.MAX_EVENT_DATA);
+            synchronized (recorder) {
+                assertEquals(3, recorder.connects);
+                assertEquals(Collections.singletonMap(9, 1), recorder.reports);
+            }
+        }
+    }
+
+    private static void serve(Socket socket, int mode, AtomicLong written, String... events)
+            throws IOException {
+        try (Socket client = socket) {
+            // อ่าน request header ทิ้ง
+            byte[] request = new byte[4096];
+            client.getInputStream().read(request);
+            OutputStream out = client.getOutputStream();
+            out.write(
+                    ("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n"
+                                    + "Connection: close\r\n\r\nretry: 20\n\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+            if (mode == 2) {
+                out.write(
+                        ("event: reports\nid: 1\ndata: " + events[0] + "\n\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                // ค้างไว้จน client ปิด
+                client.getInputStream().read(request);
+                return;
+            }
+            out.write("event: reports\ndata: ".getBytes(StandardCharsets.US_ASCII));
+            byte[] chunk = new byte[64 * 1024];
+            Arrays.fill(chunk, (byte) 'A');
+            if (mode == 1) chunk[chunk.length - 1] = '\n';
+            byte[] prefix = "data: ".getBytes(StandardCharsets.US_ASCII);
+            try {
+                // ส่งได้ถึง 8 เท่าของเพดานถ้า client ไม่ตัด
+                while (written.get() < 8L * DeltaSubscription.MAX_EVENT_DATA) {
+                    out.write(chunk);
+                    written.addAndGet(chunk.length);
+                    if (mode == 1) out.write(prefix);
+                }
+                out.flush();
+            } catch (IOException expected) {
+                // client ตัดการเชื่อมต่อ
+            }
+        }
+    }
+
+    @Test
+    public void base64MatchesJdkCodec() throws IOException {
+        Random random = new Random(49);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Base64Codec.encode(data);
+            assertEquals(Base64.getEncoder().encodeToString(data), encoded);
+            assertArrayEquals(data, Base64Codec.decode(encoded));
+        }
+        for (String invalid : new String[] {"QUJD\n", "QUJ", "QU=D", "Q===", "QUJD====", "QU J"}) {
+            try {
+                Base64Codec.decode(invalid);
+                fail("accepted " + invalid);
+            } catch (IOException expected) {
+                // ข้อมูลไม่ถูกต้อง
+            }
+        }
+    }
+}
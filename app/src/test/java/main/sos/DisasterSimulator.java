@@ -0,0 +1,523 @@
+package main.sos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * จำลองเหตุภัยพิบัติแบบ discrete-event บนพื้นที่สังเคราะห์ deterministic (seed เดียวกันได้ผลเดิม)
+ *
+ * แต่ละเครื่องใช้โค้ดเดียวกับแอป: GossipScheduler เลือกเพื่อนบ้านและจังหวะการซิงก์,
+ * BoundedReportStore คุมพื้นที่เก็บ, ขนาดข้อความคิดจาก ReportCodec จริง
+ * ส่วนที่จำลอง: ระยะวิทยุ, ความน่าจะเป็นที่ข้อความหาย, การเคลื่อนที่ และแบตเตอรี่
+ * รายงาน "ส่งถึง" เมื่อเครื่องของหน่วยกู้ภัยเครื่องใดเครื่องหนึ่งได้รับ
+ *
+ * ใช้เป็น benchmark ก่อน/หลังแก้ relay หรือ storage: รัน main แล้วเทียบ latency percentile,
+ * จำนวนข้อความ และพลังงานต่อรายงานที่ส่งถึง
+ */
+public class DisasterSimulator {
+
+    public enum Scenario {
+        /**
+         * ผู้ประสบภัยกระจายตามแนวแม่น้ำกลางพื้นที่ ค่อยๆ เดินออกจากน้ำ รายงานทยอยเข้ามาตลอด
+         * ฝนทำให้ข้อความหายบ่อย หน่วยกู้ภัยใช้เรือแล่นไปมาในแนวน้ำท่วม
+         */
+        FLOOD(0.25, 1.0, 0.3, 3.0, 0.1),
+        /**
+         * ผู้ประสบภัยติดอยู่ในจุดอาคารถล่มไม่กี่จุด รายงานส่วนใหญ่มาใน 10 นาทีแรก
+         * ซากอาคารลดระยะวิทยุ หน่วยกู้ภัยเดินเท้าจากขอบพื้นที่เข้าหาจุดถล่มทีละจุด
+         */
+        EARTHQUAKE(0.1, 0.7, 0.0, 1.2, 0.8);
+
+        final double baseLoss;
+        final double rangeFactor;
+        final double victimSpeed;
+        final double rescuerSpeed;
+        // สัดส่วนรายงานที่เกิดในช่วงแรกของเหตุการณ์
+        final double burstFraction;
+
+        Scenario(
+                double baseLoss,
+                double rangeFactor,
+                double victimSpeed,
+                double rescuerSpeed,
+                double burstFraction) {
+            this.baseLoss = baseLoss;
+            this.rangeFactor = rangeFactor;
+            this.victimSpeed = victimSpeed;
+            this.rescuerSpeed = rescuerSpeed;
+            this.burstFraction = burstFraction;
+        }
+    }
+
+    public static class Config {
+        public int devices = 500;
+        public int rescuers = 10;
+        public int reports = 300;
+        public double areaM = 4000;
+        public double radioRangeM = 100;
+        public long durationMs = 60 * 60 * 1000L;
+        public long mobilityStepMs = 5000;
+        public GossipScheduler.Config gossip = GossipScheduler.DEFAULT_CONFIG;
+        // โทรศัพท์ผู้ประสบภัยเก็บได้น้อย เพื่อให้เห็นผลของการทิ้งรายงาน
+        public BoundedReportStore.Config victimStore =
+                new BoundedReportStore.Config(200, 1024 * 1024, 1024 * 1024);
+        public BoundedReportStore.Config rescuerStore = BoundedReportStore.DEFAULT_CONFIG;
+    }
+
+    // พลังงาน (จูล) ค่าประมาณของ WiFi Direct บนโทรศัพท์ทั่วไป
+    static final double BATTERY_J = 40_000;
+    static final double MESSAGE_J = 0.02;
+    static final double TX_J_PER_BYTE = 2e-6;
+    static final double RX_J_PER_BYTE = 1.5e-6;
+    static final double IDLE_W = 0.01;
+    static final double DISCOVERY_J = 0.05;
+
+    public static class Result {
+        public Scenario scenario;
+        public int devices;
+        public int reports;
+        public int delivered;
+        public long p50Ms = -1;
+        public long p90Ms = -1;
+        public long p99Ms = -1;
+        public long messages;
+        public long bytes;
+        public double energyJ;
+        public int deadDevices;
+        public long evictions;
+
+        public double deliveryRatio() {
+            return reports == 0 ? 0 : (double) delivered / reports;
+        }
+
+        public double messagesPerDelivered() {
+            return delivered == 0 ? 0 : (double) messages / delivered;
+        }
+
+        public double energyPerDeliveredJ() {
+            return delivered == 0 ? 0 : energyJ / delivered;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.US,
+                    "%s devices=%d reports=%d delivered=%.1f%% p50=%ds p90=%ds p99=%ds"
+                            + " messages=%d (%.1f/delivered) bytes=%d energy=%.0fJ"
+                            + " (%.2fJ/delivered) dead=%d evictions=%d",
+                    scenario,
+                    devices,
+                    reports,
+                    deliveryRatio() * 100,
+                    p50Ms / 1000,
+                    p90Ms / 1000,
+                    p99Ms / 1000,
+                    messages,
+                    messagesPerDelivered(),
+                    bytes,
+                    energyJ,
+                    energyPerDeliveredJ(),
+                    deadDevices,
+                    evictions);
+        }
+    }
+
+    private static class Device {
+        final int index;
+        final String name;
+        final boolean rescuer;
+        final Map<Integer, MainActivity.Report> reports = new HashMap<>();
+        final GossipScheduler.Digest digest = new GossipScheduler.Digest();
+        final BoundedReportStore store;
+        final Set<Device> neighbors = new HashSet<>();
+        GossipScheduler scheduler;
+        double x;
+        double y;
+        double targetX;
+        double targetY;
+        double batteryJ;
+
+        Device(int index, boolean rescuer, BoundedReportStore.Config storeConfig) {
+            this.index = index;
+            this.name = "dev-" + index;
+            this.rescuer = rescuer;
+            this.store = new BoundedReportStore(storeConfig);
+        }
+
+        boolean alive() {
+            return batteryJ > 0;
+        }
+    }
+
+    private static final int EVENT_MOBILITY = 0;
+    private static final int EVENT_REPORT = 1;
+    private static final int EVENT_GOSSIP = 2;
+
+    private final Scenario scenario;
+    private final Config config;
+    private final Random random;
+    private final Device[] devices;
+    private final Map<String, Device> byName = new HashMap<>();
+    // event = {เวลา, ชนิด, index ของเครื่อง, ค่าเพิ่มเติม}
+    private final PriorityQueue<long[]> events =
+            new PriorityQueue<>(
+                    (a, b) -> {
+                        if (a[0] != b[0]) return Long.compare(a[0], b[0]);
+                        if (a[1] != b[1]) return Long.compare(a[1], b[1]);
+                        return Long.compare(a[2], b[2]);
+                    });
+    private final Map<Integer, Integer> encodedSize = new HashMap<>();
+    private final long[] createdAt;
+    private final long[] deliveredAt;
+    private final double[] zonesX;
+    private final double[] zonesY;
+    private final Result result = new Result();
+    private long now;
+
+    public DisasterSimulator(Scenario scenario, Config config, long seed) {
+        this.scenario = scenario;
+        this.config = config;
+        this.random = new Random(seed);
+        this.devices = new Device[config.devices];
+        this.createdAt = new long[config.reports];
+        this.deliveredAt = new long[config.reports];
+        Arrays.fill(deliveredAt, -1);
+
+        int zoneCount = 5;
+        zonesX = new double[zoneCount];
+        zonesY = new double[zoneCount];
+        for (int i = 0; i < zoneCount; i++) {
+            zonesX[i] = config.areaM * (0.2 + 0.6 * random.nextDouble());
+            zonesY[i] = config.areaM * (0.2 + 0.6 * random.nextDouble());
+        }
+
+        for (int i = 0; i < devices.length; i++) {
+            boolean rescuer = i < config.rescuers;
+            Device device =
+                    new Device(i, rescuer, rescuer ? config.rescuerStore : config.victimStore);
+            device.batteryJ = BATTERY_J * (rescuer ? 1.0 : 0.2 + 0.8 * random.nextDouble());
+            device.scheduler =
+                    new GossipScheduler(config.gossip, device.digest, new Random(random.nextLong()), 0);
+            place(device);
+            devices[i] = device;
+            byName.put(device.name, device);
+            events.add(new long[] {device.scheduler.getNextRoundAt(), EVENT_GOSSIP, i, 0});
+        }
+
+        for (int r = 0; r < config.reports; r++) {
+            boolean burst = random.nextDouble() < scenario.burstFraction;
+            long window = burst ? 10 * 60 * 1000L : config.durationMs * 3 / 4;
+            long at = (long) (random.nextDouble() * window);
+            int victim = config.rescuers + random.nextInt(devices.length - config.rescuers);
+            events.add(new long[] {at, EVENT_REPORT, victim, r});
+        }
+        events.add(new long[] {0, EVENT_MOBILITY, 0, 0});
+
+        result.scenario = scenario;
+        result.devices = devices.length;
+        result.reports = config.reports;
+    }
+
+    public Result run() {
+        while (!events.isEmpty()) {
+            long[] event = events.poll();
+            if (event[0] > config.durationMs) break;
+            now = event[0];
+            Device device = devices[(int) event[2]];
+            switch ((int) event[1]) {
+                case EVENT_MOBILITY:
+                    step();
+                    events.add(new long[] {now + config.mobilityStepMs, EVENT_MOBILITY, 0, 0});
+                    break;
+                case EVENT_REPORT:
+                    if (device.alive()) createReport(device, (int) event[3]);
+                    break;
+                case EVENT_GOSSIP:
+                    // เวลาถูกเลื่อนเพราะมีเพื่อนบ้าน/ข้อมูลใหม่ มี event ใหม่ในคิวแล้ว
+                    if (device.scheduler.getNextRoundAt() != now || !device.alive()) break;
+                    gossip(device);
+                    break;
+            }
+        }
+
+        long[] latencies = new long[result.delivered];
+        int n = 0;
+        for (int r = 0; r < deliveredAt.length; r++) {
+            if (deliveredAt[r] >= 0) latencies[n++] = deliveredAt[r] - createdAt[r];
+        }
+        Arrays.sort(latencies);
+        if (n > 0) {
+            result.p50Ms = latencies[percentileIndex(n, 0.50)];
+            result.p90Ms = latencies[percentileIndex(n, 0.90)];
+            result.p99Ms = latencies[percentileIndex(n, 0.99)];
+        }
+        for (Device device : devices) {
+            if (!device.alive()) result.deadDevices++;
+        }
+        return result;
+    }
+
+    private void place(Device device) {
+        double area = config.areaM;
+        if (device.rescuer) {
+            // เริ่มจากขอบพื้นที่
+            device.x = random.nextBoolean() ? 0 : area;
+            device.y = scenario == Scenario.FLOOD ? area / 2 : random.nextDouble() * area;
+            nextWaypoint(device);
+        } else if (scenario == Scenario.FLOOD) {
+            device.x = random.nextDouble() * area;
+            device.y = area / 2 + random.nextGaussian() * 400;
+            device.targetX = device.x;
+            // เดินออกจากแม่น้ำไปยังที่สูงใกล้ๆ ไม่เกิน 600 ม.
+            double away = 200 + 400 * random.nextDouble();
+            device.targetY = device.y < area / 2 ? device.y - away : device.y + away;
+        } else {
+            int zone = random.nextInt(zonesX.length);
+            device.x = zonesX[zone] + random.nextGaussian() * 200;
+            device.y = zonesY[zone] + random.nextGaussian() * 200;
+            device.targetX = device.x;
+            device.targetY = device.y;
+        }
+        device.x = clamp(device.x);
+        device.y = clamp(device.y);
+        device.targetX = clamp(device.targetX);
+        device.targetY = clamp(device.targetY);
+    }
+
+    /**
+     * จุดหมายถัดไปของหน่วยกู้ภัย: น้ำท่วม = จุดสุ่มในแนวน้ำท่วม, แผ่นดินไหว = จุดถล่มถัดไป
+     */
+    private void nextWaypoint(Device device) {
+        if (scenario == Scenario.FLOOD) {
+            device.targetX = random.nextDouble() * config.areaM;
+            device.targetY = clamp(config.areaM / 2 + random.nextGaussian() * 500);
+        } else {
+            int zone = random.nextInt(zonesX.length);
+            device.targetX = zonesX[zone];
+            device.targetY = zonesY[zone];
+        }
+    }
+
+    /**
+     * ขยับทุกเครื่องหนึ่งช่วงเวลา คิดพลังงานพื้นฐาน แล้วหาเพื่อนบ้านใหม่ด้วย grid ขนาดเท่าระยะวิทยุ
+     */
+    private void step() {
+        double seconds = config.mobilityStepMs / 1000.0;
+        for (Device device : devices) {
+            if (!device.alive()) continue;
+            double speed = device.rescuer ? scenario.rescuerSpeed : scenario.victimSpeed;
+            double dx = device.targetX - device.x;
+            double dy = device.targetY - device.y;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double move = Math.min(distance, speed * seconds);
+            if (distance > 0) {
+                device.x += dx / distance * move;
+                device.y += dy / distance * move;
+            } else if (device.rescuer) {
+                nextWaypoint(device);
+            }
+            device.store.setOrigin(toLat(device.y), toLng(device.x));
+            spend(device, IDLE_W * seconds + DISCOVERY_J);
+        }
+
+        double range = config.radioRangeM * scenario.rangeFactor;
+        int cells = (int) Math.ceil(config.areaM / range) + 1;
+        Map<Integer, List<Device>> grid = new HashMap<>();
+        for (Device device : devices) {
+            if (!device.alive()) continue;
+            grid.computeIfAbsent(cell(device, range, cells), k -> new ArrayList<>()).add(device);
+        }
+        for (Device device : devices) {
+            Set<Device> current = new HashSet<>();
+            if (device.alive()) {
+                int cx = (int) (device.x / range);
+                int cy = (int) (device.y / range);
+                for (int gx = cx - 1; gx <= cx + 1; gx++) {
+                    for (int gy = cy - 1; gy <= cy + 1; gy++) {
+                        List<Device> bucket = grid.get(gy * cells + gx);
+                        if (bucket == null) continue;
+                        for (Device other : bucket) {
+                            if (other != device && distance(device, other) <= range) {
+                                current.add(other);
+                            }
+                        }
+                    }
+                }
+            }
+            updateNeighbors(device, current);
+        }
+    }
+
+    private void updateNeighbors(Device device, Set<Device> current) {
+        long before = device.scheduler.getNextRoundAt();
+        for (Device lost : device.neighbors) {
+            if (!current.contains(lost)) device.scheduler.onNeighborLost(lost.name);
+        }
+        for (Device seen : current) {
+            if (!device.neighbors.contains(seen)) device.scheduler.onNeighborSeen(seen.name, now);
+        }
+        device.neighbors.clear();
+        device.neighbors.addAll(current);
+        reschedule(device, before);
+    }
+
+    private void createReport(Device victim, int index) {
+        MainActivity.Severity[] severities = MainActivity.Severity.values();
+        MainActivity.Severity severity = severities[random.nextInt(severities.length)];
+        MainActivity.Report report =
+                new MainActivity.Report(
+                        index + 1,
+                        "sim-" + index,
+                        "08" + (10_000_000 + random.nextInt(89_999_999)),
+                        scenario == Scenario.FLOOD
+                                ? "ติดอยู่บนหลังคาบ้าน น้ำท่วมสูง ต้องการความช่วยเหลือด่วน"
+                                : "ติดอยู่ในซากอาคาร ได้ยินเสียงคนเรียก",
+                        new MainActivity.Location(toLat(victim.y), toLng(victim.x)),
+                        ReportTime.UNKNOWN,
+                        severity,
+                        MainActivity.ReportStatus.WAITING,
+                        scenario == Scenario.FLOOD
+                                ? MainActivity.ReportType.FLOOD
+                                : MainActivity.ReportType.EARTHQUAKE,
+                        false);
+        encodedSize.put(report.id, ReportCodec.encode(report).length);
+        createdAt[index] = now;
+        victim.store.setOwnReport(report.id);
+        long before = victim.scheduler.getNextRoundAt();
+        receive(victim, report);
+        victim.scheduler.onNewReports(severity == MainActivity.Severity.CRITICAL, now);
+        reschedule(victim, before);
+    }
+
+    /**
+     * หนึ่งรอบของเครื่อง: แลก digest กับเพื่อนบ้านที่ scheduler เลือก แล้วแลกรายงานเมื่อไม่ตรงกัน
+     */
+    private void gossip(Device device) {
+        for (String peerName : device.scheduler.selectPeers(now)) {
+            Device peer = byName.get(peerName);
+            if (!peer.alive() || !device.neighbors.contains(peer)) continue;
+            long peerBefore = peer.scheduler.getNextRoundAt();
+            exchange(device, peer);
+            reschedule(peer, peerBefore);
+        }
+        events.add(new long[] {device.scheduler.getNextRoundAt(), EVENT_GOSSIP, device.index, 0});
+    }
+
+    private void exchange(Device a, Device b) {
+        if (!send(a, b, GossipSimulator.DIGEST_BYTES)) return;
+        boolean differs = b.scheduler.onDigestReceived(a.name, a.digest, now);
+        if (!send(b, a, GossipSimulator.DIGEST_BYTES)) return;
+        a.scheduler.onDigestReceived(b.name, b.digest, now);
+        if (!differs) return;
+
+        transfer(a, b);
+        transfer(b, a);
+    }
+
+    private void transfer(Device from, Device to) {
+        List<MainActivity.Report> missing = new ArrayList<>();
+        for (MainActivity.Report report : from.reports.values()) {
+            if (!to.reports.containsKey(report.id)) missing.add(report);
+        }
+        if (missing.isEmpty()) return;
+        List<MainActivity.Report> batch = from.scheduler.prioritize(missing);
+        int bytes = 0;
+        boolean critical = false;
+        for (MainActivity.Report report : batch) {
+            bytes += encodedSize.get(report.id);
+            critical |= report.level == MainActivity.Severity.CRITICAL;
+        }
+        if (!send(from, to, bytes)) return;
+        for (MainActivity.Report report : batch) receive(to, report);
+        to.scheduler.onNewReports(critical, now);
+    }
+
+    /**
+     * ส่งหนึ่งข้อความ คิดพลังงานทั้งสองฝั่ง คืน false ถ้าข้อความหาย
+     * โอกาสหายเพิ่มขึ้นตามระยะ (ขอบระยะวิทยุแทบไม่ถึง)
+     */
+    private boolean send(Device from, Device to, int bytes) {
+        result.messages++;
+        result.bytes += bytes;
+        spend(from, MESSAGE_J + bytes * TX_J_PER_BYTE);
+        double range = config.radioRangeM * scenario.rangeFactor;
+        double edge = Math.pow(Math.min(1, distance(from, to) / range), 3);
+        if (random.nextDouble() > (1 - scenario.baseLoss) * (1 - edge)) return false;
+        spend(to, MESSAGE_J + bytes * RX_J_PER_BYTE);
+        return true;
+    }
+
+    private void receive(Device device, MainActivity.Report report) {
+        if (device.reports.containsKey(report.id)) return;
+        for (MainActivity.Report evicted : device.store.put(report, now)) {
+            result.evictions++;
+            if (evicted == report) return;
+            device.reports.remove(evicted.id);
+            device.digest.remove(evicted);
+        }
+        device.reports.put(report.id, report);
+        device.digest.add(report);
+        int index = report.id - 1;
+        if (device.rescuer && deliveredAt[index] < 0) {
+            deliveredAt[index] = now;
+            result.delivered++;
+        }
+    }
+
+    private void reschedule(Device device, long before) {
+        long next = device.scheduler.getNextRoundAt();
+        if (next != before) events.add(new long[] {next, EVENT_GOSSIP, device.index, 0});
+    }
+
+    private void spend(Device device, double joules) {
+        device.batteryJ -= joules;
+        result.energyJ += joules;
+    }
+
+    private int cell(Device device, double range, int cells) {
+        return (int) (device.y / range) * cells + (int) (device.x / range);
+    }
+
+    private double clamp(double value) {
+        return Math.max(0, Math.min(config.areaM, value));
+    }
+
+    private static double distance(Device a, Device b) {
+        double dx = a.x - b.x;
+        double dy = a.y - b.y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // พื้นที่สังเคราะห์วางไว้ที่กรุงเทพฯ เพื่อให้ BoundedReportStore คิดระยะทางได้
+    private static double toLat(double yM) {
+        return 13.7 + yM / 111_320.0;
+    }
+
+    private static double toLng(double xM) {
+        return 100.5 + xM / (111_320.0 * Math.cos(Math.toRadians(13.7)));
+    }
+
+    private static int percentileIndex(int n, double p) {
+        return Math.min(n - 1, (int) Math.ceil(p * n) - 1);
+    }
+
+    /**
+     * args: [จำนวนเครื่อง] [seed]
+     */
+    public static void main(String[] args) {
+        Config config = new Config();
+        if (args.length > 0) config.devices = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        for (Scenario scenario : Scenario.values()) {
+            System.out.println(new DisasterSimulator(scenario, config, seed).run());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package main.sos;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * วัดจำนวนซองที่เปิดได้ต่อวินาทีของ ReportEnvelope.Verifier
+ *
+ * cold = Verifier ใหม่ทุกรอบ ต้องตรวจลายเซ็นทุกซอง (รับรายงานชุดใหม่ครั้งแรก)
+ * cached = Verifier เดิม ซองที่เคยผ่านแล้วเทียบแค่ SHA-256 (ได้รายงานเดิมซ้ำจากหลายเครื่อง)
+ * relay = ไม่มีกุญแจหน่วยกู้ภัย, rescuer = ถอดรหัสด้วย ECDH + AES-GCM ด้วย
+ *
+ * args: [จำนวนซองต่อ corpus]
+ */
+public class EnvelopeBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Random random = new Random(36);
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair rescue = generator.generateKeyPair();
+
+        List<MainActivity.Report> reports = CompressionBenchmark.corpus(random, size);
+        byte[][] signed = new byte[size][];
+        byte[][] encrypted = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            signed[i] = ReportEnvelope.seal(reports.get(i), reporter, null, 1);
+            encrypted[i] = ReportEnvelope.seal(reports.get(i), reporter, rescue.getPublic(), 1);
+        }
+
+        System.out.println("corpus     key       cold/s   cached/s  speedup");
+        run("signed", "relay", reporter, null, signed);
+        run("encrypted", "relay", reporter, null, encrypted);
+        run("encrypted", "rescuer", reporter, rescue, encrypted);
+    }
+
+    private static void run(
+            String corpus, String key, DeviceIdentity reporter, KeyPair rescue, byte[][] envelopes)
+            throws Exception {
+        long[] cold = new long[RUNS];
+        long[] cached = new long[RUNS];
+        // รอบแรกเป็น warm-up ของ JIT
+        for (int run = -1; run < RUNS; run++) {
+            ReportEnvelope.Verifier verifier =
+                    new ReportEnvelope.Verifier(
+                            reporter.getParams(), rescue == null ? null : rescue.getPrivate());
+            long t0 = System.nanoTime();
+            for (byte[] envelope : envelopes) verifier.open(envelope);
+            long t1 = System.nanoTime();
+            for (byte[] envelope : envelopes) verifier.open(envelope);
+            long t2 = System.nanoTime();
+            if (verifier.getVerifications() != envelopes.length
+                    || verifier.getCacheHits() != envelopes.length) {
+                throw new IllegalStateException("cache did not hold the corpus");
+            }
+            if (run < 0) continue;
+            cold[run] = t1 - t0;
+            cached[run] = t2 - t1;
+        }
+        Arrays.sort(cold);
+        Arrays.sort(cached);
+        double coldRate = envelopes.length / (cold[RUNS / 2] / 1e9);
+        double cachedRate = envelopes.length / (cached[RUNS / 2] / 1e9);
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%-9s  %-7s  %8.0f  %9.0f  %6.1fx",
+                        corpus,
+                        key,
+                        coldRate,
+                        cachedRate,
+                        cachedRate / coldRate));
+    }
+}
@@ -0,0 +1,114 @@
+package main.sos;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * วัดเวลา export/import ของ ReportExport ทุกรูปแบบผ่านไฟล์จริง
+ *
+ * รายงานถูกสร้างทีละฉบับตอน export และ receiver ทิ้งแต่ละชุดหลังนับ จึงไม่มีรายการทั้งหมดใน heap
+ * รันด้วย heap จำกัด (เช่น -Xmx32m) เพื่อยืนยันว่าหน่วยความจำไม่ขึ้นกับจำนวนรายงาน
+ * BINARY ใช้ซองที่เซ็นไว้ชุดเล็กวนใส่ (เซ็นแสนฉบับใช้เวลานานเกินไป)
+ *
+ * args: [จำนวนรายงาน]
+ */
+public class ExportBenchmark {
+
+    private static final int ENVELOPES = 64;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        byte[][] envelopes = new byte[ENVELOPES][];
+        for (int i = 0; i < ENVELOPES; i++) {
+            envelopes[i] = MemoryReportStore.sealed(i, reporter).envelope;
+        }
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%d reports, max heap %d MB",
+                        count,
+                        Runtime.getRuntime().maxMemory() >> 20));
+        System.out.println("format    file(MB)  export ms  MB/s   import ms  MB/s   peak heap(MB)");
+        for (ReportExport.Format format : ReportExport.Format.values()) {
+            // รอบแรกเป็น warm-up ของ JIT
+            run(format, Math.min(count, 10_000), envelopes, false);
+            run(format, count, envelopes, true);
+        }
+    }
+
+    private static void run(
+            ReportExport.Format format, int count, byte[][] envelopes, boolean print)
+            throws Exception {
+        File file = File.createTempFile("export", "." + format.extension);
+        file.deleteOnExit();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long[] peak = {runtime.totalMemory() - runtime.freeMemory()};
+
+        long t0 = System.nanoTime();
+        try (FileOutputStream out = new FileOutputStream(file);
+                FileChannel channel = out.getChannel()) {
+            Iterable<MainActivity.Report> reports =
+                    () -> generate(count, format == ReportExport.Format.BINARY ? envelopes : null);
+            if (ReportExport.export(reports, format, channel) != count) {
+                throw new IllegalStateException("export count");
+            }
+        }
+        long t1 = System.nanoTime();
+        long[] imported = {0};
+        try (FileInputStream in = new FileInputStream(file);
+                FileChannel channel = in.getChannel()) {
+            ReportExport.importReports(
+                    channel,
+                    format,
+                    (List<MainActivity.Report> batch) -> {
+                        imported[0] += batch.size();
+                        peak[0] = Math.max(peak[0], runtime.totalMemory() - runtime.freeMemory());
+                    });
+        }
+        long t2 = System.nanoTime();
+        if (imported[0] != count) throw new IllegalStateException("import count");
+        double megabytes = file.length() / 1e6;
+        if (print) {
+            System.out.println(
+                    String.format(
+                            Locale.US,
+                            "%-8s  %8.1f  %9.0f  %5.1f  %9.0f  %5.1f  %13.1f",
+                            format.extension,
+                            megabytes,
+                            (t1 - t0) / 1e6,
+                            megabytes / ((t1 - t0) / 1e9),
+                            (t2 - t1) / 1e6,
+                            megabytes / ((t2 - t1) / 1e9),
+                            peak[0] / (double) (1 << 20)));
+        }
+        file.delete();
+    }
+
+    private static Iterator<MainActivity.Report> generate(int count, byte[][] envelopes) {
+        Random random = new Random(42);
+        return new Iterator<MainActivity.Report>() {
+            int produced;
+
+            @Override
+            public boolean hasNext() {
+                return produced < count;
+            }
+
+            @Override
+            public MainActivity.Report next() {
+                MainActivity.Report report = CompressionBenchmark.report(random);
+                if (envelopes != null) report.envelope = envelopes[produced % envelopes.length];
+                produced++;
+                return report;
+            }
+        };
+    }
+}
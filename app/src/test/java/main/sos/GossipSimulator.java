@@ -0,0 +1,432 @@
+package main.sos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * จำลองการกระจายรายงานด้วย GossipScheduler บนหลายเครื่องแบบ deterministic (seed เดียวกันได้ผลเดิม)
+ * วัดเวลาจนทุกเครื่องมีรายงานครบและจำนวนข้อความ เทียบกับการ flood แบบ naive
+ * (จำลองจริงบนกราฟเดียวกัน: ทุกรอบ เครื่องที่เพิ่งได้รายงานใหม่ส่งต่อให้เพื่อนบ้านทุกเครื่อง)
+ *
+ * ใส่เครื่องที่ปล่อยรายงานปลอม (addFlooder) และเปิด IngressGuard ได้
+ * เพื่อดูว่ารายงานจริงยังกระจายครบหรือไม่และรายงานปลอมแพร่ไปได้แค่ไหน
+ */
+public class GossipSimulator {
+
+    public static final int DIGEST_BYTES = 24;
+    public static final int SUMMARY_BYTES = 256;
+
+    public static class Result {
+        public int nodes;
+        public double averageDegree;
+        public int reports;
+        public long convergenceMs = -1;
+        public long criticalConvergenceMs = -1;
+        public long messages;
+        public long payloadMessages;
+        public long bytes;
+        public long floodMessages;
+        public long floodConvergenceMs = -1;
+        public long spamReports;
+        public long spamAccepted;
+        public long rejected;
+        public int maxStoreSize;
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.US,
+                    "nodes=%d deg=%.1f reports=%d converge=%dms critical=%dms messages=%d"
+                            + " payloadMessages=%d bytes=%d floodMessages=%d floodConverge=%dms"
+                            + " spam=%d spamAccepted=%d rejected=%d maxStore=%d",
+                    nodes,
+                    averageDegree,
+                    reports,
+                    convergenceMs,
+                    criticalConvergenceMs,
+                    messages,
+                    payloadMessages,
+                    bytes,
+                    floodMessages,
+                    floodConvergenceMs,
+                    spamReports,
+                    spamAccepted,
+                    rejected,
+                    maxStoreSize);
+        }
+    }
+
+    private static class Node {
+        final int index;
+        final String name;
+        final List<Node> neighbors = new ArrayList<>();
+        final TreeMap<Integer, MainActivity.Report> store = new TreeMap<>();
+        final GossipScheduler.Digest digest = new GossipScheduler.Digest();
+        GossipScheduler scheduler;
+        IngressGuard guard;
+        int spamPerRound;
+        boolean sharedOrigin;
+
+        Node(int index) {
+            this.index = index;
+            this.name = "node-" + index;
+        }
+    }
+
+    private final Random random;
+    private final GossipScheduler.Config config;
+    private final Node[] nodes;
+    private final int reportBytes;
+    private final Result result = new Result();
+    private final int[] holders;
+    // เครื่องที่ได้รายงานแต่ละฉบับตอนเริ่ม ใช้จำลอง flood จากจุดเดียวกัน
+    private final int[] initialNode;
+    private final Set<Integer> criticalIds = new HashSet<>();
+    private final TreeMap<Integer, Integer> indexById = new TreeMap<>();
+    // ผู้แจ้งของแต่ละรายงาน (ในชีวิตจริงอ่านจาก header ของซอง)
+    private final Map<Integer, Long> originById = new HashMap<>();
+    private int nextSpamId = -1;
+    private int completeReports;
+    private int completeCritical;
+
+    /**
+     * สร้างเครือข่ายแบบ random geometric graph ที่เชื่อมถึงกันทั้งหมด
+     */
+    public GossipSimulator(
+            int nodeCount,
+            double targetDegree,
+            int reportCount,
+            GossipScheduler.Config config,
+            long seed) {
+        this.random = new Random(seed);
+        this.config = config;
+        this.nodes = new Node[nodeCount];
+        this.holders = new int[reportCount];
+        this.initialNode = new int[reportCount];
+        this.reportBytes = 96;
+        buildConnectedTopology(targetDegree);
+
+        for (Node node : nodes) {
+            node.scheduler =
+                    new GossipScheduler(config, node.digest, new Random(random.nextLong()), 0);
+            for (Node neighbor : node.neighbors) {
+                node.scheduler.onNeighborSeen(neighbor.name, 0);
+            }
+        }
+
+        // กระจายรายงานเริ่มต้นไปยังเครื่องสุ่ม ประมาณ 1 ใน 4 เป็นระดับวิกฤติ
+        MainActivity.Severity[] severities = MainActivity.Severity.values();
+        for (int i = 0; i < reportCount; i++) {
+            MainActivity.Severity severity = severities[random.nextInt(severities.length)];
+            MainActivity.Report report = newReport(i + 1, severity);
+            indexById.put(report.id, i);
+            originById.put(report.id, (long) report.id);
+            if (severity == MainActivity.Severity.CRITICAL) criticalIds.add(report.id);
+            initialNode[i] = random.nextInt(nodeCount);
+            deliver(nodes[initialNode[i]], report, 0);
+        }
+
+        result.nodes = nodeCount;
+        result.reports = reportCount;
+        int edges = 0;
+        for (Node node : nodes) edges += node.neighbors.size();
+        result.averageDegree = (double) edges / nodeCount;
+    }
+
+    /**
+     * ให้ทุกเครื่องกรองรายงานที่รับมาด้วย IngressGuard ของตัวเอง
+     */
+    public GossipSimulator withIngressGuard(IngressGuard.Config guardConfig) {
+        for (Node node : nodes) {
+            node.guard = new IngressGuard(guardConfig);
+        }
+        return this;
+    }
+
+    /**
+     * ให้เครื่องนี้สร้างรายงานปลอมใหม่ทุกรอบ sharedOrigin = ใช้ผู้แจ้งเดียวกันทั้งหมด
+     * มิฉะนั้นปลอม origin ใหม่ทุกฉบับ (sybil)
+     */
+    public GossipSimulator addFlooder(int nodeIndex, int reportsPerRound, boolean sharedOrigin) {
+        nodes[nodeIndex].spamPerRound = reportsPerRound;
+        nodes[nodeIndex].sharedOrigin = sharedOrigin;
+        return this;
+    }
+
+    public Result run(long maxTimeMs) {
+        // event = {เวลา, index ของเครื่อง}
+        PriorityQueue<long[]> queue =
+                new PriorityQueue<>(
+                        (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        for (Node node : nodes) {
+            queue.add(new long[] {node.scheduler.getNextRoundAt(), node.index});
+        }
+
+        while (!queue.isEmpty() && completeReports < holders.length) {
+            long[] event = queue.poll();
+            long now = event[0];
+            if (now > maxTimeMs) break;
+            Node node = nodes[(int) event[1]];
+            if (node.scheduler.getNextRoundAt() != now) {
+                // ถูกเลื่อนเวลาเพราะได้ข้อมูลใหม่ มี event ใหม่ในคิวแล้ว
+                continue;
+            }
+            if (node.spamPerRound > 0) spam(node, now);
+
+            for (String peerName : node.scheduler.selectPeers(now)) {
+                Node peer = nodes[Integer.parseInt(peerName.substring(5))];
+                long peerBefore = peer.scheduler.getNextRoundAt();
+                exchange(node, peer, now);
+                if (peer.scheduler.getNextRoundAt() != peerBefore) {
+                    queue.add(new long[] {peer.scheduler.getNextRoundAt(), peer.index});
+                }
+            }
+            queue.add(new long[] {node.scheduler.getNextRoundAt(), node.index});
+        }
+
+        for (Node node : nodes) {
+            result.maxStoreSize = Math.max(result.maxStoreSize, node.store.size());
+        }
+
+        simulateFlood();
+        return result;
+    }
+
+    /**
+     * flood แบบ naive: ทุก minInterval เครื่องที่เพิ่งได้รายงานใหม่ส่งรายงานเหล่านั้นให้เพื่อนบ้านทุกเครื่อง
+     * (ไม่มี digest ไม่รู้ว่าเพื่อนบ้านมีแล้วหรือยัง) จนทุกเครื่องมีรายงานครบ ไม่นับรายงานปลอม
+     */
+    private void simulateFlood() {
+        int n = nodes.length;
+        List<Set<Integer>> have = new ArrayList<>(n);
+        List<List<Integer>> fresh = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            have.add(new HashSet<Integer>());
+            fresh.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < initialNode.length; i++) {
+            have.get(initialNode[i]).add(i);
+            fresh.get(initialNode[i]).add(i);
+        }
+
+        int complete = 0;
+        for (Set<Integer> ids : have) {
+            if (ids.size() == holders.length) complete++;
+        }
+        long rounds = 0;
+        while (complete < n) {
+            rounds++;
+            List<List<Integer>> next = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) next.add(new ArrayList<Integer>());
+            for (Node node : nodes) {
+                List<Integer> batch = fresh.get(node.index);
+                if (batch.isEmpty()) continue;
+                for (Node neighbor : node.neighbors) {
+                    result.floodMessages++;
+                    Set<Integer> ids = have.get(neighbor.index);
+                    for (int id : batch) {
+                        if (ids.add(id)) {
+                            next.get(neighbor.index).add(id);
+                            if (ids.size() == holders.length) complete++;
+                        }
+                    }
+                }
+            }
+            fresh = next;
+        }
+        result.floodConvergenceMs = rounds * config.minIntervalMs;
+    }
+
+    /**
+     * a ส่ง digest ไป b ตอบกลับด้วย digest ของตัวเอง ถ้าตรงกันจบที่ 2 ข้อความ
+     * ถ้าไม่ตรง b แนบสรุปรายการไปกับคำตอบ แล้วแลก payload เฉพาะส่วนที่ขาด (push-pull)
+     */
+    private void exchange(Node a, Node b, long now) {
+        count(1, DIGEST_BYTES, false);
+        boolean differs = b.scheduler.onDigestReceived(a.name, a.digest, now);
+        a.scheduler.onDigestReceived(b.name, b.digest, now);
+        if (!differs) {
+            count(1, DIGEST_BYTES, false);
+            return;
+        }
+
+        count(1, DIGEST_BYTES + SUMMARY_BYTES, false);
+        List<MainActivity.Report> toB = missing(a, b);
+        List<MainActivity.Report> toA = missing(b, a);
+        transfer(a, b, a.scheduler.prioritize(toB), now);
+        transfer(b, a, b.scheduler.prioritize(toA), now);
+
+        b.scheduler.onDigestReceived(a.name, a.digest, now);
+        a.scheduler.onDigestReceived(b.name, b.digest, now);
+    }
+
+    private List<MainActivity.Report> missing(Node from, Node to) {
+        List<MainActivity.Report> missing = new ArrayList<>();
+        for (MainActivity.Report report : from.store.values()) {
+            if (!to.store.containsKey(report.id)) missing.add(report);
+        }
+        return missing;
+    }
+
+    private void transfer(Node from, Node to, List<MainActivity.Report> batch, long now) {
+        if (batch.isEmpty()) return;
+        count(1, (long) batch.size() * reportBytes, true);
+        boolean critical = false;
+        for (MainActivity.Report report : batch) {
+            if (to.guard != null) {
+                // ในการจำลองทุกรายงานลายเซ็นผ่าน จึงนับโควตาต่อจาก check ทันที
+                if (to.guard.check(from.name, report.id, now) != IngressGuard.Verdict.ACCEPT
+                        || to.guard.checkOrigin(originById.get(report.id), now)
+                                != IngressGuard.Verdict.ACCEPT) {
+                    result.rejected++;
+                    continue;
+                }
+                to.guard.markSeen(report.id);
+            }
+            if (report.id < 0) result.spamAccepted++;
+            deliver(to, report, now);
+            critical |= report.level == MainActivity.Severity.CRITICAL;
+        }
+        to.scheduler.onNewReports(critical, now);
+    }
+
+    private void spam(Node node, long now) {
+        long sharedOrigin = -node.index - 1;
+        for (int i = 0; i < node.spamPerRound; i++) {
+            // รายงานปลอมเป็นระดับวิกฤติเพื่อแย่งลำดับก่อนรายงานจริง
+            MainActivity.Report report = newReport(nextSpamId--, MainActivity.Severity.CRITICAL);
+            originById.put(report.id, node.sharedOrigin ? sharedOrigin : report.id);
+            deliver(node, report, now);
+        }
+        result.spamReports += node.spamPerRound;
+        node.scheduler.onNewReports(true, now);
+    }
+
+    private void deliver(Node node, MainActivity.Report report, long now) {
+        if (node.store.put(report.id, report) != null) return;
+        node.digest.add(report);
+        Integer index = indexById.get(report.id);
+        if (index == null) return;
+        if (++holders[index] == nodes.length) {
+            completeReports++;
+            if (criticalIds.contains(report.id) && ++completeCritical == criticalIds.size()) {
+                result.criticalConvergenceMs = now;
+            }
+            if (completeReports == holders.length) {
+                result.convergenceMs = now;
+            }
+        }
+    }
+
+    private void count(int messages, long bytes, boolean payload) {
+        result.messages += messages;
+        result.bytes += bytes;
+        if (payload) result.payloadMessages += messages;
+    }
+
+    private void buildConnectedTopology(double targetDegree) {
+        int n = nodes.length;
+        double range = Math.sqrt(targetDegree / (Math.PI * n));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        do {
+            for (int i = 0; i < n; i++) {
+                nodes[i] = new Node(i);
+                x[i] = random.nextDouble();
+                y[i] = random.nextDouble();
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    double dx = x[i] - x[j];
+                    double dy = y[i] - y[j];
+                    if (dx * dx + dy * dy <= range * range) {
+                        nodes[i].neighbors.add(nodes[j]);
+                        nodes[j].neighbors.add(nodes[i]);
+                    }
+                }
+            }
+        } while (!isConnected());
+    }
+
+    private boolean isConnected() {
+        boolean[] visited = new boolean[nodes.length];
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(nodes[0]);
+        visited[0] = true;
+        int seen = 1;
+        while (!queue.isEmpty()) {
+            for (Node neighbor : queue.poll().neighbors) {
+                if (!visited[neighbor.index]) {
+                    visited[neighbor.index] = true;
+                    seen++;
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return seen == nodes.length;
+    }
+
+    private MainActivity.Report newReport(int id, MainActivity.Severity severity) {
+        return new MainActivity.Report(
+                id,
+                "sim-" + id,
+                "",
+                "",
+                new MainActivity.Location(13.7 + random.nextDouble(), 100.5 + random.nextDouble()),
+                ReportTime.UNKNOWN,
+                severity,
+                MainActivity.ReportStatus.WAITING,
+                MainActivity.ReportType.FLOOD,
+                true);
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("flood")) {
+            runFlood(args.length > 1 ? Integer.parseInt(args[1]) : 20);
+            return;
+        }
+        int[] sizes = args.length > 0 ? parseSizes(args[0]) : new int[] {16, 32, 64, 128, 256, 512};
+        for (int size : sizes) {
+            Result result =
+                    new GossipSimulator(size, 8, 200, GossipScheduler.DEFAULT_CONFIG, 42)
+                            .run(3_600_000);
+            System.out.println(result);
+        }
+    }
+
+    private static final String[] FLOOD_MODES = {
+        "baseline", "unguarded", "guarded-origin", "guarded-sybil"
+    };
+
+    /**
+     * 64 เครื่อง เครื่องหนึ่งปล่อยรายงานปลอมรอบละ spamPerRound ฉบับ เทียบไม่มี guard / มี guard
+     * กับ origin เดียวและ origin ปลอมทุกฉบับ
+     */
+    private static void runFlood(int spamPerRound) {
+        for (int mode = 0; mode < 4; mode++) {
+            GossipSimulator simulator =
+                    new GossipSimulator(64, 8, 200, GossipScheduler.DEFAULT_CONFIG, 42)
+                            .addFlooder(0, mode == 0 ? 0 : spamPerRound, mode == 2);
+            if (mode >= 2) simulator.withIngressGuard(IngressGuard.DEFAULT_CONFIG);
+            System.out.println(FLOOD_MODES[mode] + " " + simulator.run(600_000));
+        }
+    }
+
+    private static int[] parseSizes(String csv) {
+        String[] parts = csv.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+}
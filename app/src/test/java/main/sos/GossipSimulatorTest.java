@@ -0,0 +1,33 @@
+package main.sos;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GossipSimulatorTest {
+
+    private static GossipSimulator.Result run(int nodes, long seed) {
+        return new GossipSimulator(nodes, 8, 200, GossipScheduler.DEFAULT_CONFIG, seed)
+                .run(3_600_000);
+    }
+
+    @Test
+    public void convergesWithFewerMessagesThanFlood() {
+        for (int nodes : new int[] {16, 64}) {
+            for (long seed = 1; seed <= 3; seed++) {
+                GossipSimulator.Result result = run(nodes, seed);
+                String label = nodes + " nodes, seed " + seed + ": " + result;
+                assertTrue(label, result.convergenceMs >= 0);
+                assertTrue(label, result.criticalConvergenceMs <= result.convergenceMs);
+                assertTrue(label, result.messages < result.floodMessages);
+            }
+        }
+    }
+
+    @Test
+    public void criticalReportsConvergeBeforeFlood() {
+        GossipSimulator.Result result = run(64, 42);
+        assertTrue(result.toString(), result.criticalConvergenceMs >= 0);
+        assertTrue(result.toString(), result.criticalConvergenceMs < result.floodConvergenceMs);
+    }
+}
@@ -0,0 +1,86 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * วัดเวลาของ SeverityHeatmap ด้วย grid ขนาดเดียวกับในแอป (512 x 512 cell ละ 0.002 องศา)
+ * render ขึ้นกับจำนวน cell ไม่ใช่จำนวนรายงาน เพิ่ม/เปลี่ยนสถานะ/ลบเป็น O(1) ต่อรายงาน
+ *
+ * args: [จำนวนรายงาน]
+ */
+public class HeatmapBenchmark {
+
+    private static final int SIZE = 512;
+    private static final double CELL = 0.002;
+    private static final int RUNS = 21;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(47);
+        long start = ReportTime.now();
+        SeverityHeatmap heatmap = new SeverityHeatmap(13.75, 100.50, CELL, SIZE, start);
+        MainActivity.Report[] reports = new MainActivity.Report[count];
+        for (int i = 0; i < count; i++) {
+            MainActivity.Report report = MemoryReportStore.report(i + 1);
+            // กระจุกรอบจุดเกิดเหตุ มีส่วนน้อยอยู่นอก grid
+            report.location =
+                    new MainActivity.Location(
+                            13.75 + random.nextGaussian() * 0.2,
+                            100.50 + random.nextGaussian() * 0.2);
+            report.level = MainActivity.Severity.values()[random.nextInt(4)];
+            // เวลารายงานกระจายใน 5 วัน ทำให้ต้อง rebase ระหว่างเพิ่ม
+            report.timestamp = start + (long) i * 5 * 24 * 60 * 60_000L / count;
+            reports[i] = report;
+        }
+
+        long t0 = System.nanoTime();
+        for (MainActivity.Report report : reports) heatmap.put(report, report.timestamp);
+        long t1 = System.nanoTime();
+        long now = reports[count - 1].timestamp;
+        for (MainActivity.Report report : reports) {
+            report.status = MainActivity.ReportStatus.ACKNOWLEDGED;
+            heatmap.put(report, now);
+        }
+        long t2 = System.nanoTime();
+
+        int[] pixels = new int[SIZE * SIZE];
+        long[] nanos = new long[RUNS];
+        for (int run = -5; run < RUNS; run++) {
+            long t = System.nanoTime();
+            heatmap.render(pixels);
+            if (run >= 0) nanos[run] = System.nanoTime() - t;
+        }
+        Arrays.sort(nanos);
+
+        long t3 = System.nanoTime();
+        for (MainActivity.Report report : reports) heatmap.remove(report.id);
+        long t4 = System.nanoTime();
+        float residual = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                residual = Math.max(residual, heatmap.valueAt(column, row, now));
+            }
+        }
+
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%d reports on %dx%d: put %.0f ns/report, status change %.0f ns/report,"
+                                + " remove %.0f ns/report",
+                        count,
+                        SIZE,
+                        SIZE,
+                        (t1 - t0) / (double) count,
+                        (t2 - t1) / (double) count,
+                        (t4 - t3) / (double) count));
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "render median %.2f ms (max %.2f ms), residual after removing all %g",
+                        nanos[RUNS / 2] / 1e6,
+                        nanos[RUNS - 1] / 1e6,
+                        residual));
+    }
+}
@@ -0,0 +1,55 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IngressGuardTest {
+
+    private static final IngressGuard.Config CONFIG =
+            new IngressGuard.Config(4, 1, 8, 2, 60_000, 64, 1 << 8);
+
+    @Test
+    public void duplicatesAndRateLimitComeBeforeQuota() {
+        IngressGuard guard = new IngressGuard(CONFIG);
+        for (int id = 1; id <= 4; id++) {
+            assertEquals(IngressGuard.Verdict.ACCEPT, guard.check("peer", id, 0));
+        }
+        assertEquals(IngressGuard.Verdict.RATE_LIMITED, guard.check("peer", 5, 0));
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.check("other", 5, 0));
+        // check ไม่แตะโควตา (ยังไม่ได้ตรวจลายเซ็น)
+        assertEquals(0, guard.getCount(IngressGuard.Verdict.QUOTA_EXCEEDED));
+
+        guard.markSeen(1);
+        assertEquals(IngressGuard.Verdict.DUPLICATE, guard.check("other", 1, 0));
+        // token คืนตามเวลา
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.check("peer", 6, 1000));
+    }
+
+    @Test
+    public void originQuotaRefillsOverWindow() {
+        IngressGuard guard = new IngressGuard(CONFIG);
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.checkOrigin(7, 0));
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.checkOrigin(7, 0));
+        assertEquals(IngressGuard.Verdict.QUOTA_EXCEEDED, guard.checkOrigin(7, 0));
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.checkOrigin(8, 0));
+
+        // คืนหนึ่งฉบับทุก 30 วินาที (2 ฉบับต่อนาที)
+        assertEquals(IngressGuard.Verdict.QUOTA_EXCEEDED, guard.checkOrigin(7, 20_000));
+        assertEquals(IngressGuard.Verdict.ACCEPT, guard.checkOrigin(7, 40_000));
+        assertEquals(IngressGuard.Verdict.QUOTA_EXCEEDED, guard.checkOrigin(7, 40_000));
+        assertEquals(3, guard.getCount(IngressGuard.Verdict.QUOTA_EXCEEDED));
+    }
+
+    @Test
+    public void serverFeedIsNotLimitedPerOrigin() {
+        IngressGuard guard = new IngressGuard(IngressGuard.SERVER_CONFIG);
+        // backlog ของเซิร์ฟเวอร์: รายงานจำนวนมากจากผู้แจ้งคนเดียวในครั้งเดียว
+        for (int id = 1; id <= 1000; id++) {
+            assertEquals(IngressGuard.Verdict.ACCEPT, guard.check("server", id, 0));
+            assertEquals(IngressGuard.Verdict.ACCEPT, guard.checkOrigin(7, 0));
+        }
+        assertEquals(0, guard.getCount(IngressGuard.Verdict.QUOTA_EXCEEDED));
+        assertEquals(0, guard.getCount(IngressGuard.Verdict.RATE_LIMITED));
+    }
+}
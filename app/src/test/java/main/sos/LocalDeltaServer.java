@@ -0,0 +1,539 @@
+package main.sos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * เซิร์ฟเวอร์ประสานงานจำลองบน 127.0.0.1 พูดโปรโตคอลเดียวกับ DeltaSubscription
+ * ใช้ทดสอบการต่อใหม่/ส่งเฉพาะส่วนที่ขาด และเป็น benchmark ของอัตรา event ที่เข้าถึง UI (main)
+ *
+ * เก็บ delta ล่าสุดไม่เกิน retention รายการ client ที่ขอเลขที่เก่ากว่านั้น (หรือ 0, หรือมากกว่าที่มี
+ * เช่นเซิร์ฟเวอร์เริ่มใหม่) ได้ snapshot delta ที่ค้างส่งถูกรวมเป็น batch ละไม่เกิน ReportSync.MAX_BATCH
+ * HTTP แบบขั้นต่ำ: อ่าน request header แล้วตอบ 200 text/event-stream ปิด connection เมื่อจบ
+ */
+public class LocalDeltaServer implements AutoCloseable {
+
+    private static final String TAG = "LocalDeltaServer";
+    private static final long HEARTBEAT_MS = 15000;
+    private static final long DEFAULT_RETRY_MS = 1000;
+
+    private static class Delta {
+        final long sequence;
+        // อย่างใดอย่างหนึ่ง
+        final MainActivity.Report report;
+        final StatusEvent status;
+
+        Delta(long sequence, MainActivity.Report report, StatusEvent status) {
+            this.sequence = sequence;
+            this.report = report;
+            this.status = status;
+        }
+    }
+
+    private final int retention;
+    private final long retryMs;
+    private final ServerSocket server;
+    private final ArrayDeque<Delta> deltas = new ArrayDeque<>();
+    // สถานะล่าสุดของทุกรายงาน สำหรับ snapshot
+    private final Map<Integer, MainActivity.Report> latest = new LinkedHashMap<>();
+    private final Set<Socket> clients = Collections.synchronizedSet(new HashSet<Socket>());
+    private long sequence;
+    private boolean closed;
+    private long snapshots;
+    private long resumes;
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public LocalDeltaServer(int retention) throws IOException {
+        this(retention, DEFAULT_RETRY_MS);
+    }
+
+    /**
+     * retryMs คือค่า "retry:" ที่ส่งให้ client (เวลารอก่อนต่อใหม่)
+     */
+    public LocalDeltaServer(int retention, long retryMs) throws IOException {
+        this.retention = retention;
+        this.retryMs = retryMs;
+        this.server = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, TAG);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getLocalPort() + "/deltas");
+    }
+
+    public synchronized void publish(MainActivity.Report report) {
+        // delta ต้องไม่เปลี่ยนตามสถานะที่มาทีหลัง จึงแยกสำเนากับ latest
+        latest.put(report.id, SessionCheckpoint.copyOf(report));
+        append(new Delta(++sequence, SessionCheckpoint.copyOf(report), null));
+    }
+
+    public synchronized void publishStatus(StatusEvent event) {
+        MainActivity.Report report = latest.get(event.reportId);
+        if (report != null) event.applyTo(report);
+        append(new Delta(++sequence, null, event));
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized long getSnapshots() {
+        return snapshots;
+    }
+
+    public synchronized long getResumes() {
+        return resumes;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * ตัดทุก connection เหมือนสัญญาณหลุด client ต้องต่อใหม่เอง
+     */
+    public void dropConnections() {
+        synchronized (clients) {
+            for (Socket socket : clients) closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        closeQuietly(server);
+        dropConnections();
+    }
+
+    private void append(Delta delta) {
+        deltas.addLast(delta);
+        if (deltas.size() > retention) deltas.removeFirst();
+        notifyAll();
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            clients.add(socket);
+            Thread worker = new Thread(() -> serve(socket), TAG);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            long resume = readRequest(socket);
+            Writer out =
+                    new CountingWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.write(
+                    "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: text/event-stream\r\n"
+                            + "Cache-Control: no-cache\r\n"
+                            + "Connection: close\r\n\r\n");
+            out.write("retry: " + retryMs + "\n\n");
+            long sent = sendInitial(out, resume);
+            while (true) {
+                List<Delta> pending;
+                synchronized (this) {
+                    if (!closed && sequence == sent) wait(HEARTBEAT_MS);
+                    if (closed) return;
+                    pending = pendingAfter(sent);
+                }
+                if (pending == null) {
+                    out.write(":\n\n");
+                } else {
+                    writeDeltas(out, pending);
+                    sent = pending.get(pending.size() - 1).sequence;
+                }
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // client หลุดหรือถูกตัด
+        } finally {
+            clients.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * คืนค่า Last-Event-ID (0 ถ้าไม่มี)
+     */
+    private static long readRequest(Socket socket) throws IOException {
+        BufferedReader in =
+                new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String requestLine = in.readLine();
+        if (requestLine == null || !requestLine.startsWith("GET ")) {
+            throw new IOException("Unsupported request: " + requestLine);
+        }
+        long resume = 0;
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon < 0) continue;
+            if (line.substring(0, colon).trim().equalsIgnoreCase("Last-Event-ID")) {
+                try {
+                    resume = Long.parseLong(line.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    resume = 0;
+                }
+            }
+        }
+        return resume;
+    }
+
+    /**
+     * ส่งส่วนที่ขาดตั้งแต่ resume หรือ snapshot ถ้าต่อไม่ได้ คืนค่าเลขลำดับล่าสุดที่ส่งแล้ว
+     */
+    private long sendInitial(Writer out, long resume) throws IOException {
+        List<Delta> pending;
+        List<MainActivity.Report> snapshot = null;
+        long at;
+        synchronized (this) {
+            at = sequence;
+            long oldest = deltas.isEmpty() ? sequence + 1 : deltas.peekFirst().sequence;
+            if (resume <= 0 || resume > sequence || resume + 1 < oldest) {
+                snapshots++;
+                snapshot = new ArrayList<>(latest.size());
+                for (MainActivity.Report report : latest.values()) {
+                    snapshot.add(SessionCheckpoint.copyOf(report));
+                }
+                pending = null;
+            } else {
+                resumes++;
+                pending = pendingAfter(resume);
+            }
+        }
+        if (snapshot != null) {
+            writeSnapshot(out, snapshot, at);
+        } else if (pending != null) {
+            writeDeltas(out, pending);
+        }
+        out.flush();
+        return at;
+    }
+
+    private List<Delta> pendingAfter(long sent) {
+        if (sequence == sent) return null;
+        List<Delta> pending = new ArrayList<>((int) Math.min(sequence - sent, deltas.size()));
+        for (Delta delta : deltas) {
+            if (delta.sequence > sent) pending.add(delta);
+        }
+        return pending;
+    }
+
+    /**
+     * รายงานทั้งหมดแล้วตามด้วยสถานะปัจจุบัน (รายงานที่ client เห็นแล้วถูก IngressGuard กรองทิ้ง
+     * สถานะที่เปลี่ยนจึงต้องส่งแยก) มีแต่ event สุดท้ายที่มี id
+     */
+    private static void writeSnapshot(Writer out, List<MainActivity.Report> reports, long at)
+            throws IOException {
+        writeEvent(out, DeltaSubscription.EVENT_SNAPSHOT, Long.toString(at), -1);
+        for (int start = 0; start < reports.size(); start += ReportSync.MAX_BATCH) {
+            List<MainActivity.Report> batch =
+                    reports.subList(start, Math.min(reports.size(), start + ReportSync.MAX_BATCH));
+            writeEvent(out, DeltaSubscription.EVENT_REPORTS, DeltaSubscription.encodeReports(batch), -1);
+            List<StatusEvent> statuses = new ArrayList<>(batch.size());
+            for (MainActivity.Report report : batch) {
+                if (report.statusEvent != null) statuses.add(report.statusEvent);
+            }
+            writeEvent(out, DeltaSubscription.EVENT_STATUS, DeltaSubscription.encodeStatus(statuses), -1);
+        }
+        // ปิด snapshot ด้วยเลขลำดับ ถ้าหลุดก่อนถึงตรงนี้ client ขอ snapshot ใหม่
+        writeEvent(
+                out,
+                DeltaSubscription.EVENT_STATUS,
+                DeltaSubscription.encodeStatus(Collections.<StatusEvent>emptyList()),
+                at);
+    }
+
+    /**
+     * delta ชนิดเดียวกันที่อยู่ติดกันรวมเป็น event เดียว id = เลขลำดับของตัวสุดท้าย
+     */
+    private static void writeDeltas(Writer out, List<Delta> pending) throws IOException {
+        int start = 0;
+        while (start < pending.size()) {
+            boolean isReport = pending.get(start).report != null;
+            int end = start + 1;
+            while (end < pending.size()
+                    && end - start < ReportSync.MAX_BATCH
+                    && (pending.get(end).report != null) == isReport) {
+                end++;
+            }
+            long id = pending.get(end - 1).sequence;
+            if (isReport) {
+                List<MainActivity.Report> batch = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) batch.add(pending.get(i).report);
+                writeEvent(out, DeltaSubscription.EVENT_REPORTS, DeltaSubscription.encodeReports(batch), id);
+            } else {
+                List<StatusEvent> batch = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) batch.add(pending.get(i).status);
+                writeEvent(out, DeltaSubscription.EVENT_STATUS, DeltaSubscription.encodeStatus(batch), id);
+            }
+            start = end;
+        }
+    }
+
+    private static void writeEvent(Writer out, String event, String data, long id)
+            throws IOException {
+        out.write("event: ");
+        out.write(event);
+        out.write('\n');
+        if (id >= 0) {
+            out.write("id: ");
+            out.write(Long.toString(id));
+            out.write('\n');
+        }
+        out.write("data: ");
+        out.write(data);
+        out.write("\n\n");
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // ปิดอยู่แล้ว
+        }
+    }
+
+    private class CountingWriter extends java.io.FilterWriter {
+        CountingWriter(Writer out) {
+            super(new java.io.BufferedWriter(out, 16 * 1024));
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            bytesSent.incrementAndGet();
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            bytesSent.addAndGet(len);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            bytesSent.addAndGet(len);
+        }
+    }
+
+    // ---- benchmark ----
+
+    /**
+     * ฝั่ง UI จำลอง: ดึงจากคิวครั้งละไม่เกิน FRAME_BUDGET_NANOS ทุก 16 ms แบบ IngestionPipeline
+     * แล้วรวมเข้ารายการตาม id วัด latency จากตอน publish ถึงตอนเข้ารายการ
+     */
+    private static class FrameSink implements DeltaSubscription.Listener {
+        final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+        final Map<Integer, MainActivity.Report> merged = new java.util.HashMap<>();
+        final long[] publishedAt;
+        final long[] latencies;
+        int latencyCount;
+        long statusApplied;
+        volatile long snapshotsSeen;
+        volatile int connects;
+
+        FrameSink(int events) {
+            publishedAt = new long[events + 1];
+            latencies = new long[events + 1];
+        }
+
+        @Override
+        public void onReports(List<MainActivity.Report> reports) {
+            queue.addAll(reports);
+        }
+
+        @Override
+        public void onStatus(List<StatusEvent> events) {
+            queue.addAll(events);
+        }
+
+        @Override
+        public void onSnapshot(long sequence) {
+            snapshotsSeen++;
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+            if (connected) connects++;
+        }
+
+        /**
+         * หนึ่งเฟรม คืนค่าจำนวนรายการที่รวม
+         */
+        int frame() {
+            long deadline = System.nanoTime() + IngestionPipeline.FRAME_BUDGET_NANOS;
+            int count = 0;
+            Object item;
+            while ((item = queue.poll()) != null) {
+                long now = System.nanoTime();
+                if (item instanceof MainActivity.Report) {
+                    MainActivity.Report report = (MainActivity.Report) item;
+                    if (merged.put(report.id, report) == null && report.id < publishedAt.length) {
+                        latencies[latencyCount++] = now - publishedAt[report.id];
+                    }
+                } else {
+                    StatusEvent event = (StatusEvent) item;
+                    MainActivity.Report report = merged.get(event.reportId);
+                    if (report != null && event.applyTo(report)) statusApplied++;
+                }
+                count++;
+                if (now > deadline) break;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * args: [จำนวนรายงาน] [อัตราต่อวินาที, 0 = เร็วที่สุด]
+     * ส่งรายงานเข้าเซิร์ฟเวอร์ ตัด connection สามครั้งระหว่างทาง วัดอัตราที่เข้าถึง UI และ latency
+     * แล้วเช็กว่าได้ครบไม่ซ้ำและการต่อใหม่ไม่โหลด snapshot ซ้ำ
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        IngressGuard guard =
+                new IngressGuard(
+                        new IngressGuard.Config(1 << 20, 1e9, 4, 8, 60_000, 8192, 1 << 20));
+        FrameSink sink = new FrameSink(count);
+        // เก็บ delta พอให้ต่อใหม่ได้ทุกครั้ง (รายงาน + สถานะทุกฉบับที่สิบ)
+        try (LocalDeltaServer server = new LocalDeltaServer(count * 2)) {
+            // สถานะต้องเซ็น ใช้กุญแจเดียวแทนหน่วยกู้ภัย (sink ไม่ตรวจสิทธิ์)
+            DeviceIdentity rescuer = DeviceIdentity.generate();
+            DeltaSubscription subscription =
+                    new DeltaSubscription(
+                            server.getUrl(),
+                            new ReportEnvelope.Verifier(rescuer.getParams(), null),
+                            guard,
+                            sink);
+            subscription.start(0);
+            while (sink.connects == 0) Thread.sleep(1);
+
+            long start = System.nanoTime();
+            long nextFrame = start;
+            int published = 0;
+            int statuses = 0;
+            int frames = 0;
+            int drops = 0;
+            while (sink.merged.size() < count || subscription.getLastSequence() < server.getSequence()) {
+                long now = System.nanoTime();
+                long due = rate > 0 ? Math.min(count, (now - start) * rate / 1_000_000_000L) : count;
+                // ผลิตเป็นช่วงสั้นๆ ระหว่างเฟรม
+                long produceUntil = now + 2_000_000;
+                while (published < due && System.nanoTime() < produceUntil) {
+                    int id = ++published;
+                    sink.publishedAt[id] = System.nanoTime();
+                    server.publish(benchmarkReport(id));
+                    if (id % 10 == 0) {
+                        server.publishStatus(
+                                new StatusEvent(id, 1, MainActivity.ReportStatus.ACKNOWLEDGED, 0)
+                                        .signedBy(rescuer));
+                        statuses++;
+                    }
+                    if (drops < 3 && published == (drops + 1) * count / 4) {
+                        server.dropConnections();
+                        drops++;
+                    }
+                }
+                if (System.nanoTime() >= nextFrame) {
+                    sink.frame();
+                    frames++;
+                    nextFrame += 16_000_000;
+                } else {
+                    Thread.yield();
+                }
+                if (System.nanoTime() - start > 120_000_000_000L) {
+                    System.out.println("timeout");
+                    break;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            subscription.stop();
+
+            long[] latency = Arrays.copyOf(sink.latencies, sink.latencyCount);
+            Arrays.sort(latency);
+            System.out.println(
+                    String.format(
+                            Locale.US,
+                            "reports=%d statuses=%d received=%d applied=%d in %.0f ms "
+                                    + "-> %.0f events/s into UI over %d frames",
+                            published,
+                            statuses,
+                            sink.merged.size(),
+                            sink.statusApplied,
+                            elapsed / 1e6,
+                            (published + statuses) / (elapsed / 1e9),
+                            frames));
+            if (latency.length > 0) {
+                System.out.println(
+                        String.format(
+                                Locale.US,
+                                "latency publish->UI p50=%.1f ms p99=%.1f ms max=%.1f ms",
+                                latency[latency.length / 2] / 1e6,
+                                latency[Math.min(latency.length - 1, latency.length * 99 / 100)] / 1e6,
+                                latency[latency.length - 1] / 1e6));
+            }
+            System.out.println(
+                    String.format(
+                            Locale.US,
+                            "drops=%d reconnects=%d resumes=%d snapshots=%d bytes/event=%.1f",
+                            drops,
+                            subscription.getReconnects(),
+                            server.getResumes(),
+                            server.getSnapshots(),
+                            server.getBytesSent() / (double) (published + statuses)));
+        }
+    }
+
+    private static MainActivity.Report benchmarkReport(int id) {
+        MainActivity.Report report =
+                new MainActivity.Report(
+                        id,
+                        "ผู้ประสบภัย " + id,
+                        "08" + (10_000_000 + id),
+                        "ติดอยู่ชั้นสอง",
+                        new MainActivity.Location(13.7 + (id % 1000) * 1e-4, 100.5 + (id / 1000) * 1e-4),
+                        System.currentTimeMillis(),
+                        MainActivity.Severity.HIGH,
+                        MainActivity.ReportStatus.WAITING,
+                        MainActivity.ReportType.FLOOD,
+                        false);
+        return report;
+    }
+}
@@ -0,0 +1,135 @@
+package main.sos;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReportSync.Store ในหน่วยความจำสำหรับทดสอบ/วัดผลการซิงก์บน JVM
+ */
+class MemoryReportStore implements ReportSync.Store {
+
+    final Map<Integer, MainActivity.Report> reports = new LinkedHashMap<>();
+    final List<StatusEvent> statuses = new ArrayList<>();
+
+    void add(MainActivity.Report report) {
+        reports.put(report.id, report);
+    }
+
+    @Override
+    public synchronized List<MainActivity.Report> snapshot() {
+        return new ArrayList<>(reports.values());
+    }
+
+    @Override
+    public synchronized void addReports(List<MainActivity.Report> received) {
+        for (MainActivity.Report report : received) {
+            MainActivity.Report known = reports.get(report.id);
+            // แบบเดียวกับ MainActivity.mergeReport: ซองฉบับแก้จากผู้แจ้งคนเดิมแทนฉบับเก่า
+            if (known == null
+                    || (known.envelope != null
+                            && report.envelope != null
+                            && ReportEnvelope.sameSigner(report.envelope, known.envelope)
+                            && ReportEnvelope.peekContentVersion(report.envelope)
+                                    > ReportEnvelope.peekContentVersion(known.envelope))) {
+                reports.put(report.id, report);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void applyStatus(List<StatusEvent> events) {
+        for (StatusEvent event : events) {
+            statuses.add(event);
+            MainActivity.Report report = reports.get(event.reportId);
+            if (report != null) event.applyTo(report);
+        }
+    }
+
+    @Override
+    public List<AssignmentSolver.Rescuer> rescuers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void applyRescuers(List<AssignmentSolver.Rescuer> received) {}
+
+    static MainActivity.Report report(int id) {
+        return new MainActivity.Report(
+                id,
+                "ผู้แจ้ง " + id,
+                "08" + (10000000 + id % 90000000),
+                "ติดอยู่ในบ้าน น้ำท่วมสูง",
+                new MainActivity.Location(13.7 + (id % 1000) * 1e-4, 100.5 + (id % 777) * 1e-4),
+                1_700_000_000_000L + id,
+                MainActivity.Severity.fromCode(id & 3),
+                MainActivity.ReportStatus.WAITING,
+                MainActivity.ReportType.FLOOD,
+                false);
+    }
+
+    /**
+     * รายงานที่เซ็นเป็นซองแล้ว (ไม่เข้ารหัส) แบบที่ ReportSync ส่งต่อเมื่อมี verifier
+     */
+    static MainActivity.Report sealed(int id, DeviceIdentity identity) throws Exception {
+        MainActivity.Report report = report(id);
+        report.envelope = ReportEnvelope.seal(report, identity, null, 1);
+        return report;
+    }
+
+    /**
+     * ซิงก์ a (initiator) กับ b ผ่าน TCP บน loopback แบบเดียวกับ WifiDirectSync
+     * คืนผลของทั้งสองฝั่ง [a, b]
+     */
+    static ReportSync.Result[] sync(
+            MemoryReportStore a, MemoryReportStore b, IngressGuard.Config config)
+            throws Exception {
+        return sync(a, b, config, null);
+    }
+
+    /**
+     * verifier ใช้ร่วมกันทั้งสองฝั่ง ถ้าเป็น null ซองและ StatusEvent จะถูกข้าม
+     */
+    static ReportSync.Result[] sync(
+            MemoryReportStore a,
+            MemoryReportStore b,
+            IngressGuard.Config config,
+            ReportEnvelope.Verifier verifier)
+            throws Exception {
+        ReportSync.Result[] results = new ReportSync.Result[2];
+        Exception[] error = new Exception[1];
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread responder =
+                    new Thread(
+                            () -> {
+                                try (Socket socket = server.accept()) {
+                                    IngressGuard guard = new IngressGuard(config);
+                                    results[1] =
+                                            new ReportSync(b, verifier, guard, "a")
+                                                    .run(
+                                                            socket.getInputStream(),
+                                                            socket.getOutputStream(),
+                                                            false);
+                                } catch (IOException e) {
+                                    error[0] = e;
+                                }
+                            });
+            responder.start();
+            try (Socket socket =
+                    new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+                results[0] =
+                        new ReportSync(a, verifier, new IngressGuard(config), "b")
+                                .run(socket.getInputStream(), socket.getOutputStream(), true);
+            }
+            responder.join();
+        }
+        if (error[0] != null) throw error[0];
+        return results;
+    }
+}
@@ -0,0 +1,43 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ReportClusterIndexTest {
+
+    private static MainActivity.Report report(
+            int id, MainActivity.Severity severity, MainActivity.ReportStatus status) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        report.location = new MainActivity.Location(13.7005, 100.5005);
+        report.level = severity;
+        report.status = status;
+        return report;
+    }
+
+    @Test
+    public void finishedReportsLeaveTheSummary() {
+        ReportClusterIndex index = new ReportClusterIndex();
+        MainActivity.Report critical =
+                report(1, MainActivity.Severity.CRITICAL, MainActivity.ReportStatus.WAITING);
+        index.put(critical);
+        index.put(report(2, MainActivity.Severity.LOW, MainActivity.ReportStatus.EN_ROUTE));
+        index.put(report(3, MainActivity.Severity.HIGH, MainActivity.ReportStatus.CANCELLED));
+        assertEquals(2, index.getReportCount());
+        assertEquals(1, index.getAreaCount(MainActivity.Severity.CRITICAL));
+
+        critical.status = MainActivity.ReportStatus.RESCUED;
+        index.put(critical);
+        ReportClusterIndex.Cluster cluster = index.getCluster(13.7005, 100.5005);
+        assertEquals(1, cluster.getCount());
+        assertEquals(0, cluster.getCount(MainActivity.Severity.CRITICAL));
+        assertEquals(MainActivity.Severity.LOW, cluster.getWorstSeverity());
+        assertEquals(0, index.getAreaCount(MainActivity.Severity.CRITICAL));
+        assertEquals(1, index.getAreaCount(MainActivity.Severity.LOW));
+
+        index.remove(2);
+        assertEquals(0, index.getAreaCount());
+        assertNull(index.getCluster(13.7005, 100.5005));
+    }
+}
@@ -0,0 +1,168 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+import org.junit.Test;
+
+public class ReportEnvelopeTest {
+
+    private static KeyPair rescueNetwork() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    private static MainActivity.Report report() {
+        MainActivity.Report report = MemoryReportStore.report(77);
+        report.name = "นางสาวมาลี ใจดี";
+        report.contact = "081-234-5678";
+        report.details = "ติดอยู่บนหลังคาบ้าน มีผู้สูงอายุ 2 คน";
+        return report;
+    }
+
+    @Test
+    public void rescueKeyDecryptsWhatRelaysCannotRead() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        KeyPair rescue = rescueNetwork();
+        MainActivity.Report original = report();
+        byte[] envelope = ReportEnvelope.seal(original, reporter, rescue.getPublic(), 5);
+
+        // ข้อความลับไม่ปรากฏในซอง
+        String visible = new String(envelope, StandardCharsets.ISO_8859_1);
+        for (String secret : new String[] {original.name, original.contact, original.details}) {
+            byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+            assertEquals(-1, visible.indexOf(new String(bytes, StandardCharsets.ISO_8859_1)));
+        }
+        assertEquals(77, ReportEnvelope.peekReportId(envelope));
+        assertEquals(5, ReportEnvelope.peekContentVersion(envelope));
+
+        MainActivity.Report relayed =
+                new ReportEnvelope.Verifier(reporter.getParams(), null).open(envelope);
+        assertEquals(77, relayed.id);
+        assertEquals(original.level, relayed.level);
+        assertEquals(original.location.lat, relayed.location.lat, 1e-7);
+        assertEquals(original.timestamp, relayed.timestamp);
+        assertEquals("", relayed.name);
+        assertEquals("", relayed.details);
+        assertArrayEquals(envelope, relayed.envelope);
+
+        MainActivity.Report opened =
+                new ReportEnvelope.Verifier(reporter.getParams(), rescue.getPrivate())
+                        .open(envelope);
+        assertEquals(original.name, opened.name);
+        assertEquals(original.contact, opened.contact);
+        assertEquals(original.details, opened.details);
+
+        // กุญแจชั่วคราวใหม่ทุกครั้ง ซองของรายงานเดิมจึงไม่ซ้ำกัน
+        byte[] again = ReportEnvelope.seal(original, reporter, rescue.getPublic(), 5);
+        assertFalse(Arrays.equals(envelope, again));
+    }
+
+    @Test
+    public void rejectsTamperedCiphertextTagAndPublicPart() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        KeyPair rescue = rescueNetwork();
+        byte[] envelope = ReportEnvelope.seal(report(), reporter, rescue.getPublic(), 1);
+        ReportEnvelope.Verifier rescuer =
+                new ReportEnvelope.Verifier(reporter.getParams(), rescue.getPrivate());
+        rescuer.open(envelope);
+
+        int publicLength = readShort(envelope, 2 + DeviceIdentity.PUBLIC_KEY_SIZE);
+        int publicStart = 2 + DeviceIdentity.PUBLIC_KEY_SIZE + 2;
+        int cipherStart = publicStart + publicLength + DeviceIdentity.PUBLIC_KEY_SIZE + 2;
+        int cipherLength = readShort(envelope, cipherStart - 2);
+
+        // แก้โดยไม่เซ็นใหม่: ลายเซ็นไม่ผ่าน แม้ id นี้เคยผ่านแล้ว (cache เทียบ digest ของซอง)
+        byte[] flipped = envelope.clone();
+        flipped[cipherStart] ^= 1;
+        assertRejected(rescuer, flipped, GeneralSecurityException.class);
+
+        // ผู้เซ็นเองแก้ (หรือซองปลอมที่เซ็นถูกต้อง): AES-GCM ตรวจ tag ไม่ผ่าน
+        byte[] body = envelope.clone();
+        body[cipherStart] ^= 1;
+        assertRejected(rescuer, resign(body, reporter), AEADBadTagException.class);
+        byte[] tag = envelope.clone();
+        tag[cipherStart + cipherLength - 1] ^= 1;
+        assertRejected(rescuer, resign(tag, reporter), AEADBadTagException.class);
+        // ส่วนที่เปิดเผยเป็น AAD: ย้าย ciphertext ไปติดกับรายงานอื่นไม่ได้
+        byte[] moved = envelope.clone();
+        moved[publicStart + 1 + 3] ^= 1;
+        assertRejected(rescuer, resign(moved, reporter), AEADBadTagException.class);
+
+        // กุญแจของเครือข่ายอื่นเปิดไม่ได้ แต่ relay ที่ไม่มีกุญแจยังตรวจลายเซ็นและส่งต่อได้
+        ReportEnvelope.Verifier other =
+                new ReportEnvelope.Verifier(reporter.getParams(), rescueNetwork().getPrivate());
+        assertRejected(other, envelope, AEADBadTagException.class);
+        MainActivity.Report relayed =
+                new ReportEnvelope.Verifier(reporter.getParams(), null).open(envelope);
+        assertEquals(77, relayed.id);
+    }
+
+    @Test
+    public void cacheSkipsSignatureCheckOnlyForSameBytes() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        byte[] first = ReportEnvelope.seal(report(), reporter, null, 1);
+        byte[] edited = ReportEnvelope.seal(report(), reporter, null, 2);
+
+        verifier.open(first);
+        verifier.open(first);
+        assertEquals(1, verifier.getVerifications());
+        assertEquals(1, verifier.getCacheHits());
+
+        // ฉบับแก้ของ id เดิมต้องตรวจใหม่ แล้วแทนที่ของเดิมใน cache
+        verifier.open(edited);
+        verifier.open(edited);
+        assertEquals(2, verifier.getVerifications());
+        assertEquals(2, verifier.getCacheHits());
+    }
+
+    private static void assertRejected(
+            ReportEnvelope.Verifier verifier,
+            byte[] envelope,
+            Class<? extends GeneralSecurityException> expected)
+            throws Exception {
+        try {
+            MainActivity.Report report = verifier.open(envelope);
+            fail("opened report " + report.id);
+        } catch (GeneralSecurityException e) {
+            if (!expected.isInstance(e)) throw e;
+        }
+    }
+
+    /**
+     * เซ็นไบต์ก่อนลายเซ็นใหม่ (จำลองซองที่ผู้ถือกุญแจของผู้แจ้งสร้างขึ้นเอง)
+     */
+    private static byte[] resign(byte[] envelope, DeviceIdentity identity) throws Exception {
+        int signatureLength = signatureStart(envelope);
+        byte[] signature = identity.sign(envelope, 0, signatureLength);
+        byte[] out = Arrays.copyOf(envelope, signatureLength + 1 + signature.length);
+        out[signatureLength] = (byte) signature.length;
+        System.arraycopy(signature, 0, out, signatureLength + 1, signature.length);
+        return out;
+    }
+
+    private static int signatureStart(byte[] envelope) {
+        int offset = 2 + DeviceIdentity.PUBLIC_KEY_SIZE;
+        offset += 2 + readShort(envelope, offset);
+        if ((envelope[1] & 1) != 0) {
+            offset += DeviceIdentity.PUBLIC_KEY_SIZE;
+            offset += 2 + readShort(envelope, offset);
+        }
+        return offset + 8;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+}
@@ -0,0 +1,217 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ReportExportTest {
+
+    /**
+     * ข้อความที่ต้อง escape/quote ทั้งใน JSON และ CSV
+     */
+    private static List<MainActivity.Report> tricky() {
+        List<MainActivity.Report> reports = new ArrayList<>();
+        MainActivity.Report quoted = MemoryReportStore.report(1);
+        quoted.name = "นาย \"สมชาย\" ใจดี";
+        quoted.contact = "081-234-5678, 089-111-2222";
+        quoted.details = "น้ำท่วม\r\nชั้น 2, รอเรือ\nมีเด็ก \"2\" คน";
+        reports.add(quoted);
+
+        MainActivity.Report escaped = MemoryReportStore.report(2);
+        escaped.name = "";
+        escaped.contact = "\"";
+        escaped.details = " ติดอยู่\tบนหลังคา \\ ชั้น/2 \u0001 🆘 ";
+        escaped.location = new MainActivity.Location(-0.5, -179.9999999);
+        reports.add(escaped);
+
+        MainActivity.Report resolved = MemoryReportStore.report(Integer.MAX_VALUE);
+        resolved.details = "ส่งด่วนด้วยการกดค้าง ยังไม่มีรายละเอียด";
+        resolved.status = MainActivity.ReportStatus.RESCUED;
+        resolved.statusVersion = 3;
+        resolved.relayed = true;
+        resolved.timestamp = ReportTime.UNKNOWN;
+        reports.add(resolved);
+
+        reports.addAll(CompressionBenchmark.corpus(new Random(42), 2500));
+        return reports;
+    }
+
+    private static byte[] export(List<MainActivity.Report> reports, ReportExport.Format format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(
+                reports.size(), ReportExport.export(reports, format, Channels.newChannel(out)));
+        return out.toByteArray();
+    }
+
+    private static List<MainActivity.Report> importAll(
+            byte[] file, ReportExport.Format format, List<Integer> batchSizes) throws IOException {
+        List<MainActivity.Report> imported = new ArrayList<>();
+        long count =
+                ReportExport.importReports(
+                        Channels.newChannel(new ByteArrayInputStream(file)),
+                        format,
+                        batch -> {
+                            batchSizes.add(batch.size());
+                            imported.addAll(batch);
+                        });
+        assertEquals(imported.size(), count);
+        return imported;
+    }
+
+    private static void assertRoundTrip(ReportExport.Format format) throws IOException {
+        List<MainActivity.Report> reports = tricky();
+        byte[] file = export(reports, format);
+        assertEquals(
+                format,
+                ReportExport.detect(new BufferedInputStream(new ByteArrayInputStream(file))));
+        List<Integer> batches = new ArrayList<>();
+        List<MainActivity.Report> imported = importAll(file, format, batches);
+        assertEquals(Arrays.asList(1024, 1024, 455), batches);
+        assertEquals(reports.size(), imported.size());
+        for (int i = 0; i < reports.size(); i++) {
+            assertSameReport(reports.get(i), imported.get(i));
+        }
+    }
+
+    private static void assertSameReport(MainActivity.Report expected, MainActivity.Report actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.contact, actual.contact);
+        assertEquals(expected.details, actual.details);
+        assertEquals(expected.location.lat, actual.location.lat, 1e-7);
+        assertEquals(expected.location.lng, actual.location.lng, 1e-7);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.level, actual.level);
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.status, actual.status);
+        assertEquals(expected.statusVersion, actual.statusVersion);
+        assertEquals(expected.relayed, actual.relayed);
+    }
+
+    @Test
+    public void geoJsonRoundTrip() throws IOException {
+        assertRoundTrip(ReportExport.Format.GEOJSON);
+    }
+
+    @Test
+    public void csvRoundTripQuotesThaiTextPerRfc4180() throws IOException {
+        assertRoundTrip(ReportExport.Format.CSV);
+        String csv =
+                new String(export(tricky().subList(0, 2), ReportExport.Format.CSV),
+                        StandardCharsets.UTF_8);
+        assertTrue(csv.startsWith("id,lat,lng,"));
+        assertTrue(csv.contains(",\"นาย \"\"สมชาย\"\" ใจดี\",\"081-234-5678, 089-111-2222\","));
+        assertTrue(csv.contains(",\"น้ำท่วม\r\nชั้น 2, รอเรือ\nมีเด็ก \"\"2\"\" คน\"\r\n"));
+        // ไม่มีอักขระพิเศษ ไม่ต้อง quote
+        assertTrue(csv.contains(",-0.5000000,-179.9999999,"));
+        assertTrue(csv.contains(",,\"\"\"\", ติดอยู่\t"));
+    }
+
+    @Test
+    public void binaryRoundTripKeepsEnvelopes() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        List<MainActivity.Report> reports = tricky();
+        for (int i = 0; i < 3; i++) {
+            reports.set(i, MemoryReportStore.sealed(100 + i, reporter));
+        }
+        byte[] file = export(reports, ReportExport.Format.BINARY);
+        List<MainActivity.Report> imported =
+                importAll(file, ReportExport.Format.BINARY, new ArrayList<Integer>());
+        assertEquals(reports.size(), imported.size());
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        for (int i = 0; i < reports.size(); i++) {
+            assertSameReport(reports.get(i), imported.get(i));
+            if (i < 3) {
+                assertArrayEquals(reports.get(i).envelope, imported.get(i).envelope);
+                assertEquals(100 + i, verifier.open(imported.get(i).envelope).id);
+            } else {
+                assertNull(imported.get(i).envelope);
+            }
+        }
+
+        // ไฟล์ถูกตัดท้ายกลางรายงาน: ได้รายงานที่อ่านครบก่อนหน้า
+        byte[] truncated = Arrays.copyOf(file, file.length - 10);
+        assertEquals(
+                reports.size() - 1,
+                importAll(truncated, ReportExport.Format.BINARY, new ArrayList<Integer>())
+                        .size());
+    }
+
+    @Test
+    public void readsGeoJsonFromOtherTools() throws IOException {
+        String json =
+                "\uFEFF{ \"type\" : \"FeatureCollection\",\n"
+                        + "  \"crs\": {\"type\":\"name\","
+                        + "\"properties\":{\"name\":\"EPSG:4326\"}},\n"
+                        + "  \"features\" : [\n"
+                        + "    { \"type\":\"Feature\",\n"
+                        + "      \"properties\": { \"id\": 5, \"severity\":\"HIGH\","
+                        + " \"type\":\"FLOOD\", \"status\":\"WAITING\", \"statusVersion\": 2.0,"
+                        + " \"timestamp\": null, \"relayed\": false,"
+                        + " \"name\":\"\\u0e2a\\u0e21\\u0e0a\\u0e32\\u0e22\","
+                        + " \"extra\": [1, {\"a\": [true, null, []]}, -2.5e3, {}],"
+                        + " \"details\":\"ชั้น\\/2\" },\n"
+                        + "      \"geometry\": { \"type\":\"Point\","
+                        + " \"coordinates\": [ 100.5, 1.375e1, 4.0 ] } }\n"
+                        + "  ] }\n";
+        List<MainActivity.Report> imported =
+                importAll(
+                        json.getBytes(StandardCharsets.UTF_8),
+                        ReportExport.Format.GEOJSON,
+                        new ArrayList<Integer>());
+        assertEquals(1, imported.size());
+        MainActivity.Report report = imported.get(0);
+        assertEquals(5, report.id);
+        assertEquals(2, report.statusVersion);
+        assertEquals("สมชาย", report.name);
+        assertEquals("", report.contact);
+        assertEquals("ชั้น/2", report.details);
+        assertEquals(13.75, report.location.lat, 0);
+        assertEquals(100.5, report.location.lng, 0);
+        assertEquals(ReportTime.UNKNOWN, report.timestamp);
+        assertEquals(MainActivity.Severity.HIGH, report.level);
+    }
+
+    @Test
+    public void rejectsMalformedGeoJson() {
+        String feature =
+                "{\"geometry\":{\"coordinates\":[100.5,13.7]},\"properties\":{\"id\":1,"
+                        + "\"severity\":\"HIGH\",\"type\":\"FLOOD\",\"status\":\"WAITING\"";
+        String[] malformed = {
+            "{\"features\":[" + feature + "}}",
+            "{\"features\":[" + feature + ",}}]}",
+            "{\"features\":[" + feature + "}} {}]}",
+            "{\"features\":[" + feature + ",\"name\":\"ไม่ปิด}}]}",
+            "{\"features\":[" + feature + ",\"name\":\"\\x\"}}]}",
+            "{\"features\":[" + feature + ",\"relayed\":yes}}]}",
+            "{\"features\":[" + feature + "}}]} trailing",
+            "{\"features\":[{\"properties\":{\"id\":1.5}}]}",
+        };
+        for (String json : malformed) {
+            try {
+                importAll(
+                        json.getBytes(StandardCharsets.UTF_8),
+                        ReportExport.Format.GEOJSON,
+                        new ArrayList<Integer>());
+                fail("accepted " + json);
+            } catch (IOException expected) {
+                // ไฟล์เสีย
+            }
+        }
+    }
+}
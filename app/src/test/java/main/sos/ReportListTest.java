@@ -0,0 +1,102 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class ReportListTest {
+
+    @Test
+    public void matchesArrayListAndKeepsSnapshotsIntact() {
+        Random random = new Random(40);
+        ReportList list = new ReportList();
+        List<MainActivity.Report> model = new ArrayList<>();
+        List<List<MainActivity.Report>> snapshots = new ArrayList<>();
+        List<List<MainActivity.Report>> expected = new ArrayList<>();
+        int nextId = 0;
+        for (int step = 0; step < 20_000; step++) {
+            int op = random.nextInt(10);
+            if (op < 3 || model.isEmpty()) {
+                MainActivity.Report report = MemoryReportStore.report(++nextId);
+                list.add(0, report);
+                model.add(0, report);
+            } else if (op < 5) {
+                MainActivity.Report report = MemoryReportStore.report(++nextId);
+                list.add(report);
+                model.add(report);
+            } else if (op == 5) {
+                int index = random.nextInt(model.size() + 1);
+                MainActivity.Report report = MemoryReportStore.report(++nextId);
+                list.add(index, report);
+                model.add(index, report);
+            } else if (op < 8) {
+                MainActivity.Report victim = model.remove(random.nextInt(model.size()));
+                // เทียบด้วย id: สำเนาก็ลบได้
+                assertTrue(list.remove(SessionCheckpoint.copyOf(victim)));
+                assertFalse(list.contains(victim));
+            } else if (op == 8) {
+                int index = random.nextInt(model.size());
+                MainActivity.Report copy = SessionCheckpoint.copyOf(model.get(index));
+                assertTrue(list.replace(copy));
+                model.set(index, copy);
+            } else if (random.nextInt(20) == 0) {
+                Set<MainActivity.Report> evicted = new HashSet<>();
+                for (int i = 0; i < model.size(); i += 1 + random.nextInt(8)) {
+                    evicted.add(model.get(i));
+                }
+                list.removeAll(evicted);
+                model.removeAll(evicted);
+            } else {
+                snapshots.add(list.snapshot());
+                expected.add(new ArrayList<>(model));
+                assertSame(snapshots.get(snapshots.size() - 1), list.snapshot());
+            }
+            assertEquals(model.size(), list.size());
+        }
+        assertEquals(model, list);
+        assertEquals(model, list.snapshot());
+        assertTrue(snapshots.size() > 100);
+        // snapshot เก่าไม่เปลี่ยนตามการแก้ที่ตามมา แม้ใช้ chunk ร่วมกัน
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(expected.get(i), snapshots.get(i));
+        }
+    }
+
+    @Test
+    public void keepsChunksFullWhenGrowingAtEitherEnd() {
+        ReportList list = new ReportList();
+        for (int id = 1; id <= 10 * ReportList.CHUNK_SIZE; id++) {
+            list.add(0, MemoryReportStore.report(id));
+            list.snapshot();
+        }
+        List<MainActivity.Report> snapshot = list.snapshot();
+        list.remove(MemoryReportStore.report(1));
+        list.add(MemoryReportStore.report(0));
+        assertEquals(10 * ReportList.CHUNK_SIZE, snapshot.size());
+        assertEquals(1, snapshot.get(snapshot.size() - 1).id);
+        assertEquals(0, list.get(list.size() - 1).id);
+        assertEquals(10 * ReportList.CHUNK_SIZE, list.get(0).id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateIds() {
+        ReportList list = new ReportList();
+        list.add(MemoryReportStore.report(1));
+        list.add(0, MemoryReportStore.report(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsReadOnly() {
+        ReportList list = new ReportList();
+        list.add(MemoryReportStore.report(1));
+        list.snapshot().remove(0);
+    }
+}
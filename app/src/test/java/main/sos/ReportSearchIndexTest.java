@@ -0,0 +1,68 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class ReportSearchIndexTest {
+
+    private static MainActivity.Report report(int id, String contact) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        report.contact = contact;
+        return report;
+    }
+
+    private static Set<Integer> ids(List<MainActivity.Report> reports) {
+        Set<Integer> ids = new HashSet<>();
+        for (MainActivity.Report report : reports) ids.add(report.id);
+        return ids;
+    }
+
+    private static Set<Integer> search(ReportSearchIndex index, String query) {
+        return ids(index.search(query, ReportSearchIndex.Filter.NONE));
+    }
+
+    @Test
+    public void digitPrefixesMatchPhoneNumbers() {
+        ReportSearchIndex index = new ReportSearchIndex();
+        index.put(report(1, "081-234-5678"));
+        index.put(report(2, "0899999999"));
+        index.put(report(3, "บ้านเลขที่ 12/3"));
+
+        assertEquals(Set.of(1, 2), search(index, "08"));
+        assertEquals(Set.of(1), search(index, "0812"));
+        assertEquals(Set.of(1), search(index, "08123"));
+        assertEquals(Set.of(1), search(index, "234"));
+        assertEquals(Set.of(3), search(index, "12"));
+        assertTrue(search(index, "07").isEmpty());
+    }
+
+    @Test
+    public void updatesAcrossCompactionKeepResultsExact() {
+        ReportSearchIndex index = new ReportSearchIndex();
+        int count = 1500;
+        for (int id = 1; id <= count; id++) {
+            index.put(report(id, String.format("08%08d", id)));
+        }
+        // แก้ไขทุกฉบับหลายรอบ ให้ compact หลายครั้งระหว่างทาง เบอร์ของ id คู่เปลี่ยนเป็น 09
+        for (int round = 0; round < 4; round++) {
+            for (int id = 1; id <= count; id++) {
+                String prefix = id % 2 == 0 && round == 3 ? "09" : "08";
+                index.put(report(id, String.format(prefix + "%08d", id)));
+            }
+        }
+        index.remove(1);
+
+        assertEquals(count - 1, index.size());
+        assertEquals(count / 2 - 1, search(index, "08").size());
+        assertEquals(count / 2, search(index, "09").size());
+        assertEquals(Set.of(3), search(index, "0800000003"));
+        assertTrue(search(index, "0800000002").isEmpty());
+        assertTrue(search(index, "0800000001").isEmpty());
+        assertEquals(count - 1, index.search("", ReportSearchIndex.Filter.NONE).size());
+    }
+}
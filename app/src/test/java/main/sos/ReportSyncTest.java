@@ -0,0 +1,174 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class ReportSyncTest {
+
+    static final IngressGuard.Config OPEN =
+            new IngressGuard.Config(
+                    Integer.MAX_VALUE, 1e9, 4, Integer.MAX_VALUE, 60_000, 8192, 1 << 16);
+
+    @Test
+    public void reconcilesMissingReports() throws Exception {
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        for (int id = 1; id <= 300; id++) a.add(MemoryReportStore.report(id));
+        for (int id = 200; id <= 500; id++) b.add(MemoryReportStore.report(id));
+
+        ReportSync.Result[] results = MemoryReportStore.sync(a, b, OPEN);
+
+        assertEquals(500, a.reports.size());
+        assertEquals(500, b.reports.size());
+        assertEquals(200, results[0].reportsReceived);
+        assertEquals(199, results[1].reportsReceived);
+
+        // ครั้งที่สองไม่มีอะไรต่างกัน จบในรอบเดียว
+        results = MemoryReportStore.sync(a, b, OPEN);
+        assertEquals(0, results[0].reportsReceived + results[1].reportsReceived);
+        assertEquals(1, results[0].rounds);
+    }
+
+    @Test
+    public void reconcilesSignedStatus() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        DeviceIdentity rescuer = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(rescuer.getParams(), null);
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        for (int id = 1; id <= 20; id++) a.add(MemoryReportStore.sealed(id, reporter));
+        for (int id = 11; id <= 30; id++) b.add(MemoryReportStore.sealed(id, reporter));
+        new StatusEvent(15, 1, MainActivity.ReportStatus.ACKNOWLEDGED, 0)
+                .signedBy(rescuer)
+                .applyTo(b.reports.get(15));
+
+        ReportSync.Result[] results = MemoryReportStore.sync(a, b, OPEN, verifier);
+
+        assertEquals(30, a.reports.size());
+        assertEquals(30, b.reports.size());
+        assertEquals(1, results[0].statusReceived);
+        assertEquals(MainActivity.ReportStatus.ACKNOWLEDGED, a.reports.get(15).status);
+        assertEquals(1, a.reports.get(15).statusVersion);
+
+        results = MemoryReportStore.sync(a, b, OPEN, verifier);
+        assertEquals(1, results[0].rounds);
+    }
+
+    @Test
+    public void unsignedStatusIsNotShared() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        for (int id = 1; id <= 10; id++) {
+            MainActivity.Report report = MemoryReportStore.sealed(id, reporter);
+            a.add(report);
+            b.add(SessionCheckpoint.copyOf(report));
+        }
+        new StatusEvent(7, 3, MainActivity.ReportStatus.RESCUED, 0).applyTo(b.reports.get(7));
+
+        ReportSync.Result[] results = MemoryReportStore.sync(a, b, OPEN, verifier);
+
+        // สถานะที่ไม่ได้เซ็นนับเป็น WAITING จึงไม่ต่างกันและไม่ต้องแลกอะไร
+        assertEquals(1, results[0].rounds);
+        assertEquals(MainActivity.ReportStatus.WAITING, a.reports.get(7).status);
+        assertTrue(a.statuses.isEmpty());
+    }
+
+    @Test
+    public void unsignedReportsAreNotRelayedOnceKeysLoad() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        a.add(MemoryReportStore.report(1));
+        a.add(MemoryReportStore.sealed(2, reporter));
+
+        MemoryReportStore.sync(a, b, OPEN, verifier);
+
+        assertEquals(1, b.reports.size());
+        assertTrue(b.reports.containsKey(2));
+    }
+
+    @Test
+    public void envelopeCarriesSignedStatus() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        MainActivity.Report report = MemoryReportStore.report(42);
+        report.envelope = ReportEnvelope.seal(report, reporter, null, 1);
+        new StatusEvent(42, 1, MainActivity.ReportStatus.RESCUED, 0)
+                .signedBy(reporter)
+                .applyTo(report);
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        a.add(report);
+
+        MemoryReportStore.sync(a, b, OPEN, verifier);
+
+        MainActivity.Report received = b.reports.get(42);
+        assertEquals(MainActivity.ReportStatus.RESCUED, received.status);
+        assertTrue(received.statusEvent.isAuthorizedFor(received, null));
+        assertEquals(1, b.statuses.size());
+    }
+
+    @Test
+    public void editedEnvelopeReplacesCopyPeerAlreadyHas() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        DeviceIdentity forger = DeviceIdentity.generate();
+        ReportEnvelope.Verifier verifier = new ReportEnvelope.Verifier(reporter.getParams(), null);
+        MemoryReportStore a = new MemoryReportStore();
+        MemoryReportStore b = new MemoryReportStore();
+        for (int id = 1; id <= 3; id++) {
+            MainActivity.Report report = MemoryReportStore.sealed(id, reporter);
+            a.add(report);
+            b.add(SessionCheckpoint.copyOf(report));
+        }
+        MainActivity.Report edited = MemoryReportStore.report(2);
+        edited.details = "ย้ายขึ้นชั้นสองแล้ว";
+        edited.envelope = ReportEnvelope.seal(edited, reporter, null, 2);
+        a.add(edited);
+        // ฉบับที่คนอื่นเซ็นด้วย id เดิมไม่แทนของจริง แม้ contentVersion สูงกว่า
+        MainActivity.Report forged = MemoryReportStore.report(3);
+        forged.envelope = ReportEnvelope.seal(forged, forger, null, 99);
+        a.add(forged);
+
+        MemoryReportStore.sync(a, b, OPEN, verifier);
+
+        assertEquals(2, ReportEnvelope.peekContentVersion(b.reports.get(2).envelope));
+        assertEquals("ย้ายขึ้นชั้นสองแล้ว", b.reports.get(2).details);
+        assertEquals(1, ReportEnvelope.peekContentVersion(b.reports.get(3).envelope));
+    }
+
+    @Test
+    public void rejectsBatchLengthBeforeAllocating() throws Exception {
+        assertRejected(Integer.MAX_VALUE);
+        assertRejected(BatchCompressor.MAX_COMPRESSED + 1);
+        assertRejected(-1);
+    }
+
+    private static void assertRejected(int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream peer = new DataOutputStream(bytes);
+        peer.writeInt(ReportSync.MAGIC);
+        peer.writeByte(ReportSync.PROTOCOL_VERSION);
+        peer.writeShort(0);
+        peer.writeByte(ReportSync.REPORTS);
+        peer.writeInt(length);
+
+        ReportSync sync =
+                new ReportSync(new MemoryReportStore(), null, new IngressGuard(OPEN), "peer");
+        try {
+            sync.run(new ByteArrayInputStream(bytes.toByteArray()), new ByteArrayOutputStream(), false);
+            fail("accepted batch length " + length);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid batch length"));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReportTimeTest {
+
+    @Test
+    public void restoreKeepsOrderButIsBoundedByWallClock() {
+        long wall = System.currentTimeMillis();
+        // ค่าที่บันทึกไว้ล้ำนาฬิกาเล็กน้อย: now() ไม่ถอยหลังกว่าค่านั้น
+        ReportTime.restore(wall + 1000);
+        assertTrue(ReportTime.now() >= wall + 1000);
+
+        // ค่าจากนาฬิกาที่เคยตั้งไปอนาคตหนึ่งปีถูกตัดเหลือ wall + MAX_RESTORE_SKEW_MS
+        ReportTime.restore(wall + 365L * 86_400_000);
+        long now = ReportTime.now();
+        assertTrue(now <= System.currentTimeMillis() + ReportTime.MAX_RESTORE_SKEW_MS);
+        assertTrue(now >= wall + 1000);
+        assertEquals(now, ReportTime.last());
+        ReportTime.restore(0);
+        assertTrue(ReportTime.now() >= now);
+    }
+}
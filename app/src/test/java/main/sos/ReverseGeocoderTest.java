@@ -0,0 +1,80 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ReverseGeocoderTest {
+
+    private static List<BoundaryFileWriter.Region> fixture() throws IOException {
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                ReverseGeocoderTest.class.getResourceAsStream(
+                                        "/boundaries-fixture.tsv"),
+                                StandardCharsets.UTF_8))) {
+            return BoundaryFileWriter.read(reader);
+        }
+    }
+
+    private static ReverseGeocoder open(List<BoundaryFileWriter.Region> regions, double cell)
+            throws IOException {
+        File file = File.createTempFile("boundaries", ".mgeo");
+        file.deleteOnExit();
+        BoundaryFileWriter.write(file, regions, cell, 20261019);
+        return new ReverseGeocoder(file);
+    }
+
+    @Test
+    public void labelsHolesIslandsAndSharedEdges() throws IOException {
+        try (ReverseGeocoder geocoder = open(fixture(), 0.004)) {
+            assertEquals(20261019, geocoder.getDataVersion());
+            assertEquals(4, geocoder.getRegionCount());
+            assertEquals(
+                    "แขวงลุมพินี เขตปทุมวัน กรุงเทพมหานคร", geocoder.getLabel(13.722, 100.532));
+            // รูของลุมพินีคือรองเมือง
+            assertEquals(
+                    "แขวงรองเมือง เขตปทุมวัน กรุงเทพมหานคร", geocoder.getLabel(13.73, 100.54));
+            // ขอบหยักที่ใช้ร่วมกัน
+            assertEquals(
+                    "แขวงลุมพินี เขตปทุมวัน กรุงเทพมหานคร", geocoder.getLabel(13.73, 100.553));
+            assertEquals(
+                    "แขวงคลองเตย เขตคลองเตย กรุงเทพมหานคร", geocoder.getLabel(13.738, 100.553));
+            // สองเกาะเป็นตำบลเดียวกัน ทะเลระหว่างเกาะไม่มีตำบล
+            int island = geocoder.lookup(13.605, 100.605);
+            assertEquals(island, geocoder.lookup(13.625, 100.625));
+            assertEquals("ชลบุรี", geocoder.getProvince(island));
+            assertEquals(ReverseGeocoder.NOT_FOUND, geocoder.lookup(13.615, 100.615));
+            assertNull(geocoder.getLabel(14.0, 100.5));
+        }
+    }
+
+    @Test
+    public void matchesExactPolygonsAcrossCellSizes() throws IOException {
+        List<BoundaryFileWriter.Region> regions = fixture();
+        for (double cell : new double[] {0.001, 0.004, 0.05}) {
+            try (ReverseGeocoder geocoder = open(regions, cell)) {
+                Random random = new Random(7);
+                for (int i = 0; i < 5000; i++) {
+                    double lat = 13.59 + random.nextDouble() * 0.16;
+                    double lng = 100.52 + random.nextDouble() * 0.12;
+                    int expected = ReverseGeocoder.NOT_FOUND;
+                    for (int r = 0; r < regions.size(); r++) {
+                        if (BoundaryFileWriter.containsExact(regions.get(r), lat, lng)) {
+                            expected = r;
+                        }
+                    }
+                    assertEquals(lat + "," + lng, expected, geocoder.lookup(lat, lng));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class RoadGraphTest {
+
+    /**
+     * สามจุดเรียงกันบนเส้นตรง 0 <-> 1 <-> 2 แต่ละช่วง 60 วินาที
+     */
+    private static byte[] line(int[] edgeStart, int edgeCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RoadGraph.MAGIC);
+        out.writeInt(3);
+        out.writeInt(edgeCount);
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(ReportCodec.toFixed(13.70 + i * 0.005));
+            out.writeInt(ReportCodec.toFixed(100.50));
+        }
+        for (int start : edgeStart) out.writeInt(start);
+        int[] targets = {1, 0, 2, 1};
+        for (int i = 0; i < edgeCount; i++) {
+            out.writeInt(targets[i % targets.length]);
+            out.writeFloat(60);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static RoadGraph read(byte[] data) throws IOException {
+        return RoadGraph.read(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void readsValidGraph() throws IOException {
+        RoadGraph graph = read(line(new int[] {0, 1, 3, 4}, 4));
+        assertEquals(3, graph.getNodeCount());
+        assertEquals(120, graph.shortestSeconds(0, 2), 1e-6);
+        assertEquals(120, graph.estimateSeconds(13.70, 100.50, 13.71, 100.50), 1e-6);
+    }
+
+    @Test
+    public void rejectsEdgeStartOutsideEdges() throws IOException {
+        int[][] invalid = {
+            {0, 1, 3, 9}, // เกินจำนวน edge
+            {0, 3, 1, 4}, // ลดลง
+            {1, 1, 3, 4}, // ไม่เริ่มที่ 0
+            {0, 1, 3, 3}, // ไม่จบที่ edgeCount
+            {0, -1, 3, 4},
+        };
+        for (int[] edgeStart : invalid) {
+            try {
+                read(line(edgeStart, 4));
+                fail("accepted edgeStart " + Arrays.toString(edgeStart));
+            } catch (IOException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * วัดเวลาค้นหาของ ReportSearchIndex ระหว่างพิมพ์ (prefix สั้นๆ) กับเวลาเพิ่ม/แก้ไขรายงาน
+ * รายงานมีชื่อ รายละเอียดภาษาไทย และเบอร์โทรไม่ซ้ำกันทุกฉบับ (กรณีแย่สุดของ prefix ตัวเลข)
+ *
+ * args: [จำนวนรายงาน คั่นด้วย ,]
+ */
+public class SearchBenchmark {
+
+    private static final int RUNS = 21;
+    private static final String[] QUERIES = {"0", "08", "081", "0812", "น้ำ", "บ้าน", "ผู้แจ้ง 12"};
+    private static final String[] DETAILS = {
+        "ติดอยู่ในบ้าน น้ำท่วมสูง", "ต้องการอาหารและน้ำดื่ม", "มีผู้สูงอายุ ต้องการยา",
+        "หลังคาบ้านพัง", "ไฟฟ้าดับ ติดต่อไม่ได้"
+    };
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? parseInts(args[0]) : new int[] {10_000, 100_000};
+        for (int size : sizes) run(size);
+    }
+
+    private static void run(int size) {
+        Random random = new Random(size);
+        MainActivity.Report[] reports = new MainActivity.Report[size];
+        ReportSearchIndex index = new ReportSearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            MainActivity.Report report = MemoryReportStore.report(i + 1);
+            report.contact =
+                    String.format(
+                            Locale.US,
+                            "08%d-%07d",
+                            random.nextInt(10),
+                            random.nextInt(10_000_000));
+            report.details = DETAILS[random.nextInt(DETAILS.length)];
+            reports[i] = report;
+            index.put(report);
+        }
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%d reports: put all %.0f ms",
+                        size,
+                        (System.nanoTime() - start) / 1e6));
+
+        for (String query : QUERIES) {
+            long[] nanos = new long[RUNS];
+            int found = 0;
+            for (int run = -5; run < RUNS; run++) {
+                long t = System.nanoTime();
+                found = index.search(query, ReportSearchIndex.Filter.NONE).size();
+                if (run >= 0) nanos[run] = System.nanoTime() - t;
+            }
+            Arrays.sort(nanos);
+            System.out.println(
+                    String.format(
+                            Locale.US,
+                            "  search %-12s p50 %6.2f ms  max %6.2f ms  found %d",
+                            "\"" + query + "\"",
+                            nanos[RUNS / 2] / 1e6,
+                            nanos[RUNS - 1] / 1e6,
+                            found));
+        }
+
+        // แก้ไขซ้ำจน slot ที่ทิ้งเกินครึ่ง ต้อง compact อย่างน้อยหนึ่งครั้ง (max อาจรวม GC pause)
+        long[] puts = new long[2 * size];
+        for (int i = 0; i < puts.length; i++) {
+            MainActivity.Report report = reports[random.nextInt(size)];
+            long t = System.nanoTime();
+            index.put(report);
+            puts[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(puts);
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "  %d updates: put p50 %.3f ms  p99.9 %.2f ms  max %.1f ms",
+                        puts.length,
+                        puts[puts.length / 2] / 1e6,
+                        puts[puts.length - puts.length / 1000] / 1e6,
+                        puts[puts.length - 1] / 1e6));
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
@@ -0,0 +1,166 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class SeverityHeatmapTest {
+
+    private static final double CELL = 0.002;
+    private static final int SIZE = 16;
+    private static final double LAT = 13.75;
+    private static final double LNG = 100.50;
+    private static final long T0 = 1_700_000_000_000L;
+
+    private static MainActivity.Report report(Random random, int id, long time) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        // บางฉบับอยู่นอก grid
+        double spread = CELL * SIZE * 1.1;
+        report.location =
+                new MainActivity.Location(
+                        LAT + (random.nextDouble() - 0.5) * spread,
+                        LNG + (random.nextDouble() - 0.5) * spread);
+        report.level = MainActivity.Severity.values()[random.nextInt(4)];
+        report.status = MainActivity.ReportStatus.WAITING;
+        report.timestamp = time;
+        return report;
+    }
+
+    private static double weight(MainActivity.Report report) {
+        double severity = 1 << report.level.code;
+        switch (report.status) {
+            case WAITING:
+                return severity;
+            case ACKNOWLEDGED:
+                return severity / 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * ค่าที่ควรได้ของทุก cell คำนวณตรงจากรายงานที่เหลือด้วย double
+     */
+    private static double[] expected(SeverityHeatmap heatmap, Iterable<MainActivity.Report> live,
+            long now) {
+        double[] cells = new double[SIZE * SIZE];
+        for (MainActivity.Report report : live) {
+            int column = (int) Math.floor((report.location.lng - heatmap.getWest()) / CELL);
+            int row = (int) Math.floor((heatmap.getNorth() - report.location.lat) / CELL);
+            if (column < 0 || row < 0 || column >= SIZE || row >= SIZE) continue;
+            cells[row * SIZE + column] +=
+                    weight(report)
+                            * Math.pow(
+                                    2,
+                                    -(now - report.timestamp)
+                                            / (double) SeverityHeatmap.HALF_LIFE_MS);
+        }
+        return cells;
+    }
+
+    private static void assertCells(SeverityHeatmap heatmap, Map<Integer, MainActivity.Report> live,
+            long now) {
+        double[] expected = expected(heatmap, live.values(), now);
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                double value = expected[row * SIZE + column];
+                assertEquals(
+                        "cell " + column + "," + row,
+                        value,
+                        heatmap.valueAt(column, row, now),
+                        value * 1e-4 + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void keepsValuesAcrossEpochRebase() {
+        Random random = new Random(47);
+        SeverityHeatmap heatmap = new SeverityHeatmap(LAT, LNG, CELL, SIZE, T0);
+        Map<Integer, MainActivity.Report> live = new HashMap<>();
+        List<Integer> ids = new ArrayList<>();
+        long now = T0;
+        int nextId = 0;
+        // 60 half-life: ค่าที่เก็บเกิน 2^16 และถูก rebase หลายครั้ง
+        long end = T0 + 60 * SeverityHeatmap.HALF_LIFE_MS;
+        while (now < end) {
+            now += random.nextInt(20 * 60_000);
+            int op = random.nextInt(10);
+            if (op < 5 || ids.isEmpty()) {
+                MainActivity.Report report = report(random, ++nextId, now);
+                heatmap.put(report, now);
+                live.put(report.id, report);
+                ids.add(report.id);
+            } else if (op < 7) {
+                int id = ids.remove(random.nextInt(ids.size()));
+                heatmap.remove(id);
+                live.remove(id);
+            } else {
+                // เปลี่ยนสถานะ เวลารายงานเดิม (เก่ากว่า epoch ได้)
+                MainActivity.Report report = live.get(ids.get(random.nextInt(ids.size())));
+                report.status =
+                        MainActivity.ReportStatus.values()[
+                                random.nextInt(MainActivity.ReportStatus.values().length)];
+                heatmap.put(report, now);
+            }
+            if (random.nextInt(200) == 0) assertCells(heatmap, live, now);
+        }
+        assertTrue(nextId > 500);
+        assertCells(heatmap, live, now);
+        // อ่านย้อนหลังและล่วงหน้าจาก epoch ปัจจุบัน
+        assertCells(heatmap, live, now + 3 * SeverityHeatmap.HALF_LIFE_MS);
+
+        for (int id : ids) heatmap.remove(id);
+        assertEquals(0, heatmap.getOutsideCount());
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                float residual = heatmap.valueAt(column, row, now);
+                assertTrue("residual " + residual, residual >= 0 && residual < 2e-6);
+            }
+        }
+    }
+
+    @Test
+    public void renderScalesToHottestCell() {
+        SeverityHeatmap heatmap = new SeverityHeatmap(LAT, LNG, CELL, SIZE, T0);
+        int[] pixels = new int[SIZE * SIZE];
+        heatmap.render(pixels);
+        for (int pixel : pixels) assertEquals(0, pixel);
+
+        heatmap.put(atCell(heatmap, 1, 3, 4, MainActivity.Severity.CRITICAL), T0);
+        heatmap.put(atCell(heatmap, 2, 10, 12, MainActivity.Severity.LOW), T0);
+        int modCount = heatmap.getModCount();
+        heatmap.render(pixels);
+        int hot = pixels[4 * SIZE + 3];
+        int mild = pixels[12 * SIZE + 10];
+        // cell ร้อนสุดได้สีสุดท้ายของ palette cell ที่เบากว่ายังมองเห็นแต่จางกว่า
+        assertEquals(0xDCFF0000, hot);
+        assertTrue((mild >>> 24) > 60 && (mild >>> 24) < (hot >>> 24));
+        int empty = 0;
+        for (int pixel : pixels) {
+            if (pixel == 0) empty++;
+        }
+        assertEquals(SIZE * SIZE - 2, empty);
+        // render ไม่นับเป็นการเปลี่ยนค่า
+        assertEquals(modCount, heatmap.getModCount());
+    }
+
+    private static MainActivity.Report atCell(
+            SeverityHeatmap heatmap, int id, int column, int row, MainActivity.Severity level) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        report.location =
+                new MainActivity.Location(
+                        heatmap.getNorth() - (row + 0.5) * CELL,
+                        heatmap.getWest() + (column + 0.5) * CELL);
+        report.level = level;
+        report.status = MainActivity.ReportStatus.WAITING;
+        report.timestamp = T0;
+        return report;
+    }
+}
@@ -0,0 +1,85 @@
+package main.sos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * วิทยุจำลองสำหรับทดสอบ BeaconScheduler บน JVM
+ * ทุกเครื่องที่ใช้ Air เดียวกันจะได้ยินกัน เมื่อเรียก Air.broadcast()
+ */
+public class SimulatedBeaconRadio implements BeaconRadio {
+
+    /**
+     * สื่อกลางจำลอง ส่ง payload ของทุกเครื่องที่กำลัง advertise ให้ทุกเครื่องที่กำลัง scan
+     */
+    public static class Air {
+        private final List<SimulatedBeaconRadio> radios = new ArrayList<>();
+
+        public SimulatedBeaconRadio newRadio() {
+            SimulatedBeaconRadio radio = new SimulatedBeaconRadio();
+            radios.add(radio);
+            return radio;
+        }
+
+        /**
+         * จำลองหนึ่ง advertising event คืนจำนวนครั้งที่ส่งถึงผู้ฟัง
+         */
+        public int broadcast() {
+            int delivered = 0;
+            for (SimulatedBeaconRadio sender : radios) {
+                if (sender.advertising == null) continue;
+                for (SimulatedBeaconRadio receiver : radios) {
+                    if (receiver == sender || receiver.scanListener == null) continue;
+                    receiver.scanListener.onBeaconReceived(sender.advertising.clone(), -60);
+                    delivered++;
+                }
+            }
+            return delivered;
+        }
+    }
+
+    private byte[] advertising;
+    private Listener scanListener;
+    private int advertiseStarts;
+    private int scanStarts;
+
+    @Override
+    public boolean startAdvertising(byte[] payload) {
+        advertising = payload;
+        advertiseStarts++;
+        return true;
+    }
+
+    @Override
+    public void stopAdvertising() {
+        advertising = null;
+    }
+
+    @Override
+    public boolean startScan(Listener listener) {
+        scanListener = listener;
+        scanStarts++;
+        return true;
+    }
+
+    @Override
+    public void stopScan() {
+        scanListener = null;
+    }
+
+    public boolean isAdvertising() {
+        return advertising != null;
+    }
+
+    public boolean isScanning() {
+        return scanListener != null;
+    }
+
+    public int getAdvertiseStarts() {
+        return advertiseStarts;
+    }
+
+    public int getScanStarts() {
+        return scanStarts;
+    }
+}
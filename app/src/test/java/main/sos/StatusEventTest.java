@@ -0,0 +1,101 @@
+package main.sos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.Test;
+
+public class StatusEventTest {
+
+    @Test
+    public void signedEventRoundTripsAndVerifies() throws Exception {
+        DeviceIdentity identity = DeviceIdentity.generate();
+        StatusEvent event =
+                new StatusEvent(9, 2, MainActivity.ReportStatus.EN_ROUTE, 1_700_000_000_000L)
+                        .signedBy(identity);
+        byte[] encoded = encode(event);
+        assertEquals(event.encodedSize(), encoded.length);
+
+        StatusEvent decoded = decode(encoded);
+        assertEquals(MainActivity.ReportStatus.EN_ROUTE, decoded.status);
+        assertArrayEquals(identity.getEncodedPublicKey(), decoded.signer);
+        assertTrue(decoded.verify(identity.getParams()));
+
+        // version ที่ถูกแก้ระหว่างทางทำให้ลายเซ็นไม่ผ่าน
+        encoded[7] = 9;
+        assertFalse(decode(encoded).verify(identity.getParams()));
+    }
+
+    @Test
+    public void unsignedEventHasNoSigner() throws Exception {
+        StatusEvent event = new StatusEvent(9, 1, MainActivity.ReportStatus.ACKNOWLEDGED, 0);
+        StatusEvent decoded = decode(encode(event));
+        assertEquals(StatusEvent.BASE_SIZE, event.encodedSize());
+        assertNull(decoded.signer);
+        assertFalse(decoded.verify(DeviceIdentity.generate().getParams()));
+        assertFalse(decoded.isAuthorizedFor(null, null));
+    }
+
+    @Test
+    public void onlyReporterOrRescuerMayChangeStatus() throws Exception {
+        DeviceIdentity reporter = DeviceIdentity.generate();
+        DeviceIdentity rescuer = DeviceIdentity.generate();
+        DeviceIdentity stranger = DeviceIdentity.generate();
+        byte[] rescuerKey = rescuer.getEncodedPublicKey();
+        MainActivity.Report report = MemoryReportStore.report(5);
+        report.envelope = ReportEnvelope.seal(report, reporter, null, 1);
+
+        assertTrue(event(5, MainActivity.ReportStatus.RESCUED, reporter)
+                .isAuthorizedFor(report, rescuerKey));
+        assertTrue(event(5, MainActivity.ReportStatus.ACKNOWLEDGED, rescuer)
+                .isAuthorizedFor(report, rescuerKey));
+        assertFalse(event(5, MainActivity.ReportStatus.RESCUED, rescuer)
+                .isAuthorizedFor(report, rescuerKey));
+        assertFalse(event(5, MainActivity.ReportStatus.CANCELLED, stranger)
+                .isAuthorizedFor(report, rescuerKey));
+        // event ของรายงานอื่นใช้ลายเซ็นผู้แจ้งรายงานนี้ไม่ได้
+        assertFalse(event(6, MainActivity.ReportStatus.RESCUED, reporter)
+                .isAuthorizedFor(report, rescuerKey));
+
+        // ยังไม่มีรายงาน: รับเฉพาะของหน่วยกู้ภัย
+        assertTrue(event(5, MainActivity.ReportStatus.EN_ROUTE, rescuer)
+                .isAuthorizedFor(null, rescuerKey));
+        assertFalse(event(5, MainActivity.ReportStatus.RESCUED, reporter)
+                .isAuthorizedFor(null, rescuerKey));
+    }
+
+    @Test
+    public void equalStateAttachesSignedEvent() throws Exception {
+        MainActivity.Report report = MemoryReportStore.report(3);
+        new StatusEvent(3, 1, MainActivity.ReportStatus.ACKNOWLEDGED, 0).applyTo(report);
+        report.statusEvent = null;
+
+        StatusEvent signed =
+                event(3, MainActivity.ReportStatus.ACKNOWLEDGED, DeviceIdentity.generate());
+        assertFalse(signed.applyTo(report));
+        assertTrue(report.statusEvent == signed);
+    }
+
+    private static StatusEvent event(
+            int reportId, MainActivity.ReportStatus status, DeviceIdentity signer)
+            throws Exception {
+        return new StatusEvent(reportId, 1, status, 0).signedBy(signer);
+    }
+
+    private static byte[] encode(StatusEvent event) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        event.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static StatusEvent decode(byte[] encoded) throws Exception {
+        return StatusEvent.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+}
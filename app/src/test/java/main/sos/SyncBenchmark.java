@@ -0,0 +1,118 @@
+package main.sos;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * วัดเวลาและจำนวนไบต์ของ ReportSync ตามจำนวนรายงานต่อเครื่องและสัดส่วนที่ทั้งสองฝั่งมีตรงกัน
+ * ซิงก์ผ่าน TCP บน loopback (ไม่รวมเวลาต่อ WiFi Direct) เทียบกับการส่งรายงานทั้งหมดแบบไม่ reconcile
+ *
+ * args: [จำนวนต่อเครื่อง คั่นด้วย ,] [สัดส่วนที่ตรงกัน คั่นด้วย ,]
+ */
+public class SyncBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? parseInts(args[0]) : new int[] {1000, 10_000, 50_000};
+        double[] overlaps =
+                args.length > 1 ? parseDoubles(args[1]) : new double[] {0, 0.5, 0.9, 0.99, 1};
+        System.out.println("size overlap   ms(p50)  rounds  sent(KB)  recv(KB)  full(KB)  moved");
+        for (int size : sizes) {
+            for (double overlap : overlaps) {
+                run(size, overlap);
+            }
+        }
+    }
+
+    private static void run(int size, double overlap) throws Exception {
+        Random random = new Random(size * 31L + (long) (overlap * 1000));
+        int shared = (int) Math.round(size * overlap);
+        Set<Integer> used = new HashSet<>();
+        int[] common = newIds(random, used, shared);
+        int[] onlyA = newIds(random, used, size - shared);
+        int[] onlyB = newIds(random, used, size - shared);
+
+        long[] nanos = new long[RUNS];
+        ReportSync.Result[] last = null;
+        // รอบแรกเป็น warm-up ของ JIT
+        for (int run = -1; run < RUNS; run++) {
+            MemoryReportStore a = new MemoryReportStore();
+            MemoryReportStore b = new MemoryReportStore();
+            for (int id : common) {
+                a.add(MemoryReportStore.report(id));
+                b.add(MemoryReportStore.report(id));
+            }
+            for (int id : onlyA) a.add(MemoryReportStore.report(id));
+            for (int id : onlyB) b.add(MemoryReportStore.report(id));
+
+            long start = System.nanoTime();
+            ReportSync.Result[] results = MemoryReportStore.sync(a, b, ReportSyncTest.OPEN);
+            long elapsed = System.nanoTime() - start;
+            if (a.reports.size() != b.reports.size()
+                    || a.reports.size() != shared + 2 * (size - shared)) {
+                throw new IllegalStateException("sync did not converge");
+            }
+            if (run >= 0) nanos[run] = elapsed;
+            last = results;
+        }
+        Arrays.sort(nanos);
+
+        MemoryReportStore full = new MemoryReportStore();
+        for (int id : common) full.add(MemoryReportStore.report(id));
+        for (int id : onlyA) full.add(MemoryReportStore.report(id));
+        long fullBytes = 0;
+        List<MainActivity.Report> all = full.snapshot();
+        for (int start = 0; start < all.size(); start += ReportSync.MAX_BATCH) {
+            fullBytes +=
+                    ReportSync.encodeBatch(
+                                    all.subList(
+                                            start,
+                                            Math.min(all.size(), start + ReportSync.MAX_BATCH)))
+                            .length;
+        }
+
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%5d  %5.2f  %8.1f  %6d  %8.1f  %8.1f  %8.1f  %5d",
+                        size,
+                        overlap,
+                        nanos[RUNS / 2] / 1e6,
+                        last[0].rounds,
+                        last[0].bytesSent / 1024.0,
+                        last[0].bytesReceived / 1024.0,
+                        fullBytes / 1024.0,
+                        last[0].reportsReceived + last[1].reportsReceived));
+    }
+
+    private static int[] newIds(Random random, Set<Integer> used, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            int id;
+            do {
+                id = random.nextInt() & Integer.MAX_VALUE;
+            } while (!used.add(id));
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    private static double[] parseDoubles(String csv) {
+        String[] parts = csv.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Double.parseDouble(parts[i].trim());
+        return values;
+    }
+}
@@ -0,0 +1,128 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TileCacheTest {
+
+    private static final int TILE_BYTES = 100;
+
+    /**
+     * tile ที่ decode แล้วคือ byte[] ของไฟล์ ขนาดตามจำนวน byte ข้อมูลที่ขึ้นต้นด้วย 0 ถือว่าเสีย
+     */
+    private static final TileCache.Decoder<byte[]> DECODER =
+            new TileCache.Decoder<byte[]>() {
+                @Override
+                public byte[] decode(ByteBuffer data) {
+                    byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    return bytes[0] == 0 ? null : bytes;
+                }
+
+                @Override
+                public int sizeOf(byte[] tile) {
+                    return tile.length;
+                }
+            };
+
+    /**
+     * tile (12, x, 0) สำหรับ x = 0..count-1 ขนาด TILE_BYTES ยกเว้น x = 7 ใหญ่ 4 เท่าและ x = 8 เสีย
+     */
+    private static TileStore store(int count) throws IOException {
+        Map<Long, byte[]> tiles = new HashMap<>();
+        for (int x = 0; x < count; x++) {
+            byte[] data = new byte[x == 7 ? 4 * TILE_BYTES : TILE_BYTES];
+            data[0] = (byte) (x == 8 ? 0 : x + 1);
+            tiles.put(TileStore.key(12, x, 0), data);
+        }
+        File file = File.createTempFile("tiles", ".mtil");
+        file.deleteOnExit();
+        TileStore.write(file, tiles);
+        return new TileStore(file);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() throws IOException {
+        try (TileStore store = store(10)) {
+            TileCache<byte[]> cache =
+                    new TileCache<>(store, DECODER, 3 * TILE_BYTES, Runnable::run);
+            byte[] first = cache.get(12, 0, 0);
+            cache.get(12, 1, 0);
+            cache.get(12, 2, 0);
+            assertEquals(3 * TILE_BYTES, cache.getCurrentBytes());
+            // ใช้ 0 ล่าสุด ตัวที่เก่าสุดจึงเป็น 1
+            assertSame(first, cache.get(12, 0, 0));
+            cache.get(12, 3, 0);
+            assertEquals(3 * TILE_BYTES, cache.getCurrentBytes());
+            assertNull(cache.peek(12, 1, 0));
+            assertNotNull(cache.peek(12, 2, 0));
+            assertNotNull(cache.peek(12, 0, 0));
+            assertNotNull(cache.peek(12, 3, 0));
+
+            // tile ใหญ่กว่าเพดานไล่ทุกตัวออกรวมทั้งตัวเอง
+            assertNotNull(cache.get(12, 7, 0));
+            assertEquals(0, cache.getCurrentBytes());
+            assertNull(cache.peek(12, 0, 0));
+        }
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws IOException {
+        try (TileStore store = store(10)) {
+            TileCache<byte[]> cache = new TileCache<>(store, DECODER, 10_000, Runnable::run);
+            assertEquals(0, cache.getHitRate(), 0);
+            cache.get(12, 0, 0);
+            cache.get(12, 0, 0);
+            cache.peek(12, 0, 0);
+            // ไม่มีใน store, นอกช่วงของ zoom และข้อมูลเสีย: miss และไม่เก็บ
+            assertNull(cache.get(12, 20, 0));
+            assertNull(cache.get(12, -1, 0));
+            assertNull(cache.get(12, 8, 0));
+            assertNull(cache.get(12, 8, 0));
+            assertNull(cache.peek(12, 1, 0));
+            assertEquals(2, cache.getHits());
+            assertEquals(6, cache.getMisses());
+            assertEquals(0.25, cache.getHitRate(), 1e-9);
+            assertEquals(TILE_BYTES, cache.getCurrentBytes());
+
+            cache.clear();
+            assertEquals(0, cache.getCurrentBytes());
+            assertNull(cache.peek(12, 0, 0));
+            assertEquals(7, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void prefetchLoadsOnceAndNotifies() throws IOException {
+        try (TileStore store = store(10)) {
+            List<Runnable> queued = new ArrayList<>();
+            TileCache<byte[]> cache = new TileCache<>(store, DECODER, 10_000, queued::add);
+            List<Integer> loaded = new ArrayList<>();
+            cache.setListener((zoom, x, y) -> loaded.add(x));
+            cache.prefetch(12, 4, 0);
+            cache.prefetch(12, 4, 0);
+            cache.prefetch(12, 5, 0);
+            // ตัวที่รออยู่แล้วไม่ถูกส่งซ้ำ
+            assertEquals(2, queued.size());
+            for (Runnable task : queued) task.run();
+            assertEquals(2, loaded.size());
+            assertNotNull(cache.peek(12, 4, 0));
+            assertNotNull(cache.peek(12, 5, 0));
+            // อยู่ใน cache แล้วไม่ต้องโหลดอีก
+            cache.prefetch(12, 4, 0);
+            assertEquals(2, queued.size());
+            assertEquals(0, cache.getMisses());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class TileStoreTest {
+
+    // tile ที่มีในไฟล์: ขอบของ key (zoom 0, x/y สูงสุดที่ zoom 20) และ tile ติดกันที่ zoom 15
+    private static final int[][] TILES = {
+        {0, 0, 0},
+        {15, 25_000, 15_000},
+        {15, 25_000, 15_002},
+        {15, 25_001, 15_000},
+        {16, 51_000, 30_000},
+        {TileStore.MAX_ZOOM, (1 << 20) - 1, (1 << 20) - 1},
+    };
+
+    private static byte[] data(int zoom, int x, int y) {
+        return (zoom + "/" + x + "/" + y).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static File write(int[][] tiles) throws IOException {
+        Map<Long, byte[]> data = new HashMap<>();
+        for (int[] tile : tiles) {
+            data.put(TileStore.key(tile[0], tile[1], tile[2]), data(tile[0], tile[1], tile[2]));
+        }
+        File file = File.createTempFile("tiles", ".mtil");
+        file.deleteOnExit();
+        TileStore.write(file, data);
+        return file;
+    }
+
+    private static String read(ByteBuffer tile) {
+        byte[] bytes = new byte[tile.remaining()];
+        tile.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void findsEveryTileAndMissesTheRest() throws IOException {
+        try (TileStore store = new TileStore(write(TILES))) {
+            assertEquals(TILES.length, store.getTileCount());
+            for (int[] tile : TILES) {
+                ByteBuffer found = store.getTile(tile[0], tile[1], tile[2]);
+                assertEquals(tile[0] + "/" + tile[1] + "/" + tile[2], read(found));
+                // slice อ่านซ้ำได้ ไม่กระทบกัน
+                assertEquals(0, store.getTile(tile[0], tile[1], tile[2]).position());
+            }
+            // ช่องว่างระหว่าง key ที่มี และหลังตัวสุดท้าย
+            assertNull(store.getTile(15, 25_000, 15_001));
+            assertNull(store.getTile(15, 24_999, 15_000));
+            assertNull(store.getTile(15, 25_002, 15_000));
+            assertNull(store.getTile(14, 25_000, 15_000));
+            assertNull(store.getTile(1, 0, 0));
+            assertNull(store.getTile(TileStore.MAX_ZOOM, (1 << 20) - 1, (1 << 20) - 2));
+        }
+    }
+
+    @Test
+    public void emptyFileHasNoTiles() throws IOException {
+        try (TileStore store = new TileStore(write(new int[0][]))) {
+            assertEquals(0, store.getTileCount());
+            assertNull(store.getTile(0, 0, 0));
+        }
+    }
+
+    @Test
+    public void rejectsCorruptFiles() throws IOException {
+        // magic ผิด, จำนวน tile เกินขนาดไฟล์, สั้นกว่า header
+        for (int[] header : new int[][] {{0x12345678, 0}, {TileStore.MAGIC, 100}, {}}) {
+            File file = File.createTempFile("tiles", ".mtil");
+            file.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                for (int value : header) out.writeInt(value);
+            }
+            try (TileStore store = new TileStore(file)) {
+                fail("opened " + store.getTileCount() + " tiles");
+            } catch (IOException expected) {
+                // ไฟล์เสีย
+            }
+        }
+    }
+
+    @Test
+    public void ignoresEntryPointingOutsideFile() throws IOException {
+        File file = File.createTempFile("tiles", ".mtil");
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(TileStore.MAGIC);
+            out.writeInt(2);
+            out.writeLong(TileStore.key(10, 1, 1));
+            out.writeInt(40);
+            out.writeInt(4);
+            out.writeLong(TileStore.key(10, 1, 2));
+            out.writeInt(40);
+            out.writeInt(1000);
+            out.writeInt(0x504e4721);
+        }
+        try (TileStore store = new TileStore(file)) {
+            assertEquals(4, store.getTile(10, 1, 1).remaining());
+            assertNull(store.getTile(10, 1, 2));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TimeWindowIndexTest {
+
+    private static MainActivity.Report report(int id, long timestamp) {
+        MainActivity.Report report = MemoryReportStore.report(id);
+        report.timestamp = timestamp;
+        return report;
+    }
+
+    private static List<Integer> ids(List<MainActivity.Report> reports) {
+        List<Integer> ids = new ArrayList<>(reports.size());
+        for (MainActivity.Report report : reports) ids.add(report.id);
+        return ids;
+    }
+
+    @Test
+    public void outOfOrderPutsStaySorted() {
+        TimeWindowIndex index = new TimeWindowIndex();
+        index.put(report(1, 1000));
+        index.put(report(2, 3000));
+        // relay มาทีหลังแต่สร้างก่อน
+        index.put(report(3, 2000));
+        index.put(report(4, 500));
+
+        assertEquals(Arrays.asList(2, 3, 1), ids(index.since(1000)));
+        assertEquals(Arrays.asList(4, 1, 3), ids(index.olderThan(3000)));
+
+        index.remove(3);
+        MainActivity.Report rescued = report(1, 1000);
+        rescued.status = MainActivity.ReportStatus.RESCUED;
+        index.put(rescued);
+        assertEquals(2, index.countSince(1000));
+        assertEquals(Arrays.asList(4), ids(index.waitingLongerThan(1000, 2500)));
+    }
+
+    @Test
+    public void putAllSortsOnceAndReplacesExisting() {
+        TimeWindowIndex index = new TimeWindowIndex();
+        index.put(report(7, 9000));
+        List<MainActivity.Report> newestFirst = new ArrayList<>();
+        for (int id = 10; id >= 1; id--) newestFirst.add(report(id, id * 1000L));
+        newestFirst.add(report(11, ReportTime.UNKNOWN));
+        index.putAll(newestFirst);
+
+        assertEquals(10, index.size());
+        assertEquals(Arrays.asList(1, 2, 3), ids(index.olderThan(4000)));
+        assertEquals(Arrays.asList(10, 9, 8, 7), ids(index.since(7000)));
+        assertEquals(3, index.countWaitingLongerThan(7000, 11_000));
+    }
+}
@@ -0,0 +1,85 @@
+package main.sos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class WorkloadGovernorTest {
+
+    private final WorkloadGovernor governor =
+            new WorkloadGovernor(WorkloadGovernor.DEFAULT_POLICY);
+    private final List<WorkloadGovernor.Tier> changes = new ArrayList<>();
+
+    private WorkloadGovernor.Tier update(int percent, boolean charging, int thermal) {
+        governor.update(new WorkloadGovernor.DeviceState(percent, charging, thermal));
+        return governor.getBudget().tier;
+    }
+
+    private WorkloadGovernor.Tier battery(int percent) {
+        return update(percent, false, WorkloadGovernor.THERMAL_NONE);
+    }
+
+    @Test
+    public void batteryLevelsMapToTiers() {
+        governor.addListener(budget -> changes.add(budget.tier));
+
+        assertEquals(WorkloadGovernor.Tier.NORMAL, battery(80));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(49));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(30));
+        assertEquals(WorkloadGovernor.Tier.CRITICAL, battery(19));
+        assertEquals(WorkloadGovernor.Tier.EMERGENCY, battery(4));
+        assertSame(WorkloadGovernor.EMERGENCY_BUDGET, governor.getBudget());
+
+        // listener ได้ค่าปัจจุบันตอนเพิ่ม แล้วได้เฉพาะตอนที่ระดับเปลี่ยน
+        assertEquals(
+                Arrays.asList(
+                        WorkloadGovernor.Tier.NORMAL,
+                        WorkloadGovernor.Tier.SAVER,
+                        WorkloadGovernor.Tier.CRITICAL,
+                        WorkloadGovernor.Tier.EMERGENCY),
+                changes);
+    }
+
+    @Test
+    public void recoveringNeedsHysteresisMargin() {
+        assertEquals(WorkloadGovernor.Tier.CRITICAL, battery(19));
+        // กลับขึ้นเกินเกณฑ์ไม่ถึง HYSTERESIS_PERCENT ยังอยู่ระดับเดิม
+        assertEquals(WorkloadGovernor.Tier.CRITICAL, battery(20));
+        assertEquals(WorkloadGovernor.Tier.CRITICAL, battery(22));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(23));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(52));
+        assertEquals(WorkloadGovernor.Tier.NORMAL, battery(53));
+        // ขาลงไม่มี margin
+        assertEquals(WorkloadGovernor.Tier.NORMAL, battery(50));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(49));
+    }
+
+    @Test
+    public void chargingIgnoresBatteryButNotHeat() {
+        assertEquals(WorkloadGovernor.Tier.EMERGENCY, battery(3));
+        assertEquals(WorkloadGovernor.Tier.NORMAL, update(3, true, WorkloadGovernor.THERMAL_NONE));
+        assertEquals(
+                WorkloadGovernor.Tier.SAVER, update(3, true, WorkloadGovernor.THERMAL_MODERATE));
+        assertEquals(
+                WorkloadGovernor.Tier.CRITICAL, update(3, true, WorkloadGovernor.THERMAL_SEVERE));
+        assertEquals(
+                WorkloadGovernor.Tier.NORMAL, update(-1, false, WorkloadGovernor.THERMAL_LIGHT));
+    }
+
+    @Test
+    public void heavierOfBatteryAndThermalWins() {
+        assertEquals(
+                WorkloadGovernor.Tier.SAVER, update(40, false, WorkloadGovernor.THERMAL_LIGHT));
+        assertEquals(
+                WorkloadGovernor.Tier.EMERGENCY,
+                update(40, false, WorkloadGovernor.THERMAL_CRITICAL));
+        assertEquals(WorkloadGovernor.Tier.SAVER, battery(40));
+        assertEquals(
+                WorkloadGovernor.Tier.CRITICAL,
+                update(10, false, WorkloadGovernor.THERMAL_MODERATE));
+    }
+}